@@ -1,5 +1,6 @@
 package com.libreria.sistema.config;
 
+import com.libreria.sistema.service.ReporteFinancieroService;
 import com.libreria.sistema.service.SunatBillingService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -7,6 +8,7 @@ import org.springframework.stereotype.Component;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 
 /**
@@ -19,9 +21,11 @@ import java.time.format.DateTimeFormatter;
 public class BillingScheduler {
 
     private final SunatBillingService billingService;
+    private final ReporteFinancieroService reporteFinancieroService;
 
-    public BillingScheduler(SunatBillingService billingService) {
+    public BillingScheduler(SunatBillingService billingService, ReporteFinancieroService reporteFinancieroService) {
         this.billingService = billingService;
+        this.reporteFinancieroService = reporteFinancieroService;
     }
 
     /**
@@ -39,6 +43,13 @@ public class BillingScheduler {
         } catch (Exception e) {
             log.error("ERROR en cierre de mes automatico: {}", e.getMessage(), e);
         }
+
+        // El mes cerrado ya no cambia: sus resultados de reportes se calculan y guardan una vez
+        try {
+            reporteFinancieroService.precalcularMesCerrado(YearMonth.now().minusMonths(1));
+        } catch (Exception e) {
+            log.error("Error precalculando reportes del mes cerrado: {}", e.getMessage(), e);
+        }
     }
 
     /**
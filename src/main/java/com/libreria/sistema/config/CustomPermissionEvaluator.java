@@ -1,6 +1,8 @@
 package com.libreria.sistema.config;
 
+import com.libreria.sistema.service.PermisosCompilados;
 import com.libreria.sistema.service.RolePermissionService;
+import com.libreria.sistema.service.UsuarioAutenticado;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.PermissionEvaluator;
 import org.springframework.security.core.Authentication;
@@ -21,6 +23,9 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
     @Autowired
     private RolePermissionService rolePermissionService;
 
+    @Autowired
+    private PermisosCompilados permisosCompilados;
+
     @Override
     public boolean hasPermission(Authentication authentication, Object targetDomainObject, Object permission) {
         if (authentication == null || !authentication.isAuthenticated()) {
@@ -36,10 +41,15 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
         }
 
         // Para otros usuarios, verificar permisos específicos
-        String username = authentication.getName();
         String codigoPermiso = permission.toString();
 
-        return rolePermissionService.tienePermiso(username, codigoPermiso);
+        // OPTIMIZADO: bitset del rol guardado en el principal (un bit por permiso, sin consultas)
+        if (authentication.getPrincipal() instanceof UsuarioAutenticado usuario) {
+            return permisosCompilados.tienePermiso(usuario, codigoPermiso);
+        }
+
+        // Principal de otro tipo (p. ej. sesiones previas al cambio): verificación contra la BD
+        return rolePermissionService.tienePermiso(authentication.getName(), codigoPermiso);
     }
 
     @Override
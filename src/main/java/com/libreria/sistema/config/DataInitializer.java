@@ -29,6 +29,15 @@ import java.util.Set;
 @Configuration
 public class DataInitializer {
 
+    /**
+     * Tablas cuyas entidades usan @SequenceGenerator "<tabla>_seq" (ver entidades del modelo)
+     */
+    private static final List<String> TABLAS_CON_SECUENCIA = List.of(
+            "ventas", "detalle_ventas", "kardex", "amortizaciones", "movimientos_caja", "auditoria_logs",
+            "compras", "detalle_compras", "productos", "devoluciones", "detalle_devoluciones",
+            "cotizaciones", "detalle_cotizaciones", "notificaciones", "sunat_outbox",
+            "orden_servicios", "orden_items");
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -66,6 +75,17 @@ public class DataInitializer {
                 if (correlativosActualizados > 0) {
                     System.out.println(">>> SANITIZACIÓN: " + correlativosActualizados + " correlativos con version NULL corregidos.");
                 }
+
+                // 0.2 SECUENCIAS DE IDs (migración IDENTITY -> SEQUENCE con allocationSize 50)
+                // Adelanta cada secuencia por encima del MAX(id) existente para que los IDs
+                // generados en bloque nunca choquen con filas creadas antes de la migración.
+                for (String tabla : TABLAS_CON_SECUENCIA) {
+                    entityManager.createNativeQuery(
+                            "SELECT setval('" + tabla + "_seq', GREATEST(" +
+                            "(SELECT COALESCE(MAX(id), 0) FROM " + tabla + ") + 50, " +
+                            "(SELECT last_value FROM " + tabla + "_seq)))")
+                        .getSingleResult();
+                }
                 // =================================================================================
 
                 // 0. Permisos y Roles
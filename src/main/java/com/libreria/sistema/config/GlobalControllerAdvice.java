@@ -1,7 +1,7 @@
 package com.libreria.sistema.config;
 
-import com.libreria.sistema.model.Configuracion;
 import com.libreria.sistema.service.ConfiguracionService;
+import com.libreria.sistema.service.ConfiguracionVigente;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ModelAttribute;
@@ -19,9 +19,10 @@ public class GlobalControllerAdvice {
     /**
      * Inyecta la configuración global en TODAS las vistas automáticamente.
      * Accesible en Thymeleaf como ${config}
+     * OPTIMIZADO: foto en memoria sin logo (antes, findById con el logo en Base64 en cada página)
      */
     @ModelAttribute("config")
-    public Configuracion agregarConfiguracionGlobal() {
-        return configuracionService.obtenerConfiguracion();
+    public ConfiguracionVigente agregarConfiguracionGlobal() {
+        return configuracionService.obtenerVigente();
     }
 }
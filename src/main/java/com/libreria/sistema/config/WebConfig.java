@@ -1,11 +1,15 @@
 package com.libreria.sistema.config;
 
+import com.libreria.sistema.util.Constants;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.time.Duration;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
@@ -19,9 +23,13 @@ public class WebConfig implements WebMvcConfigurer {
     /**
      * Bean de RestTemplate para realizar llamadas HTTP
      * Utilizado por FacturacionElectronicaService para comunicarse con APISUNAT
+     * Con timeouts: un PSE colgado no puede retener un envío más que el reclamo del outbox
      */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(RestTemplateBuilder builder) {
+        return builder
+                .setConnectTimeout(Duration.ofSeconds(Constants.HTTP_CONNECT_TIMEOUT_SEGUNDOS))
+                .setReadTimeout(Duration.ofSeconds(Constants.HTTP_READ_TIMEOUT_SEGUNDOS))
+                .build();
     }
 }
\ No newline at end of file
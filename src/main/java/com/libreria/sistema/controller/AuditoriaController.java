@@ -1,9 +1,11 @@
 package com.libreria.sistema.controller;
 
 import com.libreria.sistema.model.AuditoriaLog;
+import com.libreria.sistema.repository.PaginaKeyset;
 import com.libreria.sistema.service.AuditoriaService;
+import com.libreria.sistema.util.ExcelStreaming;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -46,7 +48,7 @@ public class AuditoriaController {
             @RequestParam(required = false) String accion,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaInicio,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaFin,
-            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "20") int size) {
 
         // Limpieza de strings vacíos
@@ -54,18 +56,16 @@ public class AuditoriaController {
         if (modulo != null && modulo.trim().isEmpty()) modulo = null;
         if (accion != null && accion.trim().isEmpty()) accion = null;
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("fechaHora").descending());
-        Page<AuditoriaLog> resultado = auditoriaService.obtenerHistorial(
-            usuario, modulo, accion, fechaInicio, fechaFin, pageable
+        // OPTIMIZADO: Paginación por keyset (sin OFFSET ni COUNT)
+        PaginaKeyset<AuditoriaLog> resultado = auditoriaService.buscarHistorial(
+            usuario, modulo, accion, fechaInicio, fechaFin, cursor, size
         );
 
         Map<String, Object> response = new HashMap<>();
-        response.put("content", resultado.getContent());
-        response.put("totalElements", resultado.getTotalElements());
-        response.put("totalPages", resultado.getTotalPages());
-        response.put("currentPage", resultado.getNumber());
-        response.put("first", resultado.isFirst());
-        response.put("last", resultado.isLast());
+        response.put("content", resultado.getContenido());
+        response.put("siguiente", resultado.getSiguiente());
+        response.put("anterior", resultado.getAnterior());
+        response.put("totalAproximado", resultado.getTotalAproximado());
 
         return response;
     }
@@ -73,13 +73,7 @@ public class AuditoriaController {
     @GetMapping("/api/detalle/{id}")
     @ResponseBody
     public ResponseEntity<AuditoriaLog> obtenerDetalle(@PathVariable Long id) {
-        // Enfoque simplificado usando el repositorio directamente si fuera necesario, 
-        // pero usaremos el filtro para ser consistentes.
-        // Lo ideal sería un método findById en el servicio, pero esto funciona:
-        return auditoriaService.obtenerHistorial(null, null, null, null, null, Pageable.unpaged())
-                .stream()
-                .filter(log -> log.getId().equals(id))
-                .findFirst()
+        return auditoriaService.obtenerPorId(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -102,46 +96,48 @@ public class AuditoriaController {
                 usuario, modulo, accion, fechaInicio, fechaFin, pageable
             );
 
-            Workbook workbook = new XSSFWorkbook();
-            Sheet sheet = workbook.createSheet("Auditoría");
-
-            CellStyle headerStyle = workbook.createCellStyle();
-            Font headerFont = workbook.createFont();
-            headerFont.setBold(true);
-            headerStyle.setFont(headerFont);
-            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-            headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-            Row headerRow = sheet.createRow(0);
-            String[] columnas = {"ID", "Fecha/Hora", "Usuario", "Módulo", "Acción", "Entidad", "ID Entidad", "IP", "Detalles"};
-            for (int i = 0; i < columnas.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(columnas[i]);
-                cell.setCellStyle(headerStyle);
-            }
-
-            int rowNum = 1;
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-            for (AuditoriaLog log : auditorias.getContent()) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(log.getId());
-                row.createCell(1).setCellValue(log.getFechaHora().format(formatter));
-                row.createCell(2).setCellValue(log.getUsuario());
-                row.createCell(3).setCellValue(log.getModulo());
-                row.createCell(4).setCellValue(log.getAccion());
-                row.createCell(5).setCellValue(log.getEntidad());
-                row.createCell(6).setCellValue(log.getEntidadId() != null ? log.getEntidadId().toString() : "");
-                row.createCell(7).setCellValue(log.getIpAddress());
-                row.createCell(8).setCellValue(log.getDetalles() != null ? log.getDetalles() : "");
-            }
-
-            for (int i = 0; i < columnas.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
-
+            // Tope de 5000 filas: el archivo se arma en memoria y se devuelve como byte[]
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            workbook.write(outputStream);
-            workbook.close();
+            SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+            try {
+                Sheet sheet = workbook.createSheet("Auditoría");
+
+                CellStyle headerStyle = workbook.createCellStyle();
+                Font headerFont = workbook.createFont();
+                headerFont.setBold(true);
+                headerStyle.setFont(headerFont);
+                headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+                headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+                ExcelStreaming.fijarAnchos(sheet, 10, 20, 18, 16, 16, 18, 12, 16, 60);
+
+                Row headerRow = sheet.createRow(0);
+                String[] columnas = {"ID", "Fecha/Hora", "Usuario", "Módulo", "Acción", "Entidad", "ID Entidad", "IP", "Detalles"};
+                for (int i = 0; i < columnas.length; i++) {
+                    Cell cell = headerRow.createCell(i);
+                    cell.setCellValue(columnas[i]);
+                    cell.setCellStyle(headerStyle);
+                }
+
+                int rowNum = 1;
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+                for (AuditoriaLog log : auditorias.getContent()) {
+                    Row row = sheet.createRow(rowNum++);
+                    row.createCell(0).setCellValue(log.getId());
+                    row.createCell(1).setCellValue(log.getFechaHora().format(formatter));
+                    row.createCell(2).setCellValue(log.getUsuario());
+                    row.createCell(3).setCellValue(log.getModulo());
+                    row.createCell(4).setCellValue(log.getAccion());
+                    row.createCell(5).setCellValue(log.getEntidad());
+                    row.createCell(6).setCellValue(log.getEntidadId() != null ? log.getEntidadId().toString() : "");
+                    row.createCell(7).setCellValue(log.getIpAddress());
+                    row.createCell(8).setCellValue(log.getDetalles() != null ? log.getDetalles() : "");
+                }
+
+                ExcelStreaming.escribir(workbook, outputStream);
+            } finally {
+                ExcelStreaming.liberar(workbook);
+            }
 
             String nombreArchivo = "auditoria_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
             HttpHeaders headers = new HttpHeaders();
@@ -1,7 +1,10 @@
 package com.libreria.sistema.controller;
 
 import com.libreria.sistema.model.MovimientoCaja;
+import com.libreria.sistema.repository.PaginaKeyset;
 import com.libreria.sistema.service.CajaService;
+import com.libreria.sistema.service.DashboardCache;
+import com.libreria.sistema.service.ReporteDatosVersion;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
@@ -12,6 +15,8 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,20 +27,25 @@ import java.util.stream.Collectors;
 @PreAuthorize("hasPermission(null, 'CAJA_VER')")
 public class CajaController {
 
+    private static final int MOVIMIENTOS_POR_PAGINA = 50;
+
     private final CajaService cajaService;
+    private final DashboardCache dashboardCache;
 
-    public CajaController(CajaService cajaService) {
+    public CajaController(CajaService cajaService, DashboardCache dashboardCache) {
         this.cajaService = cajaService;
+        this.dashboardCache = dashboardCache;
     }
 
     @GetMapping
-    public String index(Model model) {
+    public String index(Model model, @RequestParam(required = false) String cursor) {
         // Si no hay caja abierta, mandar a abrir
         if (cajaService.obtenerSesionActiva().isEmpty()) {
             return "redirect:/caja/apertura";
         }
 
-        model.addAttribute("movimientos", cajaService.listarMovimientosSesion());
+        model.addAttribute("movimientos", cajaService.listarMovimientosSesion(cursor, MOVIMIENTOS_POR_PAGINA));
+        model.addAttribute("cursor", cursor);
         model.addAttribute("balance", cajaService.obtenerBalanceSesion());
         return "caja/index";
     }
@@ -104,7 +114,7 @@ public class CajaController {
      */
     @GetMapping("/api/datos")
     @ResponseBody
-    public ResponseEntity<Map<String, Object>> obtenerDatosCaja() {
+    public ResponseEntity<Map<String, Object>> obtenerDatosCaja(@RequestParam(required = false) String cursor) {
         Map<String, Object> datos = new HashMap<>();
 
         // Verificar si hay sesión activa
@@ -114,13 +124,28 @@ public class CajaController {
         }
 
         datos.put("sesionActiva", true);
+
+        // OPTIMIZADO: las pestañas abiertas sobre la misma sesión y página comparten una foto (DashboardCache)
+        Long sesionId = cajaService.obtenerSesionActiva().get().getId();
+        datos.putAll(dashboardCache.obtener("caja:" + sesionId + ":" + (cursor != null ? cursor : ""),
+                EnumSet.of(ReporteDatosVersion.Dominio.CAJA),
+                () -> calcularDatosCaja(cursor)));
+        datos.put("ultimaActualizacion",
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")));
+
+        return ResponseEntity.ok(datos);
+    }
+
+    private Map<String, Object> calcularDatosCaja(String cursor) {
+        Map<String, Object> datos = new HashMap<>();
         datos.put("balance", cajaService.obtenerBalanceSesion());
 
         // Convertir movimientos a formato JSON-friendly
-        List<MovimientoCaja> movimientos = cajaService.listarMovimientosSesion();
+        // Solo la página que el usuario está viendo (la primera por defecto)
+        PaginaKeyset<MovimientoCaja> movimientos = cajaService.listarMovimientosSesion(cursor, MOVIMIENTOS_POR_PAGINA);
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
 
-        List<Map<String, Object>> movimientosJson = movimientos.stream()
+        List<Map<String, Object>> movimientosJson = movimientos.getContenido().stream()
             .map(m -> {
                 Map<String, Object> mov = new HashMap<>();
                 mov.put("hora", m.getFecha().format(formatter));
@@ -132,9 +157,8 @@ public class CajaController {
             .collect(Collectors.toList());
 
         datos.put("movimientos", movimientosJson);
-        datos.put("ultimaActualizacion",
-            LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-
-        return ResponseEntity.ok(datos);
+        datos.put("siguiente", movimientos.getSiguiente());
+        datos.put("anterior", movimientos.getAnterior());
+        return Collections.unmodifiableMap(datos);
     }
 }
\ No newline at end of file
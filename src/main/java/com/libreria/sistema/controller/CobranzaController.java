@@ -6,6 +6,7 @@ import com.libreria.sistema.repository.AmortizacionRepository;
 import com.libreria.sistema.repository.VentaRepository;
 import com.libreria.sistema.service.CajaService;
 import com.libreria.sistema.service.ConfiguracionService;
+import com.libreria.sistema.service.ResumenVentasService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -27,12 +28,14 @@ public class CobranzaController {
     private final AmortizacionRepository amortizacionRepository;
     private final CajaService cajaService;
     private final ConfiguracionService configuracionService;
+    private final ResumenVentasService resumenVentasService;
 
-    public CobranzaController(VentaRepository ventaRepository, AmortizacionRepository amortizacionRepository, CajaService cajaService, ConfiguracionService configuracionService) {
+    public CobranzaController(VentaRepository ventaRepository, AmortizacionRepository amortizacionRepository, CajaService cajaService, ConfiguracionService configuracionService, ResumenVentasService resumenVentasService) {
         this.ventaRepository = ventaRepository;
         this.amortizacionRepository = amortizacionRepository;
         this.cajaService = cajaService;
         this.configuracionService = configuracionService;
+        this.resumenVentasService = resumenVentasService;
     }
 
     @GetMapping
@@ -71,6 +74,7 @@ public class CobranzaController {
             pago.setMetodoPago(metodoPago);
             pago.setObservacion("PAGO A CUENTA / CUOTA - " + metodoPago);
             Amortizacion pagoGuardado = amortizacionRepository.save(pago);
+            resumenVentasService.registrarCobro(pagoGuardado);
 
             venta.setMontoPagado(venta.getMontoPagado().add(montoPago));
             venta.setSaldoPendiente(venta.getSaldoPendiente().subtract(montoPago));
@@ -103,7 +107,7 @@ public class CobranzaController {
         
         model.addAttribute("pago", pago);
         model.addAttribute("venta", pago.getVenta());
-        model.addAttribute("config", configuracionService.obtenerConfiguracion());
+        model.addAttribute("config", configuracionService.obtenerVigente());
         return "cobranzas/ticket_pago";
     }
 }
\ No newline at end of file
@@ -14,7 +14,10 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Controller
 @RequestMapping("/compras")
@@ -72,9 +75,17 @@ public class CompraController {
             
             BigDecimal totalCompra = BigDecimal.ZERO;
 
+            // Productos de la compra en una sola consulta
+            Map<Long, Producto> productos = productoRepository.findAllById(
+                    dto.getItems().stream().map(CompraDTO.DetalleDTO::getProductoId).distinct().toList())
+                    .stream().collect(Collectors.toMap(Producto::getId, p -> p));
+            List<Kardex> movimientos = new ArrayList<>();
+
             for (CompraDTO.DetalleDTO item : dto.getItems()) {
-                Producto prod = productoRepository.findById(item.getProductoId())
-                        .orElseThrow(() -> new RuntimeException("Producto no encontrado ID: " + item.getProductoId()));
+                Producto prod = productos.get(item.getProductoId());
+                if (prod == null) {
+                    throw new RuntimeException("Producto no encontrado ID: " + item.getProductoId());
+                }
 
                 // 1. Crear Detalle
                 DetalleCompra det = new DetalleCompra();
@@ -97,14 +108,17 @@ public class CompraController {
                 kardex.setCantidad(item.getCantidad());
                 kardex.setStockAnterior(prod.getStockActual());
                 kardex.setStockActual(prod.getStockActual() + item.getCantidad());
-                kardexRepository.save(kardex);
+                movimientos.add(kardex);
 
                 // 3. ACTUALIZAR PRODUCTO (Subir Stock y Actualizar Costo)
                 prod.setStockActual(prod.getStockActual() + item.getCantidad());
                 prod.setPrecioCompra(item.getCosto());
-                productoRepository.save(prod);
             }
 
+            // Escritura en lote (JDBC batch): Kardex y productos
+            kardexRepository.saveAll(movimientos);
+            productoRepository.saveAll(productos.values());
+
             compra.setTotal(totalCompra);
             Compra guardada = compraRepository.save(compra);
 
@@ -9,7 +9,6 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.multipart.MultipartFile;
-import java.util.Base64;
 
 @Controller
 @RequestMapping("/configuracion")
@@ -43,9 +42,8 @@ public class ConfiguracionController {
         try {
             // 1. Procesamiento de Archivo (Logo) - Capa de Presentación
             if (fileLogo != null && !fileLogo.isEmpty()) {
-                byte[] bytes = fileLogo.getBytes();
-                String base64 = Base64.getEncoder().encodeToString(bytes);
-                configForm.setLogoBase64(base64);
+                configForm.setLogo(fileLogo.getBytes());
+                configForm.setLogoTipo(fileLogo.getContentType());
             }
 
             // 2. Delegar actualización al Servicio (Transaccional)
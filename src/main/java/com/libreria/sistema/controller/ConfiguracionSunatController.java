@@ -33,7 +33,7 @@ public class ConfiguracionSunatController {
     @GetMapping
     public String mostrarConfiguracion(Model model) {
         // 1. Cargar Configuración General (NECESARIO PARA EL LAYOUT: nombreEmpresa, logo, etc.)
-        model.addAttribute("config", generalConfigService.obtenerConfiguracion());
+        model.addAttribute("config", generalConfigService.obtenerVigente());
 
         // 2. Cargar Configuración SUNAT (Con nombre distinto para no chocar)
         ConfiguracionSunat sunatConfig = configuracionRepo.findFirstByOrderByIdDesc()
@@ -84,7 +84,7 @@ public class ConfiguracionSunatController {
                 sunatConfig.setFacturaElectronicaActiva(configExistente.getFacturaElectronicaActiva());
             }
 
-            configuracionRepo.save(sunatConfig);
+            facturacionService.guardarConfiguracion(sunatConfig);
 
             redirectAttributes.addFlashAttribute("success", "Configuración de SUNAT guardada correctamente");
 
@@ -104,7 +104,7 @@ public class ConfiguracionSunatController {
                     .orElseThrow(() -> new RuntimeException("Debe configurar SUNAT antes de activar facturación electrónica"));
 
             config.setFacturaElectronicaActiva(activo);
-            configuracionRepo.save(config);
+            facturacionService.guardarConfiguracion(config);
 
             return activo ? "ACTIVADO" : "DESACTIVADO";
 
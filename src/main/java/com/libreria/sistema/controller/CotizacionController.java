@@ -110,7 +110,7 @@ public class CotizacionController {
     @PreAuthorize("hasPermission(null, 'COTIZACIONES_VER')")
     public String imprimir(@PathVariable Long id, Model model) {
         model.addAttribute("cotizacion", cotizacionService.obtenerPorId(id));
-        model.addAttribute("config", configuracionService.obtenerConfiguracion());
+        model.addAttribute("config", configuracionService.obtenerVigente());
         return "cotizaciones/impresion";
     }
 
@@ -1,17 +1,25 @@
 package com.libreria.sistema.controller;
 
 import com.libreria.sistema.model.Kardex;
+import com.libreria.sistema.model.Producto;
+import com.libreria.sistema.model.dto.KardexMovimientoDTO;
 import com.libreria.sistema.repository.KardexRepository;
+import com.libreria.sistema.repository.KeysetRepository;
+import com.libreria.sistema.repository.PaginaKeyset;
+import com.libreria.sistema.repository.ProductoRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+
+import java.time.LocalDate;
 
 @Controller
 @RequestMapping("/kardex")
@@ -19,20 +27,26 @@ import org.springframework.security.access.prepost.PreAuthorize;
 public class KardexController {
 
     private final KardexRepository kardexRepository;
+    private final ProductoRepository productoRepository;
+    private final KeysetRepository keysetRepository;
 
-    public KardexController(KardexRepository kardexRepository) {
+    public KardexController(KardexRepository kardexRepository, ProductoRepository productoRepository,
+                            KeysetRepository keysetRepository) {
         this.kardexRepository = kardexRepository;
+        this.productoRepository = productoRepository;
+        this.keysetRepository = keysetRepository;
     }
 
     @GetMapping
-    public String verKardex(@RequestParam(defaultValue = "0") int page, Model model) {
-        // 1. Paginación de la tabla (Igual que antes)
-        Pageable pageRequest = PageRequest.of(page, 20, Sort.by("id").descending());
-        Page<Kardex> pageKardex = kardexRepository.findAll(pageRequest);
+    public String verKardex(@RequestParam(required = false) String cursor, Model model) {
+        // 1. Tabla por keyset sobre (fecha, id), con el producto en la misma consulta
+        PaginaKeyset<Kardex> movimientos = keysetRepository.buscar(KeysetRepository.KARDEX,
+                (root, query, cb) -> {
+                    root.fetch("producto");
+                    return null;
+                }, cursor, 20, false);
 
-        model.addAttribute("movimientos", pageKardex);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", pageKardex.getTotalPages());
+        model.addAttribute("movimientos", movimientos);
 
         // 2. Datos para Gráficos y Tarjetas (NUEVO)
         long entradas = kardexRepository.countByTipo("ENTRADA");
@@ -46,4 +60,37 @@ public class KardexController {
 
         return "kardex/lista";
     }
-}
\ No newline at end of file
+
+    /**
+     * Kardex de un producto con saldo acumulado, paginado en BD (índice producto + fecha).
+     * Sin fechas muestra toda la historia.
+     */
+    @GetMapping("/producto/{id}")
+    public String verKardexProducto(@PathVariable Long id,
+                                    @RequestParam(defaultValue = "0") int page,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
+                                    Model model, RedirectAttributes attributes) {
+        Producto producto = productoRepository.findById(id).orElse(null);
+        if (producto == null) {
+            attributes.addFlashAttribute("error", "Producto no encontrado");
+            return "redirect:/kardex";
+        }
+
+        LocalDate desde = inicio != null ? inicio : LocalDate.of(2000, 1, 1);
+        LocalDate hasta = fin != null ? fin : LocalDate.now();
+
+        Page<KardexMovimientoDTO> movimientos = kardexRepository.buscarMovimientosConSaldo(
+                        id, desde.atStartOfDay(), hasta.plusDays(1).atStartOfDay(), PageRequest.of(Math.max(page, 0), 20))
+                .map(KardexMovimientoDTO::desde);
+
+        model.addAttribute("producto", producto);
+        model.addAttribute("movimientos", movimientos);
+        model.addAttribute("currentPage", movimientos.getNumber());
+        model.addAttribute("totalPages", movimientos.getTotalPages());
+        model.addAttribute("inicio", inicio);
+        model.addAttribute("fin", fin);
+
+        return "kardex/producto";
+    }
+}
@@ -1,13 +1,11 @@
 package com.libreria.sistema.controller;
 
 import com.libreria.sistema.model.Notificacion;
+import com.libreria.sistema.repository.PaginaKeyset;
 import com.libreria.sistema.service.ConfiguracionService;
 import com.libreria.sistema.service.NotificacionService;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -41,12 +39,11 @@ public class NotificacionController {
      * Vista de todas las notificaciones
      */
     @GetMapping
-    public String index(Model model, @RequestParam(defaultValue = "0") int page) {
-        model.addAttribute("config", configuracionService.obtenerConfiguracion());
+    public String index(Model model, @RequestParam(required = false) String cursor) {
+        model.addAttribute("config", configuracionService.obtenerVigente());
         model.addAttribute("active", "notificaciones");
 
-        Page<Notificacion> notificaciones = notificacionService.listarTodas(
-                PageRequest.of(page, 20, Sort.by(Sort.Direction.DESC, "fechaCreacion")));
+        PaginaKeyset<Notificacion> notificaciones = notificacionService.listarTodas(cursor, 20);
 
         model.addAttribute("notificaciones", notificaciones);
         model.addAttribute("stats", notificacionService.obtenerEstadisticas());
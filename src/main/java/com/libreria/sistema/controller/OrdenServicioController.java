@@ -146,11 +146,9 @@ public String nuevaOrden(Model model) {
         cellEmpresa.setBorder(Rectangle.NO_BORDER);
         
         // Intentar poner logo si existe
-        if (config.getLogoBase64() != null && !config.getLogoBase64().isEmpty()) {
+        Image logo = configuracionService.obtenerLogoPdf(120, 60);
+        if (logo != null) {
             try {
-                byte[] imageBytes = java.util.Base64.getDecoder().decode(config.getLogoBase64());
-                Image logo = Image.getInstance(imageBytes);
-                logo.scaleToFit(120, 60);
                 logo.setAlignment(Element.ALIGN_LEFT);
                 cellEmpresa.addElement(logo);
             } catch (Exception e) { /* Ignorar error de logo */ }
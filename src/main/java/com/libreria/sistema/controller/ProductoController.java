@@ -5,6 +5,7 @@ import com.libreria.sistema.repository.ProductoRepository;
 import com.libreria.sistema.service.ProductoExcelService;
 import com.libreria.sistema.service.ProductoService;
 import com.libreria.sistema.util.Constants;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpHeaders;
@@ -228,25 +229,14 @@ public class ProductoController {
      */
     @GetMapping("/exportar-excel")
     @PreAuthorize("hasPermission(null, 'INVENTARIO_VER')")
-    public ResponseEntity<byte[]> exportarProductos() {
-        try {
-            byte[] excel = productoExcelService.exportarProductos();
-
-            String fecha = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            String nombreArchivo = "productos_" + fecha + ".xlsx";
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", nombreArchivo);
-
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(excel);
-
-        } catch (IOException e) {
-            log.error("Error exportando productos a Excel", e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public void exportarProductos(HttpServletResponse response) throws IOException {
+        String fecha = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        String nombreArchivo = "productos_" + fecha + ".xlsx";
+
+        // El archivo se escribe directo a la respuesta mientras se recorre el catálogo
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + nombreArchivo + "\"");
+        productoExcelService.exportarProductos(response.getOutputStream());
     }
 
     /**
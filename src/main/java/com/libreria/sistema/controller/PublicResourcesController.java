@@ -1,16 +1,22 @@
 package com.libreria.sistema.controller;
 
 import com.libreria.sistema.service.ConfiguracionService;
+import com.libreria.sistema.service.LogoEmpresa;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
 @Controller
 @RequestMapping("/public")
 public class PublicResourcesController {
@@ -33,4 +39,44 @@ public class PublicResourcesController {
 
         return ResponseEntity.ok().headers(headers).body(css);
     }
-}
\ No newline at end of file
+
+    /**
+     * Logo de la empresa en binario. OPTIMIZADO: la URL lleva el hash del contenido,
+     * así se cachea un año (immutable) y un logo nuevo simplemente cambia la URL.
+     * Con If-None-Match igual al ETag, Spring responde 304 sin cuerpo.
+     */
+    @GetMapping("/logo/{hash}")
+    @ResponseBody
+    public ResponseEntity<byte[]> logo(@PathVariable String hash) {
+        LogoEmpresa logo = configuracionService.obtenerLogo();
+        if (logo == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!logo.getHash().equals(hash)) {
+            // URL de un logo anterior (HTML guardado, correo...): redirigir al vigente sin cachear
+            return redireccionLogo(logo);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(logo.getTipo()))
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .eTag(logo.getHash())
+                .body(logo.getBytes());
+    }
+
+    /**
+     * URL estable para consumidores externos: redirige al logo vigente
+     */
+    @GetMapping("/logo")
+    @ResponseBody
+    public ResponseEntity<byte[]> logoVigente() {
+        LogoEmpresa logo = configuracionService.obtenerLogo();
+        return logo != null ? redireccionLogo(logo) : ResponseEntity.notFound().build();
+    }
+
+    private ResponseEntity<byte[]> redireccionLogo(LogoEmpresa logo) {
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .location(URI.create("/public/logo/" + logo.getHash()))
+                .cacheControl(CacheControl.noCache())
+                .build();
+    }
+}
@@ -1,6 +1,9 @@
 package com.libreria.sistema.controller;
 
+import com.libreria.sistema.service.ContextoUsuario;
 import com.libreria.sistema.service.ReporteFinancieroService;
+import com.libreria.sistema.service.ReporteJobService;
+import com.libreria.sistema.service.ResumenVentasService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -10,9 +13,8 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import jakarta.servlet.http.HttpServletResponse;
-import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +27,15 @@ public class ReporteFinancieroController {
     @Autowired
     private ReporteFinancieroService reporteService;
 
+    @Autowired
+    private ResumenVentasService resumenVentasService;
+
+    @Autowired
+    private ReporteJobService reporteJobService;
+
+    @Autowired
+    private ContextoUsuario contextoUsuario;
+
     /**
      * Vista principal del dashboard financiero
      */
@@ -144,73 +155,116 @@ public class ReporteFinancieroController {
         }
     }
 
+    /**
+     * Reconstruir el resumen diario de ventas (backfill / corrección).
+     * Sin fechas reconstruye toda la historia, un mes por transacción.
+     */
+    @PostMapping("/api/resumen-ventas/reconstruir")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> reconstruirResumenVentas(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin
+    ) {
+        try {
+            int filas = (fechaInicio == null && fechaFin == null)
+                    ? resumenVentasService.reconstruirTodo()
+                    : resumenVentasService.reconstruir(fechaInicio, fechaFin);
+            return ResponseEntity.ok(Map.of("filas", filas));
+        } catch (Exception e) {
+            log.error("Error reconstruyendo resumen de ventas: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // ==================== EXPORTACIONES ====================
 
     /**
-     * Exportar flujo de caja a Excel
+     * Encolar una exportación en segundo plano (tipo: flujo-caja-excel, flujo-caja-pdf,
+     * rentabilidad-excel, rentabilidad-pdf). El estado y la descarga están en /reportes/jobs/{id}.
      */
-    @GetMapping("/api/flujo-caja/excel")
+    @PostMapping("/api/jobs")
     @PreAuthorize("hasPermission(null, 'REPORTES_EXPORTAR')")
-    public void exportarFlujoCajaExcel(
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> encolarExportacion(
+            @RequestParam String tipo,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin,
-            HttpServletResponse response
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin
     ) {
         try {
-            reporteService.exportarFlujoCajaExcel(fechaInicio, fechaFin, response);
-        } catch (IOException e) {
-            log.error("Error exportando flujo de caja a Excel: {}", e.getMessage(), e);
+            ReporteJobService.Job job = reporteJobService.enviar(ReporteJobService.MODULO_FINANCIEROS, tipo,
+                    new ReporteJobService.Parametros(fechaInicio, fechaFin, null, null, null),
+                    contextoUsuario.getUsername());
+            return ResponseEntity.accepted().body(job.resumen());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
         }
     }
 
     /**
-     * Exportar flujo de caja a PDF
+     * Exportar flujo de caja a Excel (encola el job y redirige a la página de espera)
+     */
+    @GetMapping("/api/flujo-caja/excel")
+    @PreAuthorize("hasPermission(null, 'REPORTES_EXPORTAR')")
+    public String exportarFlujoCajaExcel(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin,
+            RedirectAttributes redirectAttributes
+    ) {
+        return encolarYRedirigir("flujo-caja-excel", fechaInicio, fechaFin, "flujo-caja", redirectAttributes);
+    }
+
+    /**
+     * Exportar flujo de caja a PDF (encola el job y redirige a la página de espera)
      */
     @GetMapping("/api/flujo-caja/pdf")
     @PreAuthorize("hasPermission(null, 'REPORTES_EXPORTAR')")
-    public void exportarFlujoCajaPDF(
+    public String exportarFlujoCajaPDF(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin,
-            HttpServletResponse response
+            RedirectAttributes redirectAttributes
     ) {
-        try {
-            reporteService.exportarFlujoCajaPDF(fechaInicio, fechaFin, response);
-        } catch (IOException e) {
-            log.error("Error exportando flujo de caja a PDF: {}", e.getMessage(), e);
-        }
+        return encolarYRedirigir("flujo-caja-pdf", fechaInicio, fechaFin, "flujo-caja", redirectAttributes);
     }
 
     /**
-     * Exportar rentabilidad a Excel
+     * Exportar rentabilidad a Excel (encola el job y redirige a la página de espera)
      */
     @GetMapping("/api/rentabilidad/excel")
     @PreAuthorize("hasPermission(null, 'REPORTES_EXPORTAR')")
-    public void exportarRentabilidadExcel(
+    public String exportarRentabilidadExcel(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin,
-            HttpServletResponse response
+            RedirectAttributes redirectAttributes
     ) {
-        try {
-            reporteService.exportarRentabilidadExcel(fechaInicio, fechaFin, response);
-        } catch (IOException e) {
-            log.error("Error exportando rentabilidad a Excel: {}", e.getMessage(), e);
-        }
+        return encolarYRedirigir("rentabilidad-excel", fechaInicio, fechaFin, "rentabilidad", redirectAttributes);
     }
 
     /**
-     * Exportar rentabilidad a PDF
+     * Exportar rentabilidad a PDF (encola el job y redirige a la página de espera)
      */
     @GetMapping("/api/rentabilidad/pdf")
     @PreAuthorize("hasPermission(null, 'REPORTES_EXPORTAR')")
-    public void exportarRentabilidadPDF(
+    public String exportarRentabilidadPDF(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin,
-            HttpServletResponse response
+            RedirectAttributes redirectAttributes
     ) {
+        return encolarYRedirigir("rentabilidad-pdf", fechaInicio, fechaFin, "rentabilidad", redirectAttributes);
+    }
+
+    private String encolarYRedirigir(String tipo, LocalDate fechaInicio, LocalDate fechaFin, String vista,
+                                     RedirectAttributes redirectAttributes) {
         try {
-            reporteService.exportarRentabilidadPDF(fechaInicio, fechaFin, response);
-        } catch (IOException e) {
-            log.error("Error exportando rentabilidad a PDF: {}", e.getMessage(), e);
+            ReporteJobService.Job job = reporteJobService.enviar(ReporteJobService.MODULO_FINANCIEROS, tipo,
+                    new ReporteJobService.Parametros(fechaInicio, fechaFin, null, null, null),
+                    contextoUsuario.getUsername());
+            return ReporteJobController.redireccion(job);
+        } catch (RuntimeException e) {
+            log.warn("No se pudo encolar la exportación {}: {}", tipo, e.getMessage());
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
+            return "redirect:/reportes/financieros/" + vista;
         }
     }
 }
@@ -0,0 +1,99 @@
+package com.libreria.sistema.controller;
+
+import com.libreria.sistema.service.ContextoUsuario;
+import com.libreria.sistema.service.ReporteJobService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Estado y descarga de los reportes generados en segundo plano.
+ * El envío está en cada módulo (ReporteUniversalController, ReporteFinancieroController)
+ * porque cada uno exige su propio permiso.
+ */
+@Controller
+@RequestMapping("/reportes/jobs")
+@Slf4j
+public class ReporteJobController {
+
+    private final ReporteJobService reporteJobService;
+    private final ContextoUsuario contextoUsuario;
+
+    public ReporteJobController(ReporteJobService reporteJobService, ContextoUsuario contextoUsuario) {
+        this.reporteJobService = reporteJobService;
+        this.contextoUsuario = contextoUsuario;
+    }
+
+    /**
+     * Estado del reporte (la UI lo consulta hasta que queda LISTO o ERROR)
+     */
+    @GetMapping("/{id}")
+    @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> estado(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(reporteJobService.obtener(id, contextoUsuario.getUsername()).resumen());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Página que espera el reporte y lo descarga al terminar (destino de los enlaces GET de exportación)
+     */
+    @GetMapping("/{id}/espera")
+    @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
+    public String espera(@PathVariable String id, Model model) {
+        try {
+            model.addAttribute("job", reporteJobService.obtener(id, contextoUsuario.getUsername()).resumen());
+        } catch (RuntimeException e) {
+            return "redirect:/reportes";
+        }
+        return "reportes/job-espera";
+    }
+
+    /**
+     * Descarga el archivo generado
+     */
+    @GetMapping("/{id}/descargar")
+    @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
+    public ResponseEntity<Resource> descargar(@PathVariable String id) {
+        ReporteJobService.Job job;
+        try {
+            job = reporteJobService.obtener(id, contextoUsuario.getUsername());
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.getEstado() != ReporteJobService.Estado.LISTO) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        FileSystemResource archivo = new FileSystemResource(job.getArchivo());
+        if (!archivo.exists()) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(job.getContentType()));
+        headers.setContentDispositionFormData("attachment", job.getNombreArchivo());
+        return ResponseEntity.ok().headers(headers).body(archivo);
+    }
+
+    /**
+     * Redirección tras encolar desde un enlace GET: directo a la descarga si el archivo ya está listo
+     * (reutilizado), si no a la página de espera
+     */
+    static String redireccion(ReporteJobService.Job job) {
+        String base = "redirect:/reportes/jobs/" + job.getId();
+        return job.getEstado() == ReporteJobService.Estado.LISTO ? base + "/descargar" : base + "/espera";
+    }
+}
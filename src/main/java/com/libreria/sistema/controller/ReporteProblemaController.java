@@ -48,7 +48,7 @@ public class ReporteProblemaController {
                         @RequestParam(defaultValue = "0") int page,
                         @RequestParam(defaultValue = "TODOS") String filtroEstado) {
 
-        model.addAttribute("config", configuracionService.obtenerConfiguracion());
+        model.addAttribute("config", configuracionService.obtenerVigente());
         model.addAttribute("active", "incidencias");
 
         // Estadísticas
@@ -78,7 +78,7 @@ public class ReporteProblemaController {
      */
     @GetMapping("/mis-reportes")
     public String misReportes(Model model) {
-        model.addAttribute("config", configuracionService.obtenerConfiguracion());
+        model.addAttribute("config", configuracionService.obtenerVigente());
         model.addAttribute("active", "incidencias");
         model.addAttribute("reportes", reporteService.listarMisReportes());
         model.addAttribute("tiposProblema", reporteService.obtenerTiposProblema());
@@ -227,7 +227,7 @@ public class ReporteProblemaController {
     @GetMapping("/pendientes")
     @PreAuthorize("hasPermission(null, 'INCIDENCIAS_EDITAR')")
     public String pendientesUrgentes(Model model) {
-        model.addAttribute("config", configuracionService.obtenerConfiguracion());
+        model.addAttribute("config", configuracionService.obtenerVigente());
         model.addAttribute("active", "incidencias");
         model.addAttribute("reportes", reporteService.listarPendientesUrgentes());
         model.addAttribute("tiposProblema", reporteService.obtenerTiposProblema());
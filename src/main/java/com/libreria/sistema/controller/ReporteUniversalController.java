@@ -1,17 +1,22 @@
 package com.libreria.sistema.controller;
 
 import com.libreria.sistema.service.ConfiguracionService;
+import com.libreria.sistema.service.ContextoUsuario;
+import com.libreria.sistema.service.ReporteJobService;
 import com.libreria.sistema.service.ReporteUniversalService;
 
-import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.time.LocalDate;
+import java.util.Map;
 
 /**
  * Controlador para el módulo de Reportes Universales Avanzados.
@@ -24,11 +29,17 @@ public class ReporteUniversalController {
 
     private final ReporteUniversalService reporteService;
     private final ConfiguracionService configuracionService;
+    private final ReporteJobService reporteJobService;
+    private final ContextoUsuario contextoUsuario;
 
     public ReporteUniversalController(ReporteUniversalService reporteService,
-                                       ConfiguracionService configuracionService) {
+                                       ConfiguracionService configuracionService,
+                                       ReporteJobService reporteJobService,
+                                       ContextoUsuario contextoUsuario) {
         this.reporteService = reporteService;
         this.configuracionService = configuracionService;
+        this.reporteJobService = reporteJobService;
+        this.contextoUsuario = contextoUsuario;
     }
 
     /**
@@ -37,7 +48,7 @@ public class ReporteUniversalController {
     @GetMapping
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
     public String vistaReportesAvanzados(Model model) {
-        model.addAttribute("config", configuracionService.obtenerConfiguracion());
+        model.addAttribute("config", configuracionService.obtenerVigente());
         model.addAttribute("usuarios", reporteService.obtenerUsuarios());
         model.addAttribute("categorias", reporteService.obtenerCategorias());
         model.addAttribute("productos", reporteService.obtenerProductosActivos());
@@ -45,6 +56,34 @@ public class ReporteUniversalController {
         return "reportes/avanzado";
     }
 
+    // ==========================================
+    //        GENERACIÓN EN SEGUNDO PLANO
+    // ==========================================
+
+    /**
+     * Encola un reporte y devuelve el id del job. El archivo se descarga desde /reportes/jobs/{id}/descargar.
+     * Los enlaces GET de abajo (compatibilidad) también encolan y redirigen a la página de espera.
+     */
+    @PostMapping("/jobs")
+    @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> encolarReporte(
+            @RequestParam String tipo,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
+            @RequestParam(required = false) Long usuarioId,
+            @RequestParam(required = false) String metodoPago,
+            @RequestParam(required = false) Long productoId) {
+        try {
+            ReporteJobService.Job job = reporteJobService.enviar(ReporteJobService.MODULO_AVANZADOS, tipo,
+                    new ReporteJobService.Parametros(inicio, fin, usuarioId, metodoPago, productoId),
+                    contextoUsuario.getUsername());
+            return ResponseEntity.accepted().body(job.resumen());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // ==========================================
     //        REPORTES DE PRODUCTOS
     // ==========================================
@@ -54,15 +93,9 @@ public class ReporteUniversalController {
      */
     @GetMapping("/productos/stock-actual/excel")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarExcelStockActual(HttpServletResponse response) {
-        try {
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=\"stock_actual.xlsx\"");
-            reporteService.generarExcelStockActual(response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar Excel de stock actual", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+    public String descargarExcelStockActual(RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("stock-actual-excel",
+                new ReporteJobService.Parametros(null, null, null, null, null), redirectAttributes);
     }
 
     /**
@@ -70,15 +103,9 @@ public class ReporteUniversalController {
      */
     @GetMapping("/productos/stock-actual/pdf")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarPdfStockActual(HttpServletResponse response) {
-        try {
-            response.setContentType("application/pdf");
-            response.setHeader("Content-Disposition", "attachment; filename=\"stock_actual.pdf\"");
-            reporteService.generarPdfStockActual(response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar PDF de stock actual", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+    public String descargarPdfStockActual(RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("stock-actual-pdf",
+                new ReporteJobService.Parametros(null, null, null, null, null), redirectAttributes);
     }
 
     /**
@@ -86,15 +113,9 @@ public class ReporteUniversalController {
      */
     @GetMapping("/productos/stock-bajo/excel")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarExcelStockBajo(HttpServletResponse response) {
-        try {
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=\"stock_bajo.xlsx\"");
-            reporteService.generarExcelStockBajo(response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar Excel de stock bajo", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+    public String descargarExcelStockBajo(RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("stock-bajo-excel",
+                new ReporteJobService.Parametros(null, null, null, null, null), redirectAttributes);
     }
 
     /**
@@ -102,18 +123,12 @@ public class ReporteUniversalController {
      */
     @GetMapping("/productos/mas-vendidos/excel")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarExcelProductosMasVendidos(
+    public String descargarExcelProductosMasVendidos(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
-            HttpServletResponse response) {
-        try {
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=\"productos_mas_vendidos.xlsx\"");
-            reporteService.generarExcelProductosMasVendidos(inicio, fin, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar Excel de productos más vendidos", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+            RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("mas-vendidos-excel",
+                new ReporteJobService.Parametros(inicio, fin, null, null, null), redirectAttributes);
     }
 
     /**
@@ -121,18 +136,12 @@ public class ReporteUniversalController {
      */
     @GetMapping("/productos/mas-vendidos/pdf")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarPdfProductosMasVendidos(
+    public String descargarPdfProductosMasVendidos(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
-            HttpServletResponse response) {
-        try {
-            response.setContentType("application/pdf");
-            response.setHeader("Content-Disposition", "attachment; filename=\"productos_mas_vendidos.pdf\"");
-            reporteService.generarPdfProductosMasVendidos(inicio, fin, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar PDF de productos más vendidos", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+            RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("mas-vendidos-pdf",
+                new ReporteJobService.Parametros(inicio, fin, null, null, null), redirectAttributes);
     }
 
     // ==========================================
@@ -144,18 +153,12 @@ public class ReporteUniversalController {
      */
     @GetMapping("/ventas/por-fecha/excel")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarExcelVentasPorFecha(
+    public String descargarExcelVentasPorFecha(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
-            HttpServletResponse response) {
-        try {
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=\"ventas_por_fecha.xlsx\"");
-            reporteService.generarExcelVentasPorFecha(inicio, fin, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar Excel de ventas por fecha", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+            RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("ventas-por-fecha-excel",
+                new ReporteJobService.Parametros(inicio, fin, null, null, null), redirectAttributes);
     }
 
     /**
@@ -163,19 +166,13 @@ public class ReporteUniversalController {
      */
     @GetMapping("/ventas/por-usuario/excel")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarExcelVentasPorUsuario(
+    public String descargarExcelVentasPorUsuario(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
             @RequestParam(required = false) Long usuarioId,
-            HttpServletResponse response) {
-        try {
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=\"ventas_por_usuario.xlsx\"");
-            reporteService.generarExcelVentasPorUsuario(inicio, fin, usuarioId, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar Excel de ventas por usuario", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+            RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("ventas-por-usuario-excel",
+                new ReporteJobService.Parametros(inicio, fin, usuarioId, null, null), redirectAttributes);
     }
 
     /**
@@ -183,19 +180,13 @@ public class ReporteUniversalController {
      */
     @GetMapping("/ventas/por-metodo-pago/excel")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarExcelVentasPorMetodoPago(
+    public String descargarExcelVentasPorMetodoPago(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
             @RequestParam(required = false) String metodoPago,
-            HttpServletResponse response) {
-        try {
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=\"ventas_por_metodo_pago.xlsx\"");
-            reporteService.generarExcelVentasPorMetodoPago(inicio, fin, metodoPago, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar Excel de ventas por método de pago", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+            RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("ventas-por-metodo-pago-excel",
+                new ReporteJobService.Parametros(inicio, fin, null, metodoPago, null), redirectAttributes);
     }
 
     /**
@@ -203,18 +194,12 @@ public class ReporteUniversalController {
      */
     @GetMapping("/ventas/ganancia/excel")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarExcelVentasGanancia(
+    public String descargarExcelVentasGanancia(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
-            HttpServletResponse response) {
-        try {
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=\"ventas_ganancia.xlsx\"");
-            reporteService.generarExcelVentasConGanancia(inicio, fin, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar Excel de ventas con ganancia", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+            RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("ventas-ganancia-excel",
+                new ReporteJobService.Parametros(inicio, fin, null, null, null), redirectAttributes);
     }
 
     /**
@@ -222,18 +207,12 @@ public class ReporteUniversalController {
      */
     @GetMapping("/ventas/ganancia/pdf")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarPdfVentasGanancia(
+    public String descargarPdfVentasGanancia(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
-            HttpServletResponse response) {
-        try {
-            response.setContentType("application/pdf");
-            response.setHeader("Content-Disposition", "attachment; filename=\"ventas_ganancia.pdf\"");
-            reporteService.generarPdfVentasConGanancia(inicio, fin, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar PDF de ventas con ganancia", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+            RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("ventas-ganancia-pdf",
+                new ReporteJobService.Parametros(inicio, fin, null, null, null), redirectAttributes);
     }
 
     // ==========================================
@@ -245,19 +224,13 @@ public class ReporteUniversalController {
      */
     @GetMapping("/kardex/excel")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarExcelKardex(
+    public String descargarExcelKardex(
             @RequestParam Long productoId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
-            HttpServletResponse response) {
-        try {
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=\"kardex_producto.xlsx\"");
-            reporteService.generarExcelKardexProducto(productoId, inicio, fin, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar Excel de Kardex", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+            RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("kardex-excel",
+                new ReporteJobService.Parametros(inicio, fin, null, null, productoId), redirectAttributes);
     }
 
     /**
@@ -265,30 +238,29 @@ public class ReporteUniversalController {
      */
     @GetMapping("/kardex/pdf")
     @PreAuthorize("hasPermission(null, 'REPORTES_VER')")
-    public void descargarPdfKardex(
+    public String descargarPdfKardex(
             @RequestParam Long productoId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate inicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
-            HttpServletResponse response) {
-        try {
-            response.setContentType("application/pdf");
-            response.setHeader("Content-Disposition", "attachment; filename=\"kardex_producto.pdf\"");
-            reporteService.generarPdfKardexProducto(productoId, inicio, fin, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error al generar PDF de Kardex", e);
-            enviarError(response, "Error al generar el reporte");
-        }
+            RedirectAttributes redirectAttributes) {
+        return encolarYRedirigir("kardex-pdf",
+                new ReporteJobService.Parametros(inicio, fin, null, null, productoId), redirectAttributes);
     }
 
     // ==========================================
     //        UTILIDADES
     // ==========================================
 
-    private void enviarError(HttpServletResponse response, String mensaje) {
+    private String encolarYRedirigir(String tipo, ReporteJobService.Parametros parametros,
+                                     RedirectAttributes redirectAttributes) {
         try {
-            response.sendError(500, mensaje);
-        } catch (Exception ex) {
-            log.error("Error al enviar respuesta de error", ex);
+            ReporteJobService.Job job = reporteJobService.enviar(ReporteJobService.MODULO_AVANZADOS, tipo,
+                    parametros, contextoUsuario.getUsername());
+            return ReporteJobController.redireccion(job);
+        } catch (RuntimeException e) {
+            log.warn("No se pudo encolar el reporte {}: {}", tipo, e.getMessage());
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
+            return "redirect:/reportes/avanzados";
         }
     }
 }
@@ -1,11 +1,16 @@
 package com.libreria.sistema.controller;
 
 import com.libreria.sistema.model.*;
+import com.libreria.sistema.model.dto.ProductoPosDTO;
 import com.libreria.sistema.model.dto.VentaDTO;
+import com.libreria.sistema.model.dto.VentaLoteDTO;
 import com.libreria.sistema.repository.*;
+import com.libreria.sistema.service.CatalogoPosService;
 import com.libreria.sistema.service.ConfiguracionService;
+import com.libreria.sistema.service.ConfiguracionVigente;
 import com.libreria.sistema.service.ConsultaDocumentoService;
 import com.libreria.sistema.service.ReporteService;
+import com.libreria.sistema.service.VentaIdempotenciaService;
 import com.libreria.sistema.service.VentaService;
 import com.libreria.sistema.util.Constants;
 
@@ -14,6 +19,7 @@ import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
@@ -37,8 +43,11 @@ public class VentaController {
     private final VentaRepository ventaRepository;
     private final ConfiguracionService configuracionService;
     private final VentaService ventaService;
+    private final VentaIdempotenciaService ventaIdempotenciaService;
     private final ReporteService reporteService;
     private final ConsultaDocumentoService consultaDocumentoService;
+    private final CatalogoPosService catalogoPosService;
+    private final KeysetRepository keysetRepository;
 
     @Autowired
     private SolicitudProductoRepository solicitudRepository;
@@ -47,36 +56,35 @@ public class VentaController {
                            VentaRepository ventaRepository,
                            ConfiguracionService configuracionService,
                            VentaService ventaService,
+                           VentaIdempotenciaService ventaIdempotenciaService,
                            ReporteService reporteService,
-                           ConsultaDocumentoService consultaDocumentoService) {
+                           ConsultaDocumentoService consultaDocumentoService,
+                           CatalogoPosService catalogoPosService,
+                           KeysetRepository keysetRepository) {
         this.productoRepository = productoRepository;
         this.ventaRepository = ventaRepository;
         this.configuracionService = configuracionService;
         this.ventaService = ventaService;
+        this.ventaIdempotenciaService = ventaIdempotenciaService;
         this.reporteService = reporteService;
         this.consultaDocumentoService = consultaDocumentoService;
+        this.catalogoPosService = catalogoPosService;
+        this.keysetRepository = keysetRepository;
     }
 
     @GetMapping("/lista")
     @PreAuthorize("hasPermission(null, 'VENTAS_VER')")
     public String listaVentas(@RequestParam(defaultValue = "") String buscar,
-                              @RequestParam(defaultValue = "0") int page,
+                              @RequestParam(required = false) String cursor,
                               @RequestParam(defaultValue = "20") int size,
                               Model model) {
-        org.springframework.data.domain.Pageable pageable =
-            org.springframework.data.domain.PageRequest.of(page, size,
-                org.springframework.data.domain.Sort.by("fechaCreacion").descending());
-
-        org.springframework.data.domain.Page<Venta> ventas;
-        if (buscar != null && !buscar.isBlank()) {
-            ventas = ventaRepository.buscarPorTermino(buscar.trim(), pageable);
-        } else {
-            ventas = ventaRepository.findAll(pageable);
-        }
+        // Keyset sobre (fechaCreacion, id): sin OFFSET ni COUNT(*) por página
+        boolean filtrado = buscar != null && !buscar.isBlank();
+        PaginaKeyset<Venta> ventas = keysetRepository.buscar(KeysetRepository.VENTAS,
+                filtrado ? VentaRepository.porTermino(buscar.trim()) : null, cursor, size, !filtrado);
 
         model.addAttribute("ventas", ventas);
         model.addAttribute("buscar", buscar);
-        model.addAttribute("currentPage", page);
         return "ventas/lista";
     }
 
@@ -87,8 +95,9 @@ public class VentaController {
         boolean facturaElectronicaActiva = ventaService.isFacturacionElectronicaActiva();
 
         model.addAttribute("facturaElectronicaActiva", facturaElectronicaActiva);
-        model.addAttribute("serieBoletaInfo", facturaElectronicaActiva ? "B001 (Oficial SUNAT)" : "I001 (Interno)");
-        model.addAttribute("serieFacturaInfo", facturaElectronicaActiva ? "F001 (Oficial SUNAT)" : "IF001 (Interno)");
+        String sufijo = facturaElectronicaActiva ? " (Oficial SUNAT)" : " (Interno)";
+        model.addAttribute("serieBoletaInfo", ventaService.obtenerSerieTerminalActual("BOLETA", facturaElectronicaActiva) + sufijo);
+        model.addAttribute("serieFacturaInfo", ventaService.obtenerSerieTerminalActual("FACTURA", facturaElectronicaActiva) + sufijo);
         model.addAttribute("modoFacturacion", facturaElectronicaActiva ? "ELECTRÓNICA" : "INTERNA");
 
         return "ventas/pos";
@@ -97,19 +106,40 @@ public class VentaController {
     @GetMapping("/api/buscar-productos")
     @ResponseBody
     public List<Map<String, Object>> buscarProductos(@RequestParam String term) {
-        return productoRepository.buscarInteligente(term).stream().map(p -> {
-            Map<String, Object> map = new HashMap<>();
-            map.put("id", p.getId());
-            map.put("text", p.getCodigoBarra() + " - " + p.getNombre() + " (Stock: " + p.getStockActual() + ")");
-            map.put("precio", p.getPrecioVenta());
-            map.put("precioMin", p.getPrecioVenta().multiply(Constants.DESCUENTO_MINIMO_VENTA));
-            map.put("stock", p.getStockActual());
-            map.put("nombre", p.getNombre());
-            map.put("marca", p.getMarca());
-            map.put("imagen", p.getImagen());
-            map.put("ubicacion", (p.getUbicacionEstante() != null ? p.getUbicacionEstante() : "") + "-" + (p.getUbicacionFila() != null ? p.getUbicacionFila() : ""));
-            return map;
-        }).collect(Collectors.toList());
+        // Índice en memoria: código exacto + prefijo de palabras, resultados limitados y ordenados
+        return catalogoPosService.buscar(term).stream()
+                .map(this::aMapaPos)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Ruta rápida del escáner de código de barras / SKU.
+     * Si el POS envía la versión que ya tiene en caché y no cambió, responde 304 sin cuerpo.
+     */
+    @GetMapping("/api/escanear")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> escanearProducto(@RequestParam String codigo,
+                                                                @RequestParam(required = false) Long version) {
+        return catalogoPosService.escanear(codigo)
+                .map(p -> p.getVersion() != null && p.getVersion().equals(version)
+                        ? ResponseEntity.status(HttpStatus.NOT_MODIFIED).<Map<String, Object>>build()
+                        : ResponseEntity.ok(aMapaPos(p)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private Map<String, Object> aMapaPos(ProductoPosDTO p) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", p.getId());
+        map.put("version", p.getVersion());
+        map.put("text", p.getCodigoBarra() + " - " + p.getNombre() + " (Stock: " + p.getStock() + ")");
+        map.put("precio", p.getPrecioVenta());
+        map.put("precioMin", p.getPrecioVenta() != null ? p.getPrecioVenta().multiply(Constants.DESCUENTO_MINIMO_VENTA) : null);
+        map.put("stock", p.getStock());
+        map.put("nombre", p.getNombre());
+        map.put("marca", p.getMarca());
+        map.put("imagen", p.getImagen());
+        map.put("ubicacion", p.getUbicacion());
+        return map;
     }
 
     /**
@@ -153,6 +183,43 @@ public class VentaController {
         }
     }
 
+    /**
+     * Sincroniza las ventas que una caja registró sin conexión (en orden, con UUID por venta).
+     * Responde un resultado por venta: REGISTRADA, DUPLICADA o CONFLICTO (con el motivo).
+     */
+    @PostMapping("/api/sincronizar-lote")
+    @PreAuthorize("hasPermission(null, 'VENTAS_CREAR')")
+    public ResponseEntity<?> sincronizarLote(@Valid @RequestBody VentaLoteDTO lote, BindingResult bindingResult) {
+        Map<String, Object> errorResponse = new HashMap<>();
+
+        if (bindingResult.hasErrors()) {
+            String errores = bindingResult.getAllErrors().stream()
+                .map(error -> error.getDefaultMessage())
+                .reduce((a, b) -> a + "; " + b)
+                .orElse("Datos inválidos");
+            log.warn("Validación fallida en lote offline: {}", errores);
+            errorResponse.put("error", errores);
+            errorResponse.put("code", "VALIDATION_ERROR");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+
+        try {
+            List<Map<String, Object>> resultados = ventaService.crearVentasLote(lote.getVentas());
+            Map<String, Object> respuesta = new HashMap<>();
+            respuesta.put("resultados", resultados);
+            respuesta.put("registradas", resultados.stream().filter(r -> "REGISTRADA".equals(r.get("estado"))).count());
+            respuesta.put("conflictos", resultados.stream().filter(r -> "CONFLICTO".equals(r.get("estado"))).count());
+            return ResponseEntity.ok(respuesta);
+
+        } catch (RuntimeException e) {
+            // Error de todo el lote (BD, caja): nada quedó registrado, la caja puede reintentar el mismo lote
+            log.error("Error al sincronizar lote offline: {}", e.getMessage());
+            errorResponse.put("error", e.getMessage());
+            errorResponse.put("code", "BATCH_ERROR");
+            return ResponseEntity.status(409).body(errorResponse);
+        }
+    }
+
     /**
      * Guarda una nueva venta usando VentaService (con soporte DUAL-MODE)
      * - Si facturaElectronicaActiva = false: usa series internas (I001/IF001)
@@ -251,8 +318,8 @@ public class VentaController {
         }
 
         try {
-            // Delegar toda la lógica al VentaService
-            Map<String, Object> resultado = ventaService.crearVenta(dto);
+            // Delegar toda la lógica al VentaService (deduplicando reintentos por clave de idempotencia)
+            Map<String, Object> resultado = ventaIdempotenciaService.crearVenta(dto);
             return ResponseEntity.ok(resultado);
 
         } catch (OptimisticLockingFailureException e) {
@@ -302,7 +369,7 @@ public class VentaController {
         Venta venta = ventaRepository.findById(id).orElse(null);
         if (venta == null) return "redirect:/ventas/lista";
 
-        Configuracion config = configuracionService.obtenerConfiguracion();
+        ConfiguracionVigente config = configuracionService.obtenerVigente();
         model.addAttribute("venta", venta);
         model.addAttribute("config", config);
 
@@ -323,7 +390,7 @@ public class VentaController {
         Venta venta = ventaRepository.findById(id).orElse(null);
         if (venta == null) return "redirect:/ventas/lista";
         model.addAttribute("venta", venta);
-        model.addAttribute("config", configuracionService.obtenerConfiguracion());
+        model.addAttribute("config", configuracionService.obtenerVigente());
         return "ventas/ticket";
     }
 
@@ -336,7 +403,7 @@ public class VentaController {
         Venta venta = ventaRepository.findById(id).orElse(null);
         if (venta == null) return "redirect:/ventas/lista";
         model.addAttribute("venta", venta);
-        model.addAttribute("config", configuracionService.obtenerConfiguracion());
+        model.addAttribute("config", configuracionService.obtenerVigente());
         return "ventas/impresion";
     }
 
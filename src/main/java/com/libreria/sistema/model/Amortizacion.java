@@ -1,5 +1,6 @@
 package com.libreria.sistema.model;
 
+import com.libreria.sistema.model.evento.CambioEntidadListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.math.BigDecimal;
@@ -8,10 +9,12 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @Table(name = "amortizaciones")
+@EntityListeners(CambioEntidadListener.class) // Invalida los reportes generados en segundo plano
 public class Amortizacion {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "amortizaciones_seq")
+    @SequenceGenerator(name = "amortizaciones_seq", sequenceName = "amortizaciones_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -5,12 +5,15 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "auditoria_logs")
+@Table(name = "auditoria_logs", indexes = {
+        @Index(name = "idx_auditoria_logs_fecha_hora_id", columnList = "fechaHora, id") // Listado por keyset
+})
 @Data
 public class AuditoriaLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "auditoria_logs_seq")
+    @SequenceGenerator(name = "auditoria_logs_seq", sequenceName = "auditoria_logs_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
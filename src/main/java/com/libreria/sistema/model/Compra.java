@@ -1,5 +1,6 @@
 package com.libreria.sistema.model;
 
+import com.libreria.sistema.model.evento.CambioEntidadListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.math.BigDecimal;
@@ -10,10 +11,12 @@ import java.util.List;
 @Data
 @Entity
 @Table(name = "compras")
+@EntityListeners(CambioEntidadListener.class) // Invalida los reportes generados en segundo plano
 public class Compra {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "compras_seq")
+    @SequenceGenerator(name = "compras_seq", sequenceName = "compras_seq", allocationSize = 50)
     private Long id;
 
     private LocalDateTime fecha;
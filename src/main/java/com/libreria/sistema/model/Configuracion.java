@@ -2,6 +2,7 @@ package com.libreria.sistema.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.ToString;
 import java.math.BigDecimal;
 
 @Data
@@ -20,8 +21,21 @@ public class Configuracion {
     private String telefono;
     private String email;
 
+    /**
+     * Legado: antes el logo se guardaba en Base64. Se migra a logo (bytes) al iniciar y queda en null.
+     */
     @Column(columnDefinition = "TEXT")
+    @ToString.Exclude
     private String logoBase64;
+
+    // OPTIMIZADO: logo binario + hash SHA-256 del contenido (para la URL /public/logo/{hash})
+    @Column(name = "logo")
+    @ToString.Exclude
+    private byte[] logo;
+    @Column(length = 50)
+    private String logoTipo;
+    @Column(length = 64)
+    private String logoHash;
     @Column(columnDefinition = "TEXT")
     private String logoUrl;
 
@@ -5,7 +5,9 @@ import lombok.Data;
 
 @Data
 @Entity
-@Table(name = "correlativos")
+@Table(name = "correlativos", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_correlativo_codigo_serie", columnNames = {"codigo", "serie"})
+})
 public class Correlativo {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
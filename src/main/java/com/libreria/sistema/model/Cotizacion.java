@@ -14,7 +14,8 @@ import java.util.List;
 public class Cotizacion {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cotizaciones_seq")
+    @SequenceGenerator(name = "cotizaciones_seq", sequenceName = "cotizaciones_seq", allocationSize = 50)
     private Long id;
 
     private String serie;  // C001
@@ -11,7 +11,8 @@ import java.math.BigDecimal;
 public class DetalleCompra {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalle_compras_seq")
+    @SequenceGenerator(name = "detalle_compras_seq", sequenceName = "detalle_compras_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -10,7 +10,8 @@ import java.math.BigDecimal;
 public class DetalleCotizacion {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalle_cotizaciones_seq")
+    @SequenceGenerator(name = "detalle_cotizaciones_seq", sequenceName = "detalle_cotizaciones_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
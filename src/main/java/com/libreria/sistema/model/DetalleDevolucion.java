@@ -11,7 +11,8 @@ import java.math.BigDecimal;
 public class DetalleDevolucion {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalle_devoluciones_seq")
+    @SequenceGenerator(name = "detalle_devoluciones_seq", sequenceName = "detalle_devoluciones_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -33,4 +34,8 @@ public class DetalleDevolucion {
 
     @Column(precision = 10, scale = 2, nullable = false)
     private BigDecimal subtotal;
+
+    // Costo unitario de la venta original (el que se revierte en la rentabilidad)
+    @Column(name = "costo_unitario", precision = 10, scale = 2)
+    private BigDecimal costoUnitario;
 }
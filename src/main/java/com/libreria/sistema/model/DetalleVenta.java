@@ -10,7 +10,8 @@ import java.math.BigDecimal;
 public class DetalleVenta {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalle_ventas_seq")
+    @SequenceGenerator(name = "detalle_ventas_seq", sequenceName = "detalle_ventas_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -36,6 +37,11 @@ public class DetalleVenta {
     @Column(precision = 10, scale = 2)
     private BigDecimal subtotal; // cantidad * precioUnitario
 
+    // Costo unitario (precio de compra) AL MOMENTO DE LA VENTA: el margen histórico
+    // no cambia aunque después se actualice el precioCompra del producto
+    @Column(name = "costo_unitario", precision = 10, scale = 2)
+    private BigDecimal costoUnitario;
+
     // Impuestos Item
     private BigDecimal porcentajeIgv = new BigDecimal("18.00");
     private String codigoTipoAfectacionIgv = "10"; // 10 = Gravado - Operación Onerosa
@@ -1,6 +1,7 @@
 package com.libreria.sistema.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.libreria.sistema.model.evento.CambioEntidadListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.ToString;
@@ -14,10 +15,12 @@ import java.util.List;
 @Entity
 @Table(name = "devoluciones")
 @Data
+@EntityListeners(CambioEntidadListener.class) // Invalida los reportes generados en segundo plano
 public class DevolucionVenta {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "devoluciones_seq")
+    @SequenceGenerator(name = "devoluciones_seq", sequenceName = "devoluciones_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.EAGER) // Aseguramos carga para evitar LazyInit en serialización simple
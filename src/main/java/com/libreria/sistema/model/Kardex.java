@@ -1,16 +1,23 @@
 package com.libreria.sistema.model;
 
+import com.libreria.sistema.model.evento.CambioEntidadListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "kardex")
+@Table(name = "kardex", indexes = {
+        // Kardex por producto y rango de fechas (vista por producto, exportaciones, saldo acumulado)
+        @Index(name = "idx_kardex_producto_fecha", columnList = "producto_id, fecha, id"),
+        @Index(name = "idx_kardex_fecha_id", columnList = "fecha, id") // Listado por keyset
+})
+@EntityListeners(CambioEntidadListener.class) // Invalida los reportes generados en segundo plano
 public class Kardex {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "kardex_seq")
+    @SequenceGenerator(name = "kardex_seq", sequenceName = "kardex_seq", allocationSize = 50)
     private Long id;
 
     private LocalDateTime fecha;
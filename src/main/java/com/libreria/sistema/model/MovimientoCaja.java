@@ -1,5 +1,6 @@
 package com.libreria.sistema.model;
 
+import com.libreria.sistema.model.evento.CambioEntidadListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.math.BigDecimal;
@@ -7,11 +8,16 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "movimientos_caja")
+@Table(name = "movimientos_caja", indexes = {
+        @Index(name = "idx_movimientos_caja_tipo_fecha", columnList = "tipo, fecha"),
+        @Index(name = "idx_movimientos_caja_sesion_fecha_id", columnList = "sesion_id, fecha, id") // Listado por keyset
+})
+@EntityListeners(CambioEntidadListener.class) // Invalida los reportes generados en segundo plano
 public class MovimientoCaja {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimientos_caja_seq")
+    @SequenceGenerator(name = "movimientos_caja_seq", sequenceName = "movimientos_caja_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
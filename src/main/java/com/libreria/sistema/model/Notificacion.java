@@ -10,11 +10,14 @@ import java.time.LocalDateTime;
  */
 @Data
 @Entity
-@Table(name = "notificaciones")
+@Table(name = "notificaciones", indexes = {
+        @Index(name = "idx_notificaciones_fecha_creacion_id", columnList = "fechaCreacion, id") // Listado por keyset
+})
 public class Notificacion {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notificaciones_seq")
+    @SequenceGenerator(name = "notificaciones_seq", sequenceName = "notificaciones_seq", allocationSize = 50)
     private Long id;
 
     /**
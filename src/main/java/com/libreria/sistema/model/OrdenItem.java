@@ -11,7 +11,8 @@ import java.math.BigDecimal;
 public class OrdenItem {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orden_items_seq")
+    @SequenceGenerator(name = "orden_items_seq", sequenceName = "orden_items_seq", allocationSize = 50)
     private Long id;
 
     @Column(columnDefinition = "TEXT")
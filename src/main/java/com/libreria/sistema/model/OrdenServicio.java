@@ -14,7 +14,8 @@ import java.util.List;
 public class OrdenServicio {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orden_servicios_seq")
+    @SequenceGenerator(name = "orden_servicios_seq", sequenceName = "orden_servicios_seq", allocationSize = 50)
     private Long id;
 
     private String tipoServicio; 
@@ -1,5 +1,6 @@
 package com.libreria.sistema.model;
 
+import com.libreria.sistema.model.evento.CambioEntidadListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.math.BigDecimal;
@@ -8,10 +9,12 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @Table(name = "productos")
+@EntityListeners(CambioEntidadListener.class) // Índice del POS y reportes en segundo plano
 public class Producto {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "productos_seq")
+    @SequenceGenerator(name = "productos_seq", sequenceName = "productos_seq", allocationSize = 50)
     private Long id;
 
     // --- BLOQUEO OPTIMISTA ---
@@ -0,0 +1,43 @@
+package com.libreria.sistema.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Resultado ya calculado de un reporte para un mes cerrado (ver PeriodoCerradoService).
+ *
+ * Una fila por (tipo, mes). Los datos se guardan como JSON y no se vuelven a calcular
+ * mientras ningún documento fechado en ese mes se modifique.
+ */
+@Data
+@Entity
+@Table(name = "reportes_mes_cerrado", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_reportes_mes_cerrado", columnNames = {"tipo", "mes"})
+})
+public class ReporteMesCerrado {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Tipo de resultado (PeriodoCerradoService.TOTALES, RENTABILIDAD)
+     */
+    @Column(nullable = false, length = 30)
+    private String tipo;
+
+    /**
+     * Primer día del mes
+     */
+    @Column(nullable = false)
+    private LocalDate mes;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String datos;
+
+    @Column(name = "fecha_calculo", nullable = false)
+    private LocalDateTime fechaCalculo;
+}
@@ -35,6 +35,9 @@ public class SesionCaja {
 
     private String estado; // ABIERTA, CERRADA
 
+    // Terminal/caja asignada al abrir (tomada del usuario). Determina la serie de comprobantes.
+    private Integer terminal;
+
     @PrePersist
     protected void onCreate() {
         this.fechaInicio = LocalDateTime.now();
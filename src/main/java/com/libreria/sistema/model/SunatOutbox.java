@@ -0,0 +1,67 @@
+package com.libreria.sistema.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Cola persistente (outbox transaccional) de comprobantes pendientes de envío a SUNAT.
+ * Se inserta en la MISMA transacción que la Venta, por lo que solo existe si la venta
+ * se confirmó. El despachador en segundo plano la procesa con reintentos.
+ */
+@Data
+@Entity
+@Table(name = "sunat_outbox", indexes = {
+        @Index(name = "idx_sunat_outbox_estado_proximo", columnList = "estado, proximoIntento")
+})
+public class SunatOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sunat_outbox_seq")
+    @SequenceGenerator(name = "sunat_outbox_seq", sequenceName = "sunat_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private Long ventaId;
+
+    /**
+     * Estado del envío: PENDIENTE, EN_PROCESO, ENVIADO, FALLIDO
+     */
+    @Column(nullable = false, length = 20)
+    private String estado;
+
+    @Column(nullable = false)
+    private Integer intentos = 0;
+
+    /**
+     * Momento a partir del cual el despachador puede volver a intentar (backoff exponencial)
+     */
+    @Column(nullable = false)
+    private LocalDateTime proximoIntento;
+
+    @Column(columnDefinition = "TEXT")
+    private String ultimoError;
+
+    /**
+     * Token del último reclamo (EN_PROCESO): el hilo que despacha solo envía si sigue siendo el suyo
+     */
+    @Column(length = 36)
+    private String reclamo;
+
+    private LocalDateTime fechaCreacion;
+    private LocalDateTime fechaActualizacion;
+
+    @PrePersist
+    protected void onCreate() {
+        this.fechaCreacion = LocalDateTime.now();
+        this.fechaActualizacion = this.fechaCreacion;
+        if (this.estado == null) this.estado = "PENDIENTE";
+        if (this.intentos == null) this.intentos = 0;
+        if (this.proximoIntento == null) this.proximoIntento = this.fechaCreacion;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        this.fechaActualizacion = LocalDateTime.now();
+    }
+}
@@ -1,5 +1,6 @@
 package com.libreria.sistema.model;
 
+import com.libreria.sistema.model.evento.CambioEntidadListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDateTime;
@@ -14,6 +15,7 @@ import java.util.Set;
 @Data
 @Entity
 @Table(name = "usuarios")
+@EntityListeners(CambioEntidadListener.class) // Rol vigente de las sesiones abiertas (PermisosCompilados)
 public class Usuario {
 
     @Id
@@ -30,6 +32,13 @@ public class Usuario {
 
     private boolean activo = true;
 
+    /**
+     * Número de caja/terminal del usuario. Define su serie propia de comprobantes
+     * (1 = B001/F001, 2 = B002/F002, ...) para que cada caja numere en paralelo.
+     */
+    @Column(name = "terminal_caja")
+    private Integer terminalCaja = 1;
+
     // =====================================================
     //  CAMPOS PARA BLOQUEO DE CUENTA (SEGURIDAD)
     // =====================================================
@@ -1,5 +1,6 @@
 package com.libreria.sistema.model;
 
+import com.libreria.sistema.model.evento.CambioEntidadListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.math.BigDecimal;
@@ -16,11 +17,16 @@ import java.util.List;
  */
 @Data
 @Entity
-@Table(name = "ventas")
+@Table(name = "ventas", indexes = {
+        @Index(name = "idx_ventas_fecha_emision", columnList = "fechaEmision"),
+        @Index(name = "idx_ventas_fecha_creacion_id", columnList = "fechaCreacion, id") // Listado por keyset
+})
+@EntityListeners(CambioEntidadListener.class) // Invalida los reportes generados en segundo plano
 public class Venta {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ventas_seq")
+    @SequenceGenerator(name = "ventas_seq", sequenceName = "ventas_seq", allocationSize = 50)
     private Long id;
 
     // --- DATOS SUNAT CABECERA ---
@@ -98,6 +104,15 @@ public class Venta {
     @Column(columnDefinition = "TEXT")
     private String sunatMensajeError; // Mensaje de error si el envío falla
 
+    // --- IDEMPOTENCIA ---
+    // Clave enviada por el POS; UNIQUE para que un reintento nunca genere un segundo comprobante
+    @Column(name = "idempotency_key", length = 64, unique = true)
+    private String idempotencyKey;
+
+    // Huella del contenido enviado con la clave (VentaDTO.huellaIdempotencia): detecta claves reutilizadas
+    @Column(name = "idempotency_huella", length = 64)
+    private String idempotencyHuella;
+
     // --- AUDITORÍA ---
     private LocalDateTime fechaCreacion;
 
@@ -0,0 +1,56 @@
+package com.libreria.sistema.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Hechos de venta por producto y día (rentabilidad y más vendidos).
+ *
+ * Una fila por (fecha, producto). Se mantiene con deltas en la MISMA transacción que la venta
+ * o la devolución (ver ResumenVentasService) y se escribe solo con SQL nativo.
+ *
+ * - Ventas no anuladas: por fecha de emisión, con el costo capturado al vender (DetalleVenta.costoUnitario).
+ * - Devoluciones PROCESADAS: por fecha de registro, con el costo de la venta original.
+ *
+ * La clave única (fecha, producto_id) es también el índice de los reportes por rango de fechas.
+ */
+@Data
+@Entity
+@Table(name = "ventas_producto_diario", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_ventas_producto_diario", columnNames = {"fecha", "producto_id"})
+})
+public class VentaProductoDiario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // --- CLAVE ---
+    @Column(nullable = false)
+    private LocalDate fecha;
+
+    @Column(name = "producto_id", nullable = false)
+    private Long productoId;
+
+    // --- VENTAS ---
+    @Column(name = "cantidad_vendida", precision = 14, scale = 2, nullable = false)
+    private BigDecimal cantidadVendida;
+
+    @Column(name = "total_vendido", precision = 14, scale = 2, nullable = false)
+    private BigDecimal totalVendido;
+
+    @Column(name = "costo_vendido", precision = 14, scale = 2, nullable = false)
+    private BigDecimal costoVendido;
+
+    // --- DEVOLUCIONES ---
+    @Column(name = "cantidad_devuelta", precision = 14, scale = 2, nullable = false)
+    private BigDecimal cantidadDevuelta;
+
+    @Column(name = "monto_devuelto", precision = 14, scale = 2, nullable = false)
+    private BigDecimal montoDevuelto;
+
+    @Column(name = "costo_devuelto", precision = 14, scale = 2, nullable = false)
+    private BigDecimal costoDevuelto;
+}
@@ -0,0 +1,76 @@
+package com.libreria.sistema.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Resumen diario de ventas (rollup) para los reportes financieros.
+ *
+ * Una fila por (fecha, método de pago, usuario, tipo de comprobante, forma de pago).
+ * Se mantiene con deltas en la MISMA transacción que la venta, la cobranza o la devolución
+ * (ver ResumenVentasService) y se escribe solo con SQL nativo (INSERT ... ON CONFLICT).
+ *
+ * - Ventas: por fecha de emisión y método de pago de la venta. cantidadVentas/totalVentas
+ *   son las ventas vigentes (no anuladas); las anuladas pasan a cantidadAnuladas/totalAnulado.
+ * - Cobros (amortizaciones): por fecha de pago y método de pago del cobro.
+ * - Devoluciones PROCESADAS: por fecha de registro y método de reembolso.
+ *
+ * Los valores desconocidos se guardan como '' (texto) o 0 (usuario) para que la clave única aplique.
+ */
+@Data
+@Entity
+@Table(name = "ventas_resumen_diario", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_ventas_resumen_diario",
+                columnNames = {"fecha", "metodo_pago", "usuario_id", "tipo_comprobante", "forma_pago"})
+})
+public class VentaResumenDiario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // --- CLAVE ---
+    @Column(nullable = false)
+    private LocalDate fecha;
+
+    @Column(name = "metodo_pago", nullable = false, length = 50)
+    private String metodoPago;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "tipo_comprobante", nullable = false, length = 30)
+    private String tipoComprobante;
+
+    @Column(name = "forma_pago", nullable = false, length = 20)
+    private String formaPago;
+
+    // --- VENTAS ---
+    @Column(name = "cantidad_ventas", nullable = false)
+    private long cantidadVentas;
+
+    @Column(name = "total_ventas", precision = 14, scale = 2, nullable = false)
+    private BigDecimal totalVentas;
+
+    @Column(name = "cantidad_anuladas", nullable = false)
+    private long cantidadAnuladas;
+
+    @Column(name = "total_anulado", precision = 14, scale = 2, nullable = false)
+    private BigDecimal totalAnulado;
+
+    // --- COBROS (AMORTIZACIONES) ---
+    @Column(name = "cantidad_cobros", nullable = false)
+    private long cantidadCobros;
+
+    @Column(name = "monto_cobrado", precision = 14, scale = 2, nullable = false)
+    private BigDecimal montoCobrado;
+
+    // --- DEVOLUCIONES ---
+    @Column(name = "cantidad_devoluciones", nullable = false)
+    private long cantidadDevoluciones;
+
+    @Column(name = "monto_devuelto", precision = 14, scale = 2, nullable = false)
+    private BigDecimal montoDevuelto;
+}
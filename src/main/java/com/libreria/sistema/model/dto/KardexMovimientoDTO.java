@@ -0,0 +1,54 @@
+package com.libreria.sistema.model.dto;
+
+import lombok.Value;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Movimiento de Kardex de un producto con su saldo acumulado.
+ *
+ * El saldo se calcula en BD con funciones de ventana: stock anterior del primer movimiento
+ * más la suma de (stockActual - stockAnterior) hasta este movimiento. Si difiere del
+ * stockActual registrado, la cadena de movimientos está descuadrada.
+ */
+@Value
+public class KardexMovimientoDTO {
+    Long id;
+    LocalDateTime fecha;
+    String tipo;
+    String motivo;
+    Integer cantidad;
+    Integer stockAnterior;
+    Integer stockActual;
+    Long saldo;
+
+    public boolean isDescuadre() {
+        return saldo != null && stockActual != null && saldo.longValue() != stockActual.longValue();
+    }
+
+    /**
+     * Desde una fila de KardexRepository: [id, fecha, tipo, motivo, cantidad, stockAnterior, stockActual, saldo]
+     */
+    public static KardexMovimientoDTO desde(Object[] fila) {
+        return new KardexMovimientoDTO(
+                fila[0] != null ? ((Number) fila[0]).longValue() : null,
+                aFecha(fila[1]),
+                (String) fila[2],
+                (String) fila[3],
+                fila[4] != null ? ((Number) fila[4]).intValue() : null,
+                fila[5] != null ? ((Number) fila[5]).intValue() : null,
+                fila[6] != null ? ((Number) fila[6]).intValue() : null,
+                fila[7] != null ? ((Number) fila[7]).longValue() : null);
+    }
+
+    /**
+     * Las consultas nativas pueden devolver Timestamp o LocalDateTime según el driver
+     */
+    public static LocalDateTime aFecha(Object valor) {
+        if (valor instanceof Timestamp ts) {
+            return ts.toLocalDateTime();
+        }
+        return (LocalDateTime) valor;
+    }
+}
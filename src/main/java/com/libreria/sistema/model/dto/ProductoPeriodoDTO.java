@@ -0,0 +1,37 @@
+package com.libreria.sistema.model.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Totales de un producto en un periodo, desde los hechos producto/día (antes de descontar devoluciones).
+ *
+ * Sumables por producto igual que TotalesPeriodoDTO. Se guardan en los meses cerrados, por eso
+ * solo llevan el id del producto: nombre, código y categoría se leen al armar el reporte.
+ */
+public record ProductoPeriodoDTO(
+        Long productoId,
+        BigDecimal cantidadVendida, BigDecimal totalVendido, BigDecimal costoVendido,
+        BigDecimal cantidadDevuelta, BigDecimal montoDevuelto, BigDecimal costoDevuelto) {
+
+    /**
+     * Desde una fila de VentaProductoDiarioRepository:
+     * [productoId, cantVendida, totalVendido, costoVendido, cantDevuelta, montoDevuelto, costoDevuelto]
+     */
+    public static ProductoPeriodoDTO desde(Object[] fila) {
+        return new ProductoPeriodoDTO(
+                fila[0] != null ? ((Number) fila[0]).longValue() : null,
+                monto(fila[1]), monto(fila[2]), monto(fila[3]),
+                monto(fila[4]), monto(fila[5]), monto(fila[6]));
+    }
+
+    public ProductoPeriodoDTO sumar(ProductoPeriodoDTO otro) {
+        return new ProductoPeriodoDTO(productoId,
+                cantidadVendida.add(otro.cantidadVendida), totalVendido.add(otro.totalVendido),
+                costoVendido.add(otro.costoVendido), cantidadDevuelta.add(otro.cantidadDevuelta),
+                montoDevuelto.add(otro.montoDevuelto), costoDevuelto.add(otro.costoDevuelto));
+    }
+
+    private static BigDecimal monto(Object valor) {
+        return valor != null ? (BigDecimal) valor : BigDecimal.ZERO;
+    }
+}
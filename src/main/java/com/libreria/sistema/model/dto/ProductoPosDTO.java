@@ -0,0 +1,34 @@
+package com.libreria.sistema.model.dto;
+
+import com.libreria.sistema.model.Producto;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * Vista mínima e inmutable de un producto para el POS (búsqueda y escaneo).
+ * Es lo único que guarda el índice de catálogo en memoria.
+ */
+@Value
+public class ProductoPosDTO {
+    Long id;
+    Long version;
+    String codigoBarra;
+    String codigoInterno;
+    String nombre;
+    String categoria;
+    String marca;
+    String imagen;
+    String ubicacion;
+    BigDecimal precioVenta;
+    Integer stock;
+    boolean activo;
+
+    public static ProductoPosDTO desde(Producto p) {
+        String ubicacion = (p.getUbicacionEstante() != null ? p.getUbicacionEstante() : "") + "-" +
+                (p.getUbicacionFila() != null ? p.getUbicacionFila() : "");
+        return new ProductoPosDTO(p.getId(), p.getVersion(), p.getCodigoBarra(), p.getCodigoInterno(),
+                p.getNombre(), p.getCategoria(), p.getMarca(), p.getImagen(), ubicacion,
+                p.getPrecioVenta(), p.getStockActual(), p.isActivo());
+    }
+}
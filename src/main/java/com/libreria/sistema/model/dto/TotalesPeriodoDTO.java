@@ -0,0 +1,35 @@
+package com.libreria.sistema.model.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Totales de ventas y flujo de caja de un periodo.
+ *
+ * Son sumables: el total de un rango es la suma de sus meses cerrados (guardados)
+ * y de los tramos abiertos (calculados en el momento).
+ */
+public record TotalesPeriodoDTO(
+        long cantidadVentas, BigDecimal totalVentas,
+        long cantidadContado, BigDecimal totalContado,
+        long cantidadCobros, BigDecimal montoCobrado,
+        long cantidadOtrosIngresos, BigDecimal montoOtrosIngresos,
+        long cantidadCompras, BigDecimal montoCompras,
+        long cantidadDevolucionesEfectivo, BigDecimal montoDevueltoEfectivo,
+        long cantidadOtrosEgresos, BigDecimal montoOtrosEgresos) {
+
+    public static final TotalesPeriodoDTO VACIO = new TotalesPeriodoDTO(
+            0, BigDecimal.ZERO, 0, BigDecimal.ZERO, 0, BigDecimal.ZERO, 0, BigDecimal.ZERO,
+            0, BigDecimal.ZERO, 0, BigDecimal.ZERO, 0, BigDecimal.ZERO);
+
+    public TotalesPeriodoDTO sumar(TotalesPeriodoDTO otro) {
+        return new TotalesPeriodoDTO(
+                cantidadVentas + otro.cantidadVentas, totalVentas.add(otro.totalVentas),
+                cantidadContado + otro.cantidadContado, totalContado.add(otro.totalContado),
+                cantidadCobros + otro.cantidadCobros, montoCobrado.add(otro.montoCobrado),
+                cantidadOtrosIngresos + otro.cantidadOtrosIngresos, montoOtrosIngresos.add(otro.montoOtrosIngresos),
+                cantidadCompras + otro.cantidadCompras, montoCompras.add(otro.montoCompras),
+                cantidadDevolucionesEfectivo + otro.cantidadDevolucionesEfectivo,
+                montoDevueltoEfectivo.add(otro.montoDevueltoEfectivo),
+                cantidadOtrosEgresos + otro.cantidadOtrosEgresos, montoOtrosEgresos.add(otro.montoOtrosEgresos));
+    }
+}
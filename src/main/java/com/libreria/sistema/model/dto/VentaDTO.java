@@ -4,6 +4,12 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.*;
 import lombok.Data;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.List;
 
 /**
@@ -13,6 +19,25 @@ import java.util.List;
 @Data
 public class VentaDTO {
 
+    // =====================================================
+    //  IDEMPOTENCIA
+    // =====================================================
+
+    /**
+     * Clave única generada por el POS para esta venta. Si la misma clave llega dos veces
+     * (doble clic, reintento del navegador), se devuelve el resultado original sin reprocesar.
+     */
+    @Size(max = 64, message = "La clave de idempotencia no puede exceder 64 caracteres")
+    private String idempotencyKey;
+
+    /**
+     * Momento en que la caja capturó la venta sin conexión (solo en sincronización por lote).
+     * Define la fecha de emisión (acotada en VentaService.fechaEmisionLote); si no viene, se usa la fecha actual.
+     * Las ventas en línea la ignoran: se emiten siempre con la fecha del servidor.
+     */
+    @PastOrPresent(message = "La fecha de captura no puede ser futura")
+    private LocalDateTime fechaCaptura;
+
     // =====================================================
     //  DATOS DEL CLIENTE
     // =====================================================
@@ -102,6 +127,38 @@ public class VentaDTO {
         return metodoPago != null && !metodoPago.trim().isEmpty() ? metodoPago : "EFECTIVO";
     }
 
+    /**
+     * Huella SHA-256 del contenido de la venta (comprobante, cliente, pago e items ordenados por producto).
+     * Se guarda junto a la clave de idempotencia: la misma clave con otra huella es otra venta, no un reintento.
+     */
+    public String huellaIdempotencia() {
+        StringBuilder sb = new StringBuilder()
+                .append(tipoComprobante).append('|')
+                .append(clienteDocumento).append('|')
+                .append(formaPago).append('|')
+                .append(getMetodoPago()).append('|')
+                .append(normalizar(montoInicial)).append('|')
+                .append(diasCredito);
+        if (items != null) {
+            items.stream()
+                    .sorted(Comparator.comparing(DetalleDTO::getProductoId, Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .forEach(i -> sb.append('|').append(i.getProductoId())
+                            .append(':').append(normalizar(i.getCantidad()))
+                            .append(':').append(normalizar(i.getPrecioVenta())));
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    // 10 y 10.00 son el mismo monto
+    private static String normalizar(BigDecimal valor) {
+        return valor != null ? valor.stripTrailingZeros().toPlainString() : "";
+    }
+
     /**
      * Verifica si es una venta a crédito
      */
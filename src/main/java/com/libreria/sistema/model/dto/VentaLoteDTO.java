@@ -0,0 +1,21 @@
+package com.libreria.sistema.model.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Lote de ventas capturadas sin conexión por una caja, en el orden en que se registraron.
+ * Cada venta debe traer su UUID de cliente en idempotencyKey.
+ */
+@Data
+public class VentaLoteDTO {
+
+    @NotEmpty(message = "El lote no contiene ventas")
+    @Size(max = 1000, message = "El lote no puede exceder 1000 ventas")
+    @Valid
+    private List<VentaDTO> ventas;
+}
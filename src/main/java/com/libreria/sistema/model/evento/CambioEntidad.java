@@ -0,0 +1,8 @@
+package com.libreria.sistema.model.evento;
+
+/**
+ * Evento de aplicación: una entidad se guardó (alta o cambio) o se eliminó.
+ * Lo publica CambioEntidadListener; los servicios lo reciben con @TransactionalEventListener.
+ */
+public record CambioEntidad(Object entidad, boolean eliminada) {
+}
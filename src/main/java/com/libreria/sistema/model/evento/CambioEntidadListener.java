@@ -0,0 +1,36 @@
+package com.libreria.sistema.model.evento;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener JPA de las entidades que alimentan índices, reportes y permisos en memoria: solo publica
+ * un CambioEntidad. Quien lo necesite (índice del POS, versiones de reportes, acceso de las sesiones) lo escucha
+ * con @TransactionalEventListener, así el modelo no depende de los servicios y los cambios
+ * se aplican DESPUÉS del commit.
+ *
+ * Hibernate obtiene esta instancia del contenedor de Spring (SpringBeanContainer).
+ */
+@Component
+public class CambioEntidadListener {
+
+    private final ApplicationEventPublisher eventos;
+
+    public CambioEntidadListener(ApplicationEventPublisher eventos) {
+        this.eventos = eventos;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void entidadGuardada(Object entidad) {
+        eventos.publishEvent(new CambioEntidad(entidad, false));
+    }
+
+    @PostRemove
+    public void entidadEliminada(Object entidad) {
+        eventos.publishEvent(new CambioEntidad(entidad, true));
+    }
+}
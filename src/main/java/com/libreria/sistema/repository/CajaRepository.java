@@ -1,10 +1,14 @@
 package com.libreria.sistema.repository;
 
 import com.libreria.sistema.model.MovimientoCaja;
+import com.libreria.sistema.util.Constants;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -12,6 +16,7 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface CajaRepository extends JpaRepository<MovimientoCaja, Long> {
@@ -61,6 +66,14 @@ public interface CajaRepository extends JpaRepository<MovimientoCaja, Long> {
     @Query("SELECT COALESCE(SUM(m.monto), 0) FROM MovimientoCaja m WHERE m.tipo = :tipo AND m.fecha >= :inicio")
     BigDecimal sumarPorTipoDesde(@Param("tipo") String tipo, @Param("inicio") LocalDateTime inicio);
 
+    /**
+     * Suma por tipo agrupada por mes desde una fecha: [año, mes, total]
+     */
+    @Query("SELECT YEAR(m.fecha), MONTH(m.fecha), COALESCE(SUM(m.monto), 0) FROM MovimientoCaja m " +
+           "WHERE m.tipo = :tipo AND m.fecha >= :inicio " +
+           "GROUP BY YEAR(m.fecha), MONTH(m.fecha)")
+    List<Object[]> sumarPorTipoYMesDesde(@Param("tipo") String tipo, @Param("inicio") LocalDateTime inicio);
+
     /**
      * Sumar ingresos en un rango de fechas
      */
@@ -131,4 +144,19 @@ public interface CajaRepository extends JpaRepository<MovimientoCaja, Long> {
      */
     @Query("SELECT m FROM MovimientoCaja m WHERE m.concepto LIKE 'VENTA%' AND CAST(m.fecha AS LocalDate) BETWEEN :inicio AND :fin ORDER BY m.fecha DESC")
     List<MovimientoCaja> findMovimientosVentas(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin);
+
+    // =====================================================
+    //  EXPORTACIONES EN STREAMING (CURSOR, SIN ENTIDADES)
+    // =====================================================
+
+    /**
+     * Movimientos del rango [inicio, finExclusivo): [fecha, tipo, concepto, monto, username]
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = Constants.REPORTE_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT m.fecha, m.tipo, m.concepto, m.monto, u.username FROM MovimientoCaja m LEFT JOIN m.usuario u " +
+           "WHERE m.fecha >= :inicio AND m.fecha < :finExclusivo ORDER BY m.fecha DESC")
+    Stream<Object[]> streamFilasReporte(@Param("inicio") LocalDateTime inicio, @Param("finExclusivo") LocalDateTime finExclusivo);
 }
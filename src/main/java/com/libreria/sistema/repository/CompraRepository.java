@@ -5,10 +5,30 @@ import org.springframework.data.domain.Pageable;
 
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 public interface CompraRepository extends JpaRepository<Compra, Long> {
 
     // Optimizado para listar compras sin problema N+1 (trae proveedor y detalles)
     @EntityGraph(attributePaths = {"proveedor", "detalles"})
     Page<Compra> findAll(Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Compras no anuladas en un rango: [cantidad, total]
+     */
+    @Query("SELECT COUNT(c), COALESCE(SUM(c.total), 0) FROM Compra c " +
+           "WHERE c.fecha >= :inicio AND c.fecha < :finExclusivo AND c.estado != 'ANULADA'")
+    List<Object[]> sumarVigentesEntre(@Param("inicio") LocalDateTime inicio, @Param("finExclusivo") LocalDateTime finExclusivo);
+
+    /**
+     * Compras no anuladas agrupadas por mes desde una fecha: [año, mes, total]
+     */
+    @Query("SELECT YEAR(c.fecha), MONTH(c.fecha), COALESCE(SUM(c.total), 0) FROM Compra c " +
+           "WHERE c.fecha >= :inicio AND c.estado != 'ANULADA' " +
+           "GROUP BY YEAR(c.fecha), MONTH(c.fecha)")
+    List<Object[]> sumarVigentesPorMesDesde(@Param("inicio") LocalDateTime inicio);
+}
@@ -4,6 +4,7 @@ import com.libreria.sistema.model.Correlativo;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -19,4 +20,29 @@ public interface CorrelativoRepository extends JpaRepository<Correlativo, Long>
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT c FROM Correlativo c WHERE c.codigo = :codigo AND c.serie = :serie")
     Optional<Correlativo> findByCodigoAndSerieWithLock(@Param("codigo") String codigo, @Param("serie") String serie);
-}
\ No newline at end of file
+
+    /**
+     * Incrementa y devuelve el último número reservado de la serie en UNA sola sentencia
+     * (UPDATE ... RETURNING). El lock de fila dura solo lo que dura esta sentencia
+     * y su transacción, no toda la venta.
+     *
+     * Con cantidad > 1 reserva un rango: los números asignados son
+     * (devuelto - cantidad + 1) .. devuelto.
+     *
+     * @return Último número reservado, o vacío si la serie aún no existe
+     */
+    @Query(value = "UPDATE correlativos SET ultimo_numero = COALESCE(ultimo_numero, 0) + :cantidad, " +
+                   "version = COALESCE(version, 0) + 1 " +
+                   "WHERE codigo = :codigo AND serie = :serie RETURNING ultimo_numero", nativeQuery = true)
+    Optional<Integer> incrementarYObtener(@Param("codigo") String codigo, @Param("serie") String serie,
+                                          @Param("cantidad") int cantidad);
+
+    /**
+     * Crea la serie con ultimoNumero = 0 si no existe. Con ON CONFLICT, dos transacciones que
+     * estrenan la misma serie a la vez no fallan por uk_correlativo_codigo_serie: una inserta y la otra no hace nada.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO correlativos (codigo, serie, ultimo_numero, version) VALUES (:codigo, :serie, 0, 0) " +
+                   "ON CONFLICT (codigo, serie) DO NOTHING", nativeQuery = true)
+    int crearSiNoExiste(@Param("codigo") String codigo, @Param("serie") String serie);
+}
@@ -1,10 +1,19 @@
 package com.libreria.sistema.repository;
 
 import com.libreria.sistema.model.Kardex;
+import com.libreria.sistema.util.Constants;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
 
 public interface KardexRepository extends JpaRepository<Kardex, Long> {
 
@@ -13,4 +22,45 @@ public interface KardexRepository extends JpaRepository<Kardex, Long> {
 
     // NUEVOS MÉTODOS DE CONTEO RÁPIDO
     long countByTipo(String tipo); // Cuenta cuántos "ENTRADA" o "SALIDA" hay
-}
\ No newline at end of file
+
+    /**
+     * Movimientos de un producto en [inicio, finExclusivo) con saldo acumulado, más recientes primero:
+     * [id, fecha, tipo, motivo, cantidad, stockAnterior, stockActual, saldo]
+     *
+     * El saldo se acumula con funciones de ventana sobre TODA la historia del producto hasta el fin
+     * del rango (no solo las filas de la página). Recorre idx_kardex_producto_fecha.
+     */
+    @Query(value = SALDO_ACUMULADO + "ORDER BY m.fecha DESC, m.id DESC",
+           countQuery = "SELECT COUNT(*) FROM kardex k " +
+                        "WHERE k.producto_id = :productoId AND k.fecha >= :inicio AND k.fecha < :finExclusivo",
+           nativeQuery = true)
+    Page<Object[]> buscarMovimientosConSaldo(@Param("productoId") Long productoId,
+                                             @Param("inicio") LocalDateTime inicio,
+                                             @Param("finExclusivo") LocalDateTime finExclusivo,
+                                             Pageable pageable);
+
+    /**
+     * Igual que buscarMovimientosConSaldo, completo y en streaming (EXPORTACIÓN)
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = Constants.REPORTE_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = SALDO_ACUMULADO + "ORDER BY m.fecha DESC, m.id DESC", nativeQuery = true)
+    Stream<Object[]> streamMovimientosProducto(@Param("productoId") Long productoId,
+                                               @Param("inicio") LocalDateTime inicio,
+                                               @Param("finExclusivo") LocalDateTime finExclusivo);
+
+    /**
+     * Saldo = stock anterior del primer movimiento + suma de variaciones hasta la fila (orden fecha, id)
+     */
+    String SALDO_ACUMULADO =
+            "SELECT m.id, m.fecha, m.tipo, m.motivo, m.cantidad, m.stock_anterior, m.stock_actual, m.saldo FROM (" +
+            "  SELECT k.id, k.fecha, k.tipo, k.motivo, k.cantidad, k.stock_anterior, k.stock_actual, " +
+            "         FIRST_VALUE(COALESCE(k.stock_anterior, 0)) OVER w " +
+            "           + SUM(COALESCE(k.stock_actual, 0) - COALESCE(k.stock_anterior, 0)) OVER w AS saldo " +
+            "  FROM kardex k " +
+            "  WHERE k.producto_id = :productoId AND k.fecha < :finExclusivo " +
+            "  WINDOW w AS (ORDER BY k.fecha, k.id)" +
+            ") m WHERE m.fecha >= :inicio ";
+}
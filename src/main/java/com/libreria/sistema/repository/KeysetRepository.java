@@ -0,0 +1,179 @@
+package com.libreria.sistema.repository;
+
+import com.libreria.sistema.model.AuditoriaLog;
+import com.libreria.sistema.model.Kardex;
+import com.libreria.sistema.model.MovimientoCaja;
+import com.libreria.sistema.model.Notificacion;
+import com.libreria.sistema.model.Venta;
+import com.libreria.sistema.util.Constants;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Table;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Paginación por keyset (seek) compartida por los listados de alto volumen.
+ *
+ * En lugar de OFFSET + COUNT(*), cada página continúa desde la última fila vista:
+ *   WHERE fecha < :fecha OR (fecha = :fecha AND id < :id) ORDER BY fecha DESC, id DESC LIMIT n + 1
+ * Con un índice (fecha, id) la página 500 cuesta lo mismo que la primera.
+ *
+ * Los filtros de cada pantalla llegan como Specification (igual que en AuditoriaService).
+ * Pueden hacer fetch de relaciones ManyToOne: aquí no hay consulta de conteo.
+ */
+@Repository
+public class KeysetRepository {
+
+    /**
+     * Orden de un listado: entidad, atributo de fecha y cómo leer (fecha, id) de cada fila
+     */
+    public record Orden<T>(Class<T> entidad, String campoFecha,
+                           Function<T, LocalDateTime> fecha, Function<T, Long> id) {
+    }
+
+    public static final Orden<Venta> VENTAS =
+            new Orden<>(Venta.class, "fechaCreacion", Venta::getFechaCreacion, Venta::getId);
+    public static final Orden<Kardex> KARDEX =
+            new Orden<>(Kardex.class, "fecha", Kardex::getFecha, Kardex::getId);
+    public static final Orden<AuditoriaLog> AUDITORIA =
+            new Orden<>(AuditoriaLog.class, "fechaHora", AuditoriaLog::getFechaHora, AuditoriaLog::getId);
+    public static final Orden<Notificacion> NOTIFICACIONES =
+            new Orden<>(Notificacion.class, "fechaCreacion", Notificacion::getFechaCreacion, Notificacion::getId);
+    public static final Orden<MovimientoCaja> MOVIMIENTOS_CAJA =
+            new Orden<>(MovimientoCaja.class, "fecha", MovimientoCaja::getFecha, MovimientoCaja::getId);
+
+    private final EntityManager entityManager;
+
+    public KeysetRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Página desde el cursor (null = la más reciente)
+     *
+     * @param filtro         Filtros de la pantalla (puede ser null)
+     * @param cursor         Cursor "siguiente" o "anterior" de una página previa
+     * @param tamano         Filas por página (acotado a Constants.MAX_PAGE_SIZE)
+     * @param totalAproximado true para informar el total estimado de la tabla (solo tiene sentido sin filtros)
+     */
+    public <T> PaginaKeyset<T> buscar(Orden<T> orden, Specification<T> filtro, String cursor,
+                                      int tamano, boolean totalAproximado) {
+        int limite = Math.max(1, Math.min(tamano, Constants.MAX_PAGE_SIZE));
+        Cursor desde = Cursor.decodificar(cursor);
+        boolean haciaAtras = desde != null && desde.haciaAtras();
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(orden.entidad());
+        Root<T> root = query.from(orden.entidad());
+        Path<LocalDateTime> fecha = root.get(orden.campoFecha());
+        Path<Long> id = root.get("id");
+
+        List<Predicate> predicados = new ArrayList<>();
+        if (filtro != null) {
+            Predicate predicado = filtro.toPredicate(root, query, cb);
+            if (predicado != null) {
+                predicados.add(predicado);
+            }
+        }
+        if (desde != null) {
+            predicados.add(haciaAtras
+                    ? cb.or(cb.greaterThan(fecha, desde.fecha()),
+                            cb.and(cb.equal(fecha, desde.fecha()), cb.greaterThan(id, desde.id())))
+                    : cb.or(cb.lessThan(fecha, desde.fecha()),
+                            cb.and(cb.equal(fecha, desde.fecha()), cb.lessThan(id, desde.id()))));
+        }
+
+        query.select(root)
+                .where(predicados.toArray(new Predicate[0]))
+                .orderBy(haciaAtras ? List.of(cb.asc(fecha), cb.asc(id)) : List.of(cb.desc(fecha), cb.desc(id)));
+
+        List<T> filas = new ArrayList<>(entityManager.createQuery(query)
+                .setMaxResults(limite + 1)
+                .getResultList());
+
+        boolean hayMas = filas.size() > limite;
+        if (hayMas) {
+            filas.remove(limite);
+        }
+        if (haciaAtras) {
+            Collections.reverse(filas);
+        }
+
+        String siguiente = null;
+        String anterior = null;
+        if (!filas.isEmpty()) {
+            T primera = filas.get(0);
+            T ultima = filas.get(filas.size() - 1);
+            // Hacia adelante: si vinimos con cursor hay filas más recientes. Hacia atrás: siempre hay más antiguas.
+            boolean hayMasAntiguas = haciaAtras || hayMas;
+            boolean hayMasRecientes = haciaAtras ? hayMas : desde != null;
+            if (hayMasAntiguas) {
+                siguiente = new Cursor(orden.fecha().apply(ultima), orden.id().apply(ultima), false).codificar();
+            }
+            if (hayMasRecientes) {
+                anterior = new Cursor(orden.fecha().apply(primera), orden.id().apply(primera), true).codificar();
+            }
+        }
+
+        Long total = totalAproximado ? estimarTotal(orden.entidad()) : null;
+        return new PaginaKeyset<>(filas, siguiente, anterior, total);
+    }
+
+    /**
+     * Filas estimadas por PostgreSQL (pg_class.reltuples): sin COUNT(*), se actualiza con ANALYZE/autovacuum
+     */
+    public Long estimarTotal(Class<?> entidad) {
+        Table tabla = entidad.getAnnotation(Table.class);
+        if (tabla == null) {
+            return null;
+        }
+        // Siempre una fila: -1 si la tabla no existe o nunca se analizó
+        Number valor = (Number) entityManager.createNativeQuery(
+                        "SELECT COALESCE((SELECT CAST(reltuples AS bigint) FROM pg_class WHERE oid = to_regclass(:tabla)), -1)")
+                .setParameter("tabla", tabla.name())
+                .getSingleResult();
+        long estimado = valor.longValue();
+        return estimado >= 0 ? estimado : null;
+    }
+
+    // ==========================================
+    //        CURSOR OPACO
+    // ==========================================
+
+    /**
+     * Posición (fecha, id) de la última fila vista. Se codifica en Base64 URL para usarlo en enlaces.
+     */
+    private record Cursor(LocalDateTime fecha, Long id, boolean haciaAtras) {
+
+        String codificar() {
+            String texto = (haciaAtras ? "a" : "s") + "|" + fecha + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decodificar(String token) {
+            if (token == null || token.isBlank()) {
+                return null;
+            }
+            try {
+                String[] partes = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|");
+                return new Cursor(LocalDateTime.parse(partes[1]), Long.valueOf(partes[2]), "a".equals(partes[0]));
+            } catch (RuntimeException e) {
+                // Cursor manipulado o de otra versión: se vuelve a la primera página
+                return null;
+            }
+        }
+    }
+}
@@ -33,4 +33,11 @@ public interface MovimientoCajaRepository extends JpaRepository<MovimientoCaja,
 // Sumar ingresos/egresos de forma segura (evita el error de NULL)
     @Query("SELECT COALESCE(SUM(m.monto), 0) FROM MovimientoCaja m WHERE m.sesion = :sesion AND m.tipo = :tipo")
     BigDecimal sumarPorSesionYTipo(@Param("sesion") SesionCaja sesion, @Param("tipo") String tipo);
+
+    // Cantidad y suma por tipo en un rango (reportes financieros): [cantidad, total]
+    @Query("SELECT COUNT(m), COALESCE(SUM(m.monto), 0) FROM MovimientoCaja m " +
+           "WHERE m.tipo = :tipo AND m.fecha >= :inicio AND m.fecha < :finExclusivo")
+    List<Object[]> sumarPorTipoEntre(@Param("tipo") String tipo,
+                                     @Param("inicio") LocalDateTime inicio,
+                                     @Param("finExclusivo") LocalDateTime finExclusivo);
 }
\ No newline at end of file
@@ -2,7 +2,6 @@ package com.libreria.sistema.repository;
 
 import com.libreria.sistema.model.Notificacion;
 import com.libreria.sistema.model.Usuario;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -47,12 +46,6 @@ public interface NotificacionRepository extends JpaRepository<Notificacion, Long
            "ORDER BY n.fechaCreacion DESC")
     List<Notificacion> findUltimasParaUsuario(@Param("usuario") Usuario usuario, Pageable pageable);
 
-    /**
-     * Todas las notificaciones paginadas
-     */
-    @Query("SELECT n FROM Notificacion n ORDER BY n.fechaCreacion DESC")
-    Page<Notificacion> findAllOrdenadas(Pageable pageable);
-
     /**
      * Notificaciones por tipo
      */
@@ -0,0 +1,38 @@
+package com.libreria.sistema.repository;
+
+import lombok.Value;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de resultados por keyset (búsqueda por posición), ordenada por (fecha DESC, id DESC).
+ *
+ * No tiene número de página ni total exacto: se navega con los cursores opacos
+ * "siguiente" (más antiguos) y "anterior" (más recientes). Son null cuando no hay más filas.
+ * totalAproximado sale de las estadísticas de PostgreSQL y solo se informa si se pidió.
+ */
+@Value
+public class PaginaKeyset<T> {
+    List<T> contenido;
+    String siguiente;
+    String anterior;
+    Long totalAproximado;
+
+    public boolean isEmpty() {
+        return contenido.isEmpty();
+    }
+
+    public boolean isHaySiguiente() {
+        return siguiente != null;
+    }
+
+    public boolean isHayAnterior() {
+        return anterior != null;
+    }
+
+    public <R> PaginaKeyset<R> map(Function<? super T, ? extends R> conversor) {
+        List<R> convertido = contenido.stream().<R>map(conversor).toList();
+        return new PaginaKeyset<>(convertido, siguiente, anterior, totalAproximado);
+    }
+}
@@ -1,16 +1,24 @@
 package com.libreria.sistema.repository;
 
 import com.libreria.sistema.model.Producto;
+import com.libreria.sistema.util.Constants;
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ProductoRepository extends JpaRepository<Producto, Long> {
 
@@ -29,6 +37,18 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
     @Query("SELECT p FROM Producto p WHERE p.id = :id")
     Optional<Producto> findByIdWithLock(@Param("id") Long id);
 
+    /**
+     * Bloquea en UNA sola consulta todos los productos de un carrito.
+     * CRÍTICO: El ORDER BY id garantiza que todas las transacciones adquieran
+     * los locks en el mismo orden, evitando deadlocks entre carritos que
+     * comparten productos en distinto orden.
+     *
+     * El lock se mantiene hasta el fin de la transacción.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Producto p WHERE p.id IN :ids ORDER BY p.id ASC")
+    List<Producto> findAllByIdInWithLock(@Param("ids") Collection<Long> ids);
+
     /**
      * Obtiene producto por código de barras con LOCK PESIMISTA
      */
@@ -94,21 +114,22 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
 
     /**
      * Top 5 Productos Más Vendidos (sin paginación - para Dashboard)
+     * Lee los hechos producto/día (ventas no anuladas) en vez de todo el detalle de ventas
      */
-    @Query(value = "SELECT new com.libreria.sistema.model.dto.ReporteDTO(p.nombre, SUM(d.cantidad)) " +
-           "FROM DetalleVenta d JOIN d.producto p " +
+    @Query(value = "SELECT new com.libreria.sistema.model.dto.ReporteDTO(p.nombre, SUM(f.cantidadVendida)) " +
+           "FROM VentaProductoDiario f JOIN Producto p ON p.id = f.productoId " +
            "GROUP BY p.nombre " +
-           "ORDER BY SUM(d.cantidad) DESC " +
+           "ORDER BY SUM(f.cantidadVendida) DESC " +
            "LIMIT 5")
     List<com.libreria.sistema.model.dto.ReporteDTO> obtenerTopProductos();
 
     /**
      * Top Productos Más Vendidos con paginación (para reportes)
      */
-    @Query("SELECT new com.libreria.sistema.model.dto.ReporteDTO(p.nombre, SUM(d.cantidad)) " +
-           "FROM DetalleVenta d JOIN d.producto p " +
+    @Query("SELECT new com.libreria.sistema.model.dto.ReporteDTO(p.nombre, SUM(f.cantidadVendida)) " +
+           "FROM VentaProductoDiario f JOIN Producto p ON p.id = f.productoId " +
            "GROUP BY p.nombre " +
-           "ORDER BY SUM(d.cantidad) DESC")
+           "ORDER BY SUM(f.cantidadVendida) DESC")
     List<com.libreria.sistema.model.dto.ReporteDTO> obtenerTopProductosPaginated(Pageable pageable);
 
     /**
@@ -120,12 +141,33 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
                    "AND p.stock_actual > 0 AND p.activo = true", nativeQuery = true)
     List<Producto> obtenerProductosSinMovimiento();
 
+    /**
+     * Productos activos sin ventas (no anuladas) en un periodo
+     */
+    @Query("SELECT p FROM Producto p WHERE p.activo = true AND NOT EXISTS (" +
+           "SELECT 1 FROM VentaProductoDiario f WHERE f.productoId = p.id " +
+           "AND f.fecha BETWEEN :inicio AND :fin AND f.cantidadVendida > 0) " +
+           "ORDER BY p.nombre ASC")
+    List<Producto> obtenerSinVentasEntre(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin);
+
     /**
      * Stock Crítico (productos activos con stock bajo)
      */
     @Query("SELECT p FROM Producto p WHERE p.stockActual <= p.stockMinimo AND p.activo = true ORDER BY p.stockActual ASC")
     List<Producto> obtenerStockCritico();
 
+    /**
+     * Stock Crítico limitado (sin consulta de conteo) - PARA DASHBOARD
+     */
+    @Query("SELECT p FROM Producto p WHERE p.stockActual <= p.stockMinimo AND p.activo = true ORDER BY p.stockActual ASC")
+    List<Producto> obtenerStockCritico(Pageable pageable);
+
+    /**
+     * Valor del inventario a precio de compra (costo x stock)
+     */
+    @Query("SELECT COALESCE(SUM(COALESCE(p.precioCompra, 0) * COALESCE(p.stockActual, 0)), 0) FROM Producto p")
+    BigDecimal calcularValorInventario();
+
     /**
      * Stock Crítico con paginación
      */
@@ -155,4 +197,64 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
      */
     @Query("SELECT p.codigoInterno FROM Producto p WHERE p.codigoInterno LIKE 'SKU-%' ORDER BY p.codigoInterno DESC LIMIT 1")
     Optional<String> findUltimoSku();
+
+    /**
+     * Datos descriptivos actuales de varios productos: [id, codigoInterno, nombre, categoria]
+     * (los reportes guardan solo el id y los totales, el nombre se une al armarlos)
+     */
+    @Query("SELECT p.id, p.codigoInterno, p.nombre, p.categoria FROM Producto p WHERE p.id IN :ids")
+    List<Object[]> findDatosParaReporte(@Param("ids") Collection<Long> ids);
+
+    // =====================================================
+    //  EXPORTACIONES EN STREAMING (CURSOR, SIN ENTIDADES)
+    //  Consumir dentro de una transacción y cerrar el Stream
+    // =====================================================
+
+    /**
+     * Productos activos: [codigoInterno, nombre, categoria, stockActual, precioCompra, precioVenta]
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = Constants.REPORTE_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p.codigoInterno, p.nombre, p.categoria, p.stockActual, p.precioCompra, p.precioVenta " +
+           "FROM Producto p WHERE p.activo = true ORDER BY p.nombre ASC")
+    Stream<Object[]> streamActivosParaReporte();
+
+    /**
+     * Stock crítico según el mínimo de cada producto: [codigoInterno, nombre, categoria, stockActual, stockMinimo]
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = Constants.REPORTE_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p.codigoInterno, p.nombre, p.categoria, p.stockActual, p.stockMinimo " +
+           "FROM Producto p WHERE p.stockActual <= p.stockMinimo AND p.activo = true ORDER BY p.stockActual ASC")
+    Stream<Object[]> streamStockCritico();
+
+    /**
+     * Stock bajo un mínimo global: [codigoInterno, nombre, stockActual]
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = Constants.REPORTE_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p.codigoInterno, p.nombre, p.stockActual " +
+           "FROM Producto p WHERE p.stockActual <= :minimo AND p.activo = true ORDER BY p.stockActual ASC")
+    Stream<Object[]> streamStockBajoMinimo(@Param("minimo") Integer minimo);
+
+    /**
+     * Productos activos en el orden de columnas de la plantilla de importación:
+     * [codigoBarra, codigoInterno, nombre, categoria, marca, modelo, descripcion, precioCompra,
+     *  precioVenta, precioMayorista, stockActual, stockMinimo, unidadMedida, fila, columna, estante]
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = Constants.REPORTE_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p.codigoBarra, p.codigoInterno, p.nombre, p.categoria, p.marca, p.modelo, p.descripcion, " +
+           "p.precioCompra, p.precioVenta, p.precioMayorista, p.stockActual, p.stockMinimo, p.unidadMedida, " +
+           "p.ubicacionFila, p.ubicacionColumna, p.ubicacionEstante " +
+           "FROM Producto p WHERE p.activo = true ORDER BY p.id ASC")
+    Stream<Object[]> streamParaExportacion();
 }
@@ -0,0 +1,23 @@
+package com.libreria.sistema.repository;
+
+import com.libreria.sistema.model.ReporteMesCerrado;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface ReporteMesCerradoRepository extends JpaRepository<ReporteMesCerrado, Long> {
+
+    List<ReporteMesCerrado> findByTipoAndMesIn(String tipo, Collection<LocalDate> meses);
+
+    /**
+     * Elimina los resultados de los meses [desde, hasta] (primer día de cada mes)
+     */
+    @Modifying
+    @Query("DELETE FROM ReporteMesCerrado r WHERE r.mes BETWEEN :desde AND :hasta")
+    int eliminarEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+}
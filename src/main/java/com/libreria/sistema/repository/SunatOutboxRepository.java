@@ -0,0 +1,35 @@
+package com.libreria.sistema.repository;
+
+import com.libreria.sistema.model.SunatOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface SunatOutboxRepository extends JpaRepository<SunatOutbox, Long> {
+
+    /**
+     * Envíos listos para despachar: PENDIENTES cuyo backoff ya venció, o EN_PROCESO
+     * abandonados (p.ej. el servidor se reinició a mitad de un envío).
+     */
+    @Query("SELECT o FROM SunatOutbox o WHERE " +
+           "(o.estado = 'PENDIENTE' AND o.proximoIntento <= :ahora) OR " +
+           "(o.estado = 'EN_PROCESO' AND o.fechaActualizacion < :limiteEnProceso) " +
+           "ORDER BY o.proximoIntento ASC")
+    List<SunatOutbox> findListosParaEnvio(@Param("ahora") LocalDateTime ahora,
+                                          @Param("limiteEnProceso") LocalDateTime limiteEnProceso,
+                                          Pageable pageable);
+
+    /**
+     * Renueva un reclamo justo antes de enviar: 0 si el envío ya no es EN_PROCESO con ese token
+     * (el despachador lo volvió a reclamar mientras esperaba en la cola)
+     */
+    @Modifying
+    @Query("UPDATE SunatOutbox o SET o.fechaActualizacion = :ahora " +
+           "WHERE o.id = :id AND o.estado = 'EN_PROCESO' AND o.reclamo = :reclamo")
+    int renovarReclamo(@Param("id") Long id, @Param("reclamo") String reclamo, @Param("ahora") LocalDateTime ahora);
+}
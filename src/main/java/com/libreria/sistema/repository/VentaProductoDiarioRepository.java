@@ -0,0 +1,138 @@
+package com.libreria.sistema.repository;
+
+import com.libreria.sistema.model.VentaProductoDiario;
+import com.libreria.sistema.util.Constants;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface VentaProductoDiarioRepository extends JpaRepository<VentaProductoDiario, Long> {
+
+    // =====================================================
+    //  MANTENIMIENTO INCREMENTAL
+    // =====================================================
+
+    /**
+     * Suma los deltas a la fila (fecha, producto), creándola si no existe, en UNA sentencia
+     */
+    @Modifying
+    @Query(value = "INSERT INTO ventas_producto_diario (fecha, producto_id, cantidad_vendida, total_vendido, costo_vendido, " +
+                   "cantidad_devuelta, monto_devuelto, costo_devuelto) " +
+                   "VALUES (:fecha, :productoId, :cantidadVendida, :totalVendido, :costoVendido, " +
+                   ":cantidadDevuelta, :montoDevuelto, :costoDevuelto) " +
+                   "ON CONFLICT (fecha, producto_id) DO UPDATE SET " +
+                   "cantidad_vendida = ventas_producto_diario.cantidad_vendida + EXCLUDED.cantidad_vendida, " +
+                   "total_vendido = ventas_producto_diario.total_vendido + EXCLUDED.total_vendido, " +
+                   "costo_vendido = ventas_producto_diario.costo_vendido + EXCLUDED.costo_vendido, " +
+                   "cantidad_devuelta = ventas_producto_diario.cantidad_devuelta + EXCLUDED.cantidad_devuelta, " +
+                   "monto_devuelto = ventas_producto_diario.monto_devuelto + EXCLUDED.monto_devuelto, " +
+                   "costo_devuelto = ventas_producto_diario.costo_devuelto + EXCLUDED.costo_devuelto",
+           nativeQuery = true)
+    int acumular(@Param("fecha") LocalDate fecha,
+                 @Param("productoId") Long productoId,
+                 @Param("cantidadVendida") BigDecimal cantidadVendida,
+                 @Param("totalVendido") BigDecimal totalVendido,
+                 @Param("costoVendido") BigDecimal costoVendido,
+                 @Param("cantidadDevuelta") BigDecimal cantidadDevuelta,
+                 @Param("montoDevuelto") BigDecimal montoDevuelto,
+                 @Param("costoDevuelto") BigDecimal costoDevuelto);
+
+    // =====================================================
+    //  RECONSTRUCCIÓN (BACKFILL)
+    // =====================================================
+
+    @Modifying
+    @Query(value = "DELETE FROM ventas_producto_diario WHERE fecha BETWEEN :desde AND :hasta", nativeQuery = true)
+    int eliminarRango(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    /**
+     * Recalcula el rango desde detalle_ventas (ventas no anuladas, por fecha de emisión) y
+     * detalle_devoluciones (devoluciones procesadas, por fecha de registro).
+     * Las líneas antiguas sin costo guardado usan el precio de compra actual del producto.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO ventas_producto_diario (fecha, producto_id, cantidad_vendida, total_vendido, costo_vendido, " +
+                   "cantidad_devuelta, monto_devuelto, costo_devuelto) " +
+                   "SELECT t.fecha, t.producto_id, SUM(t.cantidad_vendida), SUM(t.total_vendido), SUM(t.costo_vendido), " +
+                   "SUM(t.cantidad_devuelta), SUM(t.monto_devuelto), SUM(t.costo_devuelto) " +
+                   "FROM (" +
+                   "  SELECT v.fecha_emision AS fecha, d.producto_id AS producto_id, " +
+                   "         COALESCE(d.cantidad, 0) AS cantidad_vendida, COALESCE(d.subtotal, 0) AS total_vendido, " +
+                   "         COALESCE(d.cantidad, 0) * COALESCE(d.costo_unitario, p.precio_compra, 0) AS costo_vendido, " +
+                   "         0 AS cantidad_devuelta, 0 AS monto_devuelto, 0 AS costo_devuelto " +
+                   "  FROM detalle_ventas d JOIN ventas v ON v.id = d.venta_id JOIN productos p ON p.id = d.producto_id " +
+                   "  WHERE v.fecha_emision BETWEEN :desde AND :hasta AND COALESCE(v.estado, '') <> 'ANULADO' " +
+                   "  UNION ALL " +
+                   "  SELECT CAST(dv.fecha_creacion AS DATE), dd.producto_id, 0, 0, 0, " +
+                   "         dd.cantidad_devuelta, dd.subtotal, " +
+                   "         dd.cantidad_devuelta * COALESCE(dd.costo_unitario, p.precio_compra, 0) " +
+                   "  FROM detalle_devoluciones dd JOIN devoluciones dv ON dv.id = dd.devolucion_id " +
+                   "  JOIN productos p ON p.id = dd.producto_id " +
+                   "  WHERE dv.estado = 'PROCESADA' AND dv.fecha_creacion >= :inicio AND dv.fecha_creacion < :finExclusivo" +
+                   ") t " +
+                   "GROUP BY t.fecha, t.producto_id",
+           nativeQuery = true)
+    int reconstruirRango(@Param("desde") LocalDate desde,
+                         @Param("hasta") LocalDate hasta,
+                         @Param("inicio") LocalDateTime inicio,
+                         @Param("finExclusivo") LocalDateTime finExclusivo);
+
+    // =====================================================
+    //  CONSULTAS PARA REPORTES
+    // =====================================================
+
+    /**
+     * Totales por producto en un periodo, de más a menos vendido:
+     * [productoId, codigoInterno, nombre, categoria, cantVendida, totalVendido, costoVendido,
+     *  cantDevuelta, montoDevuelto, costoDevuelto]
+     */
+    @Query("SELECT p.id, p.codigoInterno, p.nombre, p.categoria, " +
+           "SUM(f.cantidadVendida), SUM(f.totalVendido), SUM(f.costoVendido), " +
+           "SUM(f.cantidadDevuelta), SUM(f.montoDevuelto), SUM(f.costoDevuelto) " +
+           "FROM VentaProductoDiario f JOIN Producto p ON p.id = f.productoId " +
+           "WHERE f.fecha BETWEEN :desde AND :hasta " +
+           "GROUP BY p.id, p.codigoInterno, p.nombre, p.categoria " +
+           "HAVING SUM(f.cantidadVendida) > 0 " +
+           "ORDER BY SUM(f.cantidadVendida) DESC")
+    List<Object[]> sumarPorProductoEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta, Pageable pageable);
+
+    /**
+     * Igual que sumarPorProductoEntre pero incluye productos solo con devoluciones y sin orden:
+     * los totales de varios tramos se suman por producto (meses cerrados de PeriodoCerradoService).
+     * Solo el id: el nombre y la categoría se leen al armar el reporte (un renombre no invalida meses cerrados)
+     * [productoId, cantVendida, totalVendido, costoVendido, cantDevuelta, montoDevuelto, costoDevuelto]
+     */
+    @Query("SELECT f.productoId, " +
+           "SUM(f.cantidadVendida), SUM(f.totalVendido), SUM(f.costoVendido), " +
+           "SUM(f.cantidadDevuelta), SUM(f.montoDevuelto), SUM(f.costoDevuelto) " +
+           "FROM VentaProductoDiario f " +
+           "WHERE f.fecha BETWEEN :desde AND :hasta " +
+           "GROUP BY f.productoId")
+    List<Object[]> totalizarPorProductoEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    /**
+     * Filas producto/día de un periodo (con ventas), en streaming:
+     * [fecha, nombre, cantVendida, totalVendido, costoVendido, cantDevuelta, montoDevuelto, costoDevuelto]
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = Constants.REPORTE_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f.fecha, p.nombre, f.cantidadVendida, f.totalVendido, f.costoVendido, " +
+           "f.cantidadDevuelta, f.montoDevuelto, f.costoDevuelto " +
+           "FROM VentaProductoDiario f JOIN Producto p ON p.id = f.productoId " +
+           "WHERE f.fecha BETWEEN :desde AND :hasta AND f.cantidadVendida > 0 " +
+           "ORDER BY f.fecha ASC, p.nombre ASC")
+    Stream<Object[]> streamEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+}
@@ -1,19 +1,36 @@
 package com.libreria.sistema.repository;
 
 import com.libreria.sistema.model.Venta;
+import com.libreria.sistema.util.Constants;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface VentaRepository extends JpaRepository<Venta, Long> {
 
+    /**
+     * Venta registrada con una clave de idempotencia (reintentos del POS)
+     */
+    Optional<Venta> findByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Ventas ya registradas de un lote offline (detección de duplicados en una consulta)
+     */
+    List<Venta> findByIdempotencyKeyIn(Collection<String> idempotencyKeys);
+
     // =====================================================
     //  CONSULTAS OPTIMIZADAS PARA REPORTES (FILTRO EN BD)
     // =====================================================
@@ -67,6 +84,50 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
             @Param("inicio") LocalDate inicio,
             @Param("fin") LocalDate fin);
 
+    // =====================================================
+    //  AGREGADOS PARA DASHBOARD (SIN CARGAR ENTIDADES)
+    // =====================================================
+
+    /**
+     * Suma de ventas en un estado desde una fecha (KPI ventas del mes)
+     */
+    @Query("SELECT COALESCE(SUM(v.total), 0) FROM Venta v WHERE v.estado = :estado AND v.fechaEmision >= :inicio")
+    BigDecimal sumarTotalPorEstadoDesde(@Param("estado") String estado, @Param("inicio") LocalDate inicio);
+
+    /**
+     * Total de créditos por cobrar (saldo pendiente de ventas no anuladas)
+     */
+    @Query("SELECT COALESCE(SUM(v.saldoPendiente), 0) FROM Venta v WHERE v.saldoPendiente > 0 AND v.estado != 'ANULADO'")
+    BigDecimal sumarSaldoPendiente();
+
+    /**
+     * Total vendido por mes desde una fecha: [año, mes, total]
+     */
+    @Query("SELECT YEAR(v.fechaEmision), MONTH(v.fechaEmision), COALESCE(SUM(v.total), 0) FROM Venta v " +
+           "WHERE v.fechaEmision >= :inicio " +
+           "GROUP BY YEAR(v.fechaEmision), MONTH(v.fechaEmision)")
+    List<Object[]> sumarTotalPorMesDesde(@Param("inicio") LocalDate inicio);
+
+    /**
+     * Cantidad de ventas por forma de pago: [formaPago, cantidad]
+     */
+    @Query("SELECT v.formaPago, COUNT(v) FROM Venta v GROUP BY v.formaPago")
+    List<Object[]> contarPorFormaPago();
+
+    /**
+     * Fecha de emisión de la venta más antigua (inicio de la reconstrucción del resumen diario)
+     */
+    @Query("SELECT MIN(v.fechaEmision) FROM Venta v")
+    LocalDate obtenerPrimeraFechaEmision();
+
+    /**
+     * Mejores clientes de un periodo (ventas no anuladas): [nombre, total, cantidad]
+     */
+    @Query("SELECT c.nombreRazonSocial, SUM(v.total), COUNT(v) FROM Venta v JOIN v.clienteEntity c " +
+           "WHERE v.fechaEmision BETWEEN :inicio AND :fin AND v.estado != 'ANULADO' " +
+           "GROUP BY c.id, c.nombreRazonSocial ORDER BY SUM(v.total) DESC")
+    List<Object[]> obtenerTopClientes(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin, Pageable pageable);
+
     // =====================================================
     //  CONSULTAS CON PAGINACIÓN GENERAL
     // =====================================================
@@ -90,14 +151,15 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
     Page<Venta> findByClienteDocumentoPaginated(@Param("documento") String documento, Pageable pageable);
 
     /**
-     * Búsqueda general paginada por término (serie-numero, cliente, documento)
+     * Filtro de búsqueda general por término (serie-numero, cliente, documento) para el listado por keyset
      */
-    @Query("SELECT v FROM Venta v WHERE " +
-           "CONCAT(v.serie, '-', CAST(v.numero AS string)) LIKE %:termino% " +
-           "OR LOWER(v.clienteDenominacion) LIKE LOWER(CONCAT('%', :termino, '%')) " +
-           "OR v.clienteNumeroDocumento LIKE %:termino% " +
-           "ORDER BY v.fechaCreacion DESC")
-    Page<Venta> buscarPorTermino(@Param("termino") String termino, Pageable pageable);
+    static Specification<Venta> porTermino(String termino) {
+        String patron = "%" + termino + "%";
+        return (root, query, cb) -> cb.or(
+                cb.like(cb.concat(cb.concat(root.get("serie"), "-"), root.get("numero").as(String.class)), patron),
+                cb.like(cb.lower(root.get("clienteDenominacion")), patron.toLowerCase()),
+                cb.like(root.get("clienteNumeroDocumento"), patron));
+    }
 
     // =====================================================
     //  MÉTODOS EXISTENTES (MANTENIDOS)
@@ -107,10 +169,10 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
      * Obtener el último número de serie para correlativos.
      *
      * ADVERTENCIA: Este método puede devolver NULL si no existen ventas para la serie/tipo especificada.
-     * Se recomienda usar el sistema de Correlativos (CorrelativoRepository) en lugar de este método,
+     * Se recomienda usar el sistema de Correlativos (CorrelativoService) en lugar de este método,
      * ya que maneja automáticamente el caso de series nuevas sin registros previos.
      *
-     * @deprecated Usar CorrelativoRepository.findByCodigoAndSerieWithLock() que maneja series nuevas automáticamente
+     * @deprecated Usar CorrelativoService.siguienteNumero() que maneja series nuevas automáticamente
      */
     @Query("SELECT MAX(v.numero) FROM Venta v WHERE v.serie = :serie AND v.tipoComprobante = :tipo")
     Integer obtenerUltimoNumero(@Param("serie") String serie, @Param("tipo") String tipo);
@@ -233,4 +295,42 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
            "AND v.estado != 'ANULADO' " +
            "GROUP BY v.tipoComprobante")
     List<Object[]> countByTipoComprobanteAndPeriodo(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin);
+
+    // =====================================================
+    //  EXPORTACIONES EN STREAMING (CURSOR, SIN ENTIDADES)
+    //  Consumir dentro de una transacción y cerrar el Stream
+    // =====================================================
+
+    /**
+     * Ventas del periodo, una fila por comprobante:
+     * [id, fechaEmision, tipoComprobante, serie, numero, clienteDenominacion, metodoPago,
+     *  totalGravada, totalIgv, total, estado]
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = Constants.REPORTE_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT v.id, v.fechaEmision, v.tipoComprobante, v.serie, v.numero, v.clienteDenominacion, v.metodoPago, " +
+           "v.totalGravada, v.totalIgv, v.total, v.estado " +
+           "FROM Venta v WHERE v.fechaEmision BETWEEN :inicio AND :fin ORDER BY v.fechaEmision DESC, v.id DESC")
+    Stream<Object[]> streamFilasReporte(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin);
+
+    /**
+     * Ventas vigentes por vendedor (usuarioId null = todos): [username, nombreCompleto, cantidad, total]
+     */
+    @Query("SELECT u.username, u.nombreCompleto, COUNT(v), COALESCE(SUM(v.total), 0) FROM Venta v JOIN v.usuario u " +
+           "WHERE v.fechaEmision BETWEEN :inicio AND :fin AND v.estado != 'ANULADO' " +
+           "AND (:usuarioId IS NULL OR u.id = :usuarioId) " +
+           "GROUP BY u.username, u.nombreCompleto ORDER BY SUM(v.total) DESC")
+    List<Object[]> resumirPorUsuario(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin,
+                                     @Param("usuarioId") Long usuarioId);
+
+    /**
+     * Totales del periodo (todas las ventas emitidas): [cantidad, total, igv, totalContado, totalCredito]
+     */
+    @Query("SELECT COUNT(v), COALESCE(SUM(v.total), 0), COALESCE(SUM(v.totalIgv), 0), " +
+           "COALESCE(SUM(CASE WHEN v.formaPago = 'CONTADO' THEN v.total ELSE 0 END), 0), " +
+           "COALESCE(SUM(CASE WHEN v.formaPago = 'CREDITO' THEN v.total ELSE 0 END), 0) " +
+           "FROM Venta v WHERE v.fechaEmision BETWEEN :inicio AND :fin")
+    List<Object[]> resumirTotalesEntre(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin);
 }
@@ -0,0 +1,150 @@
+package com.libreria.sistema.repository;
+
+import com.libreria.sistema.model.VentaResumenDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface VentaResumenDiarioRepository extends JpaRepository<VentaResumenDiario, Long> {
+
+    // =====================================================
+    //  MANTENIMIENTO INCREMENTAL
+    // =====================================================
+
+    /**
+     * Suma los deltas a la fila de la clave (la crea si no existe) en UNA sentencia.
+     * Dos transacciones sobre la misma clave se serializan en el lock de esa fila.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO ventas_resumen_diario (fecha, metodo_pago, usuario_id, tipo_comprobante, forma_pago, " +
+                   "cantidad_ventas, total_ventas, cantidad_anuladas, total_anulado, " +
+                   "cantidad_cobros, monto_cobrado, cantidad_devoluciones, monto_devuelto) " +
+                   "VALUES (:fecha, :metodoPago, :usuarioId, :tipoComprobante, :formaPago, " +
+                   ":cantidadVentas, :totalVentas, :cantidadAnuladas, :totalAnulado, " +
+                   ":cantidadCobros, :montoCobrado, :cantidadDevoluciones, :montoDevuelto) " +
+                   "ON CONFLICT (fecha, metodo_pago, usuario_id, tipo_comprobante, forma_pago) DO UPDATE SET " +
+                   "cantidad_ventas = ventas_resumen_diario.cantidad_ventas + EXCLUDED.cantidad_ventas, " +
+                   "total_ventas = ventas_resumen_diario.total_ventas + EXCLUDED.total_ventas, " +
+                   "cantidad_anuladas = ventas_resumen_diario.cantidad_anuladas + EXCLUDED.cantidad_anuladas, " +
+                   "total_anulado = ventas_resumen_diario.total_anulado + EXCLUDED.total_anulado, " +
+                   "cantidad_cobros = ventas_resumen_diario.cantidad_cobros + EXCLUDED.cantidad_cobros, " +
+                   "monto_cobrado = ventas_resumen_diario.monto_cobrado + EXCLUDED.monto_cobrado, " +
+                   "cantidad_devoluciones = ventas_resumen_diario.cantidad_devoluciones + EXCLUDED.cantidad_devoluciones, " +
+                   "monto_devuelto = ventas_resumen_diario.monto_devuelto + EXCLUDED.monto_devuelto",
+           nativeQuery = true)
+    int acumular(@Param("fecha") LocalDate fecha,
+                 @Param("metodoPago") String metodoPago,
+                 @Param("usuarioId") Long usuarioId,
+                 @Param("tipoComprobante") String tipoComprobante,
+                 @Param("formaPago") String formaPago,
+                 @Param("cantidadVentas") long cantidadVentas,
+                 @Param("totalVentas") BigDecimal totalVentas,
+                 @Param("cantidadAnuladas") long cantidadAnuladas,
+                 @Param("totalAnulado") BigDecimal totalAnulado,
+                 @Param("cantidadCobros") long cantidadCobros,
+                 @Param("montoCobrado") BigDecimal montoCobrado,
+                 @Param("cantidadDevoluciones") long cantidadDevoluciones,
+                 @Param("montoDevuelto") BigDecimal montoDevuelto);
+
+    // =====================================================
+    //  RECONSTRUCCIÓN (BACKFILL)
+    // =====================================================
+
+    /**
+     * Bloquea las escrituras incrementales hasta el fin de la transacción de reconstrucción.
+     * Las ventas concurrentes esperan y suman su delta DESPUÉS, sobre el resumen ya reconstruido.
+     */
+    @Modifying
+    @Query(value = "LOCK TABLE ventas_resumen_diario, ventas_producto_diario IN EXCLUSIVE MODE", nativeQuery = true)
+    void bloquearEscrituras();
+
+    @Modifying
+    @Query(value = "DELETE FROM ventas_resumen_diario WHERE fecha BETWEEN :desde AND :hasta", nativeQuery = true)
+    int eliminarRango(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    /**
+     * Recalcula el rango desde las tablas origen: ventas por fecha de emisión, amortizaciones
+     * por fecha de pago y devoluciones procesadas por fecha de registro.
+     * finExclusivo = día siguiente a :hasta a las 00:00.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO ventas_resumen_diario (fecha, metodo_pago, usuario_id, tipo_comprobante, forma_pago, " +
+                   "cantidad_ventas, total_ventas, cantidad_anuladas, total_anulado, " +
+                   "cantidad_cobros, monto_cobrado, cantidad_devoluciones, monto_devuelto) " +
+                   "SELECT t.fecha, t.metodo_pago, t.usuario_id, t.tipo_comprobante, t.forma_pago, " +
+                   "SUM(t.cantidad_ventas), SUM(t.total_ventas), SUM(t.cantidad_anuladas), SUM(t.total_anulado), " +
+                   "SUM(t.cantidad_cobros), SUM(t.monto_cobrado), SUM(t.cantidad_devoluciones), SUM(t.monto_devuelto) " +
+                   "FROM (" +
+                   "  SELECT v.fecha_emision AS fecha, COALESCE(v.metodo_pago, '') AS metodo_pago, " +
+                   "         COALESCE(v.usuario_id, 0) AS usuario_id, COALESCE(v.tipo_comprobante, '') AS tipo_comprobante, " +
+                   "         COALESCE(v.forma_pago, '') AS forma_pago, " +
+                   "         CASE WHEN v.estado = 'ANULADO' THEN 0 ELSE 1 END AS cantidad_ventas, " +
+                   "         CASE WHEN v.estado = 'ANULADO' THEN 0 ELSE COALESCE(v.total, 0) END AS total_ventas, " +
+                   "         CASE WHEN v.estado = 'ANULADO' THEN 1 ELSE 0 END AS cantidad_anuladas, " +
+                   "         CASE WHEN v.estado = 'ANULADO' THEN COALESCE(v.total, 0) ELSE 0 END AS total_anulado, " +
+                   "         0 AS cantidad_cobros, 0 AS monto_cobrado, 0 AS cantidad_devoluciones, 0 AS monto_devuelto " +
+                   "  FROM ventas v WHERE v.fecha_emision BETWEEN :desde AND :hasta " +
+                   "  UNION ALL " +
+                   "  SELECT CAST(a.fecha_pago AS DATE), COALESCE(a.metodo_pago, ''), COALESCE(v.usuario_id, 0), " +
+                   "         COALESCE(v.tipo_comprobante, ''), COALESCE(v.forma_pago, ''), " +
+                   "         0, 0, 0, 0, 1, COALESCE(a.monto, 0), 0, 0 " +
+                   "  FROM amortizaciones a JOIN ventas v ON v.id = a.venta_id " +
+                   "  WHERE a.fecha_pago >= :inicio AND a.fecha_pago < :finExclusivo " +
+                   "  UNION ALL " +
+                   "  SELECT CAST(d.fecha_creacion AS DATE), COALESCE(d.metodo_reembolso, ''), COALESCE(d.usuario_id, 0), " +
+                   "         COALESCE(v.tipo_comprobante, ''), COALESCE(v.forma_pago, ''), " +
+                   "         0, 0, 0, 0, 0, 0, 1, COALESCE(d.total_devuelto, 0) " +
+                   "  FROM devoluciones d JOIN ventas v ON v.id = d.venta_original_id " +
+                   "  WHERE d.estado = 'PROCESADA' AND d.fecha_creacion >= :inicio AND d.fecha_creacion < :finExclusivo" +
+                   ") t " +
+                   "GROUP BY t.fecha, t.metodo_pago, t.usuario_id, t.tipo_comprobante, t.forma_pago",
+           nativeQuery = true)
+    int reconstruirRango(@Param("desde") LocalDate desde,
+                         @Param("hasta") LocalDate hasta,
+                         @Param("inicio") LocalDateTime inicio,
+                         @Param("finExclusivo") LocalDateTime finExclusivo);
+
+    // =====================================================
+    //  CONSULTAS PARA REPORTES FINANCIEROS
+    // =====================================================
+
+    /**
+     * Totales del periodo por forma y método de pago:
+     * [formaPago, metodoPago, cantVentas, totalVentas, cantCobros, montoCobrado, cantDevoluciones, montoDevuelto]
+     */
+    @Query("SELECT r.formaPago, r.metodoPago, SUM(r.cantidadVentas), SUM(r.totalVentas), " +
+           "SUM(r.cantidadCobros), SUM(r.montoCobrado), SUM(r.cantidadDevoluciones), SUM(r.montoDevuelto) " +
+           "FROM VentaResumenDiario r WHERE r.fecha BETWEEN :desde AND :hasta " +
+           "GROUP BY r.formaPago, r.metodoPago")
+    List<Object[]> sumarPorFormaYMetodo(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    /**
+     * Ventas vigentes por día: [fecha, total]
+     */
+    @Query("SELECT r.fecha, SUM(r.totalVentas) FROM VentaResumenDiario r " +
+           "WHERE r.fecha BETWEEN :desde AND :hasta " +
+           "GROUP BY r.fecha HAVING SUM(r.cantidadVentas) > 0 ORDER BY r.fecha")
+    List<Object[]> sumarVentasPorDia(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    /**
+     * Ventas vigentes por vendedor: [nombreCompleto (null = sin usuario), cantidad, total]
+     */
+    @Query("SELECT u.nombreCompleto, SUM(r.cantidadVentas), SUM(r.totalVentas) FROM VentaResumenDiario r " +
+           "LEFT JOIN Usuario u ON u.id = r.usuarioId " +
+           "WHERE r.fecha BETWEEN :desde AND :hasta " +
+           "GROUP BY u.nombreCompleto HAVING SUM(r.cantidadVentas) > 0")
+    List<Object[]> sumarVentasPorUsuario(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    /**
+     * Ventas vigentes agrupadas por mes desde una fecha: [año, mes, total]
+     */
+    @Query("SELECT YEAR(r.fecha), MONTH(r.fecha), SUM(r.totalVentas) FROM VentaResumenDiario r " +
+           "WHERE r.fecha >= :desde GROUP BY YEAR(r.fecha), MONTH(r.fecha)")
+    List<Object[]> sumarVentasPorMesDesde(@Param("desde") LocalDate desde);
+}
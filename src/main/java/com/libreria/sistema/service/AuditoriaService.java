@@ -5,6 +5,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.libreria.sistema.model.AuditoriaLog;
 import com.libreria.sistema.repository.AuditoriaLogRepository;
+import com.libreria.sistema.repository.KeysetRepository;
+import com.libreria.sistema.repository.PaginaKeyset;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.persistence.criteria.Predicate;
 import lombok.extern.slf4j.Slf4j;
@@ -26,6 +28,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @Slf4j
@@ -34,6 +37,9 @@ public class AuditoriaService {
     @Autowired
     private AuditoriaLogRepository auditoriaLogRepository;
 
+    @Autowired
+    private KeysetRepository keysetRepository;
+
     private final ObjectMapper objectMapper;
 
     public AuditoriaService() {
@@ -79,8 +85,30 @@ public class AuditoriaService {
     public Page<AuditoriaLog> obtenerHistorial(String usuario, String modulo, String accion,
                                                LocalDateTime fechaInicio, LocalDateTime fechaFin,
                                                Pageable pageable) {
-        
-        Specification<AuditoriaLog> spec = (root, query, cb) -> {
+        return auditoriaLogRepository.findAll(
+                filtroHistorial(usuario, modulo, accion, fechaInicio, fechaFin), pageable);
+    }
+
+    /**
+     * OPTIMIZADO: Historial por keyset (fechaHora, id) para la pantalla de auditoría.
+     * Sin filtros informa el total aproximado de la tabla en lugar de un COUNT(*).
+     */
+    public PaginaKeyset<AuditoriaLog> buscarHistorial(String usuario, String modulo, String accion,
+                                                      LocalDateTime fechaInicio, LocalDateTime fechaFin,
+                                                      String cursor, int tamano) {
+        boolean sinFiltros = usuario == null && modulo == null && accion == null
+                && fechaInicio == null && fechaFin == null;
+        return keysetRepository.buscar(KeysetRepository.AUDITORIA,
+                filtroHistorial(usuario, modulo, accion, fechaInicio, fechaFin), cursor, tamano, sinFiltros);
+    }
+
+    public Optional<AuditoriaLog> obtenerPorId(Long id) {
+        return auditoriaLogRepository.findById(id);
+    }
+
+    private Specification<AuditoriaLog> filtroHistorial(String usuario, String modulo, String accion,
+                                                        LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        return (root, query, cb) -> {
             List<Predicate> predicates = new ArrayList<>();
 
             if (usuario != null && !usuario.isEmpty()) {
@@ -101,8 +129,6 @@ public class AuditoriaService {
 
             return cb.and(predicates.toArray(new Predicate[0]));
         };
-
-        return auditoriaLogRepository.findAll(spec, pageable);
     }
 
     public List<AuditoriaLog> obtenerHistorialEntidad(String entidad, Long entidadId) {
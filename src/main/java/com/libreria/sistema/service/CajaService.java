@@ -4,10 +4,10 @@ import com.libreria.sistema.aspect.Auditable;
 import com.libreria.sistema.model.MovimientoCaja;
 import com.libreria.sistema.model.SesionCaja;
 import com.libreria.sistema.model.Usuario;
+import com.libreria.sistema.repository.KeysetRepository;
 import com.libreria.sistema.repository.MovimientoCajaRepository;
+import com.libreria.sistema.repository.PaginaKeyset;
 import com.libreria.sistema.repository.SesionCajaRepository;
-import com.libreria.sistema.repository.UsuarioRepository;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -23,23 +23,24 @@ public class CajaService {
     // Usamos el nombre correcto del repositorio
     private final MovimientoCajaRepository movimientoRepo;
     private final SesionCajaRepository sesionRepo;
-    private final UsuarioRepository usuarioRepo;
+    private final ContextoUsuario contextoUsuario;
+    private final KeysetRepository keysetRepository;
 
-    public CajaService(MovimientoCajaRepository movimientoRepo, SesionCajaRepository sesionRepo, UsuarioRepository usuarioRepo) {
+    public CajaService(MovimientoCajaRepository movimientoRepo, SesionCajaRepository sesionRepo, ContextoUsuario contextoUsuario,
+                       KeysetRepository keysetRepository) {
         this.movimientoRepo = movimientoRepo;
         this.sesionRepo = sesionRepo;
-        this.usuarioRepo = usuarioRepo;
+        this.contextoUsuario = contextoUsuario;
+        this.keysetRepository = keysetRepository;
     }
 
+    // Usuario y sesión se resuelven una vez por petición (ContextoUsuario)
     private Usuario getUsuarioActual() {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        return usuarioRepo.findByUsername(username).orElse(null);
+        return contextoUsuario.getUsuario().orElse(null);
     }
 
     public Optional<SesionCaja> obtenerSesionActiva() {
-        Usuario u = getUsuarioActual();
-        if (u == null) return Optional.empty();
-        return sesionRepo.findByUsuarioAndEstado(u, "ABIERTA");
+        return contextoUsuario.getSesionCajaActiva();
     }
 
     @Transactional
@@ -48,12 +49,16 @@ public class CajaService {
         if (obtenerSesionActiva().isPresent()) {
             throw new RuntimeException("Ya tienes una caja abierta.");
         }
+        Usuario usuario = getUsuarioActual();
         SesionCaja sesion = new SesionCaja();
-        sesion.setUsuario(getUsuarioActual());
+        sesion.setUsuario(usuario);
+        // La sesión hereda la terminal del usuario: define su serie de comprobantes (B001, B002...)
+        sesion.setTerminal(usuario != null && usuario.getTerminalCaja() != null ? usuario.getTerminalCaja() : 1);
         sesion.setMontoInicial(montoInicial);
         sesion.setFechaInicio(LocalDateTime.now());
         sesion.setEstado("ABIERTA");
         sesionRepo.save(sesion);
+        contextoUsuario.actualizarSesionCaja(sesion);
         
         registrarMovimiento("INGRESO", "APERTURA DE CAJA", montoInicial);
     }
@@ -74,10 +79,37 @@ public class CajaService {
         movimientoRepo.save(mov);
     }
 
-    public List<MovimientoCaja> listarMovimientosSesion() {
-        return obtenerSesionActiva()
-                .map(movimientoRepo::findBySesionOrderByFechaDesc)
-                .orElse(List.of());
+    /**
+     * Registra varios ingresos/egresos de la sesión activa en una sola escritura en lote
+     * (sincronización de ventas offline).
+     */
+    @Transactional
+    public void registrarMovimientos(List<MovimientoCaja> movimientos) {
+        if (movimientos.isEmpty()) {
+            return;
+        }
+        SesionCaja sesion = obtenerSesionActiva()
+                .orElseThrow(() -> new RuntimeException("CAJA CERRADA: Debe abrir caja antes de operar."));
+        Usuario usuario = getUsuarioActual();
+
+        for (MovimientoCaja mov : movimientos) {
+            mov.setConcepto(mov.getConcepto().toUpperCase());
+            mov.setUsuario(usuario);
+            mov.setSesion(sesion);
+        }
+        movimientoRepo.saveAll(movimientos);
+    }
+
+    /**
+     * OPTIMIZADO: Movimientos del turno por keyset (sesion_id, fecha, id) en vez de cargar la sesión completa
+     */
+    public PaginaKeyset<MovimientoCaja> listarMovimientosSesion(String cursor, int tamano) {
+        SesionCaja sesion = obtenerSesionActiva().orElse(null);
+        if (sesion == null) {
+            return new PaginaKeyset<>(List.of(), null, null, null);
+        }
+        return keysetRepository.buscar(KeysetRepository.MOVIMIENTOS_CAJA,
+                (root, query, cb) -> cb.equal(root.get("sesion"), sesion), cursor, tamano, false);
     }
 
     // CORREGIDO: Usa las consultas seguras del repositorio
@@ -118,6 +150,7 @@ public class CajaService {
         sesion.setEstado("CERRADA");
 
         sesionRepo.save(sesion);
+        contextoUsuario.actualizarSesionCaja(null);
     }
     
     public Map<String, BigDecimal> obtenerBalanceHoy() {
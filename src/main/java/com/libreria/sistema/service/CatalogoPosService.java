@@ -0,0 +1,395 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.Producto;
+import com.libreria.sistema.model.dto.ProductoPosDTO;
+import com.libreria.sistema.model.evento.CambioEntidad;
+import com.libreria.sistema.repository.ProductoRepository;
+import com.libreria.sistema.util.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Índice en memoria del catálogo para la búsqueda del POS (type-ahead).
+ *
+ * - Código de barras / código interno: búsqueda exacta O(1)
+ * - Nombre, categoría y códigos: prefijo por palabra sobre un mapa ordenado de tokens
+ * - Resultados ordenados por relevancia y limitados a POS_BUSQUEDA_LIMITE
+ *
+ * Solo guarda los campos que muestra el POS (ProductoPosDTO). Se carga al iniciar,
+ * se actualiza tras cada commit que toca un producto (CambioEntidad)
+ * y se reconstruye periódicamente como red de seguridad ante cambios hechos por SQL.
+ */
+@Service
+@Slf4j
+public class CatalogoPosService {
+
+    private static final Pattern SEPARADORES = Pattern.compile("[^a-z0-9ñ]+");
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+
+    private final ProductoRepository productoRepository;
+
+    private volatile Indice indice = new Indice();
+    private volatile boolean cargado = false;
+
+    // Cambios recibidos mientras se reconstruye el índice (se reaplican al final)
+    private final Object escritura = new Object();
+    private List<ProductoPosDTO> pendientes;
+
+    public CatalogoPosService(ProductoRepository productoRepository) {
+        this.productoRepository = productoRepository;
+    }
+
+    // ==========================================
+    //        BÚSQUEDA
+    // ==========================================
+
+    /**
+     * Busca productos activos por código exacto o por prefijo de palabras en
+     * nombre / categoría / códigos. Todas las palabras del término deben coincidir.
+     */
+    public List<ProductoPosDTO> buscar(String termino) {
+        String q = normalizar(termino);
+        if (q.isEmpty()) {
+            return List.of();
+        }
+        if (!cargado) {
+            // Arranque en curso: se usa la consulta tradicional
+            return productoRepository.buscarInteligente(termino.trim()).stream()
+                    .limit(Constants.POS_BUSQUEDA_LIMITE)
+                    .map(ProductoPosDTO::desde)
+                    .toList();
+        }
+
+        Indice ix = indice;
+        List<String> palabras = tokenizar(q);
+        if (palabras.isEmpty()) {
+            return List.of();
+        }
+
+        // Candidatos: los ids de la palabra más selectiva que además coinciden con todas las demás.
+        // La intersección se hace ANTES del tope POS_BUSQUEDA_MAX_CANDIDATOS: con "cuaderno a4" el tope
+        // no se llena con cuadernos que no son A4 (que luego dejarían la intersección vacía).
+        String base = palabras.stream().min(Comparator.comparingInt(ix::contarConPrefijo)).orElseThrow();
+        Set<Long> candidatos = ix.idsConPrefijo(base, e -> coincideConTodas(e, palabras));
+
+        // Coincidencia exacta de código: siempre primero
+        Long exacto = ix.porCodigo.get(q);
+        if (exacto != null) {
+            candidatos.add(exacto);
+        }
+
+        // Ranking parcial: solo se conservan los mejores N
+        PriorityQueue<Resultado> mejores = new PriorityQueue<>(Comparator.reverseOrder());
+        for (Long id : candidatos) {
+            Entrada e = ix.porId.get(id);
+            if (e == null) {
+                continue;
+            }
+            mejores.add(new Resultado(puntuar(e, q, palabras.get(0), id.equals(exacto)), e));
+            if (mejores.size() > Constants.POS_BUSQUEDA_LIMITE) {
+                mejores.poll();
+            }
+        }
+
+        List<Resultado> ordenados = new ArrayList<>(mejores);
+        Collections.sort(ordenados);
+        return ordenados.stream().map(r -> r.entrada().producto()).toList();
+    }
+
+    /**
+     * Búsqueda exacta por código de barras o código interno (solo memoria)
+     */
+    public Optional<ProductoPosDTO> buscarPorCodigo(String codigo) {
+        String q = normalizar(codigo);
+        Indice ix = indice;
+        Entrada e = q.isEmpty() ? null : Optional.ofNullable(ix.porCodigo.get(q)).map(ix.porId::get).orElse(null);
+        return Optional.ofNullable(e).map(Entrada::producto);
+    }
+
+    /**
+     * Ruta rápida del escáner: O(1) en memoria. Solo si el código no está en el índice
+     * se consulta la BD (producto recién creado por SQL, índice aún cargando...) y el
+     * resultado queda indexado para los siguientes escaneos.
+     */
+    public Optional<ProductoPosDTO> escanear(String codigo) {
+        if (codigo == null || codigo.isBlank()) {
+            return Optional.empty();
+        }
+        Optional<ProductoPosDTO> enMemoria = buscarPorCodigo(codigo);
+        if (enMemoria.isPresent()) {
+            return enMemoria;
+        }
+
+        String limpio = codigo.trim();
+        Optional<ProductoPosDTO> enBd = productoRepository.findByCodigoBarra(limpio)
+                .or(() -> productoRepository.findByCodigoInterno(limpio))
+                .filter(Producto::isActivo)
+                .map(ProductoPosDTO::desde);
+        enBd.ifPresent(this::actualizar);
+        return enBd;
+    }
+
+    public Optional<ProductoPosDTO> obtener(Long id) {
+        return Optional.ofNullable(indice.porId.get(id)).map(Entrada::producto);
+    }
+
+    public boolean isCargado() {
+        return cargado;
+    }
+
+    /**
+     * Cada palabra del término es prefijo de algún token del producto
+     */
+    private static boolean coincideConTodas(Entrada e, List<String> palabras) {
+        for (String palabra : palabras) {
+            boolean coincide = false;
+            for (String token : e.tokens()) {
+                if (token.startsWith(palabra)) {
+                    coincide = true;
+                    break;
+                }
+            }
+            if (!coincide) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Menor puntaje = más relevante:
+     * 0 código exacto, 1 nombre empieza con el término, 2 una palabra del nombre empieza con él,
+     * 3 coincide en el nombre, 4 coincide en categoría/códigos
+     */
+    private int puntuar(Entrada e, String q, String primeraPalabra, boolean codigoExacto) {
+        if (codigoExacto) return 0;
+        if (e.nombre().startsWith(q)) return 1;
+        if (e.nombre().startsWith(primeraPalabra) || e.nombre().contains(" " + primeraPalabra)) return 2;
+        if (e.nombre().contains(primeraPalabra)) return 3;
+        return 4;
+    }
+
+    private record Resultado(int puntaje, Entrada entrada) implements Comparable<Resultado> {
+        @Override
+        public int compareTo(Resultado o) {
+            int c = Integer.compare(puntaje, o.puntaje);
+            return c != 0 ? c : entrada.nombre().compareTo(o.entrada.nombre());
+        }
+    }
+
+    // ==========================================
+    //        ACTUALIZACIÓN
+    // ==========================================
+
+    /**
+     * Aplica el estado confirmado de un producto (alta, cambio de datos o de stock).
+     * Los productos inactivos se retiran del índice.
+     */
+    public void actualizar(ProductoPosDTO producto) {
+        synchronized (escritura) {
+            indice.aplicar(producto);
+            if (pendientes != null) {
+                pendientes.add(producto);
+            }
+        }
+    }
+
+    /**
+     * Alta, cambio o baja de un producto, ya confirmada (después del commit; un rollback nunca llega al índice)
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void productoModificado(CambioEntidad cambio) {
+        if (cambio.entidad() instanceof Producto producto) {
+            if (cambio.eliminada()) {
+                eliminar(producto.getId());
+            } else {
+                actualizar(ProductoPosDTO.desde(producto));
+            }
+        }
+    }
+
+    public void eliminar(Long id) {
+        synchronized (escritura) {
+            indice.quitar(id);
+            if (pendientes != null) {
+                pendientes.add(new ProductoPosDTO(id, Long.MAX_VALUE, null, null, "", null,
+                        null, null, null, null, null, false));
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        reconstruir();
+    }
+
+    /**
+     * Reconstrucción completa cada 30 minutos (cambios hechos fuera de JPA).
+     * Las lecturas siguen usando el índice anterior hasta el intercambio.
+     */
+    @Scheduled(fixedDelay = 1800000, initialDelay = 1800000)
+    public void reconstruir() {
+        synchronized (escritura) {
+            pendientes = new ArrayList<>();
+        }
+        try {
+            long inicio = System.currentTimeMillis();
+            Indice nuevo = new Indice();
+            for (Producto p : productoRepository.findByActivoTrue()) {
+                nuevo.aplicar(ProductoPosDTO.desde(p));
+            }
+            synchronized (escritura) {
+                pendientes.forEach(nuevo::aplicar);
+                indice = nuevo;
+                cargado = true;
+            }
+            log.info("Catálogo POS indexado: {} productos en {} ms",
+                    nuevo.porId.size(), System.currentTimeMillis() - inicio);
+        } catch (Exception e) {
+            log.error("Error al indexar catálogo POS: {}", e.getMessage());
+        } finally {
+            synchronized (escritura) {
+                pendientes = null;
+            }
+        }
+    }
+
+    // ==========================================
+    //        ESTRUCTURA DEL ÍNDICE
+    // ==========================================
+
+    private record Entrada(ProductoPosDTO producto, String nombre, Set<String> tokens, Set<String> codigos) {}
+
+    /**
+     * Las escrituras se serializan con "escritura"; las lecturas no bloquean.
+     */
+    private static final class Indice {
+        private final Map<Long, Entrada> porId = new ConcurrentHashMap<>();
+        private final Map<String, Long> porCodigo = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListMap<String, Set<Long>> porToken = new ConcurrentSkipListMap<>();
+
+        /**
+         * Ids cuyos tokens empiezan con el prefijo y que cumplen el filtro. Para prefijos muy
+         * cortos se corta la recolección al llegar a POS_BUSQUEDA_MAX_CANDIDATOS coincidencias.
+         */
+        Set<Long> idsConPrefijo(String prefijo, Predicate<Entrada> filtro) {
+            Set<Long> ids = new HashSet<>();
+            for (Set<Long> conToken : conPrefijo(prefijo)) {
+                for (Long id : conToken) {
+                    Entrada e = porId.get(id);
+                    if (e != null && filtro.test(e)) {
+                        ids.add(id);
+                        if (ids.size() >= Constants.POS_BUSQUEDA_MAX_CANDIDATOS) {
+                            return ids;
+                        }
+                    }
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * Cuántos ids (con repeticiones entre tokens) tiene el prefijo: elige la palabra más selectiva
+         */
+        int contarConPrefijo(String prefijo) {
+            int total = 0;
+            for (Set<Long> conToken : conPrefijo(prefijo)) {
+                total += conToken.size();
+            }
+            return total;
+        }
+
+        private Collection<Set<Long>> conPrefijo(String prefijo) {
+            return porToken.subMap(prefijo, true, prefijo + Character.MAX_VALUE, false).values();
+        }
+
+        void aplicar(ProductoPosDTO p) {
+            Entrada actual = porId.get(p.getId());
+            if (actual != null && actual.producto().getVersion() != null && p.getVersion() != null
+                    && actual.producto().getVersion() > p.getVersion()) {
+                return; // Llegó tarde un estado más antiguo
+            }
+            quitar(p.getId());
+            if (!p.isActivo()) {
+                return;
+            }
+
+            String nombre = normalizar(p.getNombre());
+            Set<String> codigos = new HashSet<>();
+            if (p.getCodigoBarra() != null && !p.getCodigoBarra().isBlank()) codigos.add(normalizar(p.getCodigoBarra()));
+            if (p.getCodigoInterno() != null && !p.getCodigoInterno().isBlank()) codigos.add(normalizar(p.getCodigoInterno()));
+
+            Set<String> tokens = new HashSet<>(tokenizar(nombre));
+            tokens.addAll(tokenizar(normalizar(p.getCategoria())));
+            for (String codigo : codigos) {
+                tokens.add(codigo);
+                tokens.addAll(tokenizar(codigo));
+            }
+
+            Entrada entrada = new Entrada(p, nombre, tokens, codigos);
+            porId.put(p.getId(), entrada);
+            for (String codigo : codigos) {
+                porCodigo.put(codigo, p.getId());
+            }
+            for (String token : tokens) {
+                porToken.computeIfAbsent(token, k -> ConcurrentHashMap.newKeySet()).add(p.getId());
+            }
+        }
+
+        void quitar(Long id) {
+            Entrada anterior = porId.remove(id);
+            if (anterior == null) {
+                return;
+            }
+            for (String codigo : anterior.codigos()) {
+                porCodigo.remove(codigo, id);
+            }
+            for (String token : anterior.tokens()) {
+                Set<Long> ids = porToken.get(token);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        porToken.remove(token, ids);
+                    }
+                }
+            }
+        }
+    }
+
+    // ==========================================
+    //        UTILIDADES
+    // ==========================================
+
+    /**
+     * Minúsculas y sin tildes ("Lápiz" -> "lapiz"); la ñ se conserva
+     */
+    static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String t = texto.trim().toLowerCase(Locale.ROOT).replace('ñ', '\u0001');
+        t = DIACRITICOS.matcher(Normalizer.normalize(t, Normalizer.Form.NFD)).replaceAll("");
+        return t.replace('\u0001', 'ñ');
+    }
+
+    private static List<String> tokenizar(String normalizado) {
+        List<String> tokens = new ArrayList<>();
+        for (String t : SEPARADORES.split(normalizado)) {
+            if (!t.isEmpty()) {
+                tokens.add(t);
+            }
+        }
+        return tokens;
+    }
+}
@@ -13,6 +13,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 @Slf4j
 public class CompraService {
@@ -48,6 +51,7 @@ public class CompraService {
         compra.setEstado("ANULADA");
 
         // Reversar stock (decrementar lo que se había agregado)
+        List<Kardex> movimientos = new ArrayList<>();
         for (DetalleCompra detalle : compra.getDetalles()) {
             Producto producto = detalle.getProducto();
             if (producto != null) {
@@ -64,7 +68,6 @@ public class CompraService {
 
                 // Decrementar stock
                 producto.setStockActual(producto.getStockActual() - cantidadComprada);
-                productoRepository.save(producto);
 
                 // Registrar en kardex
                 Kardex kardex = new Kardex();
@@ -75,10 +78,14 @@ public class CompraService {
                 kardex.setCantidad(cantidadComprada);
                 kardex.setStockAnterior(producto.getStockActual() + cantidadComprada);
                 kardex.setStockActual(producto.getStockActual());
-                kardexRepository.save(kardex);
+                movimientos.add(kardex);
             }
         }
 
+        // Escritura en lote (JDBC batch): Kardex y productos
+        kardexRepository.saveAll(movimientos);
+        productoRepository.saveAll(movimientos.stream().map(Kardex::getProducto).distinct().toList());
+
         // Guardar compra con estado anulado
         compraRepository.save(compra);
 
@@ -2,23 +2,136 @@ package com.libreria.sistema.service;
 
 import com.libreria.sistema.model.Configuracion;
 import com.libreria.sistema.repository.ConfiguracionRepository;
+import com.lowagie.text.Image;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional; // IMPORTANTE
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
 import java.math.BigDecimal;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+@Slf4j
 @Service
 public class ConfiguracionService {
 
     private final ConfiguracionRepository repository;
 
+    // OPTIMIZADO: foto inmutable en memoria; se reemplaza de forma atómica al guardar
+    private final AtomicReference<ConfiguracionVigente> vigente = new AtomicReference<>();
+    private final AtomicLong versiones = new AtomicLong();
+
     public ConfiguracionService(ConfiguracionRepository repository) {
         this.repository = repository;
     }
 
+    /**
+     * Entidad completa (con logo). Para formularios de configuración y documentos que imprimen el logo.
+     */
     public Configuracion obtenerConfiguracion() {
         return repository.findById(1L).orElseGet(this::crearConfiguracionPorDefecto);
     }
 
+    /**
+     * Configuración vigente sin consultar la BD (vistas, IGV, CSS). Se carga la primera vez que se pide.
+     */
+    public ConfiguracionVigente obtenerVigente() {
+        ConfiguracionVigente actual = vigente.get();
+        if (actual != null) {
+            return actual;
+        }
+        Configuracion config = obtenerConfiguracion();
+        ConfiguracionVigente cargada = new ConfiguracionVigente(config, logoDe(config, null), versiones.incrementAndGet());
+        // Si otra petición la cargó (o se guardó una nueva) mientras tanto, gana la existente
+        return vigente.compareAndSet(null, cargada) ? cargada : vigente.get();
+    }
+
+    /**
+     * Publica la configuración guardada como nueva foto vigente DESPUÉS del commit
+     * (si la transacción se revierte, se conserva la foto anterior)
+     */
+    private void publicar(Configuracion guardada) {
+        Runnable reemplazar = () -> {
+            ConfiguracionVigente anterior = vigente.get();
+            LogoEmpresa logo = logoDe(guardada, anterior != null ? anterior.logo() : null);
+            vigente.set(new ConfiguracionVigente(guardada, logo, versiones.incrementAndGet()));
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reemplazar.run();
+                }
+            });
+        } else {
+            reemplazar.run();
+        }
+    }
+
+    // ==========================================
+    //        LOGO
+    // ==========================================
+
+    /**
+     * Logo vigente (bytes + hash + imágenes decodificadas para PDF). Null si la empresa no tiene logo.
+     */
+    public LogoEmpresa obtenerLogo() {
+        return obtenerVigente().logo();
+    }
+
+    /**
+     * Copia del logo ya decodificado y escalado para caber en (ancho, alto) puntos. Null si no hay logo.
+     */
+    public Image obtenerLogoPdf(float ancho, float alto) {
+        LogoEmpresa logo = obtenerLogo();
+        return logo != null ? logo.paraPdf(ancho, alto) : null;
+    }
+
+    /**
+     * Reutiliza el logo anterior (y sus imágenes ya decodificadas) si el contenido no cambió
+     */
+    private LogoEmpresa logoDe(Configuracion config, LogoEmpresa anterior) {
+        if (config.getLogo() == null || config.getLogo().length == 0) {
+            return null;
+        }
+        if (anterior != null && anterior.getHash().equals(config.getLogoHash())) {
+            return anterior;
+        }
+        return new LogoEmpresa(config.getLogo(), config.getLogoTipo(), config.getLogoHash());
+    }
+
+    private void asignarLogo(Configuracion config, byte[] bytes, String tipo) {
+        config.setLogo(bytes);
+        config.setLogoTipo(tipo != null && tipo.startsWith("image/") ? tipo : LogoEmpresa.detectarTipo(bytes));
+        config.setLogoHash(LogoEmpresa.calcularHash(bytes));
+        config.setLogoBase64(null);
+    }
+
+    /**
+     * Migra el logo guardado en Base64 (versiones anteriores) a la columna binaria, una sola vez
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void migrarLogoLegado() {
+        repository.findById(1L).ifPresent(config -> {
+            if (config.getLogo() != null || config.getLogoBase64() == null || config.getLogoBase64().isBlank()) {
+                return;
+            }
+            try {
+                asignarLogo(config, Base64.getMimeDecoder().decode(config.getLogoBase64()), null);
+                publicar(repository.save(config));
+                log.info("Logo de la empresa migrado de Base64 a binario ({} bytes)", config.getLogo().length);
+            } catch (IllegalArgumentException e) {
+                log.warn("No se pudo migrar el logo en Base64: {}", e.getMessage());
+            }
+        });
+    }
+
     private Configuracion crearConfiguracionPorDefecto() {
         Configuracion config = new Configuracion();
 
@@ -159,44 +272,42 @@ public class ConfiguracionService {
         }
 
         // LOGO (Si se subió uno nuevo, se setea desde el controller antes de llamar a este método)
-        if(nuevosDatos.getLogoBase64() != null) {
-            configDB.setLogoBase64(nuevosDatos.getLogoBase64());
+        if(nuevosDatos.getLogo() != null && nuevosDatos.getLogo().length > 0) {
+            asignarLogo(configDB, nuevosDatos.getLogo(), nuevosDatos.getLogoTipo());
         }
 
-        repository.save(configDB);
+        publicar(repository.save(configDB));
     }
 
     // ========== MÉTODOS HELPER PARA IGV ==========
+    // OPTIMIZADO: precalculados en la configuración vigente (antes, una consulta por llamada)
 
     /**
      * Obtiene el porcentaje de IGV (ej: 18.00)
      */
     public BigDecimal getIgvPorcentaje() {
-        Configuracion config = obtenerConfiguracion();
-        return config.getIgvPorcentaje() != null ? config.getIgvPorcentaje() : new BigDecimal("18.00");
+        return obtenerVigente().getIgvPorcentaje();
     }
 
     /**
      * Obtiene el factor de IGV para cálculos (ej: 1.18)
      */
     public BigDecimal getIgvFactor() {
-        BigDecimal porcentaje = getIgvPorcentaje();
-        return BigDecimal.ONE.add(porcentaje.divide(new BigDecimal("100")));
+        return obtenerVigente().getIgvFactor();
     }
 
     /**
      * Obtiene el label para mostrar en reportes (ej: "IGV (18%)")
      */
     public String getIgvLabel() {
-        BigDecimal porcentaje = getIgvPorcentaje();
-        return "IGV (" + porcentaje.stripTrailingZeros().toPlainString() + "%)";
+        return obtenerVigente().getIgvLabel();
     }
 
     /**
      * Obtiene el porcentaje como string para SUNAT (ej: "18.00")
      */
     public String getIgvPorcentajeString() {
-        return getIgvPorcentaje().setScale(2).toPlainString();
+        return obtenerVigente().getIgvPorcentajeString();
     }
 
     public void restaurarColoresPorDefecto() {
@@ -210,11 +321,11 @@ public class ConfiguracionService {
         config.setColorOscuro("#343a40");
         config.setColorClaro("#f8f9fa");
         config.setColorBronce("#cd7f32");
-        repository.save(config);
+        publicar(repository.save(config));
     }
 
     public String generarCssPersonalizado() {
-        Configuracion config = obtenerConfiguracion();
+        ConfiguracionVigente config = obtenerVigente();
         return ":root {\n" +
                 "  --color-primario: " + config.getColorPrimario() + ";\n" +
                 "  --color-secundario: " + config.getColorSecundario() + ";\n" +
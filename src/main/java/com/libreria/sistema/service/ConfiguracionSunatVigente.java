@@ -0,0 +1,85 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.ConfiguracionSunat;
+import lombok.Getter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.net.URI;
+
+/**
+ * Foto inmutable de la configuración SUNAT (ver FacturacionElectronicaService.obtenerConfiguracionVigente()).
+ *
+ * - Se consulta en cada venta, en cada carga del POS y en cada envío: sin ir a la BD.
+ * - Trae listo lo que necesita el envío: URL ya parseada y cabeceras (JSON + Bearer) de solo lectura.
+ * - error explica por qué no se puede enviar (sin configuración, desactivada, sin token o URL); null si está lista.
+ * - Se reemplaza entera al guardar la configuración o activar/desactivar la facturación.
+ */
+@Getter
+public final class ConfiguracionSunatVigente {
+
+    static final ConfiguracionSunatVigente SIN_CONFIGURACION = new ConfiguracionSunatVigente();
+
+    private final Long id;
+    private final String rucEmisor;
+    private final String razonSocialEmisor;
+    private final boolean activa;
+
+    private final URI urlDocumentos;            // POST de comprobantes y notas de crédito
+    private final String urlUltimoDocumento;    // GET del último número por serie (se agrega la serie)
+    private final HttpHeaders cabeceras;        // Solo lectura: compartidas por todos los envíos
+    private final String error;
+
+    private ConfiguracionSunatVigente() {
+        this.id = null;
+        this.rucEmisor = null;
+        this.razonSocialEmisor = null;
+        this.activa = false;
+        this.urlDocumentos = null;
+        this.urlUltimoDocumento = null;
+        this.cabeceras = null;
+        this.error = "No existe configuración de SUNAT. Configure primero en el módulo de Configuración.";
+    }
+
+    ConfiguracionSunatVigente(ConfiguracionSunat c) {
+        this.id = c.getId();
+        this.rucEmisor = c.getRucEmisor();
+        this.razonSocialEmisor = c.getRazonSocialEmisor();
+        this.activa = Boolean.TRUE.equals(c.getFacturaElectronicaActiva());
+
+        String token = c.getTokenApiSunat();
+        String url = c.getUrlApiSunat();
+
+        URI uri = null;
+        String problema = null;
+        if (!activa) {
+            problema = "La facturación electrónica está desactivada en la configuración.";
+        } else if (token == null || token.isEmpty()) {
+            problema = "Token de APISUNAT no configurado.";
+        } else if (url == null || url.isEmpty()) {
+            problema = "URL de APISUNAT no configurada.";
+        } else {
+            try {
+                uri = URI.create(url.trim());
+            } catch (IllegalArgumentException e) {
+                problema = "URL de APISUNAT inválida: " + url;
+            }
+        }
+        this.error = problema;
+        this.urlDocumentos = uri;
+        this.urlUltimoDocumento = uri != null ? uri.toString().replace("/documents", "/documents/last") + "?serie=" : null;
+
+        if (uri != null) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setBearerAuth(token);
+            this.cabeceras = HttpHeaders.readOnlyHttpHeaders(headers);
+        } else {
+            this.cabeceras = null;
+        }
+    }
+
+    public boolean isLista() {
+        return error == null;
+    }
+}
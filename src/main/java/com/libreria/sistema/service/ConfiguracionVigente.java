@@ -0,0 +1,178 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.Configuracion;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Foto inmutable de la configuración general (ver ConfiguracionService.obtenerVigente()).
+ *
+ * - Es la que reciben todas las vistas como ${config} y los cálculos de IGV: sin consulta por petición.
+ * - Mismos getters que la entidad Configuracion, para que las plantillas no cambien.
+ * - NO expone los bytes del logo: las vistas lo piden por URL (logoRuta, con el hash del contenido)
+ *   y los PDF usan la imagen ya decodificada de LogoEmpresa.
+ * - Se reemplaza entera al guardar la configuración; version identifica cada foto.
+ */
+@Getter
+public final class ConfiguracionVigente {
+
+    private static final BigDecimal IGV_POR_DEFECTO = new BigDecimal("18.00");
+
+    private final long version;
+
+    // ========== DATOS DE EMPRESA ==========
+    private final Long id;
+    private final String nombreEmpresa;
+    private final String ruc;
+    private final String direccion;
+    private final String telefono;
+    private final String email;
+    private final String logoUrl;
+    private final boolean tieneLogo;
+    private final String logoHash;
+    private final String slogan;
+    private final String webSite;
+    private final String facebook;
+    private final String instagram;
+    private final String whatsapp;
+    private final String horarioAtencion;
+
+    // ========== PERSONALIZACIÓN VISUAL ==========
+    private final String colorPrimario;
+    private final String colorSecundario;
+    private final String colorExito;
+    private final String colorPeligro;
+    private final String colorAdvertencia;
+    private final String colorInfo;
+    private final String colorOscuro;
+    private final String colorClaro;
+    private final String colorBronce;
+
+    // ========== CONFIGURACIÓN DE REPORTES ==========
+    private final Boolean mostrarLogoEnReportes;
+    private final String piePaginaReportes;
+    private final String encabezadoReportes;
+    private final String formatoFechaReportes;
+    private final String formatoMoneda;
+
+    // ========== CONFIGURACIÓN DE SISTEMA ==========
+    private final Integer itemsPorPagina;
+    private final Integer stockMinimo;
+    private final Integer diasVencimientoCredito;
+    private final Integer diasDevolucion;
+    private final BigDecimal igvPorcentaje;
+
+    // IGV precalculado (antes se recalculaba con una consulta en cada venta)
+    private final BigDecimal igvFactor;             // 1.18
+    private final String igvLabel;                  // "IGV (18%)"
+    private final String igvPorcentajeString;       // "18.00"
+
+    // ========== CONTROL FINANCIERO Y DE CAJA ==========
+    private final Boolean aperturaCajaObligatoria;
+    private final Boolean cierreCajaCiego;
+    private final BigDecimal limiteEfectivoCaja;
+
+    // ========== REGLAS DE NEGOCIO ==========
+    private final Boolean permitirStockNegativo;
+    private final Boolean permitirVentaFraccionada;
+    private final BigDecimal porcentajeDescuentoMaximo;
+    private final Boolean preciosIncluyenImpuesto;
+
+    // ========== FACTURACIÓN ELECTRÓNICA ==========
+    private final String facturacionEndpoint;
+    private final String facturacionToken;
+    private final String certificadoDigitalRuta;
+    private final String claveCertificado;
+    private final Boolean modoProduccion;
+
+    // ========== CONFIGURACIÓN DE IMPRESIÓN ==========
+    private final String formatoImpresion;
+    private final Integer anchoTicketMm;
+    private final Boolean mostrarLogoEnTicket;
+    private final String mensajePieTicket;
+    private final String cuentasBancarias;
+
+    @Getter(AccessLevel.NONE)
+    private final LogoEmpresa logo;
+
+    ConfiguracionVigente(Configuracion c, LogoEmpresa logo, long version) {
+        this.version = version;
+        this.logo = logo;
+
+        this.id = c.getId();
+        this.nombreEmpresa = c.getNombreEmpresa();
+        this.ruc = c.getRuc();
+        this.direccion = c.getDireccion();
+        this.telefono = c.getTelefono();
+        this.email = c.getEmail();
+        this.logoUrl = c.getLogoUrl();
+        this.tieneLogo = logo != null;
+        this.logoHash = logo != null ? logo.getHash() : null;
+        this.slogan = c.getSlogan();
+        this.webSite = c.getWebSite();
+        this.facebook = c.getFacebook();
+        this.instagram = c.getInstagram();
+        this.whatsapp = c.getWhatsapp();
+        this.horarioAtencion = c.getHorarioAtencion();
+
+        this.colorPrimario = c.getColorPrimario();
+        this.colorSecundario = c.getColorSecundario();
+        this.colorExito = c.getColorExito();
+        this.colorPeligro = c.getColorPeligro();
+        this.colorAdvertencia = c.getColorAdvertencia();
+        this.colorInfo = c.getColorInfo();
+        this.colorOscuro = c.getColorOscuro();
+        this.colorClaro = c.getColorClaro();
+        this.colorBronce = c.getColorBronce();
+
+        this.mostrarLogoEnReportes = c.getMostrarLogoEnReportes();
+        this.piePaginaReportes = c.getPiePaginaReportes();
+        this.encabezadoReportes = c.getEncabezadoReportes();
+        this.formatoFechaReportes = c.getFormatoFechaReportes();
+        this.formatoMoneda = c.getFormatoMoneda();
+
+        this.itemsPorPagina = c.getItemsPorPagina();
+        this.stockMinimo = c.getStockMinimo();
+        this.diasVencimientoCredito = c.getDiasVencimientoCredito();
+        this.diasDevolucion = c.getDiasDevolucion();
+        this.igvPorcentaje = c.getIgvPorcentaje() != null ? c.getIgvPorcentaje() : IGV_POR_DEFECTO;
+        this.igvFactor = BigDecimal.ONE.add(igvPorcentaje.divide(new BigDecimal("100")));
+        this.igvLabel = "IGV (" + igvPorcentaje.stripTrailingZeros().toPlainString() + "%)";
+        this.igvPorcentajeString = igvPorcentaje.setScale(2, RoundingMode.HALF_UP).toPlainString();
+
+        this.aperturaCajaObligatoria = c.getAperturaCajaObligatoria();
+        this.cierreCajaCiego = c.getCierreCajaCiego();
+        this.limiteEfectivoCaja = c.getLimiteEfectivoCaja();
+
+        this.permitirStockNegativo = c.getPermitirStockNegativo();
+        this.permitirVentaFraccionada = c.getPermitirVentaFraccionada();
+        this.porcentajeDescuentoMaximo = c.getPorcentajeDescuentoMaximo();
+        this.preciosIncluyenImpuesto = c.getPreciosIncluyenImpuesto();
+
+        this.facturacionEndpoint = c.getFacturacionEndpoint();
+        this.facturacionToken = c.getFacturacionToken();
+        this.certificadoDigitalRuta = c.getCertificadoDigitalRuta();
+        this.claveCertificado = c.getClaveCertificado();
+        this.modoProduccion = c.getModoProduccion();
+
+        this.formatoImpresion = c.getFormatoImpresion();
+        this.anchoTicketMm = c.getAnchoTicketMm();
+        this.mostrarLogoEnTicket = c.getMostrarLogoEnTicket();
+        this.mensajePieTicket = c.getMensajePieTicket();
+        this.cuentasBancarias = c.getCuentasBancarias();
+    }
+
+    /**
+     * URL del logo con el hash del contenido (cacheable indefinidamente). Null si no hay logo.
+     */
+    public String getLogoRuta() {
+        return logoHash != null ? "/public/logo/" + logoHash : null;
+    }
+
+    LogoEmpresa logo() {
+        return logo;
+    }
+}
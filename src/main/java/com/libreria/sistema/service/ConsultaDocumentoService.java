@@ -1,6 +1,5 @@
 package com.libreria.sistema.service;
 
-import com.libreria.sistema.model.Configuracion;
 import com.libreria.sistema.model.dto.ConsultaDocumentoDTO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.*;
@@ -55,7 +54,7 @@ public class ConsultaDocumentoService {
         }
 
         try {
-            Configuracion config = configuracionService.obtenerConfiguracion();
+            ConfiguracionVigente config = configuracionService.obtenerVigente();
             String token = config.getFacturacionToken();
 
             if (token == null || token.isBlank()) {
@@ -139,7 +138,7 @@ public class ConsultaDocumentoService {
         }
 
         try {
-            Configuracion config = configuracionService.obtenerConfiguracion();
+            ConfiguracionVigente config = configuracionService.obtenerVigente();
             String token = config.getFacturacionToken();
 
             if (token == null || token.isBlank()) {
@@ -232,7 +231,7 @@ public class ConsultaDocumentoService {
      * Verifica si el servicio de consulta está disponible
      */
     public boolean isServicioDisponible() {
-        Configuracion config = configuracionService.obtenerConfiguracion();
+        ConfiguracionVigente config = configuracionService.obtenerVigente();
         String token = config.getFacturacionToken();
         return token != null && !token.isBlank();
     }
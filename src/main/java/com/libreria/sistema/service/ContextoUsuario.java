@@ -0,0 +1,159 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.SesionCaja;
+import com.libreria.sistema.model.Usuario;
+import com.libreria.sistema.repository.SesionCajaRepository;
+import com.libreria.sistema.repository.UsuarioRepository;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Contexto del usuario autenticado, resuelto UNA sola vez por petición HTTP.
+ *
+ * Guarda en los atributos de la petición el Usuario, sus permisos y la sesión de caja
+ * abierta, para que VentaService, CajaService y el evaluador de permisos no repitan
+ * findByUsername / findByUsuarioAndEstado en cada llamada.
+ *
+ * Fuera de una petición (schedulers, hilos del outbox) no hay dónde guardar el estado:
+ * cada llamada consulta la BD directamente, igual que antes.
+ */
+@Component
+public class ContextoUsuario {
+
+    private static final String ATRIBUTO = ContextoUsuario.class.getName();
+
+    private final UsuarioRepository usuarioRepository;
+    private final SesionCajaRepository sesionCajaRepository;
+
+    public ContextoUsuario(UsuarioRepository usuarioRepository, SesionCajaRepository sesionCajaRepository) {
+        this.usuarioRepository = usuarioRepository;
+        this.sesionCajaRepository = sesionCajaRepository;
+    }
+
+    /**
+     * Estado cacheado de la petición. Cada dato se carga la primera vez que se pide.
+     */
+    private static final class Datos {
+        private final String username;
+        private Optional<Usuario> usuario;
+        private Boolean admin;
+        private Set<String> permisos;
+        private Optional<SesionCaja> sesionCaja;
+
+        private Datos(String username) {
+            this.username = username;
+        }
+    }
+
+    // ==========================================
+    //        CONSULTAS
+    // ==========================================
+
+    public String getUsername() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null ? auth.getName() : null;
+    }
+
+    public Optional<Usuario> getUsuario() {
+        Datos datos = datos();
+        if (datos.usuario == null) {
+            datos.usuario = datos.username == null ? Optional.empty() : usuarioRepository.findByUsername(datos.username);
+        }
+        return datos.usuario;
+    }
+
+    /**
+     * true si el usuario es administrador (rol legacy o rol granular ADMIN)
+     */
+    public boolean esAdmin() {
+        Datos datos = datos();
+        if (datos.admin == null) {
+            datos.admin = getUsuario().map(RolePermissionService::esAdministrador).orElse(false);
+        }
+        return datos.admin;
+    }
+
+    /**
+     * Códigos de permiso del rol granular del usuario
+     */
+    public Set<String> getPermisos() {
+        Datos datos = datos();
+        if (datos.permisos == null) {
+            datos.permisos = getUsuario().map(RolePermissionService::codigosPermiso).orElse(Set.of());
+        }
+        return datos.permisos;
+    }
+
+    public boolean tienePermiso(String codigoPermiso) {
+        return esAdmin() || getPermisos().contains(codigoPermiso);
+    }
+
+    /**
+     * Sesión de caja ABIERTA del usuario actual
+     */
+    public Optional<SesionCaja> getSesionCajaActiva() {
+        Datos datos = datos();
+        if (datos.sesionCaja == null) {
+            datos.sesionCaja = getUsuario()
+                    .flatMap(u -> sesionCajaRepository.findByUsuarioAndEstado(u, "ABIERTA"));
+        }
+        return datos.sesionCaja;
+    }
+
+    /**
+     * Terminal del usuario actual: la de su caja abierta o, si no tiene, la configurada en su usuario.
+     * Define la serie propia de la caja (B001, B002...).
+     */
+    public Integer getTerminal() {
+        return getSesionCajaActiva()
+                .map(SesionCaja::getTerminal)
+                .orElseGet(() -> getUsuario().map(Usuario::getTerminalCaja).orElse(null));
+    }
+
+    /**
+     * ¿El username corresponde al usuario autenticado de esta petición?
+     */
+    public boolean esUsuarioActual(String username) {
+        return username != null && username.equals(getUsername());
+    }
+
+    // ==========================================
+    //        ACTUALIZACIÓN
+    // ==========================================
+
+    /**
+     * Actualiza la sesión de caja cacheada tras abrir o cerrar caja en la misma petición
+     */
+    public void actualizarSesionCaja(SesionCaja sesion) {
+        Datos datos = datos();
+        datos.sesionCaja = sesion != null && "ABIERTA".equals(sesion.getEstado()) ? Optional.of(sesion) : Optional.empty();
+    }
+
+    // ==========================================
+    //        UTILIDADES
+    // ==========================================
+
+    private Datos datos() {
+        String username = getUsername();
+        RequestAttributes atributos = RequestContextHolder.getRequestAttributes();
+        if (atributos == null) {
+            // Sin petición HTTP: no se cachea nada
+            return new Datos(username);
+        }
+
+        Datos datos = (Datos) atributos.getAttribute(ATRIBUTO, RequestAttributes.SCOPE_REQUEST);
+        // Si la autenticación cambió dentro de la petición (login/logout), se descarta lo cacheado
+        if (datos == null || !Objects.equals(datos.username, username)) {
+            datos = new Datos(username);
+            atributos.setAttribute(ATRIBUTO, datos, RequestAttributes.SCOPE_REQUEST);
+        }
+        return datos;
+    }
+}
@@ -0,0 +1,73 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.repository.CorrelativoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Asignación de números de comprobante.
+ *
+ * Cada asignación es un UPDATE ... RETURNING dentro de la transacción del documento (MANDATORY):
+ * si el documento hace rollback, el número vuelve a la serie y no quedan huecos en una serie
+ * electrónica. El llamador la ejecuta como último paso antes de escribir (ya validados stock,
+ * precios y caja, y con los productos ya bloqueados): el lock de la fila del correlativo dura solo
+ * esas escrituras. Combinado con series por terminal (B001, B002, ...), las cajas no se serializan entre sí.
+ *
+ * Orden de locks: productos (por id) y luego correlativos (por serie). Todos los llamadores lo respetan.
+ */
+@Service
+@Slf4j
+public class CorrelativoService {
+
+    private final CorrelativoRepository correlativoRepository;
+
+    public CorrelativoService(CorrelativoRepository correlativoRepository) {
+        this.correlativoRepository = correlativoRepository;
+    }
+
+    /**
+     * Obtiene el siguiente número de la serie. Si la serie no existe se crea con ultimoNumero = 0.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int siguienteNumero(String codigo, String serie) {
+        return reservar(codigo, serie, 1);
+    }
+
+    /**
+     * Reserva {@code cantidad} números consecutivos en una sola sentencia (ingesta de ventas en lote).
+     *
+     * @return Primer número del rango; el rango es primero .. primero + cantidad - 1
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int reservarRango(String codigo, String serie, int cantidad) {
+        return primeroDelRango(reservar(codigo, serie, cantidad), cantidad);
+    }
+
+    /**
+     * Primer número de un rango de {@code cantidad} números que termina en {@code ultimo}
+     */
+    static int primeroDelRango(int ultimo, int cantidad) {
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad de números a reservar debe ser positiva: " + cantidad);
+        }
+        return ultimo - cantidad + 1;
+    }
+
+    /**
+     * @return Último número reservado
+     */
+    private int reservar(String codigo, String serie, int cantidad) {
+        return correlativoRepository.incrementarYObtener(codigo, serie, cantidad)
+                .orElseGet(() -> {
+                    // Serie nueva: INSERT ... ON CONFLICT DO NOTHING (seguro si otra caja la crea a la vez)
+                    if (correlativoRepository.crearSiNoExiste(codigo, serie) > 0) {
+                        log.info("Creando nueva serie de correlativo: {} {}", codigo, serie);
+                    }
+                    return correlativoRepository.incrementarYObtener(codigo, serie, cantidad)
+                            .orElseThrow(() -> new RuntimeException(
+                                    "No se pudo asignar correlativo para " + codigo + " " + serie));
+                });
+    }
+}
@@ -7,7 +7,6 @@ import com.libreria.sistema.util.Constants;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,6 +14,8 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.TreeSet;
 
 @Service
 @Slf4j
@@ -25,29 +26,35 @@ public class CotizacionService {
     private final VentaRepository ventaRepository;
     private final MovimientoCajaRepository movimientoCajaRepository;
     private final KardexRepository kardexRepository;
-    private final UsuarioRepository usuarioRepository;
-    private final CorrelativoRepository correlativoRepository;
+    private final ContextoUsuario contextoUsuario;
+    private final CorrelativoService correlativoService;
+    private final FacturacionElectronicaService facturacionService;
     private final CajaService cajaService;
     private final ConfiguracionService configuracionService;
+    private final ResumenVentasService resumenVentasService;
 
     public CotizacionService(CotizacionRepository cotizacionRepository,
                              ProductoRepository productoRepository,
                              VentaRepository ventaRepository,
                              MovimientoCajaRepository movimientoCajaRepository,
                              KardexRepository kardexRepository,
-                             UsuarioRepository usuarioRepository,
-                             CorrelativoRepository correlativoRepository,
+                             ContextoUsuario contextoUsuario,
+                             CorrelativoService correlativoService,
+                             FacturacionElectronicaService facturacionService,
                              CajaService cajaService,
-                             ConfiguracionService configuracionService) {
+                             ConfiguracionService configuracionService,
+                             ResumenVentasService resumenVentasService) {
         this.cotizacionRepository = cotizacionRepository;
         this.productoRepository = productoRepository;
         this.ventaRepository = ventaRepository;
         this.movimientoCajaRepository = movimientoCajaRepository;
         this.kardexRepository = kardexRepository;
-        this.usuarioRepository = usuarioRepository;
-        this.correlativoRepository = correlativoRepository;
+        this.contextoUsuario = contextoUsuario;
+        this.correlativoService = correlativoService;
+        this.facturacionService = facturacionService;
         this.cajaService = cajaService;
         this.configuracionService = configuracionService;
+        this.resumenVentasService = resumenVentasService;
     }
 
     public Page<Cotizacion> listar(Pageable pageable) {
@@ -62,19 +69,9 @@ public class CotizacionService {
     public Cotizacion crearCotizacion(VentaDTO dto) throws Exception {
         Cotizacion c = new Cotizacion();
 
-        // Usar lock pesimista para correlativos
+        // Correlativo: UPDATE ... RETURNING en esta transacción (un rollback no deja huecos)
         // Si la serie no existe, se crea automáticamente con ultimoNumero = 0
-        Correlativo correlativo = correlativoRepository.findByCodigoAndSerieWithLock("COTIZACION", "C001")
-                .orElseGet(() -> {
-                    Correlativo nuevo = new Correlativo("COTIZACION", "C001", 0);
-                    return correlativoRepository.save(nuevo);
-                });
-
-        // SAFE UNBOXING DEFENSIVO: Triple protección contra NPE
-        Integer ultimoActual = correlativo.getUltimoNumero();
-        int nuevoNumero = (ultimoActual != null ? ultimoActual : 0) + 1;
-        correlativo.setUltimoNumero(nuevoNumero);
-        correlativoRepository.save(correlativo);
+        int nuevoNumero = correlativoService.siguienteNumero("COTIZACION", "C001");
 
         c.setSerie("C001");
         c.setNumero(nuevoNumero);
@@ -83,8 +80,7 @@ public class CotizacionService {
         c.setClienteNombre(dto.getClienteNombre());
         c.setClienteTelefono(dto.getClienteTelefono());
         
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        usuarioRepository.findByUsername(username).ifPresent(c::setUsuario);
+        contextoUsuario.getUsuario().ifPresent(c::setUsuario);
 
         BigDecimal total = BigDecimal.ZERO;
 
@@ -162,21 +158,28 @@ public class CotizacionService {
         v.setClienteDenominacion(c.getClienteNombre());
         v.setClienteTipoDocumento(tipoComprobante.equals("FACTURA") ? "6" : "1");
         
-        String serie = tipoComprobante.equals("FACTURA") ? "F001" : "B001";
+        // Serie propia de la terminal (B001, B002...) según el modo de facturación, igual que en el POS
+        boolean facturaElectronicaActiva = facturacionService.isFacturacionElectronicaActiva();
+        String serie = facturacionService.obtenerSerie(tipoComprobante, facturaElectronicaActiva, contextoUsuario.getTerminal());
 
-        // Usar lock pesimista para correlativos
-        // Si la serie no existe, se crea automáticamente con ultimoNumero = 0
-        Correlativo correlativo = correlativoRepository.findByCodigoAndSerieWithLock(tipoComprobante, serie)
-                .orElseGet(() -> {
-                    Correlativo nuevo = new Correlativo(tipoComprobante, serie, 0);
-                    return correlativoRepository.save(nuevo);
-                });
-
-        // SAFE UNBOXING DEFENSIVO: Triple protección contra NPE
-        Integer ultimoActual = correlativo.getUltimoNumero();
-        int nuevoNumero = (ultimoActual != null ? ultimoActual : 0) + 1;
-        correlativo.setUltimoNumero(nuevoNumero);
-        correlativoRepository.save(correlativo);
+        // Bloquear los productos ANTES del correlativo, en el mismo orden (por id) que el POS
+        Set<Long> ids = new TreeSet<>();
+        for (DetalleCotizacion itemCoti : c.getItems()) {
+            ids.add(itemCoti.getProducto().getId());
+        }
+        productoRepository.findAllByIdInWithLock(ids);
+
+        // Validar stock ANTES de asignar número
+        for (DetalleCotizacion itemCoti : c.getItems()) {
+            Producto p = itemCoti.getProducto();
+            int stockActual = p.getStockActual() != null ? p.getStockActual() : 0;
+            if (!"SERV-001".equals(p.getCodigoInterno()) && stockActual < itemCoti.getCantidad().intValue()) {
+                throw new Exception("Stock insuficiente: " + p.getNombre());
+            }
+        }
+
+        // Correlativo: UPDATE ... RETURNING en esta transacción, con los productos ya bloqueados
+        int nuevoNumero = correlativoService.siguienteNumero(tipoComprobante, serie);
 
         v.setTipoComprobante(tipoComprobante);
         v.setSerie(serie);
@@ -240,6 +243,7 @@ public class CotizacionService {
             dv.setPrecioUnitario(precioFinal);
             dv.setValorUnitario(valorUnitario);
             dv.setSubtotal(subtotal);
+            dv.setCostoUnitario(p.getPrecioCompra() != null ? p.getPrecioCompra() : BigDecimal.ZERO);
             dv.setPorcentajeIgv(igvPorcentaje);
             dv.setCodigoTipoAfectacionIgv(Constants.AFECTACION_GRAVADO);
 
@@ -255,7 +259,8 @@ public class CotizacionService {
         v.setTotalIgv(totalIgv);
 
         ventaRepository.save(v);
-        
+        resumenVentasService.registrarVenta(v);
+
         c.setEstado("CONVERTIDO_VENTA");
         cotizacionRepository.save(c);
 
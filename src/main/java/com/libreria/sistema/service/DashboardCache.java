@@ -0,0 +1,113 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.service.ReporteDatosVersion.Dominio;
+import com.libreria.sistema.util.Constants;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Fotos (snapshots) de los paneles que se consultan por polling: dashboard principal,
+ * dashboard financiero y datos de caja.
+ *
+ * - Single-flight: si varias pestañas piden la misma foto a la vez, solo una la calcula
+ *   y las demás esperan ese mismo resultado.
+ * - Una foto vale como máximo Constants.DASHBOARD_CACHE_TTL_SEGUNDOS.
+ * - Se descarta antes si cambia la versión de alguno de sus dominios: ventas, devoluciones,
+ *   movimientos de caja y compras (ver ReporteDatosListener).
+ *
+ * Las fotos se comparten entre peticiones: quien las reciba no debe modificarlas.
+ */
+@Component
+public class DashboardCache {
+
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Constants.DASHBOARD_CACHE_TTL_SEGUNDOS);
+
+    private final ReporteDatosVersion datosVersion;
+    private final Map<String, Foto> fotos = new ConcurrentHashMap<>();
+
+    public DashboardCache(ReporteDatosVersion datosVersion) {
+        this.datosVersion = datosVersion;
+    }
+
+    /**
+     * Devuelve la foto vigente de la clave o la calcula (una sola vez aunque haya peticiones concurrentes)
+     *
+     * @param clave    Identifica el panel (y su variante, p.ej. la sesión de caja)
+     * @param dominios Dominios de datos de los que depende el cálculo
+     * @param calculo  Cálculo de la foto; se ejecuta en el hilo de la primera petición
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T obtener(String clave, Set<Dominio> dominios, Supplier<T> calculo) {
+        // Las versiones se leen ANTES de calcular: un cambio durante el cálculo deja la foto vencida
+        Map<Dominio, Long> versiones = datosVersion.obtener(dominios);
+        long ahora = System.nanoTime();
+        boolean[] calculaEsteHilo = {false};
+
+        Foto foto = fotos.compute(clave, (k, actual) -> {
+            if (actual != null && actual.vigente(versiones, ahora)) {
+                return actual;
+            }
+            calculaEsteHilo[0] = true;
+            return new Foto(new CompletableFuture<>(), versiones, ahora);
+        });
+
+        if (calculaEsteHilo[0]) {
+            try {
+                foto.valor.complete(calculo.get());
+            } catch (RuntimeException e) {
+                // No se guarda el error: la siguiente petición vuelve a intentar
+                fotos.remove(clave, foto);
+                foto.valor.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return (T) foto.valor.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Elimina las fotos vencidas (p.ej. de sesiones de caja ya cerradas)
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void purgar() {
+        long ahora = System.nanoTime();
+        fotos.values().removeIf(foto -> foto.valor.isDone() && ahora - foto.creadaEn >= TTL_NANOS);
+    }
+
+    private static final class Foto {
+        private final CompletableFuture<Object> valor;
+        private final Map<Dominio, Long> versiones;
+        private final long creadaEn;
+
+        private Foto(CompletableFuture<Object> valor, Map<Dominio, Long> versiones, long creadaEn) {
+            this.valor = valor;
+            this.versiones = versiones;
+            this.creadaEn = creadaEn;
+        }
+
+        /**
+         * Un cálculo en curso se comparte si partió de las mismas versiones; uno terminado, además, si no venció
+         */
+        boolean vigente(Map<Dominio, Long> versionesActuales, long ahora) {
+            if (!versiones.equals(versionesActuales)) {
+                return false;
+            }
+            return !valor.isDone() || ahora - creadaEn < TTL_NANOS;
+        }
+    }
+}
@@ -1,12 +1,12 @@
 package com.libreria.sistema.service;
 
-import com.libreria.sistema.model.MovimientoCaja;
 import com.libreria.sistema.model.Producto;
-import com.libreria.sistema.model.Venta;
 import com.libreria.sistema.model.dto.ReporteDTO;
 import com.libreria.sistema.repository.CajaRepository;
 import com.libreria.sistema.repository.ProductoRepository;
 import com.libreria.sistema.repository.VentaRepository;
+import com.libreria.sistema.util.Constants;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -14,7 +14,6 @@ import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class DashboardService {
@@ -24,92 +23,80 @@ public class DashboardService {
     private final CajaRepository cajaRepository;
     private final SunatBillingService sunatBillingService;
     private final LicenseValidationService licenseService;
+    private final DashboardCache dashboardCache;
 
     public DashboardService(ProductoRepository productoRepository,
                            VentaRepository ventaRepository,
                            CajaRepository cajaRepository,
                            SunatBillingService sunatBillingService,
-                           LicenseValidationService licenseService) {
+                           LicenseValidationService licenseService,
+                           DashboardCache dashboardCache) {
         this.productoRepository = productoRepository;
         this.ventaRepository = ventaRepository;
         this.cajaRepository = cajaRepository;
         this.sunatBillingService = sunatBillingService;
         this.licenseService = licenseService;
+        this.dashboardCache = dashboardCache;
     }
 
+    /**
+     * Datos del dashboard calculados con agregados SQL (SUM / COUNT / GROUP BY):
+     * ninguna consulta carga el historial de ventas o movimientos a memoria,
+     * así el tiempo de respuesta no crece con la cantidad de ventas registradas.
+     *
+     * OPTIMIZADO: el polling de varias pestañas comparte una sola foto (DashboardCache). Es de solo lectura.
+     */
     public Map<String, Object> obtenerDatosDashboard() {
+        return dashboardCache.obtener("dashboard", EnumSet.allOf(ReporteDatosVersion.Dominio.class),
+                this::calcularDatosDashboard);
+    }
+
+    private Map<String, Object> calcularDatosDashboard() {
         LocalDate hoy = LocalDate.now();
         LocalDate inicioMes = hoy.withDayOfMonth(1);
 
         // --- 1. KPIs PRINCIPALES ---
-        List<Venta> ventasMes = ventaRepository.findAll().stream()
-                .filter(v -> v.getFechaEmision() != null && !v.getFechaEmision().isBefore(inicioMes) && "EMITIDO".equals(v.getEstado()))
-                .collect(Collectors.toList());
-
-        BigDecimal totalVentasMes = ventasMes.stream()
-                .map(v -> v.getTotal() != null ? v.getTotal() : BigDecimal.ZERO)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // Calcular Créditos por Cobrar (CORREGIDO NULL POINTER)
-        BigDecimal totalCreditosPendientes = ventaRepository.findAll().stream()
-                .filter(v -> v.getSaldoPendiente() != null && // <--- VALIDACIÓN IMPORTANTE
-                             v.getSaldoPendiente().compareTo(BigDecimal.ZERO) > 0 && 
-                             !"ANULADO".equals(v.getEstado()))
-                .map(Venta::getSaldoPendiente)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // Calcular Valor del Inventario
-        List<Producto> productos = productoRepository.findAll();
-        BigDecimal valorInventario = productos.stream()
-                .map(p -> {
-                    BigDecimal costo = p.getPrecioCompra() != null ? p.getPrecioCompra() : BigDecimal.ZERO;
-                    BigDecimal stock = new BigDecimal(p.getStockActual() != null ? p.getStockActual() : 0);
-                    return costo.multiply(stock);
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // Calcular Gastos del Mes
-        BigDecimal gastosMes = cajaRepository.findAll().stream()
-                .filter(m -> "EGRESO".equals(m.getTipo()) && 
-                             m.getFecha() != null && 
-                             !m.getFecha().toLocalDate().isBefore(inicioMes))
-                .map(m -> m.getMonto() != null ? m.getMonto() : BigDecimal.ZERO)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal totalVentasMes = ventaRepository.sumarTotalPorEstadoDesde("EMITIDO", inicioMes);
+
+        // Créditos por cobrar
+        BigDecimal totalCreditosPendientes = ventaRepository.sumarSaldoPendiente();
+
+        // Valor del inventario (costo x stock)
+        BigDecimal valorInventario = productoRepository.calcularValorInventario();
+
+        // Gastos del mes
+        BigDecimal gastosMes = cajaRepository.sumarPorTipoDesde("EGRESO", inicioMes.atStartOfDay());
 
         // --- 2. DATOS PARA GRÁFICOS ---
         List<ReporteDTO> topProductos = productoRepository.obtenerTopProductos();
 
-        // Comparativa
+        // Comparativa de los últimos 6 meses: una consulta agrupada por mes para cada serie
+        YearMonth mesActual = YearMonth.now();
+        LocalDate inicioComparativa = mesActual.minusMonths(5).atDay(1);
+        Map<YearMonth, BigDecimal> ingresosPorMes = agruparPorMes(ventaRepository.sumarTotalPorMesDesde(inicioComparativa));
+        Map<YearMonth, BigDecimal> egresosPorMes = agruparPorMes(
+                cajaRepository.sumarPorTipoYMesDesde("EGRESO", inicioComparativa.atStartOfDay()));
+
         Map<String, Map<String, BigDecimal>> comparativa = new LinkedHashMap<>();
         for (int i = 5; i >= 0; i--) {
-            YearMonth mes = YearMonth.now().minusMonths(i);
-            String etiqueta = mes.format(DateTimeFormatter.ofPattern("MMM yyyy")); 
-            
-            BigDecimal ingresos = ventaRepository.findAll().stream()
-                .filter(v -> v.getFechaEmision() != null && YearMonth.from(v.getFechaEmision()).equals(mes))
-                .map(v -> v.getTotal() != null ? v.getTotal() : BigDecimal.ZERO)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-                
-            BigDecimal egresos = cajaRepository.findAll().stream()
-                .filter(m -> "EGRESO".equals(m.getTipo()) && 
-                             m.getFecha() != null && 
-                             YearMonth.from(m.getFecha()).equals(mes))
-                .map(m -> m.getMonto() != null ? m.getMonto() : BigDecimal.ZERO)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            comparativa.put(etiqueta, Map.of("ingreso", ingresos, "egreso", egresos));
+            YearMonth mes = mesActual.minusMonths(i);
+            String etiqueta = mes.format(DateTimeFormatter.ofPattern("MMM yyyy"));
+            comparativa.put(etiqueta, Map.of(
+                    "ingreso", ingresosPorMes.getOrDefault(mes, BigDecimal.ZERO),
+                    "egreso", egresosPorMes.getOrDefault(mes, BigDecimal.ZERO)));
         }
 
-        long ventasAlCredito = ventaRepository.findAll().stream()
-                .filter(v -> "CREDITO".equals(v.getFormaPago())).count();
-        long ventasContado = ventaRepository.findAll().stream()
-                .filter(v -> "CONTADO".equals(v.getFormaPago())).count();
+        long ventasAlCredito = 0;
+        long ventasContado = 0;
+        for (Object[] fila : ventaRepository.contarPorFormaPago()) {
+            long cantidad = ((Number) fila[1]).longValue();
+            if ("CREDITO".equals(fila[0])) ventasAlCredito = cantidad;
+            else if ("CONTADO".equals(fila[0])) ventasContado = cantidad;
+        }
 
         // --- 3. ALERTA STOCK ---
-        List<Producto> stockCritico = productos.stream()
-                .filter(p -> p.getStockActual() != null && p.getStockMinimo() != null &&
-                             p.getStockActual() <= p.getStockMinimo() && p.isActivo())
-                .collect(Collectors.toList());
+        List<Producto> stockCritico = productoRepository.obtenerStockCritico(
+                PageRequest.of(0, Constants.DASHBOARD_STOCK_CRITICO_LIMITE));
 
         // --- 4. DATOS SUNAT Y LICENCIA ---
         Map<String, Object> sunatStats = sunatBillingService.obtenerEstadisticasDashboard();
@@ -138,6 +125,18 @@ public class DashboardService {
         resultado.put("tieneDeudaSunat", sunatBillingService.hayDeudaPendiente());
         resultado.put("deudaTotalSunat", sunatBillingService.obtenerDeudaTotal());
 
-        return resultado;
+        return Collections.unmodifiableMap(resultado);
+    }
+
+    /**
+     * Convierte filas [año, mes, total] en un mapa por YearMonth
+     */
+    private Map<YearMonth, BigDecimal> agruparPorMes(List<Object[]> filas) {
+        Map<YearMonth, BigDecimal> porMes = new HashMap<>();
+        for (Object[] fila : filas) {
+            YearMonth mes = YearMonth.of(((Number) fila[0]).intValue(), ((Number) fila[1]).intValue());
+            porMes.put(mes, fila[2] != null ? (BigDecimal) fila[2] : BigDecimal.ZERO);
+        }
+        return porMes;
     }
-}
\ No newline at end of file
+}
@@ -9,7 +9,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,6 +18,7 @@ import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @Service
 @Slf4j
@@ -37,10 +37,10 @@ public class DevolucionService {
     private KardexRepository kardexRepository;
 
     @Autowired
-    private CorrelativoRepository correlativoRepository;
+    private CorrelativoService correlativoService;
 
     @Autowired
-    private UsuarioRepository usuarioRepository;
+    private ContextoUsuario contextoUsuario;
 
     @Autowired
     private CajaService cajaService;
@@ -48,6 +48,9 @@ public class DevolucionService {
     @Autowired
     private FacturacionElectronicaService facturacionService;
 
+    @Autowired
+    private ResumenVentasService resumenVentasService;
+
     private static final int DIAS_MAXIMO_DEVOLUCION = 30;
 
     /**
@@ -66,32 +69,21 @@ public class DevolucionService {
         // 3. Determinar modo de facturación
         boolean facturaElectronicaActiva = facturacionService.isFacturacionElectronicaActiva();
 
-        // 4. Obtener correlativo de nota de crédito CON LOCK PESIMISTA (evita duplicados en concurrencia)
-        // Si la serie no existe, se crea automáticamente con ultimoNumero = 0
-        String serie = facturaElectronicaActiva ? "C001" : "NC01";
-        Correlativo correlativo = correlativoRepository.findByCodigoAndSerieWithLock("NOTA_CREDITO", serie)
-                .orElseGet(() -> {
-                    Correlativo nuevo = new Correlativo("NOTA_CREDITO", serie, 0);
-                    return correlativoRepository.save(nuevo);
-                });
-        // SAFE UNBOXING DEFENSIVO: Triple protección contra NPE
-        Integer ultimoActual = correlativo.getUltimoNumero();
-        int nuevoNumero = (ultimoActual != null ? ultimoActual : 0) + 1;
-        correlativo.setUltimoNumero(nuevoNumero);
-        correlativoRepository.save(correlativo);
+        // 4. Serie de nota de crédito propia de la terminal (C001/NC01 en la caja 1, C002/NC02 en la 2...)
+        String serie = facturacionService.obtenerSerie("NOTA_CREDITO", facturaElectronicaActiva, contextoUsuario.getTerminal());
 
         // 5. Crear DevolucionVenta
         DevolucionVenta devolucion = new DevolucionVenta();
         devolucion.setVentaOriginal(ventaOriginal);
         devolucion.setSerie(serie);
-        devolucion.setNumero(nuevoNumero);
+        // Correlativo ya validada la devolución: UPDATE ... RETURNING en esta transacción (el Kardex usa el número)
+        devolucion.setNumero(correlativoService.siguienteNumero("NOTA_CREDITO", serie));
         devolucion.setMotivoDevolucion(dto.getMotivoDevolucion());
         devolucion.setObservaciones(dto.getObservaciones());
         devolucion.setMetodoReembolso(dto.getMetodoReembolso());
 
         // Usuario actual
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        Usuario usuario = usuarioRepository.findByUsername(username).orElse(null);
+        Usuario usuario = contextoUsuario.getUsuario().orElse(null);
         devolucion.setUsuario(usuario);
 
         // 6. Procesar detalles y calcular total
@@ -100,6 +92,7 @@ public class DevolucionService {
 
         // 7. Guardar devolución
         DevolucionVenta devolucionGuardada = devolucionRepository.save(devolucion);
+        resumenVentasService.registrarDevolucion(devolucionGuardada);
 
         // 8. Actualizar estado de venta original
         actualizarEstadoVenta(ventaOriginal, totalDevuelto);
@@ -148,6 +141,7 @@ public class DevolucionService {
             detalle.setCantidadDevuelta(item.getCantidadDevuelta());
             detalle.setPrecioUnitario(item.getPrecioUnitario());
             detalle.setSubtotal(item.getCantidadDevuelta().multiply(item.getPrecioUnitario()));
+            detalle.setCostoUnitario(costoEnVentaOriginal(ventaOriginal, producto));
 
             devolucion.getDetalles().add(detalle);
 
@@ -165,6 +159,19 @@ public class DevolucionService {
         return totalDevuelto;
     }
 
+    /**
+     * Costo unitario con el que se vendió el producto en la venta original
+     * (ventas antiguas sin costo guardado: precio de compra actual)
+     */
+    private BigDecimal costoEnVentaOriginal(Venta ventaOriginal, Producto producto) {
+        return ventaOriginal.getItems().stream()
+                .filter(d -> d.getProducto() != null && producto.getId().equals(d.getProducto().getId()))
+                .map(DetalleVenta::getCostoUnitario)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(producto.getPrecioCompra() != null ? producto.getPrecioCompra() : BigDecimal.ZERO);
+    }
+
     /**
      * Registra movimiento en Kardex
      */
@@ -328,8 +335,9 @@ public class DevolucionService {
             throw new RuntimeException("La devolución ya está anulada");
         }
 
-        // Cambiar estado
+        // Cambiar estado (y descontarla del resumen diario de ventas)
         devolucion.setEstado("ANULADA");
+        resumenVentasService.registrarAnulacionDevolucion(devolucion);
 
         // Revertir stock (quitar el stock que se había regresado)
         for (DetalleDevolucion detalle : devolucion.getDetalles()) {
@@ -9,6 +9,8 @@ import com.libreria.sistema.repository.VentaRepository;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
@@ -18,6 +20,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class FacturacionElectronicaService {
@@ -28,6 +31,9 @@ public class FacturacionElectronicaService {
     private final RestTemplate restTemplate;
     private final ConfiguracionService configuracionService;
 
+    // OPTIMIZADO: configuración SUNAT en memoria; se reemplaza al guardar o activar/desactivar
+    private final AtomicReference<ConfiguracionSunatVigente> vigente = new AtomicReference<>();
+
     public FacturacionElectronicaService(
             ConfiguracionSunatRepository configuracionRepo,
             VentaRepository ventaRepo,
@@ -51,24 +57,18 @@ public class FacturacionElectronicaService {
                 .orElseThrow(() -> new RuntimeException("Venta no encontrada: " + ventaId));
 
         // 2. Validar configuración SUNAT
-        ConfiguracionSunat config = validarConfiguracion();
+        ConfiguracionSunatVigente config = validarConfiguracion();
 
         // 3. Mapear Venta → SunatRequestDTO
         SunatRequestDTO request = mapearVentaToSunatRequest(venta);
 
         try {
-            // 4. Preparar headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(config.getTokenApiSunat());
-
-            // 5. Crear entidad HTTP
-            HttpEntity<SunatRequestDTO> entity = new HttpEntity<>(request, headers);
+            // 4. Crear entidad HTTP (cabeceras precalculadas en la configuración vigente)
+            HttpEntity<SunatRequestDTO> entity = new HttpEntity<>(request, config.getCabeceras());
 
-            // 6. Enviar POST a APISUNAT (URL ya incluye el path completo)
-            String url = config.getUrlApiSunat();
+            // 5. Enviar POST a APISUNAT (URL ya incluye el path completo)
             ResponseEntity<SunatResponseDTO> response = restTemplate.exchange(
-                    url,
+                    config.getUrlDocumentos(),
                     HttpMethod.POST,
                     entity,
                     SunatResponseDTO.class
@@ -184,23 +184,12 @@ public class FacturacionElectronicaService {
     /**
      * Valida que la configuración SUNAT esté completa y activa
      */
-    private ConfiguracionSunat validarConfiguracion() {
-        ConfiguracionSunat config = configuracionRepo.findFirstByOrderByIdDesc()
-                .orElseThrow(() -> new RuntimeException(
-                        "No existe configuración de SUNAT. Configure primero en el módulo de Configuración."));
-
-        if (!Boolean.TRUE.equals(config.getFacturaElectronicaActiva())) {
-            throw new RuntimeException("La facturación electrónica está desactivada en la configuración.");
+    private ConfiguracionSunatVigente validarConfiguracion() {
+        // OPTIMIZADO: la validación se hizo al armar la foto vigente
+        ConfiguracionSunatVigente config = obtenerConfiguracionVigente();
+        if (!config.isLista()) {
+            throw new RuntimeException(config.getError());
         }
-
-        if (config.getTokenApiSunat() == null || config.getTokenApiSunat().isEmpty()) {
-            throw new RuntimeException("Token de APISUNAT no configurado.");
-        }
-
-        if (config.getUrlApiSunat() == null || config.getUrlApiSunat().isEmpty()) {
-            throw new RuntimeException("URL de APISUNAT no configurada.");
-        }
-
         return config;
     }
 
@@ -217,19 +206,56 @@ public class FacturacionElectronicaService {
      * Verifica si la facturación electrónica está disponible
      */
     public boolean isFacturacionElectronicaActiva() {
-        return configuracionRepo.findFirstByOrderByIdDesc()
-                .map(ConfiguracionSunat::getFacturaElectronicaActiva)
-                .orElse(false);
+        return obtenerConfiguracionVigente().isActiva();
     }
 
     /**
-     * Obtiene la configuración actual de SUNAT
+     * Obtiene la configuración actual de SUNAT (entidad completa, desde la BD)
      */
     public ConfiguracionSunat obtenerConfiguracionActual() {
         return configuracionRepo.findFirstByOrderByIdDesc()
                 .orElse(null);
     }
 
+    /**
+     * Configuración SUNAT vigente sin consultar la BD. Se carga la primera vez que se pide.
+     */
+    public ConfiguracionSunatVigente obtenerConfiguracionVigente() {
+        ConfiguracionSunatVigente actual = vigente.get();
+        if (actual != null) {
+            return actual;
+        }
+        ConfiguracionSunatVigente cargada = cargarVigente();
+        // Si otra petición la cargó (o se guardó una nueva) mientras tanto, gana la existente
+        return vigente.compareAndSet(null, cargada) ? cargada : vigente.get();
+    }
+
+    /**
+     * Guarda la configuración SUNAT y publica la nueva foto vigente DESPUÉS del commit
+     */
+    @Transactional
+    public ConfiguracionSunat guardarConfiguracion(ConfiguracionSunat config) {
+        ConfiguracionSunat guardada = configuracionRepo.save(config);
+        Runnable reemplazar = () -> vigente.set(new ConfiguracionSunatVigente(guardada));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reemplazar.run();
+                }
+            });
+        } else {
+            reemplazar.run();
+        }
+        return guardada;
+    }
+
+    private ConfiguracionSunatVigente cargarVigente() {
+        return configuracionRepo.findFirstByOrderByIdDesc()
+                .map(ConfiguracionSunatVigente::new)
+                .orElse(ConfiguracionSunatVigente.SIN_CONFIGURACION);
+    }
+
     /**
      * Sincroniza los correlativos locales con SUNAT al activar facturación electrónica.
      * Consulta al PSE el último número usado de cada serie oficial (B001, F001).
@@ -241,20 +267,15 @@ public class FacturacionElectronicaService {
     public String sincronizarConSunat() {
         try {
             // Validar configuración
-            ConfiguracionSunat config = validarConfiguracion();
-
-            // Preparar headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(config.getTokenApiSunat());
+            ConfiguracionSunatVigente config = validarConfiguracion();
 
             StringBuilder resultado = new StringBuilder("Sincronización completada:\n");
 
             // Sincronizar BOLETA B001
-            sincronizarSerie(config, headers, "BOLETA", "B001", resultado);
+            sincronizarSerie(config, "BOLETA", "B001", resultado);
 
             // Sincronizar FACTURA F001
-            sincronizarSerie(config, headers, "FACTURA", "F001", resultado);
+            sincronizarSerie(config, "FACTURA", "F001", resultado);
 
             return resultado.toString();
 
@@ -266,15 +287,14 @@ public class FacturacionElectronicaService {
     /**
      * Sincroniza una serie específica consultando el último número en SUNAT
      */
-    private void sincronizarSerie(ConfiguracionSunat config, HttpHeaders headers,
+    private void sincronizarSerie(ConfiguracionSunatVigente config,
                                    String tipo, String serie, StringBuilder resultado) {
         try {
             // Consultar último número usado en SUNAT para esta serie
-            // Construir URL para sincronización: reemplazar "/documents" por "/documents/last"
-            String baseUrl = config.getUrlApiSunat();
-            String url = baseUrl.replace("/documents", "/documents/last") + "?serie=" + serie;
+            // URL de sincronización precalculada: "/documents" reemplazado por "/documents/last"
+            String url = config.getUrlUltimoDocumento() + serie;
 
-            HttpEntity<Void> entity = new HttpEntity<>(headers);
+            HttpEntity<Void> entity = new HttpEntity<>(config.getCabeceras());
             ResponseEntity<Map> response = restTemplate.exchange(
                     url,
                     HttpMethod.GET,
@@ -322,21 +342,38 @@ public class FacturacionElectronicaService {
      * @return Serie correspondiente
      */
     public String obtenerSerie(String tipoComprobante, boolean facturaElectronicaActiva) {
+        return obtenerSerie(tipoComprobante, facturaElectronicaActiva, 1);
+    }
+
+    /**
+     * Obtiene la serie propia de un terminal/caja (sharding de correlativos).
+     * Terminal 1 = B001/F001/I001..., terminal 2 = B002/F002/I002..., etc.
+     * Cada terminal numera en su propia fila de correlativo, sin competir con las demás cajas.
+     *
+     * @param tipoComprobante BOLETA, FACTURA, NOTA_VENTA
+     * @param facturaElectronicaActiva true = usar series oficiales, false = usar series internas
+     * @param terminal Número de terminal/caja (1-999). Null o fuera de rango = 1
+     * @return Serie correspondiente
+     */
+    public String obtenerSerie(String tipoComprobante, boolean facturaElectronicaActiva, Integer terminal) {
+        int t = terminal != null && terminal >= 1 && terminal <= 999 ? terminal : 1;
+        String correlativo = String.format("%03d", t);
+
         if (facturaElectronicaActiva) {
             // Modo Electrónico: Series oficiales SUNAT
             return switch (tipoComprobante) {
-                case "BOLETA" -> "B001";
-                case "FACTURA" -> "F001";
-                case "NOTA_CREDITO" -> "C001";
-                default -> "N001";
+                case "BOLETA" -> "B" + correlativo;
+                case "FACTURA" -> "F" + correlativo;
+                case "NOTA_CREDITO" -> "C" + correlativo;
+                default -> "N" + correlativo;
             };
         } else {
             // Modo Interno: Series internas
             return switch (tipoComprobante) {
-                case "BOLETA" -> "I001";
-                case "FACTURA" -> "IF001";
-                case "NOTA_CREDITO" -> "NC01";
-                default -> "NI001";
+                case "BOLETA" -> "I" + correlativo;
+                case "FACTURA" -> "IF" + correlativo;
+                case "NOTA_CREDITO" -> "NC" + String.format("%02d", Math.min(t, 99));
+                default -> "NI" + correlativo;
             };
         }
     }
@@ -347,24 +384,18 @@ public class FacturacionElectronicaService {
     @Transactional
     public SunatResponseDTO enviarNotaCreditoSunat(DevolucionVenta devolucion) {
         // 1. Validar configuración SUNAT
-        ConfiguracionSunat config = validarConfiguracion();
+        ConfiguracionSunatVigente config = validarConfiguracion();
 
         // 2. Mapear DevolucionVenta → SunatRequestDTO
         SunatRequestDTO request = mapearDevolucionToSunatRequest(devolucion);
 
         try {
-            // 3. Preparar headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(config.getTokenApiSunat());
-
-            // 4. Crear entidad HTTP
-            HttpEntity<SunatRequestDTO> entity = new HttpEntity<>(request, headers);
+            // 3. Crear entidad HTTP (cabeceras precalculadas en la configuración vigente)
+            HttpEntity<SunatRequestDTO> entity = new HttpEntity<>(request, config.getCabeceras());
 
-            // 5. Enviar POST a APISUNAT (URL ya incluye el path completo)
-            String url = config.getUrlApiSunat();
+            // 4. Enviar POST a APISUNAT (URL ya incluye el path completo)
             ResponseEntity<SunatResponseDTO> response = restTemplate.exchange(
-                    url,
+                    config.getUrlDocumentos(),
                     HttpMethod.POST,
                     entity,
                     SunatResponseDTO.class
@@ -1,5 +1,6 @@
 package com.libreria.sistema.service;
 
+import com.libreria.sistema.util.Constants;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -11,6 +12,8 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Slf4j
@@ -23,6 +26,18 @@ public class LicenseValidationService {
 
     private final SystemConfigurationService configService;
 
+    // OPTIMIZADO: resultado de la última validación (el filtro la pide en cada petición)
+    private final AtomicReference<Validacion> ultimaValidacion = new AtomicReference<>();
+
+    /**
+     * Validación calculada para un día local: el estado y los días restantes solo cambian a medianoche
+     */
+    private record Validacion(LicenseInfo info, LocalDate dia, long expiraNanos) {
+        boolean vigente() {
+            return dia.equals(LocalDate.now()) && System.nanoTime() - expiraNanos < 0;
+        }
+    }
+
     public LicenseValidationService(SystemConfigurationService configService) {
         this.configService = configService;
     }
@@ -74,8 +89,43 @@ public class LicenseValidationService {
     /**
      * Valida la licencia actual del sistema.
      * Este es el método principal que debe llamarse para verificar el estado.
+     *
+     * OPTIMIZADO: devuelve el resultado en memoria mientras sea el mismo día local y no pase
+     * Constants.LICENCIA_CACHE_TTL_SEGUNDOS; se recalcula al registrar una licencia o cambiar SUNAT.
+     * El LicenseInfo devuelto es compartido: no modificarlo.
      */
     public LicenseInfo validarLicencia() {
+        Validacion actual = ultimaValidacion.get();
+        if (actual != null && actual.vigente()) {
+            return actual.info();
+        }
+        return revalidar();
+    }
+
+    /**
+     * Descarta el resultado en memoria; la siguiente petición vuelve a desencriptar la licencia.
+     * Sincronizado con revalidar(): un cálculo en curso con datos anteriores no puede sobrescribirlo.
+     */
+    public synchronized void invalidarCache() {
+        ultimaValidacion.set(null);
+    }
+
+    /**
+     * Un solo hilo recalcula; los que esperaban reutilizan su resultado
+     */
+    private synchronized LicenseInfo revalidar() {
+        Validacion actual = ultimaValidacion.get();
+        if (actual != null && actual.vigente()) {
+            return actual.info();
+        }
+        LocalDate hoy = LocalDate.now();
+        LicenseInfo info = calcularLicencia();
+        long expira = System.nanoTime() + TimeUnit.SECONDS.toNanos(Constants.LICENCIA_CACHE_TTL_SEGUNDOS);
+        ultimaValidacion.set(new Validacion(info, hoy, expira));
+        return info;
+    }
+
+    private LicenseInfo calcularLicencia() {
         try {
             // 1. Obtener el hash de licencia guardado
             String licenseHash = configService.getLicenseHash().orElse(null);
@@ -189,6 +239,7 @@ public class LicenseValidationService {
             // Guardar la licencia
             configService.saveLicenseHash(licenseHash);
             log.info("Licencia registrada correctamente");
+            invalidarCache();
 
             // Retornar el estado actualizado
             return validarLicencia();
@@ -211,6 +262,7 @@ public class LicenseValidationService {
      */
     public void desactivarSunat() {
         configService.setSunatModo("OFFLINE");
+        invalidarCache();
         log.info("SUNAT desactivado - Modo OFFLINE activado");
     }
 
@@ -221,6 +273,7 @@ public class LicenseValidationService {
         LicenseInfo info = validarLicencia();
         if (info.isSunatActivo() && info.getEstado() != EstadoLicencia.BLOQUEADO) {
             configService.setSunatModo("ACTIVO");
+            invalidarCache();
             log.info("SUNAT activado");
             return true;
         }
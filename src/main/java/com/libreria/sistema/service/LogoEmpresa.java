@@ -0,0 +1,105 @@
+package com.libreria.sistema.service;
+
+import com.lowagie.text.Image;
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Logo de la empresa en memoria (ver ConfiguracionService.obtenerLogo()).
+ *
+ * - Los bytes se sirven tal cual en /public/logo/{hash}: el hash (SHA-256 del contenido) cambia
+ *   con cada logo nuevo, así el navegador puede guardarlo en caché indefinidamente.
+ * - Para los PDF se decodifica UNA vez por tamaño de caja (80x80 en reportes, 120x60 en órdenes...)
+ *   y cada documento recibe una copia liviana (Image.getInstance(Image) comparte los datos ya decodificados).
+ * - Es inmutable: un logo nuevo es un objeto nuevo, con su propia caché de imágenes.
+ */
+@Slf4j
+public final class LogoEmpresa {
+
+    private final byte[] bytes;
+    private final String tipo;
+    private final String hash;
+
+    // "ancho x alto" -> imagen decodificada y escalada
+    private final Map<String, Image> escalados = new ConcurrentHashMap<>();
+
+    LogoEmpresa(byte[] bytes, String tipo, String hash) {
+        this.bytes = bytes;
+        this.tipo = tipo != null ? tipo : detectarTipo(bytes);
+        this.hash = hash != null ? hash : calcularHash(bytes);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    /**
+     * Bytes originales del logo (no modificar: se comparten entre peticiones)
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Copia del logo escalado para caber en (ancho, alto). Null si la imagen no se puede decodificar.
+     */
+    public Image paraPdf(float ancho, float alto) {
+        Image plantilla = escalados.computeIfAbsent(ancho + "x" + alto, clave -> decodificar(ancho, alto));
+        if (plantilla == null) {
+            return null;
+        }
+        // Copia: quien la recibe puede cambiar alineación o posición sin afectar a otros documentos
+        return Image.getInstance(plantilla);
+    }
+
+    private Image decodificar(float ancho, float alto) {
+        try {
+            Image imagen = Image.getInstance(bytes);
+            imagen.scaleToFit(ancho, alto);
+            return imagen;
+        } catch (Exception e) {
+            log.warn("No se pudo decodificar el logo para PDF: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // ==========================================
+    //        UTILIDADES
+    // ==========================================
+
+    /**
+     * SHA-256 en hexadecimal del contenido (identifica la versión del logo en la URL)
+     */
+    public static String calcularHash(byte[] contenido) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(contenido));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Tipo MIME por la firma del archivo (para logos sin tipo registrado)
+     */
+    public static String detectarTipo(byte[] contenido) {
+        if (contenido.length >= 4 && (contenido[0] & 0xFF) == 0x89 && contenido[1] == 'P' && contenido[2] == 'N' && contenido[3] == 'G') {
+            return "image/png";
+        }
+        if (contenido.length >= 3 && (contenido[0] & 0xFF) == 0xFF && (contenido[1] & 0xFF) == 0xD8) {
+            return "image/jpeg";
+        }
+        if (contenido.length >= 4 && contenido[0] == 'G' && contenido[1] == 'I' && contenido[2] == 'F') {
+            return "image/gif";
+        }
+        return "application/octet-stream";
+    }
+}
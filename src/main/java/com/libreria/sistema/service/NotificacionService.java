@@ -4,17 +4,15 @@ import com.libreria.sistema.model.Notificacion;
 import com.libreria.sistema.model.Producto;
 import com.libreria.sistema.model.Usuario;
 import com.libreria.sistema.model.Venta;
+import com.libreria.sistema.repository.KeysetRepository;
 import com.libreria.sistema.repository.NotificacionRepository;
+import com.libreria.sistema.repository.PaginaKeyset;
 import com.libreria.sistema.repository.ProductoRepository;
-import com.libreria.sistema.repository.UsuarioRepository;
 import com.libreria.sistema.repository.VentaRepository;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -35,16 +33,19 @@ public class NotificacionService {
     private final NotificacionRepository notificacionRepository;
     private final ProductoRepository productoRepository;
     private final VentaRepository ventaRepository;
-    private final UsuarioRepository usuarioRepository;
+    private final ContextoUsuario contextoUsuario;
+    private final KeysetRepository keysetRepository;
 
     public NotificacionService(NotificacionRepository notificacionRepository,
                                 ProductoRepository productoRepository,
                                 VentaRepository ventaRepository,
-                                UsuarioRepository usuarioRepository) {
+                                ContextoUsuario contextoUsuario,
+                                KeysetRepository keysetRepository) {
         this.notificacionRepository = notificacionRepository;
         this.productoRepository = productoRepository;
         this.ventaRepository = ventaRepository;
-        this.usuarioRepository = usuarioRepository;
+        this.contextoUsuario = contextoUsuario;
+        this.keysetRepository = keysetRepository;
     }
 
     // ==========================================
@@ -74,10 +75,10 @@ public class NotificacionService {
     }
 
     /**
-     * Obtiene todas las notificaciones paginadas
+     * Obtiene todas las notificaciones, por keyset desde el cursor (null = más recientes)
      */
-    public Page<Notificacion> listarTodas(Pageable pageable) {
-        return notificacionRepository.findAllOrdenadas(pageable);
+    public PaginaKeyset<Notificacion> listarTodas(String cursor, int tamano) {
+        return keysetRepository.buscar(KeysetRepository.NOTIFICACIONES, null, cursor, tamano, true);
     }
 
     /**
@@ -348,8 +349,7 @@ public class NotificacionService {
 
     private Usuario obtenerUsuarioActual() {
         try {
-            String username = SecurityContextHolder.getContext().getAuthentication().getName();
-            return usuarioRepository.findByUsername(username).orElse(null);
+            return contextoUsuario.getUsuario().orElse(null);
         } catch (Exception e) {
             return null;
         }
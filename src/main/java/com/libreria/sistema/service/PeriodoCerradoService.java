@@ -0,0 +1,215 @@
+package com.libreria.sistema.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.libreria.sistema.model.ReporteMesCerrado;
+import com.libreria.sistema.repository.ReporteMesCerradoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Resultados de reportes de meses cerrados.
+ *
+ * Un mes anterior al actual ya fue cerrado (BillingScheduler / SunatBillingService.procesarCambioMes):
+ * sus ventas, flujo de caja y rentabilidad no cambian salvo que se modifique un documento fechado
+ * en ese mes (anulación tardía, devolución, compra anulada...). Por eso:
+ *
+ * - Un rango se divide en meses cerrados completos y tramos abiertos (bordes del rango y mes en curso).
+ * - Los meses cerrados se calculan UNA vez y se guardan (reportes_mes_cerrado); los tramos abiertos
+ *   se calculan siempre.
+ * - ReporteDatosListener invalida el mes de cada documento modificado después del commit, y
+ *   ResumenVentasService.reconstruir invalida los meses reconstruidos.
+ *
+ * Los tipos guardados deben ser sumables: el resultado de un rango es la suma de sus tramos.
+ */
+@Service
+@Slf4j
+public class PeriodoCerradoService {
+
+    public static final String TOTALES = "TOTALES";
+    public static final String RENTABILIDAD = "RENTABILIDAD";
+
+    /**
+     * Parte de un rango: un mes cerrado completo (mesCerrado != null) o un tramo que se calcula en el momento
+     */
+    public record Tramo(LocalDate inicio, LocalDate fin, YearMonth mesCerrado) {
+        public boolean cerrado() {
+            return mesCerrado != null;
+        }
+    }
+
+    private final ReporteMesCerradoRepository repository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate escritura;
+
+    // Protegido por synchronized: un resultado calculado antes de una invalidación no se guarda
+    private long invalidaciones;
+
+    public PeriodoCerradoService(ReporteMesCerradoRepository repository,
+                                 ObjectMapper objectMapper,
+                                 PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        // Transacción propia: se escribe desde reportes de solo lectura y desde afterCommit
+        this.escritura = new TransactionTemplate(transactionManager);
+        this.escritura.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public boolean estaCerrado(YearMonth mes) {
+        return mes.isBefore(YearMonth.now());
+    }
+
+    /**
+     * Resultado de cada tramo del rango [inicio, fin]: de los guardados para los meses cerrados,
+     * del cálculo para el resto
+     *
+     * @param calculo Cálculo de un tramo [desde, hasta]; debe poder sumarse con el de los demás tramos
+     */
+    public <T> List<T> resolver(String tipo, LocalDate inicio, LocalDate fin, TypeReference<T> tipoDatos,
+                                BiFunction<LocalDate, LocalDate, T> calculo) {
+        List<Tramo> tramos = dividir(inicio, fin);
+        Map<YearMonth, T> guardados = cargar(tipo, tramos, tipoDatos);
+
+        List<T> resultados = new ArrayList<>(tramos.size());
+        for (Tramo tramo : tramos) {
+            if (!tramo.cerrado()) {
+                resultados.add(calculo.apply(tramo.inicio(), tramo.fin()));
+                continue;
+            }
+            T valor = guardados.get(tramo.mesCerrado());
+            if (valor == null) {
+                long version = versionInvalidaciones();
+                valor = calculo.apply(tramo.inicio(), tramo.fin());
+                guardar(tipo, tramo.mesCerrado(), valor, version);
+            }
+            resultados.add(valor);
+        }
+        return resultados;
+    }
+
+    /**
+     * Divide [inicio, fin] en meses cerrados completos y tramos abiertos contiguos (unidos en uno solo)
+     */
+    public List<Tramo> dividir(LocalDate inicio, LocalDate fin) {
+        return dividir(inicio, fin, YearMonth.now());
+    }
+
+    /**
+     * dividir() con el mes en curso explícito: cerrado es todo mes anterior a mesEnCurso
+     */
+    static List<Tramo> dividir(LocalDate inicio, LocalDate fin, YearMonth mesEnCurso) {
+        List<Tramo> tramos = new ArrayList<>();
+        LocalDate abiertoDesde = null;
+        for (YearMonth mes = YearMonth.from(inicio); !mes.isAfter(YearMonth.from(fin)); mes = mes.plusMonths(1)) {
+            LocalDate desde = inicio.isAfter(mes.atDay(1)) ? inicio : mes.atDay(1);
+            LocalDate hasta = fin.isBefore(mes.atEndOfMonth()) ? fin : mes.atEndOfMonth();
+            boolean completo = desde.equals(mes.atDay(1)) && hasta.equals(mes.atEndOfMonth());
+
+            if (completo && mes.isBefore(mesEnCurso)) {
+                if (abiertoDesde != null) {
+                    tramos.add(new Tramo(abiertoDesde, desde.minusDays(1), null));
+                    abiertoDesde = null;
+                }
+                tramos.add(new Tramo(desde, hasta, mes));
+            } else if (abiertoDesde == null) {
+                abiertoDesde = desde;
+            }
+        }
+        if (abiertoDesde != null) {
+            tramos.add(new Tramo(abiertoDesde, fin, null));
+        }
+        return tramos;
+    }
+
+    // ==========================================
+    //        INVALIDACIÓN
+    // ==========================================
+
+    /**
+     * Un documento con esta fecha cambió: si su mes está cerrado, sus resultados se recalcularán
+     */
+    public void invalidar(LocalDate fechaDocumento) {
+        if (fechaDocumento != null && estaCerrado(YearMonth.from(fechaDocumento))) {
+            invalidarRango(fechaDocumento, fechaDocumento);
+        }
+    }
+
+    /**
+     * Descarta los resultados de los meses que tocan [desde, hasta]
+     */
+    public synchronized void invalidarRango(LocalDate desde, LocalDate hasta) {
+        invalidaciones++;
+        Integer eliminados = escritura.execute(status ->
+                repository.eliminarEntre(YearMonth.from(desde).atDay(1), YearMonth.from(hasta).atDay(1)));
+        if (eliminados != null && eliminados > 0) {
+            log.info("Resultados de meses cerrados invalidados ({} a {}): {}",
+                    YearMonth.from(desde), YearMonth.from(hasta), eliminados);
+        }
+    }
+
+    // ==========================================
+    //        ALMACENAMIENTO
+    // ==========================================
+
+    private <T> Map<YearMonth, T> cargar(String tipo, List<Tramo> tramos, TypeReference<T> tipoDatos) {
+        List<LocalDate> meses = tramos.stream()
+                .filter(Tramo::cerrado)
+                .map(tramo -> tramo.mesCerrado().atDay(1))
+                .toList();
+        Map<YearMonth, T> guardados = new HashMap<>();
+        if (meses.isEmpty()) {
+            return guardados;
+        }
+        for (ReporteMesCerrado fila : repository.findByTipoAndMesIn(tipo, meses)) {
+            try {
+                guardados.put(YearMonth.from(fila.getMes()), objectMapper.readValue(fila.getDatos(), tipoDatos));
+            } catch (JsonProcessingException e) {
+                // Formato de una versión anterior: se recalcula y se reemplaza
+                log.warn("Resultado guardado ilegible ({} {}): {}", tipo, fila.getMes(), e.getMessage());
+            }
+        }
+        return guardados;
+    }
+
+    private synchronized long versionInvalidaciones() {
+        return invalidaciones;
+    }
+
+    /**
+     * Guarda el resultado si ninguna invalidación ocurrió mientras se calculaba
+     */
+    private synchronized void guardar(String tipo, YearMonth mes, Object valor, long version) {
+        if (version != invalidaciones) {
+            return;
+        }
+        try {
+            String datos = objectMapper.writeValueAsString(valor);
+            escritura.executeWithoutResult(status -> {
+                List<ReporteMesCerrado> anteriores = repository.findByTipoAndMesIn(tipo, List.of(mes.atDay(1)));
+                ReporteMesCerrado fila = anteriores.isEmpty() ? new ReporteMesCerrado() : anteriores.get(0);
+                fila.setTipo(tipo);
+                fila.setMes(mes.atDay(1));
+                fila.setDatos(datos);
+                fila.setFechaCalculo(LocalDateTime.now());
+                repository.save(fila);
+            });
+        } catch (JsonProcessingException | DataIntegrityViolationException e) {
+            // Otro nodo lo guardó primero o no se pudo serializar: se sigue sirviendo el cálculo
+            log.warn("No se guardó el resultado del mes cerrado {} {}: {}", tipo, mes, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.Permission;
+import com.libreria.sistema.model.Role;
+import com.libreria.sistema.model.Usuario;
+import com.libreria.sistema.model.evento.CambioEntidad;
+import com.libreria.sistema.repository.PermissionRepository;
+import com.libreria.sistema.repository.RoleRepository;
+import com.libreria.sistema.repository.UsuarioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Permisos de todos los roles compilados en memoria para @PreAuthorize("hasPermission(null, 'X')").
+ *
+ * - Cada código de permiso recibe un índice de bit (orden por id).
+ * - Cada rol se compila a un PermisosRol inmutable; el principal del usuario guarda el de su rol.
+ * - Verificar un permiso es buscar el índice del código y probar un bit: sin consultas por llamada.
+ *
+ * Se recompila (de forma perezosa) solo cuando RolePermissionService cambia roles o permisos,
+ * después del commit.
+ *
+ * El rol y la marca de admin de cada sesión se releen de la BD cuando el usuario cambia: cada
+ * Usuario guardado incrementa su versión (después del commit) y la siguiente verificación de sus
+ * sesiones abiertas, con otra versión, vuelve a leerlos. Una baja deja la sesión sin permisos.
+ */
+@Component
+@Slf4j
+public class PermisosCompilados {
+
+    /**
+     * Resultado inmutable de una compilación
+     */
+    private record Compilacion(long version, Map<String, Integer> indices, Map<Long, PermisosRol> porRole) {
+    }
+
+    /**
+     * Rol y marca de admin vigentes de un usuario (SIN_ACCESO si no existe o está dado de baja)
+     */
+    private record Acceso(boolean admin, Long roleId) {
+        static final Acceso SIN_ACCESO = new Acceso(false, null);
+    }
+
+    private final RoleRepository roleRepository;
+    private final PermissionRepository permissionRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final TransactionTemplate lectura;
+
+    private final AtomicLong versiones = new AtomicLong();
+    private volatile Compilacion actual;
+
+    // username -> cantidad de cambios confirmados desde el arranque (ausente = 0)
+    private final Map<String, Long> versionesUsuario = new ConcurrentHashMap<>();
+
+    public PermisosCompilados(RoleRepository roleRepository, PermissionRepository permissionRepository,
+                              UsuarioRepository usuarioRepository, PlatformTransactionManager transactionManager) {
+        this.roleRepository = roleRepository;
+        this.permissionRepository = permissionRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.lectura = new TransactionTemplate(transactionManager);
+        this.lectura.setReadOnly(true);
+    }
+
+    /**
+     * ¿El usuario autenticado tiene el permiso? ADMIN siempre lo tiene.
+     */
+    public boolean tienePermiso(UsuarioAutenticado usuario, String codigoPermiso) {
+        long versionUsuario = versionUsuario(usuario.getUsername());
+        if (usuario.getVersionUsuario() != versionUsuario) {
+            // El usuario cambió después de iniciar sesión: una consulta, solo la primera vez
+            Acceso acceso = leerAcceso(usuario.getUsername());
+            usuario.actualizarAcceso(acceso.admin(), acceso.roleId(), versionUsuario);
+        }
+        if (usuario.isAdmin()) {
+            return true;
+        }
+        Compilacion compilacion = compilacion();
+        PermisosRol permisos = usuario.getPermisos();
+        if (permisos == null || permisos.getVersion() != compilacion.version()) {
+            // Primera verificación de la sesión o roles recompilados: un solo lookup en memoria
+            permisos = usuario.getRoleId() != null
+                    ? compilacion.porRole().getOrDefault(usuario.getRoleId(), PermisosRol.VACIO)
+                    : PermisosRol.VACIO;
+            usuario.setPermisos(permisos);
+        }
+        Integer bit = compilacion.indices().get(codigoPermiso);
+        return bit != null && permisos.contiene(bit);
+    }
+
+    /**
+     * Versión del usuario que se guarda en el principal al iniciar sesión
+     */
+    public long versionUsuario(String username) {
+        return versionesUsuario.getOrDefault(username, 0L);
+    }
+
+    // fallbackExecution: un cambio sin transacción se aplica de inmediato
+    @TransactionalEventListener(fallbackExecution = true)
+    public void usuarioModificado(CambioEntidad cambio) {
+        if (cambio.entidad() instanceof Usuario usuario) {
+            versionesUsuario.merge(usuario.getUsername(), 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Descarta la compilación después del commit de la transacción en curso (o ya, si no hay)
+     */
+    public void invalidarAlConfirmar() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidar();
+                }
+            });
+        } else {
+            invalidar();
+        }
+    }
+
+    /**
+     * Sincronizado con compilar(): una compilación en curso con datos anteriores no puede sobrescribirla
+     */
+    public synchronized void invalidar() {
+        actual = null;
+    }
+
+    private Acceso leerAcceso(String username) {
+        return lectura.execute(estado -> usuarioRepository.findByUsername(username)
+                .filter(Usuario::isActivo)
+                .map(u -> new Acceso(RolePermissionService.esAdministrador(u),
+                        u.getRole() != null ? u.getRole().getId() : null))
+                .orElse(Acceso.SIN_ACCESO));
+    }
+
+    // ==========================================
+    //        COMPILACIÓN
+    // ==========================================
+
+    private Compilacion compilacion() {
+        Compilacion c = actual;
+        return c != null ? c : compilar();
+    }
+
+    private synchronized Compilacion compilar() {
+        if (actual != null) {
+            return actual;
+        }
+        long version = versiones.incrementAndGet();
+
+        List<Permission> permisos = permissionRepository.findAll();
+        permisos.sort(Comparator.comparing(Permission::getId));
+        Map<String, Integer> indices = new HashMap<>();
+        for (Permission p : permisos) {
+            indices.putIfAbsent(p.getCodigo(), indices.size());
+        }
+
+        Map<Long, PermisosRol> porRole = new HashMap<>();
+        for (Role role : roleRepository.findAllWithPermissions()) {
+            long[] bits = new long[(indices.size() + 63) >>> 6];
+            for (Permission p : role.getPermissions()) {
+                Integer bit = indices.get(p.getCodigo());
+                if (bit != null) {
+                    bits[bit >>> 6] |= 1L << bit;
+                }
+            }
+            porRole.put(role.getId(), new PermisosRol(bits, version));
+        }
+
+        actual = new Compilacion(version, Map.copyOf(indices), Map.copyOf(porRole));
+        log.debug("Permisos compilados: {} códigos, {} roles (versión {})", indices.size(), porRole.size(), version);
+        return actual;
+    }
+}
@@ -0,0 +1,35 @@
+package com.libreria.sistema.service;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Permisos de un rol compilados a bits (ver PermisosCompilados).
+ *
+ * Inmutable: cada compilación crea objetos nuevos. version indica de qué compilación sale,
+ * porque el índice de bits por código puede cambiar si se crean permisos nuevos.
+ */
+public final class PermisosRol implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    static final PermisosRol VACIO = new PermisosRol(new long[0], -1);
+
+    private final long[] bits;
+    private final long version;
+
+    PermisosRol(long[] bits, long version) {
+        this.bits = bits;
+        this.version = version;
+    }
+
+    public boolean contiene(int bit) {
+        int palabra = bit >>> 6;
+        return bit >= 0 && palabra < bits.length && (bits[palabra] & (1L << bit)) != 0;
+    }
+
+    long getVersion() {
+        return version;
+    }
+}
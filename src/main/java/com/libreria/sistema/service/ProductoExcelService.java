@@ -2,8 +2,10 @@ package com.libreria.sistema.service;
 
 import com.libreria.sistema.model.Producto;
 import com.libreria.sistema.repository.ProductoRepository;
+import com.libreria.sistema.util.ExcelStreaming;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -12,11 +14,13 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Servicio para importación y exportación masiva de productos vía Excel.
@@ -168,12 +172,13 @@ public class ProductoExcelService {
     }
 
     /**
-     * Exporta todos los productos actuales a Excel
+     * Exporta todos los productos activos a Excel en streaming (SXSSF + cursor),
+     * sin cargar el catálogo completo en memoria
      */
-    public byte[] exportarProductos() throws IOException {
-        List<Producto> productos = productoRepository.findByActivoTrue();
-
-        try (Workbook workbook = new XSSFWorkbook()) {
+    @Transactional(readOnly = true)
+    public void exportarProductos(OutputStream outputStream) throws IOException {
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
             Sheet sheet = workbook.createSheet("Productos");
 
             // Estilo para encabezados
@@ -192,40 +197,42 @@ public class ProductoExcelService {
                 cell.setCellValue(COLUMNAS[i]);
                 cell.setCellStyle(headerStyle);
             }
+            ExcelStreaming.fijarAnchos(sheet, 18, 16, 40, 20, 16, 16, 40, 16, 16, 18, 14, 14, 16, 16, 18, 18);
 
-            // Llenar datos
+            // Llenar datos (mismo orden que COLUMNAS)
             int rowNum = 1;
-            for (Producto p : productos) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(p.getCodigoBarra() != null ? p.getCodigoBarra() : "");
-                row.createCell(1).setCellValue(p.getCodigoInterno() != null ? p.getCodigoInterno() : "");
-                row.createCell(2).setCellValue(p.getNombre() != null ? p.getNombre() : "");
-                row.createCell(3).setCellValue(p.getCategoria() != null ? p.getCategoria() : "");
-                row.createCell(4).setCellValue(p.getMarca() != null ? p.getMarca() : "");
-                row.createCell(5).setCellValue(p.getModelo() != null ? p.getModelo() : "");
-                row.createCell(6).setCellValue(p.getDescripcion() != null ? p.getDescripcion() : "");
-                row.createCell(7).setCellValue(p.getPrecioCompra() != null ? p.getPrecioCompra().doubleValue() : 0);
-                row.createCell(8).setCellValue(p.getPrecioVenta() != null ? p.getPrecioVenta().doubleValue() : 0);
-                row.createCell(9).setCellValue(p.getPrecioMayorista() != null ? p.getPrecioMayorista().doubleValue() : 0);
-                row.createCell(10).setCellValue(p.getStockActual() != null ? p.getStockActual() : 0);
-                row.createCell(11).setCellValue(p.getStockMinimo() != null ? p.getStockMinimo() : 5);
-                row.createCell(12).setCellValue(p.getUnidadMedida() != null ? p.getUnidadMedida() : "UNIDAD");
-                row.createCell(13).setCellValue(p.getUbicacionFila() != null ? p.getUbicacionFila() : "");
-                row.createCell(14).setCellValue(p.getUbicacionColumna() != null ? p.getUbicacionColumna() : "");
-                row.createCell(15).setCellValue(p.getUbicacionEstante() != null ? p.getUbicacionEstante() : "");
-            }
-
-            // Auto-ajustar columnas
-            for (int i = 0; i < COLUMNAS.length; i++) {
-                sheet.autoSizeColumn(i);
+            try (Stream<Object[]> filas = productoRepository.streamParaExportacion()) {
+                for (Object[] p : (Iterable<Object[]>) filas::iterator) {
+                    Row row = sheet.createRow(rowNum++);
+                    row.createCell(0).setCellValue(texto(p[0]));
+                    row.createCell(1).setCellValue(texto(p[1]));
+                    row.createCell(2).setCellValue(texto(p[2]));
+                    row.createCell(3).setCellValue(texto(p[3]));
+                    row.createCell(4).setCellValue(texto(p[4]));
+                    row.createCell(5).setCellValue(texto(p[5]));
+                    row.createCell(6).setCellValue(texto(p[6]));
+                    row.createCell(7).setCellValue(p[7] != null ? ((BigDecimal) p[7]).doubleValue() : 0);
+                    row.createCell(8).setCellValue(p[8] != null ? ((BigDecimal) p[8]).doubleValue() : 0);
+                    row.createCell(9).setCellValue(p[9] != null ? ((BigDecimal) p[9]).doubleValue() : 0);
+                    row.createCell(10).setCellValue(p[10] != null ? (Integer) p[10] : 0);
+                    row.createCell(11).setCellValue(p[11] != null ? (Integer) p[11] : 5);
+                    row.createCell(12).setCellValue(p[12] != null ? (String) p[12] : "UNIDAD");
+                    row.createCell(13).setCellValue(texto(p[13]));
+                    row.createCell(14).setCellValue(texto(p[14]));
+                    row.createCell(15).setCellValue(texto(p[15]));
+                }
             }
 
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            workbook.write(outputStream);
-            return outputStream.toByteArray();
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
         }
     }
 
+    private String texto(Object valor) {
+        return valor != null ? valor.toString() : "";
+    }
+
     /**
      * Obtiene el siguiente número de SKU disponible
      */
@@ -257,6 +264,12 @@ public class ProductoExcelService {
         // Contador para SKU autogenerado durante la importación
         int siguienteNumeroSku = obtenerSiguienteNumeroSku();
 
+        // Productos nuevos acumulados para insertarlos en lote (JDBC batch) al final.
+        // pendientes indexa esos productos por código: una fila repetida en el archivo los encuentra
+        // igual que si ya estuvieran en la BD (la última fila gana, como al guardar uno por uno).
+        List<Producto> nuevos = new ArrayList<>();
+        Map<String, Producto> pendientes = new HashMap<>();
+
         try (InputStream is = file.getInputStream();
              Workbook workbook = new XSSFWorkbook(is)) {
 
@@ -285,19 +298,29 @@ public class ProductoExcelService {
 
                     // Primero buscar por código de barras
                     if (codigoBarra != null && !codigoBarra.isEmpty()) {
-                        productoExistente = productoRepository.findByCodigoBarra(codigoBarra).orElse(null);
+                        productoExistente = pendientes.get("B:" + codigoBarra);
+                        if (productoExistente == null) {
+                            productoExistente = productoRepository.findByCodigoBarra(codigoBarra).orElse(null);
+                        }
                     }
 
                     // Si no encontró, buscar por código interno
                     if (productoExistente == null && codigoInterno != null && !codigoInterno.isEmpty()) {
-                        productoExistente = productoRepository.findByCodigoInterno(codigoInterno).orElse(null);
+                        productoExistente = pendientes.get("I:" + codigoInterno);
+                        if (productoExistente == null) {
+                            productoExistente = productoRepository.findByCodigoInterno(codigoInterno).orElse(null);
+                        }
                     }
 
                     if (productoExistente != null) {
                         if (actualizarExistentes) {
-                            // Actualizar producto existente
+                            // Actualizar producto existente (si aún no se insertó, saveAll lo guarda con esta fila)
                             actualizarProductoDesdeRow(productoExistente, row);
-                            productoRepository.save(productoExistente);
+                            if (productoExistente.getId() == null) {
+                                indexarPendiente(pendientes, productoExistente);
+                            } else {
+                                productoRepository.save(productoExistente);
+                            }
                             actualizados++;
                             log.debug("Producto actualizado: {}", nombre);
                         } else {
@@ -313,7 +336,8 @@ public class ProductoExcelService {
                             nuevo.setCodigoInterno(String.format("SKU-%05d", siguienteNumeroSku++));
                         }
 
-                        productoRepository.save(nuevo);
+                        nuevos.add(nuevo);
+                        indexarPendiente(pendientes, nuevo);
                         creados++;
                         log.debug("Producto creado: {}", nombre);
                     }
@@ -326,6 +350,8 @@ public class ProductoExcelService {
             }
         }
 
+        productoRepository.saveAll(nuevos);
+
         resultado.put("creados", creados);
         resultado.put("actualizados", actualizados);
         resultado.put("omitidos", omitidos);
@@ -338,6 +364,13 @@ public class ProductoExcelService {
         return resultado;
     }
 
+    private static void indexarPendiente(Map<String, Producto> pendientes, Producto producto) {
+        if (producto.getCodigoBarra() != null && !producto.getCodigoBarra().isEmpty()) {
+            pendientes.put("B:" + producto.getCodigoBarra(), producto);
+        }
+        pendientes.put("I:" + producto.getCodigoInterno(), producto);
+    }
+
     private Producto crearProductoDesdeRow(Row row) {
         Producto p = new Producto();
         actualizarProductoDesdeRow(p, row);
@@ -0,0 +1,84 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.Amortizacion;
+import com.libreria.sistema.model.Compra;
+import com.libreria.sistema.model.DevolucionVenta;
+import com.libreria.sistema.model.Kardex;
+import com.libreria.sistema.model.MovimientoCaja;
+import com.libreria.sistema.model.Producto;
+import com.libreria.sistema.model.Venta;
+import com.libreria.sistema.model.evento.CambioEntidad;
+import com.libreria.sistema.service.ReporteDatosVersion.Dominio;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Escucha los cambios de las entidades que leen los reportes (CambioEntidad) e incrementa
+ * la versión del dominio DESPUÉS del commit, así un rollback no invalida reportes ya generados.
+ *
+ * Si el documento está fechado en un mes cerrado, invalida también los resultados guardados
+ * de ese mes (PeriodoCerradoService).
+ */
+@Component
+public class ReporteDatosListener {
+
+    private final ReporteDatosVersion datosVersion;
+    private final PeriodoCerradoService periodoCerradoService;
+
+    public ReporteDatosListener(ReporteDatosVersion datosVersion, PeriodoCerradoService periodoCerradoService) {
+        this.datosVersion = datosVersion;
+        this.periodoCerradoService = periodoCerradoService;
+    }
+
+    // fallbackExecution: un cambio sin transacción se aplica de inmediato
+    @TransactionalEventListener(fallbackExecution = true)
+    public void entidadModificada(CambioEntidad cambio) {
+        Dominio dominio = dominioDe(cambio.entidad());
+        if (dominio != null) {
+            datosVersion.incrementar(dominio);
+            periodoCerradoService.invalidar(fechaEnReportes(cambio.entidad()));
+        }
+    }
+
+    /**
+     * Fecha con la que el documento entra a los reportes (la misma que usa ResumenVentasService)
+     */
+    private LocalDate fechaEnReportes(Object entidad) {
+        if (entidad instanceof Venta venta) {
+            return venta.getFechaEmision();
+        }
+        if (entidad instanceof Amortizacion pago) {
+            return fecha(pago.getFechaPago());
+        }
+        if (entidad instanceof DevolucionVenta devolucion) {
+            return fecha(devolucion.getFechaCreacion());
+        }
+        if (entidad instanceof Compra compra) {
+            return fecha(compra.getFecha());
+        }
+        if (entidad instanceof MovimientoCaja movimiento) {
+            return fecha(movimiento.getFecha());
+        }
+        return null;
+    }
+
+    private static LocalDate fecha(LocalDateTime fechaHora) {
+        return fechaHora != null ? fechaHora.toLocalDate() : null;
+    }
+
+    private Dominio dominioDe(Object entidad) {
+        if (entidad instanceof Venta || entidad instanceof Amortizacion || entidad instanceof DevolucionVenta) {
+            return Dominio.VENTAS;
+        }
+        if (entidad instanceof Producto || entidad instanceof Kardex) {
+            return Dominio.INVENTARIO;
+        }
+        if (entidad instanceof MovimientoCaja || entidad instanceof Compra) {
+            return Dominio.CAJA;
+        }
+        return null;
+    }
+}
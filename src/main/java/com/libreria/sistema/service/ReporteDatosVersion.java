@@ -0,0 +1,50 @@
+package com.libreria.sistema.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versión de los datos que leen los reportes, por dominio.
+ *
+ * Cada alta, cambio o baja confirmada en las tablas de un dominio incrementa su versión
+ * (ver ReporteDatosListener). Un reporte ya generado sigue siendo válido mientras las
+ * versiones de los dominios de los que depende no cambien.
+ *
+ * Las versiones viven en memoria: al reiniciar vuelven a cero junto con los reportes generados.
+ */
+@Component
+public class ReporteDatosVersion {
+
+    public enum Dominio {
+        VENTAS,      // Ventas, cobranzas y devoluciones
+        INVENTARIO,  // Productos y Kardex
+        CAJA         // Movimientos de caja y compras
+    }
+
+    private final Map<Dominio, AtomicLong> versiones = new EnumMap<>(Dominio.class);
+
+    public ReporteDatosVersion() {
+        for (Dominio dominio : Dominio.values()) {
+            versiones.put(dominio, new AtomicLong());
+        }
+    }
+
+    public void incrementar(Dominio dominio) {
+        versiones.get(dominio).incrementAndGet();
+    }
+
+    /**
+     * Foto de las versiones actuales de los dominios indicados
+     */
+    public Map<Dominio, Long> obtener(Set<Dominio> dominios) {
+        Map<Dominio, Long> foto = new EnumMap<>(Dominio.class);
+        for (Dominio dominio : dominios) {
+            foto.put(dominio, versiones.get(dominio).get());
+        }
+        return foto;
+    }
+}
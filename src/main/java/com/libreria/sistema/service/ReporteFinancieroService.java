@@ -1,7 +1,12 @@
 package com.libreria.sistema.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.libreria.sistema.model.*;
+import com.libreria.sistema.model.dto.ProductoPeriodoDTO;
+import com.libreria.sistema.model.dto.TotalesPeriodoDTO;
 import com.libreria.sistema.repository.*;
+import com.libreria.sistema.util.Constants;
+import com.libreria.sistema.util.ExcelStreaming;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.Element;
@@ -11,15 +16,20 @@ import com.lowagie.text.Paragraph;
 import com.lowagie.text.pdf.PdfPCell;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import jakarta.servlet.http.HttpServletResponse;
 import java.awt.Color;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
@@ -27,6 +37,14 @@ import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -43,10 +61,10 @@ public class ReporteFinancieroService {
     private MovimientoCajaRepository movimientoCajaRepository;
 
     @Autowired
-    private AmortizacionRepository amortizacionRepository;
+    private VentaResumenDiarioRepository resumenRepository;
 
     @Autowired
-    private DevolucionVentaRepository devolucionRepository;
+    private VentaProductoDiarioRepository productoDiarioRepository;
 
     @Autowired
     private ProductoRepository productoRepository;
@@ -54,138 +72,83 @@ public class ReporteFinancieroService {
     @Autowired
     private ConfiguracionService configuracionService;
 
+    @Autowired
+    private DashboardCache dashboardCache;
+
+    @Autowired
+    private PeriodoCerradoService periodoCerradoService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate seccionTransaction;
+    private ThreadPoolExecutor seccionExecutor;
+
     /**
      * Generar flujo de caja con ingresos y egresos
+     * OPTIMIZADO: ventas, cobros y devoluciones salen del resumen diario; compras y caja, de agregados en BD
      */
     public Map<String, Object> generarFlujoCaja(LocalDate fechaInicio, LocalDate fechaFin) {
-        LocalDateTime inicio = fechaInicio.atStartOfDay();
-        LocalDateTime fin = fechaFin.atTime(23, 59, 59);
-
         Map<String, Object> resultado = new HashMap<>();
         List<Map<String, Object>> detalleIngresos = new ArrayList<>();
         List<Map<String, Object>> detalleEgresos = new ArrayList<>();
 
-        BigDecimal totalIngresos = BigDecimal.ZERO;
-        BigDecimal totalEgresos = BigDecimal.ZERO;
+        // OPTIMIZADO: los meses cerrados del rango salen de PeriodoCerradoService
+        TotalesPeriodoDTO totales = totalizarPeriodo(fechaInicio, fechaFin);
 
         // === INGRESOS ===
 
         // 1. Ventas al contado
-        List<Venta> ventasContado = ventaRepository.findAll().stream()
-                .filter(v -> v.getFechaEmision() != null &&
-                        !v.getFechaEmision().isBefore(fechaInicio) &&
-                        !v.getFechaEmision().isAfter(fechaFin) &&
-                        "CONTADO".equals(v.getFormaPago()) &&
-                        !"ANULADO".equals(v.getEstado()))
-                .collect(Collectors.toList());
-
-        BigDecimal ingresoVentasContado = ventasContado.stream()
-                .map(Venta::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
         detalleIngresos.add(Map.of(
                 "concepto", "Ventas al Contado",
-                "cantidad", ventasContado.size(),
-                "monto", ingresoVentasContado
+                "cantidad", (int) totales.cantidadContado(),
+                "monto", totales.totalContado()
         ));
-        totalIngresos = totalIngresos.add(ingresoVentasContado);
 
         // 2. Amortizaciones (pagos de crédito)
-        List<Amortizacion> amortizaciones = amortizacionRepository.findAll().stream()
-                .filter(a -> a.getFechaPago() != null &&
-                        !a.getFechaPago().isBefore(inicio) &&
-                        !a.getFechaPago().isAfter(fin))
-                .collect(Collectors.toList());
-
-        BigDecimal ingresoAmortizaciones = amortizaciones.stream()
-                .map(Amortizacion::getMonto)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
         detalleIngresos.add(Map.of(
                 "concepto", "Cobros de Crédito (Amortizaciones)",
-                "cantidad", amortizaciones.size(),
-                "monto", ingresoAmortizaciones
+                "cantidad", (int) totales.cantidadCobros(),
+                "monto", totales.montoCobrado()
         ));
-        totalIngresos = totalIngresos.add(ingresoAmortizaciones);
 
         // 3. Otros ingresos (MovimientoCaja tipo INGRESO)
-        List<MovimientoCaja> otrosIngresos = movimientoCajaRepository.findAll().stream()
-                .filter(m -> "INGRESO".equals(m.getTipo()) &&
-                        m.getFecha() != null &&
-                        !m.getFecha().isBefore(inicio) &&
-                        !m.getFecha().isAfter(fin))
-                .collect(Collectors.toList());
-
-        BigDecimal montoOtrosIngresos = otrosIngresos.stream()
-                .map(MovimientoCaja::getMonto)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
         detalleIngresos.add(Map.of(
                 "concepto", "Otros Ingresos",
-                "cantidad", otrosIngresos.size(),
-                "monto", montoOtrosIngresos
+                "cantidad", (int) totales.cantidadOtrosIngresos(),
+                "monto", totales.montoOtrosIngresos()
         ));
-        totalIngresos = totalIngresos.add(montoOtrosIngresos);
+
+        BigDecimal totalIngresos = totales.totalContado()
+                .add(totales.montoCobrado())
+                .add(totales.montoOtrosIngresos());
 
         // === EGRESOS ===
 
         // 1. Compras (excluir anuladas)
-        List<Compra> compras = compraRepository.findAll().stream()
-                .filter(c -> c.getFecha() != null &&
-                        !c.getFecha().toLocalDate().isBefore(fechaInicio) &&
-                        !c.getFecha().toLocalDate().isAfter(fechaFin) &&
-                        !"ANULADA".equals(c.getEstado()))
-                .collect(Collectors.toList());
-
-        BigDecimal egresoCompras = compras.stream()
-                .map(Compra::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
         detalleEgresos.add(Map.of(
                 "concepto", "Compras a Proveedores",
-                "cantidad", compras.size(),
-                "monto", egresoCompras
+                "cantidad", (int) totales.cantidadCompras(),
+                "monto", totales.montoCompras()
         ));
-        totalEgresos = totalEgresos.add(egresoCompras);
 
         // 2. Devoluciones (reembolsos en efectivo)
-        List<DevolucionVenta> devoluciones = devolucionRepository.findAll().stream()
-                .filter(d -> d.getFechaCreacion() != null &&
-                        !d.getFechaCreacion().toLocalDate().isBefore(fechaInicio) &&
-                        !d.getFechaCreacion().toLocalDate().isAfter(fechaFin) &&
-                        "EFECTIVO".equals(d.getMetodoReembolso()) &&
-                        "PROCESADA".equals(d.getEstado()))
-                .collect(Collectors.toList());
-
-        BigDecimal egresoDevoluciones = devoluciones.stream()
-                .map(DevolucionVenta::getTotalDevuelto)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
         detalleEgresos.add(Map.of(
                 "concepto", "Devoluciones (Reembolsos)",
-                "cantidad", devoluciones.size(),
-                "monto", egresoDevoluciones
+                "cantidad", (int) totales.cantidadDevolucionesEfectivo(),
+                "monto", totales.montoDevueltoEfectivo()
         ));
-        totalEgresos = totalEgresos.add(egresoDevoluciones);
 
         // 3. Otros egresos (MovimientoCaja tipo EGRESO)
-        List<MovimientoCaja> otrosEgresos = movimientoCajaRepository.findAll().stream()
-                .filter(m -> "EGRESO".equals(m.getTipo()) &&
-                        m.getFecha() != null &&
-                        !m.getFecha().isBefore(inicio) &&
-                        !m.getFecha().isAfter(fin))
-                .collect(Collectors.toList());
-
-        BigDecimal montoOtrosEgresos = otrosEgresos.stream()
-                .map(MovimientoCaja::getMonto)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
         detalleEgresos.add(Map.of(
                 "concepto", "Gastos Administrativos",
-                "cantidad", otrosEgresos.size(),
-                "monto", montoOtrosEgresos
+                "cantidad", (int) totales.cantidadOtrosEgresos(),
+                "monto", totales.montoOtrosEgresos()
         ));
-        totalEgresos = totalEgresos.add(montoOtrosEgresos);
+
+        BigDecimal totalEgresos = totales.montoCompras()
+                .add(totales.montoDevueltoEfectivo())
+                .add(totales.montoOtrosEgresos());
 
         // === RESULTADO ===
         BigDecimal saldo = totalIngresos.subtract(totalEgresos);
@@ -203,54 +166,28 @@ public class ReporteFinancieroService {
 
     /**
      * Generar rentabilidad por productos
+     * OPTIMIZADO: lee los hechos producto/día; el costo es el capturado al vender y se descuentan las devoluciones
+     * OPTIMIZADO: los meses cerrados del rango salen de PeriodoCerradoService
      */
     public List<Map<String, Object>> generarRentabilidadProductos(LocalDate fechaInicio, LocalDate fechaFin) {
         List<Map<String, Object>> rentabilidad = new ArrayList<>();
 
-        // Obtener todas las ventas en el rango (no anuladas)
-        List<Venta> ventas = ventaRepository.findAll().stream()
-                .filter(v -> v.getFechaEmision() != null &&
-                        !v.getFechaEmision().isBefore(fechaInicio) &&
-                        !v.getFechaEmision().isAfter(fechaFin) &&
-                        !"ANULADO".equals(v.getEstado()) &&
-                        !"DEVUELTO_TOTAL".equals(v.getEstado()))
-                .collect(Collectors.toList());
-
-        // Agrupar productos vendidos
-        Map<Long, List<DetalleVenta>> productoVentas = new HashMap<>();
-        for (Venta venta : ventas) {
-            for (DetalleVenta detalle : venta.getItems()) {
-                Producto producto = detalle.getProducto();
-                if (producto != null) {
-                    productoVentas.computeIfAbsent(producto.getId(), k -> new ArrayList<>()).add(detalle);
-                }
-            }
-        }
-
-        // Calcular rentabilidad por producto
-        for (Map.Entry<Long, List<DetalleVenta>> entry : productoVentas.entrySet()) {
-            Long productoId = entry.getKey();
-            List<DetalleVenta> detalles = entry.getValue();
+        Collection<ProductoPeriodoDTO> totales = totalizarProductos(fechaInicio, fechaFin);
+        Map<Long, Object[]> productos = datosDeProductos(totales);
 
-            if (detalles.isEmpty()) continue;
+        for (ProductoPeriodoDTO fila : totales) {
+            if (fila.cantidadVendida().compareTo(BigDecimal.ZERO) <= 0) continue;
 
-            Producto producto = detalles.get(0).getProducto();
+            // Cantidades e importes netos de devoluciones
+            BigDecimal cantidadNeta = fila.cantidadVendida().subtract(fila.cantidadDevuelta());
+            if (cantidadNeta.compareTo(BigDecimal.ZERO) <= 0) continue;
 
-            // Cantidad vendida
-            int cantidadVendida = detalles.stream()
-                    .mapToInt(d -> d.getCantidad().intValue())
-                    .sum();
+            BigDecimal totalVendido = fila.totalVendido().subtract(fila.montoDevuelto());
+            BigDecimal costoTotal = fila.costoVendido().subtract(fila.costoDevuelto());
 
-            // Precio venta promedio
-            BigDecimal precioVentaPromedio = detalles.stream()
-                    .map(DetalleVenta::getPrecioUnitario)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add)
-                    .divide(BigDecimal.valueOf(detalles.size()), 2, RoundingMode.HALF_UP);
-
-            // Precio compra (del producto actual)
-            BigDecimal precioCompra = producto.getPrecioCompra() != null
-                    ? producto.getPrecioCompra()
-                    : BigDecimal.ZERO;
+            // Precio venta y costo promedio (costo al momento de cada venta)
+            BigDecimal precioVentaPromedio = totalVendido.divide(cantidadNeta, 2, RoundingMode.HALF_UP);
+            BigDecimal precioCompra = costoTotal.divide(cantidadNeta, 2, RoundingMode.HALF_UP);
 
             // Margen bruto
             BigDecimal margenBruto = precioVentaPromedio.subtract(precioCompra);
@@ -262,16 +199,16 @@ public class ReporteFinancieroService {
                     : BigDecimal.ZERO;
 
             // Ganancia total
-            BigDecimal gananciaTotal = margenBruto.multiply(BigDecimal.valueOf(cantidadVendida));
+            BigDecimal gananciaTotal = totalVendido.subtract(costoTotal);
 
-            // Total vendido
-            BigDecimal totalVendido = precioVentaPromedio.multiply(BigDecimal.valueOf(cantidadVendida));
+            // Datos actuales del producto: [id, codigoInterno, nombre, categoria]
+            Object[] producto = productos.getOrDefault(fila.productoId(), new Object[4]);
 
             Map<String, Object> item = new HashMap<>();
-            item.put("productoId", productoId);
-            item.put("productoNombre", producto.getNombre());
-            item.put("productoCategoria", producto.getCategoria());
-            item.put("cantidadVendida", cantidadVendida);
+            item.put("productoId", fila.productoId());
+            item.put("productoNombre", producto[2]);
+            item.put("productoCategoria", producto[3]);
+            item.put("cantidadVendida", cantidadNeta.intValue());
             item.put("precioCompra", precioCompra);
             item.put("precioVentaPromedio", precioVentaPromedio);
             item.put("margenBruto", margenBruto);
@@ -292,51 +229,28 @@ public class ReporteFinancieroService {
 
     /**
      * Generar análisis de ventas
+     * OPTIMIZADO: series y totales desde el resumen diario; productos desde los hechos producto/día
      */
     public Map<String, Object> generarAnalisisVentas(LocalDate fechaInicio, LocalDate fechaFin) {
         Map<String, Object> resultado = new HashMap<>();
 
-        // Obtener ventas del periodo
-        List<Venta> ventas = ventaRepository.findAll().stream()
-                .filter(v -> v.getFechaEmision() != null &&
-                        !v.getFechaEmision().isBefore(fechaInicio) &&
-                        !v.getFechaEmision().isAfter(fechaFin) &&
-                        !"ANULADO".equals(v.getEstado()))
-                .collect(Collectors.toList());
-
         // 1. Ventas por día (serie temporal)
-        Map<LocalDate, BigDecimal> ventasPorDia = new TreeMap<>();
-        for (Venta venta : ventas) {
-            LocalDate fecha = venta.getFechaEmision();
-            ventasPorDia.merge(fecha, venta.getTotal(), BigDecimal::add);
-        }
-
         List<Map<String, Object>> serieTemporal = new ArrayList<>();
-        for (Map.Entry<LocalDate, BigDecimal> entry : ventasPorDia.entrySet()) {
+        for (Object[] fila : resumenRepository.sumarVentasPorDia(fechaInicio, fechaFin)) {
             serieTemporal.add(Map.of(
-                    "fecha", entry.getKey(),
-                    "total", entry.getValue()
+                    "fecha", fila[0],
+                    "total", monto(fila[1])
             ));
         }
         resultado.put("ventasPorDia", serieTemporal);
 
         // 2. Ventas por usuario/vendedor
-        Map<String, BigDecimal> ventasPorUsuario = new HashMap<>();
-        Map<String, Integer> cantidadPorUsuario = new HashMap<>();
-        for (Venta venta : ventas) {
-            String usuario = venta.getUsuario() != null
-                    ? venta.getUsuario().getNombreCompleto()
-                    : "Sin asignar";
-            ventasPorUsuario.merge(usuario, venta.getTotal(), BigDecimal::add);
-            cantidadPorUsuario.merge(usuario, 1, Integer::sum);
-        }
-
         List<Map<String, Object>> ventasPorVendedor = new ArrayList<>();
-        for (Map.Entry<String, BigDecimal> entry : ventasPorUsuario.entrySet()) {
+        for (Object[] fila : resumenRepository.sumarVentasPorUsuario(fechaInicio, fechaFin)) {
             ventasPorVendedor.add(Map.of(
-                    "vendedor", entry.getKey(),
-                    "total", entry.getValue(),
-                    "cantidad", cantidadPorUsuario.get(entry.getKey())
+                    "vendedor", fila[0] != null ? fila[0] : "Sin asignar",
+                    "total", monto(fila[2]),
+                    "cantidad", (int) cantidad(fila[1])
             ));
         }
         ventasPorVendedor.sort((a, b) ->
@@ -345,40 +259,19 @@ public class ReporteFinancieroService {
         resultado.put("ventasPorVendedor", ventasPorVendedor);
 
         // 3. Productos más vendidos (top 10)
-        Map<Long, Integer> productosVendidos = new HashMap<>();
-        Map<Long, String> nombresProductos = new HashMap<>();
-        Map<Long, BigDecimal> totalesProductos = new HashMap<>();
-
-        for (Venta venta : ventas) {
-            for (DetalleVenta detalle : venta.getItems()) {
-                Producto producto = detalle.getProducto();
-                if (producto != null) {
-                    productosVendidos.merge(producto.getId(), detalle.getCantidad().intValue(), Integer::sum);
-                    nombresProductos.put(producto.getId(), producto.getNombre());
-                    totalesProductos.merge(producto.getId(), detalle.getSubtotal(), BigDecimal::add);
-                }
-            }
-        }
-
         List<Map<String, Object>> topProductos = new ArrayList<>();
-        for (Map.Entry<Long, Integer> entry : productosVendidos.entrySet()) {
+        for (Object[] fila : productoDiarioRepository.sumarPorProductoEntre(fechaInicio, fechaFin, PageRequest.of(0, 10))) {
             topProductos.add(Map.of(
-                    "productoId", entry.getKey(),
-                    "productoNombre", nombresProductos.get(entry.getKey()),
-                    "cantidadVendida", entry.getValue(),
-                    "totalVendido", totalesProductos.get(entry.getKey())
+                    "productoId", fila[0],
+                    "productoNombre", fila[2],
+                    "cantidadVendida", monto(fila[4]).intValue(),
+                    "totalVendido", monto(fila[5])
             ));
         }
-        topProductos.sort((a, b) ->
-                ((Integer) b.get("cantidadVendida")).compareTo((Integer) a.get("cantidadVendida"))
-        );
-        resultado.put("topProductos", topProductos.stream().limit(10).collect(Collectors.toList()));
+        resultado.put("topProductos", topProductos);
 
         // 4. Productos sin rotación (no vendidos en el periodo)
-        Set<Long> productosConVentas = productosVendidos.keySet();
-        List<Producto> todosProductos = productoRepository.findAll();
-        List<Map<String, Object>> sinRotacion = todosProductos.stream()
-                .filter(p -> p.isActivo() && !productosConVentas.contains(p.getId()))
+        List<Map<String, Object>> sinRotacion = productoRepository.obtenerSinVentasEntre(fechaInicio, fechaFin).stream()
                 .map(p -> Map.of(
                         "productoId", (Object) p.getId(),
                         "productoNombre", (Object) p.getNombre(),
@@ -389,18 +282,26 @@ public class ReporteFinancieroService {
         resultado.put("productosSinRotacion", sinRotacion);
 
         // Totales generales
-        resultado.put("totalVentas", ventas.size());
-        resultado.put("montoTotalVentas", ventas.stream()
-                .map(Venta::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add));
+        TotalesPeriodoDTO totales = totalizarPeriodo(fechaInicio, fechaFin);
+        resultado.put("totalVentas", (int) totales.cantidadVentas());
+        resultado.put("montoTotalVentas", totales.totalVentas());
 
         return resultado;
     }
 
     /**
      * Generar dashboard financiero
+     * OPTIMIZADO: una consulta agregada por bloque (antes, findAll de ventas y compras por cada mes)
+     * OPTIMIZADO: foto compartida entre pestañas (DashboardCache), se recalcula al registrarse ventas,
+     * devoluciones, compras o movimientos de caja
      */
     public Map<String, Object> generarDashboardFinanciero() {
+        return dashboardCache.obtener("dashboard-financiero",
+                EnumSet.of(ReporteDatosVersion.Dominio.VENTAS, ReporteDatosVersion.Dominio.CAJA),
+                this::calcularDashboardFinanciero);
+    }
+
+    private Map<String, Object> calcularDashboardFinanciero() {
         Map<String, Object> dashboard = new HashMap<>();
 
         // Mes actual
@@ -413,294 +314,443 @@ public class ReporteFinancieroService {
         LocalDate inicioMesAnterior = mesAnterior.atDay(1);
         LocalDate finMesAnterior = mesAnterior.atEndOfMonth();
 
-        // Total ventas mes actual
-        List<Venta> ventasMesActual = ventaRepository.findAll().stream()
-                .filter(v -> v.getFechaEmision() != null &&
-                        !v.getFechaEmision().isBefore(inicioMes) &&
-                        !v.getFechaEmision().isAfter(finMes) &&
-                        !"ANULADO".equals(v.getEstado()))
-                .collect(Collectors.toList());
-
-        BigDecimal totalVentasMesActual = ventasMesActual.stream()
-                .map(Venta::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        // OPTIMIZADO: las secciones son independientes; se calculan en paralelo,
+        // cada una en su propia transacción de solo lectura
+        Future<TotalesResumen> resumenMesFuturo = enSeccion(() -> totalizarResumen(inicioMes, finMes));
+        Future<TotalesPeriodoDTO> resumenMesAnteriorFuturo = enSeccion(() -> totalizarPeriodo(inicioMesAnterior, finMesAnterior));
+        Future<BigDecimal> gastosMesFuturo = enSeccion(() -> calcularGastos(inicioMes, finMes));
+        Future<List<Map<String, Object>>> top5ProductosFuturo = enSeccion(() -> calcularTop5Productos(inicioMes, finMes));
+        Future<List<Map<String, Object>>> top5ClientesFuturo = enSeccion(() -> calcularTop5Clientes(inicioMes, finMes));
+        Future<List<Map<String, Object>>> ultimos12MesesFuturo = enSeccion(this::calcularUltimos12Meses);
+
+        // Todas las secciones comparten el mismo plazo desde que se enviaron
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Constants.DASHBOARD_SECCION_TIMEOUT_MS);
+        List<String> seccionesPendientes = new ArrayList<>();
+
+        TotalesResumen resumenMes = esperarSeccion("ventasMesActual", resumenMesFuturo, limite, seccionesPendientes);
+        TotalesPeriodoDTO resumenMesAnterior = esperarSeccion("variacionAnual", resumenMesAnteriorFuturo, limite, seccionesPendientes);
+        BigDecimal gastosMes = esperarSeccion("gastosMesActual", gastosMesFuturo, limite, seccionesPendientes);
+        List<Map<String, Object>> top5Productos = esperarSeccion("top5Productos", top5ProductosFuturo, limite, seccionesPendientes);
+        List<Map<String, Object>> top5Clientes = esperarSeccion("top5Clientes", top5ClientesFuturo, limite, seccionesPendientes);
+        List<Map<String, Object>> ultimos12Meses = esperarSeccion("ultimos12Meses", ultimos12MesesFuturo, limite, seccionesPendientes);
 
-        dashboard.put("ventasMesActual", totalVentasMesActual);
-        dashboard.put("cantidadVentasMesActual", ventasMesActual.size());
+        // Total ventas mes actual
+        if (resumenMes != null) {
+            dashboard.put("ventasMesActual", resumenMes.totalVentas);
+            dashboard.put("cantidadVentasMesActual", (int) resumenMes.cantidadVentas);
+        }
 
         // Total gastos mes actual (egresos + compras)
-        BigDecimal gastosMes = BigDecimal.ZERO;
-
-        List<Compra> comprasMes = compraRepository.findAll().stream()
-                .filter(c -> c.getFecha() != null &&
-                        !c.getFecha().toLocalDate().isBefore(inicioMes) &&
-                        !c.getFecha().toLocalDate().isAfter(finMes) &&
-                        !"ANULADA".equals(c.getEstado()))
-                .collect(Collectors.toList());
-
-        gastosMes = gastosMes.add(comprasMes.stream()
-                .map(Compra::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add));
+        if (gastosMes != null) {
+            dashboard.put("gastosMesActual", gastosMes);
+        }
 
-        LocalDateTime inicioMesDT = inicioMes.atStartOfDay();
-        LocalDateTime finMesDT = finMes.atTime(23, 59, 59);
+        // Ganancia neta
+        if (resumenMes != null && gastosMes != null) {
+            dashboard.put("gananciaNeta", resumenMes.totalVentas.subtract(gastosMes));
+        }
 
-        List<MovimientoCaja> egresosMes = movimientoCajaRepository.findAll().stream()
-                .filter(m -> "EGRESO".equals(m.getTipo()) &&
-                        m.getFecha() != null &&
-                        !m.getFecha().isBefore(inicioMesDT) &&
-                        !m.getFecha().isAfter(finMesDT))
-                .collect(Collectors.toList());
+        // Variación porcentual contra el mismo mes del año anterior
+        if (resumenMes != null && resumenMesAnterior != null) {
+            BigDecimal totalVentasMesAnterior = resumenMesAnterior.totalVentas();
+            BigDecimal variacion = BigDecimal.ZERO;
+            if (totalVentasMesAnterior.compareTo(BigDecimal.ZERO) > 0) {
+                variacion = resumenMes.totalVentas.subtract(totalVentasMesAnterior)
+                        .divide(totalVentasMesAnterior, 4, RoundingMode.HALF_UP)
+                        .multiply(BigDecimal.valueOf(100));
+            }
+            dashboard.put("variacionAnual", variacion);
+        }
 
-        gastosMes = gastosMes.add(egresosMes.stream()
-                .map(MovimientoCaja::getMonto)
-                .reduce(BigDecimal.ZERO, BigDecimal::add));
+        if (top5Productos != null) {
+            dashboard.put("top5Productos", top5Productos);
+        }
+        if (top5Clientes != null) {
+            dashboard.put("top5Clientes", top5Clientes);
+        }
+        if (ultimos12Meses != null) {
+            dashboard.put("ultimos12Meses", ultimos12Meses);
+        }
 
-        dashboard.put("gastosMesActual", gastosMes);
+        // Secciones que no llegaron a tiempo: la vista muestra el resto y lo indica
+        dashboard.put("seccionesPendientes", seccionesPendientes);
 
-        // Ganancia neta
-        BigDecimal gananciaNeta = totalVentasMesActual.subtract(gastosMes);
-        dashboard.put("gananciaNeta", gananciaNeta);
-
-        // Ventas mismo mes año anterior
-        List<Venta> ventasMesAnterior = ventaRepository.findAll().stream()
-                .filter(v -> v.getFechaEmision() != null &&
-                        !v.getFechaEmision().isBefore(inicioMesAnterior) &&
-                        !v.getFechaEmision().isAfter(finMesAnterior) &&
-                        !"ANULADO".equals(v.getEstado()))
-                .collect(Collectors.toList());
+        return Collections.unmodifiableMap(dashboard);
+    }
 
-        BigDecimal totalVentasMesAnterior = ventasMesAnterior.stream()
-                .map(Venta::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    private BigDecimal calcularGastos(LocalDate inicioMes, LocalDate finMes) {
+        LocalDateTime inicioMesDT = inicioMes.atStartOfDay();
+        LocalDateTime finMesExclusivo = finMes.plusDays(1).atStartOfDay();
 
-        // Variación porcentual
-        BigDecimal variacion = BigDecimal.ZERO;
-        if (totalVentasMesAnterior.compareTo(BigDecimal.ZERO) > 0) {
-            variacion = totalVentasMesActual.subtract(totalVentasMesAnterior)
-                    .divide(totalVentasMesAnterior, 4, RoundingMode.HALF_UP)
-                    .multiply(BigDecimal.valueOf(100));
-        }
-        dashboard.put("variacionAnual", variacion);
-
-        // Top 5 productos del mes
-        Map<Long, Integer> productosDelMes = new HashMap<>();
-        Map<Long, String> nombresProductos = new HashMap<>();
-        Map<Long, BigDecimal> totalesProductos = new HashMap<>();
-
-        for (Venta venta : ventasMesActual) {
-            for (DetalleVenta detalle : venta.getItems()) {
-                Producto producto = detalle.getProducto();
-                if (producto != null) {
-                    productosDelMes.merge(producto.getId(), detalle.getCantidad().intValue(), Integer::sum);
-                    nombresProductos.put(producto.getId(), producto.getNombre());
-                    totalesProductos.merge(producto.getId(), detalle.getSubtotal(), BigDecimal::add);
-                }
-            }
-        }
+        return monto(primeraFila(compraRepository.sumarVigentesEntre(inicioMesDT, finMesExclusivo))[1])
+                .add(monto(primeraFila(movimientoCajaRepository.sumarPorTipoEntre("EGRESO", inicioMesDT, finMesExclusivo))[1]));
+    }
 
+    /**
+     * Top 5 productos del mes
+     */
+    private List<Map<String, Object>> calcularTop5Productos(LocalDate inicioMes, LocalDate finMes) {
         List<Map<String, Object>> top5Productos = new ArrayList<>();
-        for (Map.Entry<Long, Integer> entry : productosDelMes.entrySet()) {
+        for (Object[] fila : productoDiarioRepository.sumarPorProductoEntre(inicioMes, finMes, PageRequest.of(0, 5))) {
             top5Productos.add(Map.of(
-                    "nombre", nombresProductos.get(entry.getKey()),
-                    "cantidad", entry.getValue(),
-                    "total", totalesProductos.get(entry.getKey())
+                    "nombre", fila[2],
+                    "cantidad", monto(fila[4]).intValue(),
+                    "total", monto(fila[5])
             ));
         }
-        top5Productos.sort((a, b) ->
-                ((Integer) b.get("cantidad")).compareTo((Integer) a.get("cantidad"))
-        );
-        dashboard.put("top5Productos", top5Productos.stream().limit(5).collect(Collectors.toList()));
-
-        // Top 5 clientes del mes
-        Map<Long, BigDecimal> clientesDelMes = new HashMap<>();
-        Map<Long, String> nombresClientes = new HashMap<>();
-        Map<Long, Integer> cantidadCompras = new HashMap<>();
-
-        for (Venta venta : ventasMesActual) {
-            Cliente cliente = venta.getClienteEntity();
-            if (cliente != null) {
-                clientesDelMes.merge(cliente.getId(), venta.getTotal(), BigDecimal::add);
-                nombresClientes.put(cliente.getId(), cliente.getNombreRazonSocial());
-                cantidadCompras.merge(cliente.getId(), 1, Integer::sum);
-            }
-        }
+        return top5Productos;
+    }
 
+    /**
+     * Top 5 clientes del mes
+     */
+    private List<Map<String, Object>> calcularTop5Clientes(LocalDate inicioMes, LocalDate finMes) {
         List<Map<String, Object>> top5Clientes = new ArrayList<>();
-        for (Map.Entry<Long, BigDecimal> entry : clientesDelMes.entrySet()) {
+        for (Object[] fila : ventaRepository.obtenerTopClientes(inicioMes, finMes, PageRequest.of(0, 5))) {
             top5Clientes.add(Map.of(
-                    "nombre", nombresClientes.get(entry.getKey()),
-                    "total", entry.getValue(),
-                    "cantidad", cantidadCompras.get(entry.getKey())
+                    "nombre", fila[0] != null ? fila[0] : "",
+                    "total", monto(fila[1]),
+                    "cantidad", (int) cantidad(fila[2])
             ));
         }
-        top5Clientes.sort((a, b) ->
-                ((BigDecimal) b.get("total")).compareTo((BigDecimal) a.get("total"))
-        );
-        dashboard.put("top5Clientes", top5Clientes.stream().limit(5).collect(Collectors.toList()));
+        return top5Clientes;
+    }
+
+    /**
+     * Ventas vs Gastos últimos 12 meses (para gráfico)
+     */
+    private List<Map<String, Object>> calcularUltimos12Meses() {
+        YearMonth primerMes = YearMonth.now().minusMonths(11);
+        Map<YearMonth, BigDecimal> ventasPorMes = agruparPorMes(resumenRepository.sumarVentasPorMesDesde(primerMes.atDay(1)));
+        Map<YearMonth, BigDecimal> comprasPorMes = agruparPorMes(compraRepository.sumarVigentesPorMesDesde(primerMes.atDay(1).atStartOfDay()));
 
-        // Ventas vs Gastos últimos 12 meses (para gráfico)
         List<Map<String, Object>> ultimos12Meses = new ArrayList<>();
         for (int i = 11; i >= 0; i--) {
             YearMonth mes = YearMonth.now().minusMonths(i);
-            LocalDate inicio = mes.atDay(1);
-            LocalDate fin = mes.atEndOfMonth();
-
-            BigDecimal ventasMes = ventaRepository.findAll().stream()
-                    .filter(v -> v.getFechaEmision() != null &&
-                            !v.getFechaEmision().isBefore(inicio) &&
-                            !v.getFechaEmision().isAfter(fin) &&
-                            !"ANULADO".equals(v.getEstado()))
-                    .map(Venta::getTotal)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            BigDecimal gastos = BigDecimal.ZERO;
-            gastos = gastos.add(compraRepository.findAll().stream()
-                    .filter(c -> c.getFecha() != null &&
-                            !c.getFecha().toLocalDate().isBefore(inicio) &&
-                            !c.getFecha().toLocalDate().isAfter(fin) &&
-                            !"ANULADA".equals(c.getEstado()))
-                    .map(Compra::getTotal)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add));
-
             ultimos12Meses.add(Map.of(
                     "mes", mes.getMonth().toString() + " " + mes.getYear(),
-                    "ventas", ventasMes,
-                    "gastos", gastos
+                    "ventas", ventasPorMes.getOrDefault(mes, BigDecimal.ZERO),
+                    "gastos", comprasPorMes.getOrDefault(mes, BigDecimal.ZERO)
             ));
         }
-        dashboard.put("ultimos12Meses", ultimos12Meses);
+        return ultimos12Meses;
+    }
+
+    // ==========================================
+    //        SECCIONES EN PARALELO (DASHBOARD)
+    // ==========================================
+
+    @PostConstruct
+    void iniciarSecciones() {
+        seccionTransaction = new TransactionTemplate(transactionManager);
+        seccionTransaction.setReadOnly(true);
+        // Las consultas de una sección se cancelan en BD si pasan el plazo del dashboard
+        seccionTransaction.setTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(Constants.DASHBOARD_SECCION_TIMEOUT_MS)));
+
+        AtomicInteger contador = new AtomicInteger();
+        seccionExecutor = new ThreadPoolExecutor(
+                Constants.DASHBOARD_SECCIONES_HILOS, Constants.DASHBOARD_SECCIONES_HILOS,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Constants.DASHBOARD_SECCIONES_COLA),
+                r -> {
+                    Thread t = new Thread(r, "dashboard-seccion-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                // Cola llena: la sección se calcula en el hilo de la petición (como antes)
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void detenerSecciones() {
+        seccionExecutor.shutdownNow();
+    }
+
+    private <T> Future<T> enSeccion(Supplier<T> calculo) {
+        return seccionExecutor.submit(() -> seccionTransaction.execute(status -> calculo.get()));
+    }
+
+    /**
+     * Resultado de una sección dentro del plazo; null (y se anota como pendiente) si tardó o falló
+     */
+    private <T> T esperarSeccion(String seccion, Future<T> futuro, long limiteNanos, List<String> pendientes) {
+        try {
+            return futuro.get(Math.max(0, limiteNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            futuro.cancel(true);
+            log.warn("Dashboard financiero: la sección {} superó {} ms", seccion, Constants.DASHBOARD_SECCION_TIMEOUT_MS);
+        } catch (ExecutionException e) {
+            log.error("Dashboard financiero: error en la sección {}: {}", seccion, e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futuro.cancel(true);
+        }
+        pendientes.add(seccion);
+        return null;
+    }
 
-        return dashboard;
+    // ==========================================
+    //        MESES CERRADOS
+    // ==========================================
+
+    /**
+     * Calcula y guarda los resultados de un mes recién cerrado (BillingScheduler), así el primer
+     * reporte que lo incluya ya no lo recalcula
+     */
+    public void precalcularMesCerrado(YearMonth mes) {
+        if (!periodoCerradoService.estaCerrado(mes)) {
+            return;
+        }
+        totalizarPeriodo(mes.atDay(1), mes.atEndOfMonth());
+        totalizarProductos(mes.atDay(1), mes.atEndOfMonth());
+        log.info("Resultados del mes cerrado {} precalculados", mes);
     }
 
     /**
-     * Exportar flujo de caja a Excel
+     * Totales de ventas y flujo de caja: meses cerrados guardados + tramos abiertos calculados
      */
-    public void exportarFlujoCajaExcel(LocalDate fechaInicio, LocalDate fechaFin, HttpServletResponse response) throws IOException {
-        Map<String, Object> datos = generarFlujoCaja(fechaInicio, fechaFin);
+    private TotalesPeriodoDTO totalizarPeriodo(LocalDate fechaInicio, LocalDate fechaFin) {
+        return periodoCerradoService.resolver(PeriodoCerradoService.TOTALES, fechaInicio, fechaFin,
+                        new TypeReference<TotalesPeriodoDTO>() {}, this::calcularTotales)
+                .stream()
+                .reduce(TotalesPeriodoDTO.VACIO, TotalesPeriodoDTO::sumar);
+    }
 
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Flujo de Caja");
-
-        // Estilos
-        CellStyle headerStyle = workbook.createCellStyle();
-        org.apache.poi.ss.usermodel.Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-
-        CellStyle moneyStyle = workbook.createCellStyle();
-        moneyStyle.setDataFormat(workbook.createDataFormat().getFormat("\"S/ \"#,##0.00"));
-
-        // Título
-        Row titleRow = sheet.createRow(0);
-        Cell titleCell = titleRow.createCell(0);
-        titleCell.setCellValue("FLUJO DE CAJA");
-        titleCell.setCellStyle(headerStyle);
-
-        Row periodoRow = sheet.createRow(1);
-        periodoRow.createCell(0).setCellValue("Periodo: " + fechaInicio + " al " + fechaFin);
-
-        // INGRESOS
-        int rowNum = 3;
-        Row ingresoHeader = sheet.createRow(rowNum++);
-        ingresoHeader.createCell(0).setCellValue("INGRESOS");
-        ingresoHeader.getCell(0).setCellStyle(headerStyle);
-
-        Row headerRow = sheet.createRow(rowNum++);
-        headerRow.createCell(0).setCellValue("Concepto");
-        headerRow.createCell(1).setCellValue("Cantidad");
-        headerRow.createCell(2).setCellValue("Monto");
-        headerRow.getCell(0).setCellStyle(headerStyle);
-        headerRow.getCell(1).setCellStyle(headerStyle);
-        headerRow.getCell(2).setCellStyle(headerStyle);
-
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> detalleIngresos = (List<Map<String, Object>>) datos.get("detalleIngresos");
-        for (Map<String, Object> ingreso : detalleIngresos) {
-            Row row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue((String) ingreso.get("concepto"));
-            row.createCell(1).setCellValue((Integer) ingreso.get("cantidad"));
-            Cell montoCell = row.createCell(2);
-            montoCell.setCellValue(((BigDecimal) ingreso.get("monto")).doubleValue());
-            montoCell.setCellStyle(moneyStyle);
+    private TotalesPeriodoDTO calcularTotales(LocalDate fechaInicio, LocalDate fechaFin) {
+        LocalDateTime inicio = fechaInicio.atStartOfDay();
+        LocalDateTime finExclusivo = fechaFin.plusDays(1).atStartOfDay();
+
+        TotalesResumen resumen = totalizarResumen(fechaInicio, fechaFin);
+        Object[] otrosIngresos = primeraFila(movimientoCajaRepository.sumarPorTipoEntre("INGRESO", inicio, finExclusivo));
+        Object[] compras = primeraFila(compraRepository.sumarVigentesEntre(inicio, finExclusivo));
+        Object[] otrosEgresos = primeraFila(movimientoCajaRepository.sumarPorTipoEntre("EGRESO", inicio, finExclusivo));
+
+        return new TotalesPeriodoDTO(
+                resumen.cantidadVentas, resumen.totalVentas,
+                resumen.cantidadContado, resumen.totalContado,
+                resumen.cantidadCobros, resumen.montoCobrado,
+                cantidad(otrosIngresos[0]), monto(otrosIngresos[1]),
+                cantidad(compras[0]), monto(compras[1]),
+                resumen.cantidadDevolucionesEfectivo, resumen.montoDevueltoEfectivo,
+                cantidad(otrosEgresos[0]), monto(otrosEgresos[1]));
+    }
+
+    /**
+     * Totales por producto (antes de devoluciones): meses cerrados guardados + tramos abiertos, sumados por producto
+     */
+    private Collection<ProductoPeriodoDTO> totalizarProductos(LocalDate fechaInicio, LocalDate fechaFin) {
+        Map<Long, ProductoPeriodoDTO> porProducto = new LinkedHashMap<>();
+        List<List<ProductoPeriodoDTO>> tramos = periodoCerradoService.resolver(PeriodoCerradoService.RENTABILIDAD,
+                fechaInicio, fechaFin, new TypeReference<List<ProductoPeriodoDTO>>() {},
+                (desde, hasta) -> productoDiarioRepository.totalizarPorProductoEntre(desde, hasta).stream()
+                        .map(ProductoPeriodoDTO::desde)
+                        .toList());
+        for (List<ProductoPeriodoDTO> filas : tramos) {
+            for (ProductoPeriodoDTO fila : filas) {
+                porProducto.merge(fila.productoId(), fila, ProductoPeriodoDTO::sumar);
+            }
         }
+        return porProducto.values();
+    }
+
+    /**
+     * Nombre, código y categoría actuales de los productos totalizados, en una sola consulta por id
+     */
+    private Map<Long, Object[]> datosDeProductos(Collection<ProductoPeriodoDTO> totales) {
+        List<Long> ids = totales.stream().map(ProductoPeriodoDTO::productoId).toList();
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Object[]> productos = new HashMap<>();
+        for (Object[] fila : productoRepository.findDatosParaReporte(ids)) {
+            productos.put(((Number) fila[0]).longValue(), fila);
+        }
+        return productos;
+    }
+
+    // ==========================================
+    //        AGREGADOS DEL RESUMEN DIARIO
+    // ==========================================
+
+    /**
+     * Totales de un periodo leídos del resumen diario de ventas
+     */
+    private static final class TotalesResumen {
+        long cantidadVentas;
+        BigDecimal totalVentas = BigDecimal.ZERO;
+        long cantidadContado;
+        BigDecimal totalContado = BigDecimal.ZERO;
+        long cantidadCobros;
+        BigDecimal montoCobrado = BigDecimal.ZERO;
+        long cantidadDevolucionesEfectivo;
+        BigDecimal montoDevueltoEfectivo = BigDecimal.ZERO;
+    }
 
-        Row totalIngresoRow = sheet.createRow(rowNum++);
-        totalIngresoRow.createCell(0).setCellValue("TOTAL INGRESOS");
-        totalIngresoRow.getCell(0).setCellStyle(headerStyle);
-        Cell totalIngresoCell = totalIngresoRow.createCell(2);
-        totalIngresoCell.setCellValue(((BigDecimal) datos.get("totalIngresos")).doubleValue());
-        totalIngresoCell.setCellStyle(moneyStyle);
-
-        // EGRESOS
-        rowNum++;
-        Row egresoHeader = sheet.createRow(rowNum++);
-        egresoHeader.createCell(0).setCellValue("EGRESOS");
-        egresoHeader.getCell(0).setCellStyle(headerStyle);
-
-        Row headerRow2 = sheet.createRow(rowNum++);
-        headerRow2.createCell(0).setCellValue("Concepto");
-        headerRow2.createCell(1).setCellValue("Cantidad");
-        headerRow2.createCell(2).setCellValue("Monto");
-        headerRow2.getCell(0).setCellStyle(headerStyle);
-        headerRow2.getCell(1).setCellStyle(headerStyle);
-        headerRow2.getCell(2).setCellStyle(headerStyle);
-
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> detalleEgresos = (List<Map<String, Object>>) datos.get("detalleEgresos");
-        for (Map<String, Object> egreso : detalleEgresos) {
-            Row row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue((String) egreso.get("concepto"));
-            row.createCell(1).setCellValue((Integer) egreso.get("cantidad"));
-            Cell montoCell = row.createCell(2);
-            montoCell.setCellValue(((BigDecimal) egreso.get("monto")).doubleValue());
-            montoCell.setCellStyle(moneyStyle);
+    private TotalesResumen totalizarResumen(LocalDate fechaInicio, LocalDate fechaFin) {
+        TotalesResumen t = new TotalesResumen();
+        // [formaPago, metodoPago, cantVentas, totalVentas, cantCobros, montoCobrado, cantDevoluciones, montoDevuelto]
+        for (Object[] fila : resumenRepository.sumarPorFormaYMetodo(fechaInicio, fechaFin)) {
+            t.cantidadVentas += cantidad(fila[2]);
+            t.totalVentas = t.totalVentas.add(monto(fila[3]));
+            if ("CONTADO".equals(fila[0])) {
+                t.cantidadContado += cantidad(fila[2]);
+                t.totalContado = t.totalContado.add(monto(fila[3]));
+            }
+            t.cantidadCobros += cantidad(fila[4]);
+            t.montoCobrado = t.montoCobrado.add(monto(fila[5]));
+            if ("EFECTIVO".equals(fila[1])) {
+                t.cantidadDevolucionesEfectivo += cantidad(fila[6]);
+                t.montoDevueltoEfectivo = t.montoDevueltoEfectivo.add(monto(fila[7]));
+            }
         }
+        return t;
+    }
 
-        Row totalEgresoRow = sheet.createRow(rowNum++);
-        totalEgresoRow.createCell(0).setCellValue("TOTAL EGRESOS");
-        totalEgresoRow.getCell(0).setCellStyle(headerStyle);
-        Cell totalEgresoCell = totalEgresoRow.createCell(2);
-        totalEgresoCell.setCellValue(((BigDecimal) datos.get("totalEgresos")).doubleValue());
-        totalEgresoCell.setCellStyle(moneyStyle);
-
-        // SALDO
-        rowNum++;
-        Row saldoRow = sheet.createRow(rowNum++);
-        saldoRow.createCell(0).setCellValue("SALDO NETO");
-        saldoRow.getCell(0).setCellStyle(headerStyle);
-        Cell saldoCell = saldoRow.createCell(2);
-        saldoCell.setCellValue(((BigDecimal) datos.get("saldo")).doubleValue());
-        saldoCell.setCellStyle(moneyStyle);
-
-        // Ajustar columnas
-        sheet.autoSizeColumn(0);
-        sheet.autoSizeColumn(1);
-        sheet.autoSizeColumn(2);
-
-        // Escribir archivo
-        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-        response.setHeader("Content-Disposition", "attachment; filename=flujo_caja_" +
-                fechaInicio + "_" + fechaFin + ".xlsx");
-        workbook.write(response.getOutputStream());
-        workbook.close();
+    /**
+     * Filas [año, mes, total] a mapa por mes
+     */
+    private Map<YearMonth, BigDecimal> agruparPorMes(List<Object[]> filas) {
+        Map<YearMonth, BigDecimal> porMes = new HashMap<>();
+        for (Object[] fila : filas) {
+            porMes.put(YearMonth.of(((Number) fila[0]).intValue(), ((Number) fila[1]).intValue()), monto(fila[2]));
+        }
+        return porMes;
     }
 
     /**
-     * Exportar flujo de caja a PDF
+     * Fila única de un agregado sin GROUP BY
+     */
+    private static Object[] primeraFila(List<Object[]> filas) {
+        return filas.isEmpty() ? new Object[]{0L, BigDecimal.ZERO} : filas.get(0);
+    }
+
+    private static long cantidad(Object valor) {
+        return valor != null ? ((Number) valor).longValue() : 0L;
+    }
+
+    private static BigDecimal monto(Object valor) {
+        return valor != null ? (BigDecimal) valor : BigDecimal.ZERO;
+    }
+
+    /**
+     * Exportar flujo de caja a Excel
      */
-    public void exportarFlujoCajaPDF(LocalDate fechaInicio, LocalDate fechaFin, HttpServletResponse response) throws IOException {
+    public void exportarFlujoCajaExcel(LocalDate fechaInicio, LocalDate fechaFin, OutputStream outputStream) throws IOException {
         Map<String, Object> datos = generarFlujoCaja(fechaInicio, fechaFin);
-        Configuracion config = configuracionService.obtenerConfiguracion();
 
-        response.setContentType("application/pdf");
-        response.setHeader("Content-Disposition", "attachment; filename=flujo_caja_" +
-                fechaInicio + "_" + fechaFin + ".pdf");
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Flujo de Caja");
+            ExcelStreaming.fijarAnchos(sheet, 40, 12, 18);
+
+            // Estilos
+            CellStyle headerStyle = workbook.createCellStyle();
+            org.apache.poi.ss.usermodel.Font headerFont = workbook.createFont();
+            headerFont.setBold(true);
+            headerStyle.setFont(headerFont);
+
+            CellStyle moneyStyle = workbook.createCellStyle();
+            moneyStyle.setDataFormat(workbook.createDataFormat().getFormat("\"S/ \"#,##0.00"));
+
+            // Título
+            Row titleRow = sheet.createRow(0);
+            Cell titleCell = titleRow.createCell(0);
+            titleCell.setCellValue("FLUJO DE CAJA");
+            titleCell.setCellStyle(headerStyle);
+
+            Row periodoRow = sheet.createRow(1);
+            periodoRow.createCell(0).setCellValue("Periodo: " + fechaInicio + " al " + fechaFin);
+
+            // INGRESOS
+            int rowNum = 3;
+            Row ingresoHeader = sheet.createRow(rowNum++);
+            ingresoHeader.createCell(0).setCellValue("INGRESOS");
+            ingresoHeader.getCell(0).setCellStyle(headerStyle);
+
+            Row headerRow = sheet.createRow(rowNum++);
+            headerRow.createCell(0).setCellValue("Concepto");
+            headerRow.createCell(1).setCellValue("Cantidad");
+            headerRow.createCell(2).setCellValue("Monto");
+            headerRow.getCell(0).setCellStyle(headerStyle);
+            headerRow.getCell(1).setCellStyle(headerStyle);
+            headerRow.getCell(2).setCellStyle(headerStyle);
+
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> detalleIngresos = (List<Map<String, Object>>) datos.get("detalleIngresos");
+            for (Map<String, Object> ingreso : detalleIngresos) {
+                Row row = sheet.createRow(rowNum++);
+                row.createCell(0).setCellValue((String) ingreso.get("concepto"));
+                row.createCell(1).setCellValue((Integer) ingreso.get("cantidad"));
+                Cell montoCell = row.createCell(2);
+                montoCell.setCellValue(((BigDecimal) ingreso.get("monto")).doubleValue());
+                montoCell.setCellStyle(moneyStyle);
+            }
+
+            Row totalIngresoRow = sheet.createRow(rowNum++);
+            totalIngresoRow.createCell(0).setCellValue("TOTAL INGRESOS");
+            totalIngresoRow.getCell(0).setCellStyle(headerStyle);
+            Cell totalIngresoCell = totalIngresoRow.createCell(2);
+            totalIngresoCell.setCellValue(((BigDecimal) datos.get("totalIngresos")).doubleValue());
+            totalIngresoCell.setCellStyle(moneyStyle);
+
+            // EGRESOS
+            rowNum++;
+            Row egresoHeader = sheet.createRow(rowNum++);
+            egresoHeader.createCell(0).setCellValue("EGRESOS");
+            egresoHeader.getCell(0).setCellStyle(headerStyle);
+
+            Row headerRow2 = sheet.createRow(rowNum++);
+            headerRow2.createCell(0).setCellValue("Concepto");
+            headerRow2.createCell(1).setCellValue("Cantidad");
+            headerRow2.createCell(2).setCellValue("Monto");
+            headerRow2.getCell(0).setCellStyle(headerStyle);
+            headerRow2.getCell(1).setCellStyle(headerStyle);
+            headerRow2.getCell(2).setCellStyle(headerStyle);
+
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> detalleEgresos = (List<Map<String, Object>>) datos.get("detalleEgresos");
+            for (Map<String, Object> egreso : detalleEgresos) {
+                Row row = sheet.createRow(rowNum++);
+                row.createCell(0).setCellValue((String) egreso.get("concepto"));
+                row.createCell(1).setCellValue((Integer) egreso.get("cantidad"));
+                Cell montoCell = row.createCell(2);
+                montoCell.setCellValue(((BigDecimal) egreso.get("monto")).doubleValue());
+                montoCell.setCellStyle(moneyStyle);
+            }
+
+            Row totalEgresoRow = sheet.createRow(rowNum++);
+            totalEgresoRow.createCell(0).setCellValue("TOTAL EGRESOS");
+            totalEgresoRow.getCell(0).setCellStyle(headerStyle);
+            Cell totalEgresoCell = totalEgresoRow.createCell(2);
+            totalEgresoCell.setCellValue(((BigDecimal) datos.get("totalEgresos")).doubleValue());
+            totalEgresoCell.setCellStyle(moneyStyle);
+
+            // SALDO
+            rowNum++;
+            Row saldoRow = sheet.createRow(rowNum++);
+            saldoRow.createCell(0).setCellValue("SALDO NETO");
+            saldoRow.getCell(0).setCellStyle(headerStyle);
+            Cell saldoCell = saldoRow.createCell(2);
+            saldoCell.setCellValue(((BigDecimal) datos.get("saldo")).doubleValue());
+            saldoCell.setCellStyle(moneyStyle);
+
+            // Escribir archivo
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
+        }
+    }
+
+    /**
+     * Exportar flujo de caja a PDF
+     */
+    public void exportarFlujoCajaPDF(LocalDate fechaInicio, LocalDate fechaFin, OutputStream outputStream) throws IOException {
+        Map<String, Object> datos = generarFlujoCaja(fechaInicio, fechaFin);
+        ConfiguracionVigente config = configuracionService.obtenerVigente();
 
         Document document = new Document(PageSize.A4);
         try {
-            PdfWriter.getInstance(document, response.getOutputStream());
+            PdfWriter.getInstance(document, outputStream);
             document.open();
 
             // Título
@@ -813,108 +863,100 @@ public class ReporteFinancieroService {
     /**
      * Exportar rentabilidad a Excel
      */
-    public void exportarRentabilidadExcel(LocalDate fechaInicio, LocalDate fechaFin, HttpServletResponse response) throws IOException {
+    public void exportarRentabilidadExcel(LocalDate fechaInicio, LocalDate fechaFin, OutputStream outputStream) throws IOException {
         List<Map<String, Object>> rentabilidad = generarRentabilidadProductos(fechaInicio, fechaFin);
 
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Rentabilidad");
-
-        // Estilos
-        CellStyle headerStyle = workbook.createCellStyle();
-        org.apache.poi.ss.usermodel.Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-
-        CellStyle moneyStyle = workbook.createCellStyle();
-        moneyStyle.setDataFormat(workbook.createDataFormat().getFormat("\"S/ \"#,##0.00"));
-
-        CellStyle percentStyle = workbook.createCellStyle();
-        percentStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00\"%\""));
-
-        // Título
-        Row titleRow = sheet.createRow(0);
-        Cell titleCell = titleRow.createCell(0);
-        titleCell.setCellValue("ANÁLISIS DE RENTABILIDAD POR PRODUCTOS");
-        titleCell.setCellStyle(headerStyle);
-
-        Row periodoRow = sheet.createRow(1);
-        periodoRow.createCell(0).setCellValue("Periodo: " + fechaInicio + " al " + fechaFin);
-
-        // Headers
-        int rowNum = 3;
-        Row headerRow = sheet.createRow(rowNum++);
-        headerRow.createCell(0).setCellValue("Producto");
-        headerRow.createCell(1).setCellValue("Categoría");
-        headerRow.createCell(2).setCellValue("Cant. Vendida");
-        headerRow.createCell(3).setCellValue("P. Compra");
-        headerRow.createCell(4).setCellValue("P. Venta Prom.");
-        headerRow.createCell(5).setCellValue("Margen Unit.");
-        headerRow.createCell(6).setCellValue("Margen %");
-        headerRow.createCell(7).setCellValue("Ganancia Total");
-        headerRow.createCell(8).setCellValue("Total Vendido");
-
-        for (int i = 0; i < 9; i++) {
-            headerRow.getCell(i).setCellStyle(headerStyle);
-        }
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Rentabilidad");
+            ExcelStreaming.fijarAnchos(sheet, 40, 20, 14, 14, 16, 14, 12, 16, 16);
 
-        // Datos
-        for (Map<String, Object> item : rentabilidad) {
-            Row row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue((String) item.get("productoNombre"));
-            row.createCell(1).setCellValue((String) item.get("productoCategoria"));
-            row.createCell(2).setCellValue((Integer) item.get("cantidadVendida"));
+            // Estilos
+            CellStyle headerStyle = workbook.createCellStyle();
+            org.apache.poi.ss.usermodel.Font headerFont = workbook.createFont();
+            headerFont.setBold(true);
+            headerStyle.setFont(headerFont);
 
-            Cell pc = row.createCell(3);
-            pc.setCellValue(((BigDecimal) item.get("precioCompra")).doubleValue());
-            pc.setCellStyle(moneyStyle);
+            CellStyle moneyStyle = workbook.createCellStyle();
+            moneyStyle.setDataFormat(workbook.createDataFormat().getFormat("\"S/ \"#,##0.00"));
 
-            Cell pv = row.createCell(4);
-            pv.setCellValue(((BigDecimal) item.get("precioVentaPromedio")).doubleValue());
-            pv.setCellStyle(moneyStyle);
+            CellStyle percentStyle = workbook.createCellStyle();
+            percentStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00\"%\""));
 
-            Cell mb = row.createCell(5);
-            mb.setCellValue(((BigDecimal) item.get("margenBruto")).doubleValue());
-            mb.setCellStyle(moneyStyle);
+            // Título
+            Row titleRow = sheet.createRow(0);
+            Cell titleCell = titleRow.createCell(0);
+            titleCell.setCellValue("ANÁLISIS DE RENTABILIDAD POR PRODUCTOS");
+            titleCell.setCellStyle(headerStyle);
 
-            Cell mp = row.createCell(6);
-            mp.setCellValue(((BigDecimal) item.get("margenPorcentaje")).doubleValue() / 100);
-            mp.setCellStyle(percentStyle);
+            Row periodoRow = sheet.createRow(1);
+            periodoRow.createCell(0).setCellValue("Periodo: " + fechaInicio + " al " + fechaFin);
 
-            Cell gt = row.createCell(7);
-            gt.setCellValue(((BigDecimal) item.get("gananciaTotal")).doubleValue());
-            gt.setCellStyle(moneyStyle);
+            // Headers
+            int rowNum = 3;
+            Row headerRow = sheet.createRow(rowNum++);
+            headerRow.createCell(0).setCellValue("Producto");
+            headerRow.createCell(1).setCellValue("Categoría");
+            headerRow.createCell(2).setCellValue("Cant. Vendida");
+            headerRow.createCell(3).setCellValue("P. Compra");
+            headerRow.createCell(4).setCellValue("P. Venta Prom.");
+            headerRow.createCell(5).setCellValue("Margen Unit.");
+            headerRow.createCell(6).setCellValue("Margen %");
+            headerRow.createCell(7).setCellValue("Ganancia Total");
+            headerRow.createCell(8).setCellValue("Total Vendido");
+
+            for (int i = 0; i < 9; i++) {
+                headerRow.getCell(i).setCellStyle(headerStyle);
+            }
 
-            Cell tv = row.createCell(8);
-            tv.setCellValue(((BigDecimal) item.get("totalVendido")).doubleValue());
-            tv.setCellStyle(moneyStyle);
-        }
+            // Datos
+            for (Map<String, Object> item : rentabilidad) {
+                Row row = sheet.createRow(rowNum++);
+                row.createCell(0).setCellValue((String) item.get("productoNombre"));
+                row.createCell(1).setCellValue((String) item.get("productoCategoria"));
+                row.createCell(2).setCellValue((Integer) item.get("cantidadVendida"));
+
+                Cell pc = row.createCell(3);
+                pc.setCellValue(((BigDecimal) item.get("precioCompra")).doubleValue());
+                pc.setCellStyle(moneyStyle);
+
+                Cell pv = row.createCell(4);
+                pv.setCellValue(((BigDecimal) item.get("precioVentaPromedio")).doubleValue());
+                pv.setCellStyle(moneyStyle);
+
+                Cell mb = row.createCell(5);
+                mb.setCellValue(((BigDecimal) item.get("margenBruto")).doubleValue());
+                mb.setCellStyle(moneyStyle);
+
+                Cell mp = row.createCell(6);
+                mp.setCellValue(((BigDecimal) item.get("margenPorcentaje")).doubleValue() / 100);
+                mp.setCellStyle(percentStyle);
+
+                Cell gt = row.createCell(7);
+                gt.setCellValue(((BigDecimal) item.get("gananciaTotal")).doubleValue());
+                gt.setCellStyle(moneyStyle);
+
+                Cell tv = row.createCell(8);
+                tv.setCellValue(((BigDecimal) item.get("totalVendido")).doubleValue());
+                tv.setCellStyle(moneyStyle);
+            }
 
-        // Ajustar columnas
-        for (int i = 0; i < 9; i++) {
-            sheet.autoSizeColumn(i);
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
         }
-
-        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-        response.setHeader("Content-Disposition", "attachment; filename=rentabilidad_" +
-                fechaInicio + "_" + fechaFin + ".xlsx");
-        workbook.write(response.getOutputStream());
-        workbook.close();
     }
 
     /**
      * Exportar rentabilidad a PDF
      */
-    public void exportarRentabilidadPDF(LocalDate fechaInicio, LocalDate fechaFin, HttpServletResponse response) throws IOException {
+    public void exportarRentabilidadPDF(LocalDate fechaInicio, LocalDate fechaFin, OutputStream outputStream) throws IOException {
         List<Map<String, Object>> rentabilidad = generarRentabilidadProductos(fechaInicio, fechaFin);
-        Configuracion config = configuracionService.obtenerConfiguracion();
-
-        response.setContentType("application/pdf");
-        response.setHeader("Content-Disposition", "attachment; filename=rentabilidad_" +
-                fechaInicio + "_" + fechaFin + ".pdf");
+        ConfiguracionVigente config = configuracionService.obtenerVigente();
 
         Document document = new Document(PageSize.A4.rotate()); // Landscape
         try {
-            PdfWriter.getInstance(document, response.getOutputStream());
+            PdfWriter.getInstance(document, outputStream);
             document.open();
 
             // Título
@@ -0,0 +1,397 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.service.ReporteDatosVersion.Dominio;
+import com.libreria.sistema.util.Constants;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generación de reportes pesados en segundo plano.
+ *
+ * - enviar(): valida, deduplica y encola el reporte; devuelve de inmediato el job con su id
+ * - Un pool acotado genera el archivo en disco local, fuera de los hilos de Tomcat
+ * - La UI consulta el estado del job y descarga el archivo cuando está LISTO
+ *
+ * Deduplicación: el mismo tipo con los mismos parámetros reutiliza el job en curso, o el
+ * archivo ya generado mientras no cambien los datos de los que depende (ReporteDatosVersion).
+ *
+ * Los jobs viven en memoria de esta instancia; al reiniciar se pierden junto con sus archivos.
+ */
+@Service
+@Slf4j
+public class ReporteJobService {
+
+    public static final String MODULO_AVANZADOS = "avanzados";
+    public static final String MODULO_FINANCIEROS = "financieros";
+
+    private static final String CONTENT_TYPE_EXCEL = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    private static final String CONTENT_TYPE_PDF = "application/pdf";
+
+    public enum Estado {
+        PENDIENTE, EN_PROCESO, LISTO, ERROR
+    }
+
+    /**
+     * Parámetros de un reporte. Los que el tipo no usa llegan en null y no afectan la deduplicación.
+     */
+    public record Parametros(LocalDate inicio, LocalDate fin, Long usuarioId, String metodoPago, Long productoId) {
+    }
+
+    @FunctionalInterface
+    private interface Generador {
+        void generar(Parametros parametros, OutputStream outputStream) throws Exception;
+    }
+
+    private record Definicion(String modulo, String archivo, String extension, String contentType,
+                              boolean requiereFechas, boolean requiereProducto,
+                              Set<Dominio> dominios, Generador generador) {
+    }
+
+    /**
+     * Estado de un reporte. Lo comparten todos los usuarios que pidieron los mismos parámetros.
+     */
+    public static final class Job {
+        private final String id;
+        private final String clave;
+        private final String solicitante;
+        private final String nombreArchivo;
+        private final String contentType;
+        private final Map<Dominio, Long> versiones;
+        private final LocalDateTime creado = LocalDateTime.now();
+        private final Set<String> usuarios = ConcurrentHashMap.newKeySet();
+        private volatile Estado estado = Estado.PENDIENTE;
+        private volatile String error;
+        private volatile Path archivo;
+        private volatile LocalDateTime terminado;
+
+        private Job(String clave, String solicitante, String nombreArchivo, String contentType, Map<Dominio, Long> versiones) {
+            this.id = UUID.randomUUID().toString();
+            this.clave = clave;
+            this.solicitante = solicitante;
+            this.nombreArchivo = nombreArchivo;
+            this.contentType = contentType;
+            this.versiones = versiones;
+            this.usuarios.add(solicitante);
+        }
+
+        public String getId() { return id; }
+        public Estado getEstado() { return estado; }
+        public String getError() { return error; }
+        public Path getArchivo() { return archivo; }
+        public String getNombreArchivo() { return nombreArchivo; }
+        public String getContentType() { return contentType; }
+        public LocalDateTime getCreado() { return creado; }
+        public LocalDateTime getTerminado() { return terminado; }
+
+        private boolean activo() {
+            return estado == Estado.PENDIENTE || estado == Estado.EN_PROCESO;
+        }
+
+        /**
+         * Resumen para la UI (sin rutas del servidor)
+         */
+        public Map<String, Object> resumen() {
+            Map<String, Object> datos = new LinkedHashMap<>();
+            datos.put("id", id);
+            datos.put("estado", estado.name());
+            datos.put("archivo", nombreArchivo);
+            datos.put("creado", creado.toString());
+            datos.put("terminado", terminado != null ? terminado.toString() : null);
+            datos.put("error", error);
+            return datos;
+        }
+    }
+
+    private final ReporteDatosVersion datosVersion;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+    private final Path directorio;
+    private final Map<String, Definicion> definiciones;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Job> jobsPorClave = new HashMap<>(); // Protegido por synchronized
+
+    public ReporteJobService(ReporteUniversalService reporteUniversalService,
+                             ReporteFinancieroService reporteFinancieroService,
+                             ReporteDatosVersion datosVersion,
+                             PlatformTransactionManager transactionManager) throws IOException {
+        this.datosVersion = datosVersion;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.directorio = Files.createTempDirectory("libreria-reportes-");
+        this.definiciones = registrarDefiniciones(reporteUniversalService, reporteFinancieroService);
+
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                Constants.REPORTES_JOB_CONCURRENCIA, Constants.REPORTES_JOB_CONCURRENCIA,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Constants.REPORTES_JOB_COLA),
+                r -> {
+                    Thread t = new Thread(r, "reporte-job-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    // ==========================================
+    //        CATÁLOGO DE REPORTES
+    // ==========================================
+
+    private Map<String, Definicion> registrarDefiniciones(ReporteUniversalService universal,
+                                                         ReporteFinancieroService financiero) {
+        Set<Dominio> inventario = EnumSet.of(Dominio.INVENTARIO);
+        Set<Dominio> ventas = EnumSet.of(Dominio.VENTAS);
+        Set<Dominio> ventasInventario = EnumSet.of(Dominio.VENTAS, Dominio.INVENTARIO);
+        Set<Dominio> todos = EnumSet.allOf(Dominio.class);
+
+        Map<String, Definicion> mapa = new LinkedHashMap<>();
+
+        // Reportes avanzados
+        mapa.put("stock-actual-excel", excel(MODULO_AVANZADOS, "stock_actual", false, false, inventario,
+                (p, out) -> universal.generarExcelStockActual(out)));
+        mapa.put("stock-actual-pdf", pdf(MODULO_AVANZADOS, "stock_actual", false, false, inventario,
+                (p, out) -> universal.generarPdfStockActual(out)));
+        mapa.put("stock-bajo-excel", excel(MODULO_AVANZADOS, "stock_bajo", false, false, inventario,
+                (p, out) -> universal.generarExcelStockBajo(out)));
+        mapa.put("mas-vendidos-excel", excel(MODULO_AVANZADOS, "productos_mas_vendidos", true, false, ventasInventario,
+                (p, out) -> universal.generarExcelProductosMasVendidos(p.inicio(), p.fin(), out)));
+        mapa.put("mas-vendidos-pdf", pdf(MODULO_AVANZADOS, "productos_mas_vendidos", true, false, ventasInventario,
+                (p, out) -> universal.generarPdfProductosMasVendidos(p.inicio(), p.fin(), out)));
+        mapa.put("ventas-por-fecha-excel", excel(MODULO_AVANZADOS, "ventas_por_fecha", true, false, ventas,
+                (p, out) -> universal.generarExcelVentasPorFecha(p.inicio(), p.fin(), out)));
+        mapa.put("ventas-por-usuario-excel", excel(MODULO_AVANZADOS, "ventas_por_usuario", true, false, ventas,
+                (p, out) -> universal.generarExcelVentasPorUsuario(p.inicio(), p.fin(), p.usuarioId(), out)));
+        mapa.put("ventas-por-metodo-pago-excel", excel(MODULO_AVANZADOS, "ventas_por_metodo_pago", true, false, ventas,
+                (p, out) -> universal.generarExcelVentasPorMetodoPago(p.inicio(), p.fin(), p.metodoPago(), out)));
+        mapa.put("ventas-ganancia-excel", excel(MODULO_AVANZADOS, "ventas_ganancia", true, false, ventasInventario,
+                (p, out) -> universal.generarExcelVentasConGanancia(p.inicio(), p.fin(), out)));
+        mapa.put("ventas-ganancia-pdf", pdf(MODULO_AVANZADOS, "ventas_ganancia", true, false, ventasInventario,
+                (p, out) -> universal.generarPdfVentasConGanancia(p.inicio(), p.fin(), out)));
+        mapa.put("kardex-excel", excel(MODULO_AVANZADOS, "kardex_producto", true, true, inventario,
+                (p, out) -> universal.generarExcelKardexProducto(p.productoId(), p.inicio(), p.fin(), out)));
+        mapa.put("kardex-pdf", pdf(MODULO_AVANZADOS, "kardex_producto", true, true, inventario,
+                (p, out) -> universal.generarPdfKardexProducto(p.productoId(), p.inicio(), p.fin(), out)));
+
+        // Reportes financieros
+        mapa.put("flujo-caja-excel", excel(MODULO_FINANCIEROS, "flujo_caja", true, false, todos,
+                (p, out) -> financiero.exportarFlujoCajaExcel(p.inicio(), p.fin(), out)));
+        mapa.put("flujo-caja-pdf", pdf(MODULO_FINANCIEROS, "flujo_caja", true, false, todos,
+                (p, out) -> financiero.exportarFlujoCajaPDF(p.inicio(), p.fin(), out)));
+        mapa.put("rentabilidad-excel", excel(MODULO_FINANCIEROS, "rentabilidad", true, false, ventasInventario,
+                (p, out) -> financiero.exportarRentabilidadExcel(p.inicio(), p.fin(), out)));
+        mapa.put("rentabilidad-pdf", pdf(MODULO_FINANCIEROS, "rentabilidad", true, false, ventasInventario,
+                (p, out) -> financiero.exportarRentabilidadPDF(p.inicio(), p.fin(), out)));
+        return mapa;
+    }
+
+    private static Definicion excel(String modulo, String archivo, boolean requiereFechas, boolean requiereProducto,
+                                    Set<Dominio> dominios, Generador generador) {
+        return new Definicion(modulo, archivo, ".xlsx", CONTENT_TYPE_EXCEL, requiereFechas, requiereProducto, dominios, generador);
+    }
+
+    private static Definicion pdf(String modulo, String archivo, boolean requiereFechas, boolean requiereProducto,
+                                  Set<Dominio> dominios, Generador generador) {
+        return new Definicion(modulo, archivo, ".pdf", CONTENT_TYPE_PDF, requiereFechas, requiereProducto, dominios, generador);
+    }
+
+    // ==========================================
+    //        ENVÍO Y CONSULTA
+    // ==========================================
+
+    /**
+     * Encola un reporte o reutiliza uno equivalente (en curso, o listo y con datos vigentes).
+     *
+     * @throws RuntimeException si el tipo o los parámetros no son válidos, el usuario ya tiene
+     *                          demasiados reportes en curso o la cola está llena
+     */
+    public synchronized Job enviar(String modulo, String tipo, Parametros parametros, String username) {
+        Definicion definicion = definiciones.get(tipo);
+        if (definicion == null || !definicion.modulo().equals(modulo)) {
+            throw new RuntimeException("Tipo de reporte no válido: " + tipo);
+        }
+        Parametros normalizados = normalizar(definicion, parametros);
+        String clave = tipo + "|" + normalizados;
+
+        Job existente = jobsPorClave.get(clave);
+        if (existente != null) {
+            if (existente.activo() || vigente(existente, definicion)) {
+                existente.usuarios.add(username);
+                return existente;
+            }
+            descartar(existente);
+        }
+
+        long activosUsuario = jobs.values().stream()
+                .filter(j -> j.activo() && username.equals(j.solicitante))
+                .count();
+        if (activosUsuario >= Constants.REPORTES_JOB_MAX_POR_USUARIO) {
+            throw new RuntimeException("Ya tiene " + activosUsuario + " reportes en proceso. Espere a que terminen.");
+        }
+
+        // Versiones tomadas ANTES de generar: un cambio durante la generación deja el archivo obsoleto
+        Job job = new Job(clave, username, nombreArchivo(definicion, normalizados), definicion.contentType(),
+                datosVersion.obtener(definicion.dominios()));
+        jobs.put(job.id, job);
+        jobsPorClave.put(clave, job);
+        try {
+            executor.execute(() -> ejecutar(job, definicion, normalizados));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            jobsPorClave.remove(clave);
+            throw new RuntimeException("Hay demasiados reportes en cola. Intente nuevamente en unos minutos.");
+        }
+        log.info("Reporte {} encolado por {} (job {})", tipo, username, job.id);
+        return job;
+    }
+
+    /**
+     * Job visible para el usuario (solo quienes lo pidieron)
+     */
+    public Job obtener(String id, String username) {
+        Job job = jobs.get(id);
+        if (job == null || !job.usuarios.contains(username)) {
+            throw new RuntimeException("Reporte no encontrado o expirado");
+        }
+        return job;
+    }
+
+    private Parametros normalizar(Definicion definicion, Parametros p) {
+        LocalDate inicio = null;
+        LocalDate fin = null;
+        if (definicion.requiereFechas()) {
+            if (p.inicio() == null || p.fin() == null || p.inicio().isAfter(p.fin())) {
+                throw new RuntimeException("Rango de fechas inválido");
+            }
+            inicio = p.inicio();
+            fin = p.fin();
+        }
+        if (definicion.requiereProducto() && p.productoId() == null) {
+            throw new RuntimeException("Debe seleccionar un producto");
+        }
+        String metodoPago = p.metodoPago() != null && !p.metodoPago().isBlank() ? p.metodoPago() : null;
+        return new Parametros(inicio, fin, p.usuarioId(), metodoPago,
+                definicion.requiereProducto() ? p.productoId() : null);
+    }
+
+    private String nombreArchivo(Definicion definicion, Parametros p) {
+        String sufijo = p.inicio() != null ? "_" + p.inicio() + "_" + p.fin() : "_" + LocalDate.now();
+        return definicion.archivo() + sufijo + definicion.extension();
+    }
+
+    private boolean vigente(Job job, Definicion definicion) {
+        return job.estado == Estado.LISTO
+                && job.archivo != null && Files.exists(job.archivo)
+                && job.versiones.equals(datosVersion.obtener(definicion.dominios()));
+    }
+
+    // ==========================================
+    //        GENERACIÓN (HILOS DEL POOL)
+    // ==========================================
+
+    private void ejecutar(Job job, Definicion definicion, Parametros parametros) {
+        job.estado = Estado.EN_PROCESO;
+        Path archivo = null;
+        try {
+            archivo = Files.createTempFile(directorio, "reporte-", definicion.extension());
+            Path destino = archivo;
+            // Transacción de solo lectura: los generadores leen relaciones LAZY fuera de una petición HTTP
+            transactionTemplate.executeWithoutResult(status -> {
+                try (OutputStream out = Files.newOutputStream(destino)) {
+                    definicion.generador().generar(parametros, out);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            });
+            job.archivo = archivo;
+            job.estado = Estado.LISTO;
+        } catch (Exception e) {
+            log.error("Error generando reporte (job {}): {}", job.id, e.getMessage(), e);
+            eliminarArchivo(archivo);
+            job.error = "Error al generar el reporte";
+            job.estado = Estado.ERROR;
+        } finally {
+            job.terminado = LocalDateTime.now();
+        }
+    }
+
+    // ==========================================
+    //        LIMPIEZA
+    // ==========================================
+
+    /**
+     * Elimina los jobs terminados que superaron la retención o cuyos datos ya cambiaron
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public synchronized void purgar() {
+        LocalDateTime limite = LocalDateTime.now().minusMinutes(Constants.REPORTES_JOB_RETENCION_MINUTOS);
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            if (job.activo()) {
+                continue;
+            }
+            String tipo = job.clave.substring(0, job.clave.indexOf('|'));
+            boolean expirado = job.terminado != null && job.terminado.isBefore(limite);
+            boolean obsoleto = job.estado == Estado.LISTO && !vigente(job, definiciones.get(tipo));
+            if (expirado || obsoleto) {
+                it.remove();
+                jobsPorClave.remove(job.clave, job);
+                eliminarArchivo(job.archivo);
+            }
+        }
+    }
+
+    private void descartar(Job job) {
+        jobs.remove(job.id);
+        jobsPorClave.remove(job.clave, job);
+        eliminarArchivo(job.archivo);
+    }
+
+    private void eliminarArchivo(Path archivo) {
+        if (archivo == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar el archivo de reporte {}: {}", archivo, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        executor.shutdownNow();
+        jobs.values().forEach(job -> eliminarArchivo(job.archivo));
+        try {
+            Files.deleteIfExists(directorio);
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar el directorio de reportes {}: {}", directorio, e.getMessage());
+        }
+    }
+}
@@ -7,7 +7,10 @@ import com.libreria.sistema.model.Venta;
 import com.libreria.sistema.repository.CajaRepository;
 import com.libreria.sistema.repository.ProductoRepository;
 import com.libreria.sistema.repository.UsuarioRepository;
+import com.libreria.sistema.repository.VentaProductoDiarioRepository;
 import com.libreria.sistema.repository.VentaRepository;
+import com.libreria.sistema.util.ExcelStreaming;
+import com.libreria.sistema.util.PdfStreaming;
 
 // --- IMPORTS PDF (iText/OpenPDF) ---
 import com.lowagie.text.Document;
@@ -25,18 +28,22 @@ import com.lowagie.text.pdf.PdfWriter;
 
 // --- IMPORTS EXCEL (Apache POI) ---
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.awt.Color;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Servicio de generación de reportes OPTIMIZADO.
@@ -55,48 +62,53 @@ public class ReporteService {
     private final CajaRepository cajaRepository;
     private final UsuarioRepository usuarioRepository;
     private final ConfiguracionService configuracionService;
+    private final VentaProductoDiarioRepository productoDiarioRepository;
 
     public ReporteService(VentaRepository ventaRepository, ProductoRepository productoRepository,
                           CajaRepository cajaRepository, UsuarioRepository usuarioRepository,
-                          ConfiguracionService configuracionService) {
+                          ConfiguracionService configuracionService,
+                          VentaProductoDiarioRepository productoDiarioRepository) {
         this.ventaRepository = ventaRepository;
         this.productoRepository = productoRepository;
         this.cajaRepository = cajaRepository;
         this.usuarioRepository = usuarioRepository;
         this.configuracionService = configuracionService;
+        this.productoDiarioRepository = productoDiarioRepository;
     }
 
     // ==========================================
     //              LÓGICA EXCEL
     // ==========================================
+    @Transactional(readOnly = true)
     public void generarExcel(String tipo, LocalDate inicio, LocalDate fin, OutputStream outputStream) throws IOException {
         var config = configuracionService.obtenerConfiguracion();
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet(tipo);
-
-        CellStyle headerStyle = crearEstiloCabecera(workbook);
-        CellStyle dataStyle = crearEstiloDatos(workbook);
-
-        // Normalizar fechas: si no se especifican, usar rango amplio
-        LocalDate fechaInicio = inicio != null ? inicio : LocalDate.of(2020, 1, 1);
-        LocalDate fechaFin = fin != null ? fin : LocalDate.now();
-
-        log.info("Generando Excel {} para periodo: {} - {}", tipo, fechaInicio, fechaFin);
-
-        if ("VENTAS".equals(tipo)) generarExcelVentas(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
-        else if ("CAJA".equals(tipo)) generarExcelCaja(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
-        else if ("INVENTARIO".equals(tipo)) generarExcelInventario(sheet, headerStyle, dataStyle, config);
-        else if ("USUARIOS".equals(tipo)) generarExcelUsuarios(sheet, headerStyle, dataStyle);
-        // NUEVOS REPORTES AVANZADOS
-        else if ("VENTAS_POR_USUARIO".equals(tipo)) generarExcelVentasPorUsuario(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
-        else if ("VENTAS_POR_PRODUCTO".equals(tipo)) generarExcelVentasPorProducto(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
-        else if ("RESUMEN_FINANCIERO".equals(tipo)) generarExcelResumenFinanciero(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
-        else if ("STOCK_BAJO".equals(tipo)) generarExcelStockBajo(sheet, headerStyle, dataStyle, config);
-
-        for(int i=0; i<8; i++) sheet.autoSizeColumn(i);
-
-        workbook.write(outputStream);
-        workbook.close();
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet(tipo);
+
+            CellStyle headerStyle = crearEstiloCabecera(workbook);
+            CellStyle dataStyle = crearEstiloDatos(workbook);
+
+            // Normalizar fechas: si no se especifican, usar rango amplio
+            LocalDate fechaInicio = inicio != null ? inicio : LocalDate.of(2020, 1, 1);
+            LocalDate fechaFin = fin != null ? fin : LocalDate.now();
+
+            log.info("Generando Excel {} para periodo: {} - {}", tipo, fechaInicio, fechaFin);
+
+            if ("VENTAS".equals(tipo)) generarExcelVentas(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
+            else if ("CAJA".equals(tipo)) generarExcelCaja(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
+            else if ("INVENTARIO".equals(tipo)) generarExcelInventario(sheet, headerStyle, dataStyle, config);
+            else if ("USUARIOS".equals(tipo)) generarExcelUsuarios(sheet, headerStyle, dataStyle);
+            // NUEVOS REPORTES AVANZADOS
+            else if ("VENTAS_POR_USUARIO".equals(tipo)) generarExcelVentasPorUsuario(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
+            else if ("VENTAS_POR_PRODUCTO".equals(tipo)) generarExcelVentasPorProducto(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
+            else if ("RESUMEN_FINANCIERO".equals(tipo)) generarExcelResumenFinanciero(sheet, fechaInicio, fechaFin, headerStyle, dataStyle, config);
+            else if ("STOCK_BAJO".equals(tipo)) generarExcelStockBajo(sheet, headerStyle, dataStyle, config);
+
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
+        }
     }
 
     private CellStyle crearEstiloCabecera(Workbook workbook) {
@@ -124,74 +136,85 @@ public class ReporteService {
     }
 
     /**
-     * OPTIMIZADO: Ahora filtra en la BD, no en Java
+     * OPTIMIZADO: Cursor en streaming sobre columnas (sin cargar entidades ni la lista completa)
      */
     private void generarExcelVentas(Sheet sheet, LocalDate inicio, LocalDate fin, CellStyle headerStyle, CellStyle dataStyle, com.libreria.sistema.model.Configuracion config) {
         crearFilaCabecera(sheet, headerStyle, "ID", "FECHA", "COMPROBANTE", "CLIENTE", "METODO PAGO", "TOTAL", "ESTADO");
-
-        // OPTIMIZACIÓN: Consulta filtrada en BD
-        List<Venta> lista = ventaRepository.findByFechaEmisionBetween(inicio, fin);
-        log.debug("Ventas obtenidas para reporte: {} registros", lista.size());
+        ExcelStreaming.fijarAnchos(sheet, 10, 12, 24, 40, 16, 14, 12);
 
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern(config.getFormatoFechaReportes() != null ? config.getFormatoFechaReportes() : "dd/MM/yyyy");
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() + " " : "S/ ";
 
+        // [id, fechaEmision, tipoComprobante, serie, numero, clienteDenominacion, metodoPago, totalGravada, totalIgv, total, estado]
         int rowIdx = 1;
-        for (Venta v : lista) {
-            Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, v.getId().toString(), dataStyle);
-            crearCelda(row, 1, v.getFechaEmision().format(formatter), dataStyle);
-            crearCelda(row, 2, v.getTipoComprobante() + " " + v.getSerie() + "-" + v.getNumero(), dataStyle);
-            crearCelda(row, 3, v.getClienteDenominacion(), dataStyle);
-            crearCelda(row, 4, v.getMetodoPago() != null ? v.getMetodoPago() : "EFECTIVO", dataStyle);
-            crearCelda(row, 5, moneda + v.getTotal(), dataStyle);
-            crearCelda(row, 6, v.getEstado(), dataStyle);
+        try (Stream<Object[]> filas = ventaRepository.streamFilasReporte(inicio, fin)) {
+            for (Object[] v : (Iterable<Object[]>) filas::iterator) {
+                Row row = sheet.createRow(rowIdx++);
+                crearCelda(row, 0, v[0].toString(), dataStyle);
+                crearCelda(row, 1, ((LocalDate) v[1]).format(formatter), dataStyle);
+                crearCelda(row, 2, v[2] + " " + v[3] + "-" + v[4], dataStyle);
+                crearCelda(row, 3, (String) v[5], dataStyle);
+                crearCelda(row, 4, v[6] != null ? (String) v[6] : "EFECTIVO", dataStyle);
+                crearCelda(row, 5, moneda + v[9], dataStyle);
+                crearCelda(row, 6, (String) v[10], dataStyle);
+            }
         }
+        log.debug("Ventas exportadas: {} registros", rowIdx - 1);
     }
 
     /**
-     * OPTIMIZADO: Ahora filtra en la BD, no en Java
+     * OPTIMIZADO: Cursor en streaming por rango de fecha/hora (usa el índice de fecha)
      */
     private void generarExcelCaja(Sheet sheet, LocalDate inicio, LocalDate fin, CellStyle headerStyle, CellStyle dataStyle, com.libreria.sistema.model.Configuracion config) {
         crearFilaCabecera(sheet, headerStyle, "FECHA", "TIPO", "CONCEPTO", "MONTO", "USUARIO");
-
-        // OPTIMIZACIÓN: Consulta filtrada en BD
-        List<MovimientoCaja> lista = cajaRepository.findByFechaBetweenDates(inicio, fin);
-        log.debug("Movimientos de caja obtenidos para reporte: {} registros", lista.size());
+        ExcelStreaming.fijarAnchos(sheet, 20, 10, 45, 14, 16);
 
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() + " " : "S/ ";
 
+        // [fecha, tipo, concepto, monto, username]
         int rowIdx = 1;
-        for (MovimientoCaja m : lista) {
-            Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, m.getFecha().toString().replace("T", " "), dataStyle);
-            crearCelda(row, 1, m.getTipo(), dataStyle);
-            crearCelda(row, 2, m.getConcepto(), dataStyle);
-            crearCelda(row, 3, moneda + m.getMonto(), dataStyle);
-            crearCelda(row, 4, m.getUsuario() != null ? m.getUsuario().getUsername() : "-", dataStyle);
+        try (Stream<Object[]> filas = cajaRepository.streamFilasReporte(inicio.atStartOfDay(), fin.plusDays(1).atStartOfDay())) {
+            for (Object[] m : (Iterable<Object[]>) filas::iterator) {
+                Row row = sheet.createRow(rowIdx++);
+                crearCelda(row, 0, m[0].toString().replace("T", " "), dataStyle);
+                crearCelda(row, 1, (String) m[1], dataStyle);
+                crearCelda(row, 2, (String) m[2], dataStyle);
+                crearCelda(row, 3, moneda + m[3], dataStyle);
+                crearCelda(row, 4, m[4] != null ? (String) m[4] : "-", dataStyle);
+            }
         }
+        log.debug("Movimientos de caja exportados: {} registros", rowIdx - 1);
     }
 
     private void generarExcelInventario(Sheet sheet, CellStyle headerStyle, CellStyle dataStyle, com.libreria.sistema.model.Configuracion config) {
         crearFilaCabecera(sheet, headerStyle, "CODIGO", "PRODUCTO", "STOCK", "P. COMPRA", "P. VENTA", "VALORIZADO");
-        List<Producto> lista = productoRepository.findByActivoTrue();
+        ExcelStreaming.fijarAnchos(sheet, 16, 45, 10, 14, 14, 16);
+
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() + " " : "S/ ";
+
+        // [codigoInterno, nombre, categoria, stockActual, precioCompra, precioVenta]
         int rowIdx = 1;
-        for (Producto p : lista) {
-            Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, p.getCodigoInterno(), dataStyle);
-            crearCelda(row, 1, p.getNombre(), dataStyle);
-            crearCelda(row, 2, String.valueOf(p.getStockActual()), dataStyle);
-            crearCelda(row, 3, moneda + (p.getPrecioCompra()!=null?p.getPrecioCompra():0), dataStyle);
-            crearCelda(row, 4, moneda + p.getPrecioVenta(), dataStyle);
-
-            double valor = p.getStockActual() * (p.getPrecioCompra()!=null?p.getPrecioCompra().doubleValue():0);
-            crearCelda(row, 5, moneda + String.format("%.2f", valor), dataStyle);
+        try (Stream<Object[]> filas = productoRepository.streamActivosParaReporte()) {
+            for (Object[] p : (Iterable<Object[]>) filas::iterator) {
+                int stock = p[3] != null ? (Integer) p[3] : 0;
+                BigDecimal precioCompra = p[4] != null ? (BigDecimal) p[4] : BigDecimal.ZERO;
+
+                Row row = sheet.createRow(rowIdx++);
+                crearCelda(row, 0, (String) p[0], dataStyle);
+                crearCelda(row, 1, (String) p[1], dataStyle);
+                crearCelda(row, 2, String.valueOf(stock), dataStyle);
+                crearCelda(row, 3, moneda + precioCompra, dataStyle);
+                crearCelda(row, 4, moneda + p[5], dataStyle);
+
+                double valor = stock * precioCompra.doubleValue();
+                crearCelda(row, 5, moneda + String.format("%.2f", valor), dataStyle);
+            }
         }
     }
 
     private void generarExcelUsuarios(Sheet sheet, CellStyle headerStyle, CellStyle dataStyle) {
         crearFilaCabecera(sheet, headerStyle, "ID", "USUARIO", "NOMBRE COMPLETO", "ESTADO", "ROLES");
+        ExcelStreaming.fijarAnchos(sheet, 8, 18, 35, 12, 40);
         List<Usuario> lista = usuarioRepository.findAll();
         int rowIdx = 1;
         for (Usuario u : lista) {
@@ -225,6 +248,7 @@ public class ReporteService {
     // ==========================================
     //              LÓGICA PDF
     // ==========================================
+    @Transactional(readOnly = true)
     public void generarPdf(String tipo, LocalDate inicio, LocalDate fin, OutputStream outputStream) throws DocumentException {
         Document document = new Document(PageSize.A4.rotate());
         PdfWriter.getInstance(document, outputStream);
@@ -252,16 +276,16 @@ public class ReporteService {
         }
 
         // --- CABECERA EMPRESARIAL ---
-        int numColumnas = (config.getMostrarLogoEnReportes() && config.getLogoBase64() != null) ? 3 : 2;
+        // OPTIMIZADO: logo ya decodificado y escalado (se decodifica una vez por versión del logo)
+        Image logo = Boolean.TRUE.equals(config.getMostrarLogoEnReportes())
+                ? configuracionService.obtenerLogoPdf(80, 80) : null;
+        int numColumnas = logo != null ? 3 : 2;
         PdfPTable headerTable = new PdfPTable(numColumnas);
         headerTable.setWidthPercentage(100);
 
         // LOGO (si está habilitado)
-        if (config.getMostrarLogoEnReportes() && config.getLogoBase64() != null) {
+        if (logo != null) {
             try {
-                byte[] logoBytes = Base64.getDecoder().decode(config.getLogoBase64());
-                Image logo = Image.getInstance(logoBytes);
-                logo.scaleToFit(80, 80);
                 PdfPCell cellLogo = new PdfPCell(logo);
                 cellLogo.setBorder(Rectangle.NO_BORDER);
                 cellLogo.setHorizontalAlignment(Element.ALIGN_CENTER);
@@ -339,77 +363,82 @@ public class ReporteService {
     }
 
     /**
-     * OPTIMIZADO: Ahora filtra en la BD, no en Java
+     * OPTIMIZADO: Cursor en streaming + tabla incremental (ver PdfStreaming)
      */
     private void generarPdfVentas(Document document, LocalDate inicio, LocalDate fin, com.libreria.sistema.model.Configuracion config) throws DocumentException {
-        PdfPTable table = new PdfPTable(6);
-        table.setWidthPercentage(100);
-        table.setWidths(new float[]{2, 2, 4, 2, 2, 2});
+        PdfStreaming.Tabla tabla = PdfStreaming.crearTabla(document, new float[]{2, 2, 4, 2, 2, 2});
+        PdfPTable table = tabla.getTabla();
 
         agregarCabeceraPdf(table, config, "FECHA", "DOC", "CLIENTE", "METODO", "TOTAL", "ESTADO");
 
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern(config.getFormatoFechaReportes() != null ? config.getFormatoFechaReportes() : "dd/MM/yyyy");
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() + " " : "S/ ";
 
-        // OPTIMIZACIÓN: Consulta filtrada en BD
-        List<Venta> lista = ventaRepository.findByFechaEmisionBetween(inicio, fin);
-        log.debug("Ventas obtenidas para PDF: {} registros", lista.size());
-
-        for (Venta v : lista) {
-            table.addCell(crearCeldaPdf(v.getFechaEmision().format(formatter)));
-            table.addCell(crearCeldaPdf(v.getSerie() + "-" + v.getNumero()));
-            table.addCell(crearCeldaPdf(v.getClienteDenominacion()));
-            table.addCell(crearCeldaPdf(v.getMetodoPago() != null ? v.getMetodoPago() : "EFECTIVO"));
-            table.addCell(crearCeldaPdfRight(moneda + v.getTotal()));
-            table.addCell(crearCeldaPdf(v.getEstado()));
+        // [id, fechaEmision, tipoComprobante, serie, numero, clienteDenominacion, metodoPago, totalGravada, totalIgv, total, estado]
+        try (Stream<Object[]> filas = ventaRepository.streamFilasReporte(inicio, fin)) {
+            for (Object[] v : (Iterable<Object[]>) filas::iterator) {
+                table.addCell(crearCeldaPdf(((LocalDate) v[1]).format(formatter)));
+                table.addCell(crearCeldaPdf(v[3] + "-" + v[4]));
+                table.addCell(crearCeldaPdf((String) v[5]));
+                table.addCell(crearCeldaPdf(v[6] != null ? (String) v[6] : "EFECTIVO"));
+                table.addCell(crearCeldaPdfRight(moneda + v[9]));
+                table.addCell(crearCeldaPdf((String) v[10]));
+                tabla.filaAgregada();
+            }
         }
-        document.add(table);
+        tabla.cerrar();
+        log.debug("Ventas exportadas a PDF: {} registros", tabla.getFilas());
     }
 
     /**
-     * OPTIMIZADO: Ahora filtra en la BD, no en Java
+     * OPTIMIZADO: Cursor en streaming por rango de fecha/hora + tabla incremental
      */
     private void generarPdfCaja(Document document, LocalDate inicio, LocalDate fin, com.libreria.sistema.model.Configuracion config) throws DocumentException {
-        PdfPTable table = new PdfPTable(5);
-        table.setWidthPercentage(100);
-        table.setWidths(new float[]{2, 1, 4, 2, 2});
+        PdfStreaming.Tabla tabla = PdfStreaming.crearTabla(document, new float[]{2, 1, 4, 2, 2});
+        PdfPTable table = tabla.getTabla();
         agregarCabeceraPdf(table, config, "FECHA", "TIPO", "CONCEPTO", "MONTO", "USUARIO");
 
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() + " " : "S/ ";
 
-        // OPTIMIZACIÓN: Consulta filtrada en BD
-        List<MovimientoCaja> lista = cajaRepository.findByFechaBetweenDates(inicio, fin);
-        log.debug("Movimientos de caja obtenidos para PDF: {} registros", lista.size());
-
-        for (MovimientoCaja m : lista) {
-            table.addCell(crearCeldaPdf(m.getFecha().toString().replace("T", " ")));
-            table.addCell(crearCeldaPdf(m.getTipo()));
-            table.addCell(crearCeldaPdf(m.getConcepto()));
-            table.addCell(crearCeldaPdfRight(moneda + m.getMonto()));
-            table.addCell(crearCeldaPdf(m.getUsuario() != null ? m.getUsuario().getUsername() : "-"));
+        // [fecha, tipo, concepto, monto, username]
+        try (Stream<Object[]> filas = cajaRepository.streamFilasReporte(inicio.atStartOfDay(), fin.plusDays(1).atStartOfDay())) {
+            for (Object[] m : (Iterable<Object[]>) filas::iterator) {
+                table.addCell(crearCeldaPdf(m[0].toString().replace("T", " ")));
+                table.addCell(crearCeldaPdf((String) m[1]));
+                table.addCell(crearCeldaPdf((String) m[2]));
+                table.addCell(crearCeldaPdfRight(moneda + m[3]));
+                table.addCell(crearCeldaPdf(m[4] != null ? (String) m[4] : "-"));
+                tabla.filaAgregada();
+            }
         }
-        document.add(table);
+        tabla.cerrar();
+        log.debug("Movimientos de caja exportados a PDF: {} registros", tabla.getFilas());
     }
 
     private void generarPdfInventario(Document document, com.libreria.sistema.model.Configuracion config) throws DocumentException {
-        PdfPTable table = new PdfPTable(5);
-        table.setWidthPercentage(100);
-        table.setWidths(new float[]{2, 4, 1, 2, 2});
+        PdfStreaming.Tabla tabla = PdfStreaming.crearTabla(document, new float[]{2, 4, 1, 2, 2});
+        PdfPTable table = tabla.getTabla();
         agregarCabeceraPdf(table, config, "CODIGO", "PRODUCTO", "STOCK", "P. VENTA", "VALORIZADO");
 
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() + " " : "S/ ";
 
-        List<Producto> lista = productoRepository.findByActivoTrue();
-        for (Producto p : lista) {
-            table.addCell(crearCeldaPdf(p.getCodigoInterno()));
-            table.addCell(crearCeldaPdf(p.getNombre()));
-            table.addCell(crearCeldaPdfCenter(String.valueOf(p.getStockActual())));
-            table.addCell(crearCeldaPdfRight(moneda + p.getPrecioVenta()));
+        // [codigoInterno, nombre, categoria, stockActual, precioCompra, precioVenta]
+        try (Stream<Object[]> filas = productoRepository.streamActivosParaReporte()) {
+            for (Object[] p : (Iterable<Object[]>) filas::iterator) {
+                int stock = p[3] != null ? (Integer) p[3] : 0;
+                BigDecimal precioCompra = p[4] != null ? (BigDecimal) p[4] : BigDecimal.ZERO;
+
+                table.addCell(crearCeldaPdf((String) p[0]));
+                table.addCell(crearCeldaPdf((String) p[1]));
+                table.addCell(crearCeldaPdfCenter(String.valueOf(stock)));
+                table.addCell(crearCeldaPdfRight(moneda + p[5]));
 
-            double valor = p.getStockActual() * (p.getPrecioCompra()!=null?p.getPrecioCompra().doubleValue():0);
-            table.addCell(crearCeldaPdfRight(moneda + String.format("%.2f", valor)));
+                double valor = stock * precioCompra.doubleValue();
+                table.addCell(crearCeldaPdfRight(moneda + String.format("%.2f", valor)));
+                tabla.filaAgregada();
+            }
         }
-        document.add(table);
+        tabla.cerrar();
     }
 
     private void generarPdfUsuarios(Document document, com.libreria.sistema.model.Configuracion config) throws DocumentException {
@@ -466,158 +495,106 @@ public class ReporteService {
     // ==========================================
 
     /**
-     * Reporte de ventas agrupadas por usuario/cajero
+     * Reporte de ventas agrupadas por usuario/cajero (agregado en BD, ventas vigentes)
      */
     private void generarExcelVentasPorUsuario(Sheet sheet, LocalDate inicio, LocalDate fin, CellStyle headerStyle, CellStyle dataStyle, com.libreria.sistema.model.Configuracion config) {
         crearFilaCabecera(sheet, headerStyle, "USUARIO", "NOMBRE", "CANT. VENTAS", "TOTAL VENTAS", "PROMEDIO");
+        ExcelStreaming.fijarAnchos(sheet, 18, 35, 14, 16, 14);
 
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() + " " : "S/ ";
-        List<Venta> lista = ventaRepository.findByFechaEmisionBetween(inicio, fin);
-
-        // Agrupar por usuario
-        var ventasPorUsuario = lista.stream()
-                .filter(v -> v.getUsuario() != null)
-                .collect(java.util.stream.Collectors.groupingBy(
-                        v -> v.getUsuario().getUsername(),
-                        java.util.stream.Collectors.toList()
-                ));
 
+        // [username, nombreCompleto, cantidad, total]
         int rowIdx = 1;
-        for (var entry : ventasPorUsuario.entrySet()) {
-            String username = entry.getKey();
-            List<Venta> ventas = entry.getValue();
-            java.math.BigDecimal total = ventas.stream()
-                    .map(Venta::getTotal)
-                    .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-            java.math.BigDecimal promedio = ventas.isEmpty() ? java.math.BigDecimal.ZERO :
-                    total.divide(new java.math.BigDecimal(ventas.size()), 2, java.math.RoundingMode.HALF_UP);
-
-            String nombreCompleto = ventas.get(0).getUsuario().getNombreCompleto();
+        for (Object[] fila : ventaRepository.resumirPorUsuario(inicio, fin, null)) {
+            long cantidad = ((Number) fila[2]).longValue();
+            BigDecimal total = (BigDecimal) fila[3];
+            BigDecimal promedio = cantidad == 0 ? BigDecimal.ZERO :
+                    total.divide(BigDecimal.valueOf(cantidad), 2, RoundingMode.HALF_UP);
 
             Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, username, dataStyle);
-            crearCelda(row, 1, nombreCompleto, dataStyle);
-            crearCelda(row, 2, String.valueOf(ventas.size()), dataStyle);
+            crearCelda(row, 0, (String) fila[0], dataStyle);
+            crearCelda(row, 1, (String) fila[1], dataStyle);
+            crearCelda(row, 2, String.valueOf(cantidad), dataStyle);
             crearCelda(row, 3, moneda + total, dataStyle);
             crearCelda(row, 4, moneda + promedio, dataStyle);
         }
     }
 
     /**
-     * Reporte de productos más vendidos
+     * Reporte de productos más vendidos (desde los hechos producto/día)
      */
     private void generarExcelVentasPorProducto(Sheet sheet, LocalDate inicio, LocalDate fin, CellStyle headerStyle, CellStyle dataStyle, com.libreria.sistema.model.Configuracion config) {
         crearFilaCabecera(sheet, headerStyle, "CODIGO", "PRODUCTO", "CANT. VENDIDA", "TOTAL VENTAS", "% DEL TOTAL");
+        ExcelStreaming.fijarAnchos(sheet, 16, 45, 14, 16, 12);
 
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() + " " : "S/ ";
-        List<Venta> ventas = ventaRepository.findByFechaEmisionBetween(inicio, fin);
 
-        // Extraer todos los detalles y agrupar por producto
-        var productosVendidos = ventas.stream()
-                .flatMap(v -> v.getItems().stream())
-                .collect(java.util.stream.Collectors.groupingBy(
-                        d -> d.getProducto().getId(),
-                        java.util.stream.Collectors.toList()
-                ));
-
-        java.math.BigDecimal totalGeneral = ventas.stream()
-                .map(Venta::getTotal)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
+        // [productoId, codigoInterno, nombre, categoria, cantVendida, totalVendido, ...]
+        List<Object[]> productosVendidos = productoDiarioRepository.sumarPorProductoEntre(inicio, fin, Pageable.unpaged());
+        BigDecimal totalGeneral = productosVendidos.stream()
+                .map(fila -> (BigDecimal) fila[5])
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
 
         int rowIdx = 1;
-        for (var entry : productosVendidos.entrySet()) {
-            var detalles = entry.getValue();
-            if (detalles.isEmpty()) continue;
-
-            Producto prod = detalles.get(0).getProducto();
-            java.math.BigDecimal cantidadTotal = detalles.stream()
-                    .map(d -> d.getCantidad())
-                    .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-            java.math.BigDecimal montoTotal = detalles.stream()
-                    .map(d -> d.getSubtotal())
-                    .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-
-            double porcentaje = totalGeneral.compareTo(java.math.BigDecimal.ZERO) > 0 ?
-                    montoTotal.divide(totalGeneral, 4, java.math.RoundingMode.HALF_UP).doubleValue() * 100 : 0;
+        for (Object[] fila : productosVendidos) {
+            BigDecimal montoTotal = (BigDecimal) fila[5];
+            double porcentaje = totalGeneral.compareTo(BigDecimal.ZERO) > 0 ?
+                    montoTotal.divide(totalGeneral, 4, RoundingMode.HALF_UP).doubleValue() * 100 : 0;
 
             Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, prod.getCodigoInterno(), dataStyle);
-            crearCelda(row, 1, prod.getNombre(), dataStyle);
-            crearCelda(row, 2, cantidadTotal.toString(), dataStyle);
+            crearCelda(row, 0, (String) fila[1], dataStyle);
+            crearCelda(row, 1, (String) fila[2], dataStyle);
+            crearCelda(row, 2, fila[4].toString(), dataStyle);
             crearCelda(row, 3, moneda + montoTotal, dataStyle);
             crearCelda(row, 4, String.format("%.2f%%", porcentaje), dataStyle);
         }
     }
 
     /**
-     * Resumen financiero consolidado
+     * Resumen financiero consolidado (totales calculados en BD)
      */
     private void generarExcelResumenFinanciero(Sheet sheet, LocalDate inicio, LocalDate fin, CellStyle headerStyle, CellStyle dataStyle, com.libreria.sistema.model.Configuracion config) {
         crearFilaCabecera(sheet, headerStyle, "CONCEPTO", "MONTO");
+        ExcelStreaming.fijarAnchos(sheet, 24, 18);
 
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() + " " : "S/ ";
 
-        List<Venta> ventas = ventaRepository.findByFechaEmisionBetween(inicio, fin);
-        List<MovimientoCaja> movimientos = cajaRepository.findByFechaBetweenDates(inicio, fin);
-
-        // Calcular totales
-        java.math.BigDecimal totalVentas = ventas.stream()
-                .map(Venta::getTotal)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-
-        java.math.BigDecimal totalIgv = ventas.stream()
-                .map(v -> v.getTotalIgv() != null ? v.getTotalIgv() : java.math.BigDecimal.ZERO)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-
-        java.math.BigDecimal ventasContado = ventas.stream()
-                .filter(v -> "CONTADO".equals(v.getFormaPago()))
-                .map(Venta::getTotal)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-
-        java.math.BigDecimal ventasCredito = ventas.stream()
-                .filter(v -> "CREDITO".equals(v.getFormaPago()))
-                .map(Venta::getTotal)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-
-        java.math.BigDecimal ingresos = movimientos.stream()
-                .filter(m -> "INGRESO".equals(m.getTipo()))
-                .map(MovimientoCaja::getMonto)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
-
-        java.math.BigDecimal egresos = movimientos.stream()
-                .filter(m -> "EGRESO".equals(m.getTipo()))
-                .map(MovimientoCaja::getMonto)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
+        // [cantidad, total, igv, totalContado, totalCredito]
+        Object[] totales = ventaRepository.resumirTotalesEntre(inicio, fin).get(0);
+        BigDecimal ingresos = cajaRepository.sumarIngresosPorFechas(inicio, fin);
+        BigDecimal egresos = cajaRepository.sumarEgresosPorFechas(inicio, fin);
 
         int rowIdx = 1;
-        crearFilaResumen(sheet, rowIdx++, "Total Ventas", moneda + totalVentas, dataStyle);
-        crearFilaResumen(sheet, rowIdx++, "Total IGV", moneda + totalIgv, dataStyle);
-        crearFilaResumen(sheet, rowIdx++, "Ventas al Contado", moneda + ventasContado, dataStyle);
-        crearFilaResumen(sheet, rowIdx++, "Ventas a Crédito", moneda + ventasCredito, dataStyle);
-        crearFilaResumen(sheet, rowIdx++, "Cantidad de Ventas", String.valueOf(ventas.size()), dataStyle);
+        crearFilaResumen(sheet, rowIdx++, "Total Ventas", moneda + totales[1], dataStyle);
+        crearFilaResumen(sheet, rowIdx++, "Total IGV", moneda + totales[2], dataStyle);
+        crearFilaResumen(sheet, rowIdx++, "Ventas al Contado", moneda + totales[3], dataStyle);
+        crearFilaResumen(sheet, rowIdx++, "Ventas a Crédito", moneda + totales[4], dataStyle);
+        crearFilaResumen(sheet, rowIdx++, "Cantidad de Ventas", String.valueOf(totales[0]), dataStyle);
         crearFilaResumen(sheet, rowIdx++, "Ingresos Caja", moneda + ingresos, dataStyle);
         crearFilaResumen(sheet, rowIdx++, "Egresos Caja", moneda + egresos, dataStyle);
         crearFilaResumen(sheet, rowIdx++, "Balance Neto", moneda + ingresos.subtract(egresos), dataStyle);
     }
 
     /**
-     * Productos con stock bajo (por debajo del mínimo configurado)
+     * Productos con stock bajo (por debajo del mínimo configurado), filtrados en BD
      */
     private void generarExcelStockBajo(Sheet sheet, CellStyle headerStyle, CellStyle dataStyle, com.libreria.sistema.model.Configuracion config) {
         crearFilaCabecera(sheet, headerStyle, "CODIGO", "PRODUCTO", "STOCK ACTUAL", "STOCK MIN", "DIFERENCIA");
+        ExcelStreaming.fijarAnchos(sheet, 16, 45, 14, 12, 12);
 
         Integer stockMinimo = config.getStockMinimo() != null ? config.getStockMinimo() : 5;
-        List<Producto> lista = productoRepository.findByActivoTrue();
 
+        // [codigoInterno, nombre, stockActual]
         int rowIdx = 1;
-        for (Producto p : lista) {
-            if (p.getStockActual() <= stockMinimo) {
+        try (Stream<Object[]> filas = productoRepository.streamStockBajoMinimo(stockMinimo)) {
+            for (Object[] p : (Iterable<Object[]>) filas::iterator) {
+                int stock = (Integer) p[2];
                 Row row = sheet.createRow(rowIdx++);
-                crearCelda(row, 0, p.getCodigoInterno(), dataStyle);
-                crearCelda(row, 1, p.getNombre(), dataStyle);
-                crearCelda(row, 2, String.valueOf(p.getStockActual()), dataStyle);
+                crearCelda(row, 0, (String) p[0], dataStyle);
+                crearCelda(row, 1, (String) p[1], dataStyle);
+                crearCelda(row, 2, String.valueOf(stock), dataStyle);
                 crearCelda(row, 3, String.valueOf(stockMinimo), dataStyle);
-                crearCelda(row, 4, String.valueOf(p.getStockActual() - stockMinimo), dataStyle);
+                crearCelda(row, 4, String.valueOf(stock - stockMinimo), dataStyle);
             }
         }
     }
@@ -791,25 +768,24 @@ public class ReporteService {
     }
 
     /**
-     * PDF: Productos con stock bajo
+     * PDF: Productos con stock bajo (filtro en BD + tabla incremental)
      */
     private void generarPdfStockBajo(Document document, com.libreria.sistema.model.Configuracion config) throws DocumentException {
-        PdfPTable table = new PdfPTable(5);
-        table.setWidthPercentage(100);
-        table.setWidths(new float[]{2, 4, 2, 2, 2});
+        PdfStreaming.Tabla tabla = PdfStreaming.crearTabla(document, new float[]{2, 4, 2, 2, 2});
+        PdfPTable table = tabla.getTabla();
 
         agregarCabeceraPdf(table, config, "CODIGO", "PRODUCTO", "STOCK", "MINIMO", "DIFERENCIA");
 
         Integer stockMinimo = config.getStockMinimo() != null ? config.getStockMinimo() : 5;
-        List<Producto> lista = productoRepository.findByActivoTrue();
 
-        for (Producto p : lista) {
-            if (p.getStockActual() <= stockMinimo) {
-                table.addCell(crearCeldaPdf(p.getCodigoInterno()));
-                table.addCell(crearCeldaPdf(p.getNombre()));
+        // [codigoInterno, nombre, stockActual]
+        try (Stream<Object[]> filas = productoRepository.streamStockBajoMinimo(stockMinimo)) {
+            for (Object[] p : (Iterable<Object[]>) filas::iterator) {
+                table.addCell(crearCeldaPdf((String) p[0]));
+                table.addCell(crearCeldaPdf((String) p[1]));
 
                 // Colorear stock según nivel
-                int stock = p.getStockActual();
+                int stock = (Integer) p[2];
                 Color colorStock = stock <= 0 ? Color.RED : (stock <= stockMinimo / 2 ? Color.ORANGE : Color.BLACK);
                 PdfPCell cellStock = new PdfPCell(new Phrase(String.valueOf(stock), FontFactory.getFont(FontFactory.HELVETICA_BOLD, 9, colorStock)));
                 cellStock.setPadding(4);
@@ -818,9 +794,10 @@ public class ReporteService {
 
                 table.addCell(crearCeldaPdfCenter(String.valueOf(stockMinimo)));
                 table.addCell(crearCeldaPdfCenter(String.valueOf(stock - stockMinimo)));
+                tabla.filaAgregada();
             }
         }
-        document.add(table);
+        tabla.cerrar();
     }
 
     private void agregarFilaResumenPdf(PdfPTable table, String concepto, String valor) {
@@ -860,11 +837,10 @@ public class ReporteService {
         com.lowagie.text.Font fontPequena = FontFactory.getFont(FontFactory.COURIER, 7);
 
         // === LOGO (centrado) ===
-        if (config.getMostrarLogoEnTicket() != null && config.getMostrarLogoEnTicket() && config.getLogoBase64() != null) {
+        Image logo = Boolean.TRUE.equals(config.getMostrarLogoEnTicket())
+                ? configuracionService.obtenerLogoPdf(anchoPuntos * 0.6f, 50) : null;
+        if (logo != null) {
             try {
-                byte[] logoBytes = Base64.getDecoder().decode(config.getLogoBase64());
-                Image logo = Image.getInstance(logoBytes);
-                logo.scaleToFit(anchoPuntos * 0.6f, 50);
                 logo.setAlignment(Element.ALIGN_CENTER);
                 document.add(logo);
             } catch (Exception e) {
@@ -1053,7 +1029,9 @@ public class ReporteService {
         Color colorPrimario = parseColor(config.getColorPrimario(), Color.BLUE);
 
         // === CABECERA (3 columnas: Logo, Empresa, Documento) ===
-        int numCols = (config.getMostrarLogoEnReportes() != null && config.getMostrarLogoEnReportes() && config.getLogoBase64() != null) ? 3 : 2;
+        Image logo = Boolean.TRUE.equals(config.getMostrarLogoEnReportes())
+                ? configuracionService.obtenerLogoPdf(80, 80) : null;
+        int numCols = logo != null ? 3 : 2;
         PdfPTable tablaHeader = new PdfPTable(numCols);
         tablaHeader.setWidthPercentage(100);
         if (numCols == 3) {
@@ -1065,9 +1043,6 @@ public class ReporteService {
         // Logo
         if (numCols == 3) {
             try {
-                byte[] logoBytes = Base64.getDecoder().decode(config.getLogoBase64());
-                Image logo = Image.getInstance(logoBytes);
-                logo.scaleToFit(80, 80);
                 PdfPCell cellLogo = new PdfPCell(logo);
                 cellLogo.setBorder(Rectangle.NO_BORDER);
                 cellLogo.setHorizontalAlignment(Element.ALIGN_CENTER);
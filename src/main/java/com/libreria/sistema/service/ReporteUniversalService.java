@@ -1,7 +1,10 @@
 package com.libreria.sistema.service;
 
 import com.libreria.sistema.model.*;
+import com.libreria.sistema.model.dto.KardexMovimientoDTO;
 import com.libreria.sistema.repository.*;
+import com.libreria.sistema.util.ExcelStreaming;
+import com.libreria.sistema.util.PdfStreaming;
 
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
@@ -24,10 +27,13 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.awt.Color;
 import java.io.OutputStream;
@@ -37,7 +43,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Servicio de Reportes Universales Avanzados.
@@ -55,166 +61,168 @@ public class ReporteUniversalService {
     private final KardexRepository kardexRepository;
     private final UsuarioRepository usuarioRepository;
     private final ConfiguracionService configuracionService;
+    private final VentaProductoDiarioRepository productoDiarioRepository;
 
     public ReporteUniversalService(VentaRepository ventaRepository,
                                     ProductoRepository productoRepository,
                                     KardexRepository kardexRepository,
                                     UsuarioRepository usuarioRepository,
-                                    ConfiguracionService configuracionService) {
+                                    ConfiguracionService configuracionService,
+                                    VentaProductoDiarioRepository productoDiarioRepository) {
         this.ventaRepository = ventaRepository;
         this.productoRepository = productoRepository;
         this.kardexRepository = kardexRepository;
         this.usuarioRepository = usuarioRepository;
         this.configuracionService = configuracionService;
+        this.productoDiarioRepository = productoDiarioRepository;
     }
 
     // ==========================================
     //        REPORTES DE PRODUCTOS - EXCEL
+    //  Todos en streaming: SXSSF + cursor (ver ExcelStreaming)
     // ==========================================
 
     /**
      * Genera reporte Excel de stock actual de todos los productos
      */
+    @Transactional(readOnly = true)
     public void generarExcelStockActual(OutputStream outputStream) throws Exception {
-        var config = configuracionService.obtenerConfiguracion();
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Stock Actual");
+        var config = configuracionService.obtenerVigente();
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Stock Actual");
 
-        CellStyle headerStyle = crearEstiloCabecera(workbook);
-        CellStyle dataStyle = crearEstiloDatos(workbook);
-        CellStyle moneyStyle = crearEstiloMoneda(workbook);
+            CellStyle headerStyle = crearEstiloCabecera(workbook);
+            CellStyle dataStyle = crearEstiloDatos(workbook);
+            CellStyle moneyStyle = crearEstiloMoneda(workbook);
 
-        crearFilaCabecera(sheet, headerStyle, "CÓDIGO", "PRODUCTO", "CATEGORÍA", "STOCK", "P.COMPRA", "P.VENTA", "VALORIZADO");
+            crearFilaCabecera(sheet, headerStyle, "CÓDIGO", "PRODUCTO", "CATEGORÍA", "STOCK", "P.COMPRA", "P.VENTA", "VALORIZADO");
+            ExcelStreaming.fijarAnchos(sheet, 16, 45, 20, 10, 14, 14, 20);
 
-        List<Producto> productos = productoRepository.findByActivoTrue();
-        String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
+            String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
 
-        int rowIdx = 1;
-        BigDecimal totalValorizado = BigDecimal.ZERO;
+            int rowIdx = 1;
+            BigDecimal totalValorizado = BigDecimal.ZERO;
 
-        for (Producto p : productos) {
-            Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, p.getCodigoInterno(), dataStyle);
-            crearCelda(row, 1, p.getNombre(), dataStyle);
-            crearCelda(row, 2, p.getCategoria() != null ? p.getCategoria() : "-", dataStyle);
-            crearCelda(row, 3, String.valueOf(p.getStockActual()), dataStyle);
+            // [codigoInterno, nombre, categoria, stockActual, precioCompra, precioVenta]
+            try (Stream<Object[]> filas = productoRepository.streamActivosParaReporte()) {
+                for (Object[] p : (Iterable<Object[]>) filas::iterator) {
+                    int stock = p[3] != null ? (Integer) p[3] : 0;
 
-            BigDecimal precioCompra = p.getPrecioCompra() != null ? p.getPrecioCompra() : BigDecimal.ZERO;
-            crearCelda(row, 4, moneda + " " + precioCompra, moneyStyle);
-            crearCelda(row, 5, moneda + " " + p.getPrecioVenta(), moneyStyle);
+                    Row row = sheet.createRow(rowIdx++);
+                    crearCelda(row, 0, (String) p[0], dataStyle);
+                    crearCelda(row, 1, (String) p[1], dataStyle);
+                    crearCelda(row, 2, p[2] != null ? (String) p[2] : "-", dataStyle);
+                    crearCelda(row, 3, String.valueOf(stock), dataStyle);
 
-            BigDecimal valorizado = precioCompra.multiply(new BigDecimal(p.getStockActual()));
-            totalValorizado = totalValorizado.add(valorizado);
-            crearCelda(row, 6, moneda + " " + valorizado.setScale(2, RoundingMode.HALF_UP), moneyStyle);
-        }
+                    BigDecimal precioCompra = p[4] != null ? (BigDecimal) p[4] : BigDecimal.ZERO;
+                    crearCelda(row, 4, moneda + " " + precioCompra, moneyStyle);
+                    crearCelda(row, 5, moneda + " " + p[5], moneyStyle);
+
+                    BigDecimal valorizado = precioCompra.multiply(new BigDecimal(stock));
+                    totalValorizado = totalValorizado.add(valorizado);
+                    crearCelda(row, 6, moneda + " " + valorizado.setScale(2, RoundingMode.HALF_UP), moneyStyle);
+                }
+            }
 
-        // Fila de total
-        Row totalRow = sheet.createRow(rowIdx);
-        crearCelda(totalRow, 5, "TOTAL VALORIZADO:", headerStyle);
-        crearCelda(totalRow, 6, moneda + " " + totalValorizado.setScale(2, RoundingMode.HALF_UP), headerStyle);
+            // Fila de total
+            Row totalRow = sheet.createRow(rowIdx);
+            crearCelda(totalRow, 5, "TOTAL VALORIZADO:", headerStyle);
+            crearCelda(totalRow, 6, moneda + " " + totalValorizado.setScale(2, RoundingMode.HALF_UP), headerStyle);
 
-        autoSizeColumns(sheet, 7);
-        workbook.write(outputStream);
-        workbook.close();
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
+        }
     }
 
     /**
      * Genera reporte Excel de productos con stock bajo
      */
+    @Transactional(readOnly = true)
     public void generarExcelStockBajo(OutputStream outputStream) throws Exception {
-        var config = configuracionService.obtenerConfiguracion();
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Stock Bajo");
-
-        CellStyle headerStyle = crearEstiloCabecera(workbook);
-        CellStyle dataStyle = crearEstiloDatos(workbook);
-        CellStyle alertStyle = crearEstiloAlerta(workbook);
-
-        crearFilaCabecera(sheet, headerStyle, "CÓDIGO", "PRODUCTO", "CATEGORÍA", "STOCK ACTUAL", "STOCK MÍNIMO", "DIFERENCIA", "ESTADO");
-
-        List<Producto> productos = productoRepository.obtenerStockCritico();
-
-        int rowIdx = 1;
-        for (Producto p : productos) {
-            Row row = sheet.createRow(rowIdx++);
-            int stockMin = p.getStockMinimo() != null ? p.getStockMinimo() : 5;
-            int diferencia = p.getStockActual() - stockMin;
-
-            crearCelda(row, 0, p.getCodigoInterno(), dataStyle);
-            crearCelda(row, 1, p.getNombre(), dataStyle);
-            crearCelda(row, 2, p.getCategoria() != null ? p.getCategoria() : "-", dataStyle);
-            crearCelda(row, 3, String.valueOf(p.getStockActual()), p.getStockActual() <= 0 ? alertStyle : dataStyle);
-            crearCelda(row, 4, String.valueOf(stockMin), dataStyle);
-            crearCelda(row, 5, String.valueOf(diferencia), dataStyle);
-            crearCelda(row, 6, p.getStockActual() <= 0 ? "AGOTADO" : "BAJO", p.getStockActual() <= 0 ? alertStyle : dataStyle);
-        }
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Stock Bajo");
+
+            CellStyle headerStyle = crearEstiloCabecera(workbook);
+            CellStyle dataStyle = crearEstiloDatos(workbook);
+            CellStyle alertStyle = crearEstiloAlerta(workbook);
+
+            crearFilaCabecera(sheet, headerStyle, "CÓDIGO", "PRODUCTO", "CATEGORÍA", "STOCK ACTUAL", "STOCK MÍNIMO", "DIFERENCIA", "ESTADO");
+            ExcelStreaming.fijarAnchos(sheet, 16, 45, 20, 14, 14, 12, 12);
+
+            // [codigoInterno, nombre, categoria, stockActual, stockMinimo]
+            int rowIdx = 1;
+            try (Stream<Object[]> filas = productoRepository.streamStockCritico()) {
+                for (Object[] p : (Iterable<Object[]>) filas::iterator) {
+                    int stockActual = (Integer) p[3];
+                    int stockMin = p[4] != null ? (Integer) p[4] : 5;
+                    int diferencia = stockActual - stockMin;
+
+                    Row row = sheet.createRow(rowIdx++);
+                    crearCelda(row, 0, (String) p[0], dataStyle);
+                    crearCelda(row, 1, (String) p[1], dataStyle);
+                    crearCelda(row, 2, p[2] != null ? (String) p[2] : "-", dataStyle);
+                    crearCelda(row, 3, String.valueOf(stockActual), stockActual <= 0 ? alertStyle : dataStyle);
+                    crearCelda(row, 4, String.valueOf(stockMin), dataStyle);
+                    crearCelda(row, 5, String.valueOf(diferencia), dataStyle);
+                    crearCelda(row, 6, stockActual <= 0 ? "AGOTADO" : "BAJO", stockActual <= 0 ? alertStyle : dataStyle);
+                }
+            }
 
-        autoSizeColumns(sheet, 7);
-        workbook.write(outputStream);
-        workbook.close();
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
+        }
     }
 
     /**
      * Genera reporte Excel de productos más vendidos
      */
     public void generarExcelProductosMasVendidos(LocalDate inicio, LocalDate fin, OutputStream outputStream) throws Exception {
-        var config = configuracionService.obtenerConfiguracion();
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Más Vendidos");
+        var config = configuracionService.obtenerVigente();
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Más Vendidos");
 
-        CellStyle headerStyle = crearEstiloCabecera(workbook);
-        CellStyle dataStyle = crearEstiloDatos(workbook);
-        CellStyle moneyStyle = crearEstiloMoneda(workbook);
+            CellStyle headerStyle = crearEstiloCabecera(workbook);
+            CellStyle dataStyle = crearEstiloDatos(workbook);
+            CellStyle moneyStyle = crearEstiloMoneda(workbook);
 
-        crearFilaCabecera(sheet, headerStyle, "RANKING", "CÓDIGO", "PRODUCTO", "CANT. VENDIDA", "TOTAL VENTAS", "% DEL TOTAL");
+            crearFilaCabecera(sheet, headerStyle, "RANKING", "CÓDIGO", "PRODUCTO", "CANT. VENDIDA", "TOTAL VENTAS", "% DEL TOTAL");
+            ExcelStreaming.fijarAnchos(sheet, 10, 16, 45, 14, 16, 12);
 
-        List<Venta> ventas = ventaRepository.findByFechaEmisionBetween(inicio, fin);
-        String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
+            String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
 
-        // Agrupar por producto
-        Map<Long, BigDecimal[]> productosVendidos = new LinkedHashMap<>();
-        BigDecimal totalGeneral = BigDecimal.ZERO;
-
-        for (Venta v : ventas) {
-            if (v.getItems() != null) {
-                for (var item : v.getItems()) {
-                    Long prodId = item.getProducto().getId();
-                    BigDecimal[] datos = productosVendidos.getOrDefault(prodId, new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
-                    datos[0] = datos[0].add(item.getCantidad());
-                    datos[1] = datos[1].add(item.getSubtotal());
-                    productosVendidos.put(prodId, datos);
-                    totalGeneral = totalGeneral.add(item.getSubtotal());
-                }
-            }
-        }
+            // Totales por producto desde los hechos producto/día, ya ordenados por cantidad vendida
+            // [productoId, codigoInterno, nombre, categoria, cantVendida, totalVendido, ...]
+            List<Object[]> productosVendidos = productoDiarioRepository.sumarPorProductoEntre(inicio, fin, Pageable.unpaged());
+            BigDecimal totalGeneral = productosVendidos.stream()
+                    .map(fila -> (BigDecimal) fila[5])
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
 
-        // Ordenar por cantidad vendida
-        List<Map.Entry<Long, BigDecimal[]>> sortedList = new ArrayList<>(productosVendidos.entrySet());
-        sortedList.sort((a, b) -> b.getValue()[0].compareTo(a.getValue()[0]));
+            int rowIdx = 1;
+            int ranking = 1;
+            for (Object[] fila : productosVendidos) {
+                BigDecimal cantidad = (BigDecimal) fila[4];
+                BigDecimal monto = (BigDecimal) fila[5];
+                BigDecimal porcentaje = totalGeneral.compareTo(BigDecimal.ZERO) > 0 ?
+                        monto.divide(totalGeneral, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
 
-        int rowIdx = 1;
-        int ranking = 1;
-        for (Map.Entry<Long, BigDecimal[]> entry : sortedList) {
-            Producto prod = productoRepository.findById(entry.getKey()).orElse(null);
-            if (prod == null) continue;
-
-            BigDecimal cantidad = entry.getValue()[0];
-            BigDecimal monto = entry.getValue()[1];
-            BigDecimal porcentaje = totalGeneral.compareTo(BigDecimal.ZERO) > 0 ?
-                    monto.divide(totalGeneral, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
-
-            Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, String.valueOf(ranking++), dataStyle);
-            crearCelda(row, 1, prod.getCodigoInterno(), dataStyle);
-            crearCelda(row, 2, prod.getNombre(), dataStyle);
-            crearCelda(row, 3, cantidad.toString(), dataStyle);
-            crearCelda(row, 4, moneda + " " + monto.setScale(2, RoundingMode.HALF_UP), moneyStyle);
-            crearCelda(row, 5, porcentaje.setScale(2, RoundingMode.HALF_UP) + "%", dataStyle);
-        }
+                Row row = sheet.createRow(rowIdx++);
+                crearCelda(row, 0, String.valueOf(ranking++), dataStyle);
+                crearCelda(row, 1, (String) fila[1], dataStyle);
+                crearCelda(row, 2, (String) fila[2], dataStyle);
+                crearCelda(row, 3, cantidad.toString(), dataStyle);
+                crearCelda(row, 4, moneda + " " + monto.setScale(2, RoundingMode.HALF_UP), moneyStyle);
+                crearCelda(row, 5, porcentaje.setScale(2, RoundingMode.HALF_UP) + "%", dataStyle);
+            }
 
-        autoSizeColumns(sheet, 6);
-        workbook.write(outputStream);
-        workbook.close();
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
+        }
     }
 
     // ==========================================
@@ -224,245 +232,235 @@ public class ReporteUniversalService {
     /**
      * Genera reporte Excel de ventas por rango de fechas
      */
+    @Transactional(readOnly = true)
     public void generarExcelVentasPorFecha(LocalDate inicio, LocalDate fin, OutputStream outputStream) throws Exception {
-        var config = configuracionService.obtenerConfiguracion();
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Ventas por Fecha");
-
-        CellStyle headerStyle = crearEstiloCabecera(workbook);
-        CellStyle dataStyle = crearEstiloDatos(workbook);
-        CellStyle moneyStyle = crearEstiloMoneda(workbook);
-
-        crearFilaCabecera(sheet, headerStyle, "FECHA", "COMPROBANTE", "CLIENTE", "MÉTODO PAGO", "SUBTOTAL", "IGV", "TOTAL", "ESTADO");
-
-        List<Venta> ventas = ventaRepository.findByFechaEmisionBetween(inicio, fin);
-        String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-
-        int rowIdx = 1;
-        BigDecimal totalSum = BigDecimal.ZERO;
-
-        for (Venta v : ventas) {
-            Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, v.getFechaEmision().format(formatter), dataStyle);
-            crearCelda(row, 1, v.getSerie() + "-" + String.format("%06d", v.getNumero()), dataStyle);
-            crearCelda(row, 2, v.getClienteDenominacion(), dataStyle);
-            crearCelda(row, 3, v.getMetodoPago() != null ? v.getMetodoPago() : "EFECTIVO", dataStyle);
-            crearCelda(row, 4, moneda + " " + (v.getTotalGravada() != null ? v.getTotalGravada() : v.getTotal()), moneyStyle);
-            crearCelda(row, 5, moneda + " " + (v.getTotalIgv() != null ? v.getTotalIgv() : BigDecimal.ZERO), moneyStyle);
-            crearCelda(row, 6, moneda + " " + v.getTotal(), moneyStyle);
-            crearCelda(row, 7, v.getEstado(), dataStyle);
-
-            if (!"ANULADO".equals(v.getEstado())) {
-                totalSum = totalSum.add(v.getTotal());
+        var config = configuracionService.obtenerVigente();
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Ventas por Fecha");
+
+            CellStyle headerStyle = crearEstiloCabecera(workbook);
+            CellStyle dataStyle = crearEstiloDatos(workbook);
+            CellStyle moneyStyle = crearEstiloMoneda(workbook);
+
+            crearFilaCabecera(sheet, headerStyle, "FECHA", "COMPROBANTE", "CLIENTE", "MÉTODO PAGO", "SUBTOTAL", "IGV", "TOTAL", "ESTADO");
+            ExcelStreaming.fijarAnchos(sheet, 12, 18, 40, 16, 14, 12, 14, 12);
+
+            String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+            int rowIdx = 1;
+            BigDecimal totalSum = BigDecimal.ZERO;
+
+            // [id, fechaEmision, tipoComprobante, serie, numero, clienteDenominacion, metodoPago, totalGravada, totalIgv, total, estado]
+            try (Stream<Object[]> filas = ventaRepository.streamFilasReporte(inicio, fin)) {
+                for (Object[] v : (Iterable<Object[]>) filas::iterator) {
+                    BigDecimal total = (BigDecimal) v[9];
+                    String estado = (String) v[10];
+
+                    Row row = sheet.createRow(rowIdx++);
+                    crearCelda(row, 0, ((LocalDate) v[1]).format(formatter), dataStyle);
+                    crearCelda(row, 1, v[3] + "-" + String.format("%06d", v[4]), dataStyle);
+                    crearCelda(row, 2, (String) v[5], dataStyle);
+                    crearCelda(row, 3, v[6] != null ? (String) v[6] : "EFECTIVO", dataStyle);
+                    crearCelda(row, 4, moneda + " " + (v[7] != null ? v[7] : total), moneyStyle);
+                    crearCelda(row, 5, moneda + " " + (v[8] != null ? v[8] : BigDecimal.ZERO), moneyStyle);
+                    crearCelda(row, 6, moneda + " " + total, moneyStyle);
+                    crearCelda(row, 7, estado, dataStyle);
+
+                    if (!"ANULADO".equals(estado)) {
+                        totalSum = totalSum.add(total);
+                    }
+                }
             }
-        }
 
-        // Fila de total
-        Row totalRow = sheet.createRow(rowIdx);
-        crearCelda(totalRow, 5, "TOTAL:", headerStyle);
-        crearCelda(totalRow, 6, moneda + " " + totalSum.setScale(2, RoundingMode.HALF_UP), headerStyle);
+            // Fila de total
+            Row totalRow = sheet.createRow(rowIdx);
+            crearCelda(totalRow, 5, "TOTAL:", headerStyle);
+            crearCelda(totalRow, 6, moneda + " " + totalSum.setScale(2, RoundingMode.HALF_UP), headerStyle);
 
-        autoSizeColumns(sheet, 8);
-        workbook.write(outputStream);
-        workbook.close();
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
+        }
     }
 
     /**
-     * Genera reporte Excel de ventas por usuario/cajero
+     * Genera reporte Excel de ventas por usuario/cajero (agregado en BD)
      */
     public void generarExcelVentasPorUsuario(LocalDate inicio, LocalDate fin, Long usuarioId, OutputStream outputStream) throws Exception {
-        var config = configuracionService.obtenerConfiguracion();
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Ventas por Usuario");
-
-        CellStyle headerStyle = crearEstiloCabecera(workbook);
-        CellStyle dataStyle = crearEstiloDatos(workbook);
-        CellStyle moneyStyle = crearEstiloMoneda(workbook);
-
-        List<Venta> ventas = ventaRepository.findByFechaEmisionBetween(inicio, fin);
-        String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
-
-        // Filtrar por usuario si se especifica
-        if (usuarioId != null) {
-            ventas = ventas.stream()
-                    .filter(v -> v.getUsuario() != null && v.getUsuario().getId().equals(usuarioId))
-                    .collect(Collectors.toList());
-        }
-
-        // Agrupar por usuario
-        Map<String, List<Venta>> ventasPorUsuario = ventas.stream()
-                .filter(v -> v.getUsuario() != null)
-                .collect(Collectors.groupingBy(v -> v.getUsuario().getUsername()));
-
-        crearFilaCabecera(sheet, headerStyle, "USUARIO", "NOMBRE COMPLETO", "CANT. VENTAS", "TOTAL VENTAS", "PROMEDIO", "% DEL TOTAL");
+        var config = configuracionService.obtenerVigente();
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Ventas por Usuario");
 
-        BigDecimal totalGeneral = ventas.stream()
-                .filter(v -> !"ANULADO".equals(v.getEstado()))
-                .map(Venta::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+            CellStyle headerStyle = crearEstiloCabecera(workbook);
+            CellStyle dataStyle = crearEstiloDatos(workbook);
+            CellStyle moneyStyle = crearEstiloMoneda(workbook);
 
-        int rowIdx = 1;
-        for (Map.Entry<String, List<Venta>> entry : ventasPorUsuario.entrySet()) {
-            List<Venta> ventasUsuario = entry.getValue().stream()
-                    .filter(v -> !"ANULADO".equals(v.getEstado()))
-                    .collect(Collectors.toList());
+            String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
 
-            if (ventasUsuario.isEmpty()) continue;
+            crearFilaCabecera(sheet, headerStyle, "USUARIO", "NOMBRE COMPLETO", "CANT. VENTAS", "TOTAL VENTAS", "PROMEDIO", "% DEL TOTAL");
+            ExcelStreaming.fijarAnchos(sheet, 18, 35, 14, 16, 14, 12);
 
-            BigDecimal totalUsuario = ventasUsuario.stream()
-                    .map(Venta::getTotal)
+            // [username, nombreCompleto, cantidad, total] - solo ventas vigentes
+            List<Object[]> ventasPorUsuario = ventaRepository.resumirPorUsuario(inicio, fin, usuarioId);
+            BigDecimal totalGeneral = ventasPorUsuario.stream()
+                    .map(fila -> (BigDecimal) fila[3])
                     .reduce(BigDecimal.ZERO, BigDecimal::add);
 
-            BigDecimal promedio = totalUsuario.divide(new BigDecimal(ventasUsuario.size()), 2, RoundingMode.HALF_UP);
-            BigDecimal porcentaje = totalGeneral.compareTo(BigDecimal.ZERO) > 0 ?
-                    totalUsuario.divide(totalGeneral, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
+            int rowIdx = 1;
+            for (Object[] fila : ventasPorUsuario) {
+                long cantidad = ((Number) fila[2]).longValue();
+                BigDecimal totalUsuario = (BigDecimal) fila[3];
 
-            String nombreCompleto = ventasUsuario.get(0).getUsuario().getNombreCompleto();
+                BigDecimal promedio = totalUsuario.divide(BigDecimal.valueOf(cantidad), 2, RoundingMode.HALF_UP);
+                BigDecimal porcentaje = totalGeneral.compareTo(BigDecimal.ZERO) > 0 ?
+                        totalUsuario.divide(totalGeneral, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
 
-            Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, entry.getKey(), dataStyle);
-            crearCelda(row, 1, nombreCompleto, dataStyle);
-            crearCelda(row, 2, String.valueOf(ventasUsuario.size()), dataStyle);
-            crearCelda(row, 3, moneda + " " + totalUsuario.setScale(2, RoundingMode.HALF_UP), moneyStyle);
-            crearCelda(row, 4, moneda + " " + promedio, moneyStyle);
-            crearCelda(row, 5, porcentaje.setScale(2, RoundingMode.HALF_UP) + "%", dataStyle);
-        }
+                Row row = sheet.createRow(rowIdx++);
+                crearCelda(row, 0, (String) fila[0], dataStyle);
+                crearCelda(row, 1, (String) fila[1], dataStyle);
+                crearCelda(row, 2, String.valueOf(cantidad), dataStyle);
+                crearCelda(row, 3, moneda + " " + totalUsuario.setScale(2, RoundingMode.HALF_UP), moneyStyle);
+                crearCelda(row, 4, moneda + " " + promedio, moneyStyle);
+                crearCelda(row, 5, porcentaje.setScale(2, RoundingMode.HALF_UP) + "%", dataStyle);
+            }
 
-        autoSizeColumns(sheet, 6);
-        workbook.write(outputStream);
-        workbook.close();
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
+        }
     }
 
     /**
-     * Genera reporte Excel de ventas por método de pago
+     * Genera reporte Excel de ventas por método de pago (agregado en BD)
      */
     public void generarExcelVentasPorMetodoPago(LocalDate inicio, LocalDate fin, String metodoPago, OutputStream outputStream) throws Exception {
-        var config = configuracionService.obtenerConfiguracion();
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Ventas por Método Pago");
-
-        CellStyle headerStyle = crearEstiloCabecera(workbook);
-        CellStyle dataStyle = crearEstiloDatos(workbook);
-        CellStyle moneyStyle = crearEstiloMoneda(workbook);
+        var config = configuracionService.obtenerVigente();
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Ventas por Método Pago");
 
-        List<Venta> ventas = ventaRepository.findByFechaEmisionBetween(inicio, fin);
-        String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
+            CellStyle headerStyle = crearEstiloCabecera(workbook);
+            CellStyle dataStyle = crearEstiloDatos(workbook);
+            CellStyle moneyStyle = crearEstiloMoneda(workbook);
 
-        // Filtrar por método de pago si se especifica
-        if (metodoPago != null && !metodoPago.isEmpty()) {
-            ventas = ventas.stream()
-                    .filter(v -> metodoPago.equalsIgnoreCase(v.getMetodoPago()))
-                    .collect(Collectors.toList());
-        }
+            String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
 
-        // Agrupar por método de pago
-        Map<String, List<Venta>> ventasPorMetodo = ventas.stream()
-                .filter(v -> !"ANULADO".equals(v.getEstado()))
-                .collect(Collectors.groupingBy(v -> v.getMetodoPago() != null ? v.getMetodoPago() : "EFECTIVO"));
+            // Agrupar por método de pago (sin método = EFECTIVO); [metodoPago, cantidad, total] - solo ventas vigentes
+            Map<String, Object[]> ventasPorMetodo = new LinkedHashMap<>();
+            for (Object[] fila : ventaRepository.resumenPorMetodoPago(inicio, fin)) {
+                String metodo = fila[0] != null ? (String) fila[0] : "EFECTIVO";
+                if (metodoPago != null && !metodoPago.isEmpty() && !metodoPago.equalsIgnoreCase(metodo)) continue;
 
-        crearFilaCabecera(sheet, headerStyle, "MÉTODO DE PAGO", "CANT. VENTAS", "TOTAL VENTAS", "% DEL TOTAL");
+                Object[] acumulado = ventasPorMetodo.computeIfAbsent(metodo, k -> new Object[]{0L, BigDecimal.ZERO});
+                acumulado[0] = (Long) acumulado[0] + ((Number) fila[1]).longValue();
+                acumulado[1] = ((BigDecimal) acumulado[1]).add(fila[2] != null ? (BigDecimal) fila[2] : BigDecimal.ZERO);
+            }
 
-        BigDecimal totalGeneral = ventas.stream()
-                .filter(v -> !"ANULADO".equals(v.getEstado()))
-                .map(Venta::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+            crearFilaCabecera(sheet, headerStyle, "MÉTODO DE PAGO", "CANT. VENTAS", "TOTAL VENTAS", "% DEL TOTAL");
+            ExcelStreaming.fijarAnchos(sheet, 20, 14, 16, 12);
 
-        int rowIdx = 1;
-        for (Map.Entry<String, List<Venta>> entry : ventasPorMetodo.entrySet()) {
-            BigDecimal totalMetodo = entry.getValue().stream()
-                    .map(Venta::getTotal)
+            BigDecimal totalGeneral = ventasPorMetodo.values().stream()
+                    .map(acumulado -> (BigDecimal) acumulado[1])
                     .reduce(BigDecimal.ZERO, BigDecimal::add);
 
-            BigDecimal porcentaje = totalGeneral.compareTo(BigDecimal.ZERO) > 0 ?
-                    totalMetodo.divide(totalGeneral, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
+            int rowIdx = 1;
+            for (Map.Entry<String, Object[]> entry : ventasPorMetodo.entrySet()) {
+                BigDecimal totalMetodo = (BigDecimal) entry.getValue()[1];
 
-            Row row = sheet.createRow(rowIdx++);
-            crearCelda(row, 0, entry.getKey(), dataStyle);
-            crearCelda(row, 1, String.valueOf(entry.getValue().size()), dataStyle);
-            crearCelda(row, 2, moneda + " " + totalMetodo.setScale(2, RoundingMode.HALF_UP), moneyStyle);
-            crearCelda(row, 3, porcentaje.setScale(2, RoundingMode.HALF_UP) + "%", dataStyle);
-        }
+                BigDecimal porcentaje = totalGeneral.compareTo(BigDecimal.ZERO) > 0 ?
+                        totalMetodo.divide(totalGeneral, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
 
-        // Fila de total
-        Row totalRow = sheet.createRow(rowIdx);
-        crearCelda(totalRow, 1, "TOTAL:", headerStyle);
-        crearCelda(totalRow, 2, moneda + " " + totalGeneral.setScale(2, RoundingMode.HALF_UP), headerStyle);
+                Row row = sheet.createRow(rowIdx++);
+                crearCelda(row, 0, entry.getKey(), dataStyle);
+                crearCelda(row, 1, String.valueOf(entry.getValue()[0]), dataStyle);
+                crearCelda(row, 2, moneda + " " + totalMetodo.setScale(2, RoundingMode.HALF_UP), moneyStyle);
+                crearCelda(row, 3, porcentaje.setScale(2, RoundingMode.HALF_UP) + "%", dataStyle);
+            }
+
+            // Fila de total
+            Row totalRow = sheet.createRow(rowIdx);
+            crearCelda(totalRow, 1, "TOTAL:", headerStyle);
+            crearCelda(totalRow, 2, moneda + " " + totalGeneral.setScale(2, RoundingMode.HALF_UP), headerStyle);
 
-        autoSizeColumns(sheet, 4);
-        workbook.write(outputStream);
-        workbook.close();
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
+        }
     }
 
     /**
      * Genera reporte Excel de ventas con detalle de ganancia
      */
+    @Transactional(readOnly = true)
     public void generarExcelVentasConGanancia(LocalDate inicio, LocalDate fin, OutputStream outputStream) throws Exception {
-        var config = configuracionService.obtenerConfiguracion();
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Ventas con Ganancia");
-
-        CellStyle headerStyle = crearEstiloCabecera(workbook);
-        CellStyle dataStyle = crearEstiloDatos(workbook);
-        CellStyle moneyStyle = crearEstiloMoneda(workbook);
-        CellStyle successStyle = crearEstiloExito(workbook);
-
-        crearFilaCabecera(sheet, headerStyle, "FECHA", "COMPROBANTE", "PRODUCTO", "CANT", "P.COMPRA", "P.VENTA", "COSTO", "INGRESO", "GANANCIA", "% MARGEN");
-
-        List<Venta> ventas = ventaRepository.findByFechaEmisionBetween(inicio, fin);
-        String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-
-        int rowIdx = 1;
-        BigDecimal totalGanancia = BigDecimal.ZERO;
-        BigDecimal totalCosto = BigDecimal.ZERO;
-        BigDecimal totalIngreso = BigDecimal.ZERO;
-
-        for (Venta v : ventas) {
-            if ("ANULADO".equals(v.getEstado()) || v.getItems() == null) continue;
-
-            for (var item : v.getItems()) {
-                Producto prod = item.getProducto();
-                BigDecimal precioCompra = prod.getPrecioCompra() != null ? prod.getPrecioCompra() : BigDecimal.ZERO;
-                BigDecimal costo = precioCompra.multiply(item.getCantidad());
-                BigDecimal ingreso = item.getSubtotal();
-                BigDecimal ganancia = ingreso.subtract(costo);
-
-                BigDecimal margen = ingreso.compareTo(BigDecimal.ZERO) > 0 ?
-                        ganancia.divide(ingreso, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
-
-                Row row = sheet.createRow(rowIdx++);
-                crearCelda(row, 0, v.getFechaEmision().format(formatter), dataStyle);
-                crearCelda(row, 1, v.getSerie() + "-" + v.getNumero(), dataStyle);
-                crearCelda(row, 2, prod.getNombre(), dataStyle);
-                crearCelda(row, 3, item.getCantidad().toString(), dataStyle);
-                crearCelda(row, 4, moneda + " " + precioCompra, moneyStyle);
-                crearCelda(row, 5, moneda + " " + item.getPrecioUnitario(), moneyStyle);
-                crearCelda(row, 6, moneda + " " + costo.setScale(2, RoundingMode.HALF_UP), moneyStyle);
-                crearCelda(row, 7, moneda + " " + ingreso.setScale(2, RoundingMode.HALF_UP), moneyStyle);
-                crearCelda(row, 8, moneda + " " + ganancia.setScale(2, RoundingMode.HALF_UP), successStyle);
-                crearCelda(row, 9, margen.setScale(2, RoundingMode.HALF_UP) + "%", dataStyle);
-
-                totalCosto = totalCosto.add(costo);
-                totalIngreso = totalIngreso.add(ingreso);
-                totalGanancia = totalGanancia.add(ganancia);
+        var config = configuracionService.obtenerVigente();
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Ventas con Ganancia");
+
+            CellStyle headerStyle = crearEstiloCabecera(workbook);
+            CellStyle dataStyle = crearEstiloDatos(workbook);
+            CellStyle moneyStyle = crearEstiloMoneda(workbook);
+            CellStyle successStyle = crearEstiloExito(workbook);
+
+            crearFilaCabecera(sheet, headerStyle, "FECHA", "PRODUCTO", "CANT", "C.UNIT. PROM", "P.VENTA PROM", "COSTO", "INGRESO", "GANANCIA", "% MARGEN");
+            ExcelStreaming.fijarAnchos(sheet, 12, 45, 10, 14, 14, 14, 14, 14, 12);
+
+            String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+            int rowIdx = 1;
+            BigDecimal totalGanancia = BigDecimal.ZERO;
+            BigDecimal totalCosto = BigDecimal.ZERO;
+            BigDecimal totalIngreso = BigDecimal.ZERO;
+
+            // Una fila por producto y día; el costo es el capturado al momento de cada venta
+            // [fecha, nombre, cantVendida, totalVendido, costoVendido, ...]
+            try (Stream<Object[]> filas = productoDiarioRepository.streamEntre(inicio, fin)) {
+                for (Object[] fila : (Iterable<Object[]>) filas::iterator) {
+                    BigDecimal cantidad = (BigDecimal) fila[2];
+                    BigDecimal ingreso = (BigDecimal) fila[3];
+                    BigDecimal costo = (BigDecimal) fila[4];
+                    BigDecimal ganancia = ingreso.subtract(costo);
+
+                    BigDecimal margen = ingreso.compareTo(BigDecimal.ZERO) > 0 ?
+                            ganancia.divide(ingreso, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
+
+                    Row row = sheet.createRow(rowIdx++);
+                    crearCelda(row, 0, ((LocalDate) fila[0]).format(formatter), dataStyle);
+                    crearCelda(row, 1, (String) fila[1], dataStyle);
+                    crearCelda(row, 2, cantidad.stripTrailingZeros().toPlainString(), dataStyle);
+                    crearCelda(row, 3, moneda + " " + costo.divide(cantidad, 2, RoundingMode.HALF_UP), moneyStyle);
+                    crearCelda(row, 4, moneda + " " + ingreso.divide(cantidad, 2, RoundingMode.HALF_UP), moneyStyle);
+                    crearCelda(row, 5, moneda + " " + costo.setScale(2, RoundingMode.HALF_UP), moneyStyle);
+                    crearCelda(row, 6, moneda + " " + ingreso.setScale(2, RoundingMode.HALF_UP), moneyStyle);
+                    crearCelda(row, 7, moneda + " " + ganancia.setScale(2, RoundingMode.HALF_UP), successStyle);
+                    crearCelda(row, 8, margen.setScale(2, RoundingMode.HALF_UP) + "%", dataStyle);
+
+                    totalCosto = totalCosto.add(costo);
+                    totalIngreso = totalIngreso.add(ingreso);
+                    totalGanancia = totalGanancia.add(ganancia);
+                }
             }
-        }
 
-        // Fila de totales
-        Row totalRow = sheet.createRow(rowIdx);
-        crearCelda(totalRow, 5, "TOTALES:", headerStyle);
-        crearCelda(totalRow, 6, moneda + " " + totalCosto.setScale(2, RoundingMode.HALF_UP), headerStyle);
-        crearCelda(totalRow, 7, moneda + " " + totalIngreso.setScale(2, RoundingMode.HALF_UP), headerStyle);
-        crearCelda(totalRow, 8, moneda + " " + totalGanancia.setScale(2, RoundingMode.HALF_UP), headerStyle);
+            // Fila de totales
+            Row totalRow = sheet.createRow(rowIdx);
+            crearCelda(totalRow, 4, "TOTALES:", headerStyle);
+            crearCelda(totalRow, 5, moneda + " " + totalCosto.setScale(2, RoundingMode.HALF_UP), headerStyle);
+            crearCelda(totalRow, 6, moneda + " " + totalIngreso.setScale(2, RoundingMode.HALF_UP), headerStyle);
+            crearCelda(totalRow, 7, moneda + " " + totalGanancia.setScale(2, RoundingMode.HALF_UP), headerStyle);
 
-        BigDecimal margenTotal = totalIngreso.compareTo(BigDecimal.ZERO) > 0 ?
-                totalGanancia.divide(totalIngreso, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
-        crearCelda(totalRow, 9, margenTotal.setScale(2, RoundingMode.HALF_UP) + "%", headerStyle);
+            BigDecimal margenTotal = totalIngreso.compareTo(BigDecimal.ZERO) > 0 ?
+                    totalGanancia.divide(totalIngreso, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
+            crearCelda(totalRow, 8, margenTotal.setScale(2, RoundingMode.HALF_UP) + "%", headerStyle);
 
-        autoSizeColumns(sheet, 10);
-        workbook.write(outputStream);
-        workbook.close();
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
+        }
     }
 
     // ==========================================
@@ -472,73 +470,72 @@ public class ReporteUniversalService {
     /**
      * Genera reporte Excel de movimientos Kardex de un producto específico
      */
+    @Transactional(readOnly = true)
     public void generarExcelKardexProducto(Long productoId, LocalDate inicio, LocalDate fin, OutputStream outputStream) throws Exception {
-        var config = configuracionService.obtenerConfiguracion();
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Kardex");
-
-        CellStyle headerStyle = crearEstiloCabecera(workbook);
-        CellStyle dataStyle = crearEstiloDatos(workbook);
-        CellStyle entradaStyle = crearEstiloExito(workbook);
-        CellStyle salidaStyle = crearEstiloAlerta(workbook);
-
         Producto producto = productoRepository.findById(productoId).orElse(null);
         if (producto == null) {
-            workbook.close();
             return;
         }
 
-        // Encabezado con datos del producto
-        Row titleRow = sheet.createRow(0);
-        crearCelda(titleRow, 0, "KARDEX DE PRODUCTO", headerStyle);
-
-        Row prodRow1 = sheet.createRow(1);
-        crearCelda(prodRow1, 0, "Código:", dataStyle);
-        crearCelda(prodRow1, 1, producto.getCodigoInterno(), dataStyle);
-        crearCelda(prodRow1, 2, "Producto:", dataStyle);
-        crearCelda(prodRow1, 3, producto.getNombre(), dataStyle);
-
-        Row prodRow2 = sheet.createRow(2);
-        crearCelda(prodRow2, 0, "Stock Actual:", dataStyle);
-        crearCelda(prodRow2, 1, String.valueOf(producto.getStockActual()), dataStyle);
-
-        // Cabecera de tabla
-        Row headerRow = sheet.createRow(4);
-        String[] headers = {"FECHA", "TIPO", "MOTIVO", "CANTIDAD", "STOCK ANTERIOR", "STOCK ACTUAL"};
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
-        }
-
-        // Obtener movimientos del kardex
-        List<Kardex> movimientos = kardexRepository.findAll().stream()
-                .filter(k -> k.getProducto().getId().equals(productoId))
-                .filter(k -> {
-                    LocalDate fechaMovimiento = k.getFecha().toLocalDate();
-                    return !fechaMovimiento.isBefore(inicio) && !fechaMovimiento.isAfter(fin);
-                })
-                .sorted((a, b) -> b.getFecha().compareTo(a.getFecha()))
-                .collect(Collectors.toList());
+        SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+        try {
+            Sheet sheet = workbook.createSheet("Kardex");
+
+            CellStyle headerStyle = crearEstiloCabecera(workbook);
+            CellStyle dataStyle = crearEstiloDatos(workbook);
+            CellStyle entradaStyle = crearEstiloExito(workbook);
+            CellStyle salidaStyle = crearEstiloAlerta(workbook);
+
+            ExcelStreaming.fijarAnchos(sheet, 18, 14, 40, 30, 16, 14, 14);
+
+            // Encabezado con datos del producto
+            Row titleRow = sheet.createRow(0);
+            crearCelda(titleRow, 0, "KARDEX DE PRODUCTO", headerStyle);
+
+            Row prodRow1 = sheet.createRow(1);
+            crearCelda(prodRow1, 0, "Código:", dataStyle);
+            crearCelda(prodRow1, 1, producto.getCodigoInterno(), dataStyle);
+            crearCelda(prodRow1, 2, "Producto:", dataStyle);
+            crearCelda(prodRow1, 3, producto.getNombre(), dataStyle);
+
+            Row prodRow2 = sheet.createRow(2);
+            crearCelda(prodRow2, 0, "Stock Actual:", dataStyle);
+            crearCelda(prodRow2, 1, String.valueOf(producto.getStockActual()), dataStyle);
+
+            // Cabecera de tabla
+            Row headerRow = sheet.createRow(4);
+            String[] headers = {"FECHA", "TIPO", "MOTIVO", "CANTIDAD", "STOCK ANTERIOR", "STOCK ACTUAL", "SALDO"};
+            for (int i = 0; i < headers.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(headers[i]);
+                cell.setCellStyle(headerStyle);
+            }
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+            // Movimientos del producto en el rango con saldo acumulado, filtrados y ordenados en BD
+            int rowIdx = 5;
+            try (Stream<Object[]> filas = kardexRepository.streamMovimientosProducto(
+                    productoId, inicio.atStartOfDay(), fin.plusDays(1).atStartOfDay())) {
+                for (Object[] fila : (Iterable<Object[]>) filas::iterator) {
+                    KardexMovimientoDTO k = KardexMovimientoDTO.desde(fila);
+                    Row row = sheet.createRow(rowIdx++);
+                    CellStyle tipoStyle = "ENTRADA".equals(k.getTipo()) ? entradaStyle : salidaStyle;
+
+                    crearCelda(row, 0, k.getFecha().format(formatter), dataStyle);
+                    crearCelda(row, 1, k.getTipo(), tipoStyle);
+                    crearCelda(row, 2, k.getMotivo(), dataStyle);
+                    crearCelda(row, 3, String.valueOf(k.getCantidad()), dataStyle);
+                    crearCelda(row, 4, String.valueOf(k.getStockAnterior()), dataStyle);
+                    crearCelda(row, 5, String.valueOf(k.getStockActual()), dataStyle);
+                    crearCelda(row, 6, String.valueOf(k.getSaldo()), k.isDescuadre() ? salidaStyle : dataStyle);
+                }
+            }
 
-        int rowIdx = 5;
-        for (Kardex k : movimientos) {
-            Row row = sheet.createRow(rowIdx++);
-            CellStyle tipoStyle = "ENTRADA".equals(k.getTipo()) ? entradaStyle : salidaStyle;
-
-            crearCelda(row, 0, k.getFecha().format(formatter), dataStyle);
-            crearCelda(row, 1, k.getTipo(), tipoStyle);
-            crearCelda(row, 2, k.getMotivo(), dataStyle);
-            crearCelda(row, 3, String.valueOf(k.getCantidad()), dataStyle);
-            crearCelda(row, 4, String.valueOf(k.getStockAnterior()), dataStyle);
-            crearCelda(row, 5, String.valueOf(k.getStockActual()), dataStyle);
+            ExcelStreaming.escribir(workbook, outputStream);
+        } finally {
+            ExcelStreaming.liberar(workbook);
         }
-
-        autoSizeColumns(sheet, 6);
-        workbook.write(outputStream);
-        workbook.close();
     }
 
     // ==========================================
@@ -546,41 +543,45 @@ public class ReporteUniversalService {
     // ==========================================
 
     /**
-     * Genera PDF de stock actual
+     * Genera PDF de stock actual (tabla incremental, filas desde cursor)
      */
+    @Transactional(readOnly = true)
     public void generarPdfStockActual(OutputStream outputStream) throws DocumentException {
-        var config = configuracionService.obtenerConfiguracion();
+        var config = configuracionService.obtenerVigente();
         Document document = new Document(PageSize.A4.rotate(), 20, 20, 20, 20);
         PdfWriter.getInstance(document, outputStream);
         document.open();
 
         agregarCabeceraPdf(document, config, "REPORTE DE STOCK ACTUAL");
 
-        PdfPTable table = new PdfPTable(7);
-        table.setWidthPercentage(100);
-        table.setWidths(new float[]{2, 4, 2, 1.5f, 2, 2, 2});
+        PdfStreaming.Tabla tabla = PdfStreaming.crearTabla(document, new float[]{2, 4, 2, 1.5f, 2, 2, 2});
+        PdfPTable table = tabla.getTabla();
 
         agregarCabeceraTablaPdf(table, config, "CÓDIGO", "PRODUCTO", "CATEGORÍA", "STOCK", "P.COMPRA", "P.VENTA", "VALORIZADO");
 
-        List<Producto> productos = productoRepository.findByActivoTrue();
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
 
         BigDecimal totalValorizado = BigDecimal.ZERO;
-        for (Producto p : productos) {
-            BigDecimal precioCompra = p.getPrecioCompra() != null ? p.getPrecioCompra() : BigDecimal.ZERO;
-            BigDecimal valorizado = precioCompra.multiply(new BigDecimal(p.getStockActual()));
-            totalValorizado = totalValorizado.add(valorizado);
-
-            table.addCell(crearCeldaPdf(p.getCodigoInterno()));
-            table.addCell(crearCeldaPdf(p.getNombre()));
-            table.addCell(crearCeldaPdf(p.getCategoria() != null ? p.getCategoria() : "-"));
-            table.addCell(crearCeldaPdfCenter(String.valueOf(p.getStockActual())));
-            table.addCell(crearCeldaPdfRight(moneda + " " + precioCompra));
-            table.addCell(crearCeldaPdfRight(moneda + " " + p.getPrecioVenta()));
-            table.addCell(crearCeldaPdfRight(moneda + " " + valorizado.setScale(2, RoundingMode.HALF_UP)));
+        // [codigoInterno, nombre, categoria, stockActual, precioCompra, precioVenta]
+        try (Stream<Object[]> filas = productoRepository.streamActivosParaReporte()) {
+            for (Object[] p : (Iterable<Object[]>) filas::iterator) {
+                int stock = p[3] != null ? (Integer) p[3] : 0;
+                BigDecimal precioCompra = p[4] != null ? (BigDecimal) p[4] : BigDecimal.ZERO;
+                BigDecimal valorizado = precioCompra.multiply(new BigDecimal(stock));
+                totalValorizado = totalValorizado.add(valorizado);
+
+                table.addCell(crearCeldaPdf((String) p[0]));
+                table.addCell(crearCeldaPdf((String) p[1]));
+                table.addCell(crearCeldaPdf(p[2] != null ? (String) p[2] : "-"));
+                table.addCell(crearCeldaPdfCenter(String.valueOf(stock)));
+                table.addCell(crearCeldaPdfRight(moneda + " " + precioCompra));
+                table.addCell(crearCeldaPdfRight(moneda + " " + p[5]));
+                table.addCell(crearCeldaPdfRight(moneda + " " + valorizado.setScale(2, RoundingMode.HALF_UP)));
+                tabla.filaAgregada();
+            }
         }
 
-        document.add(table);
+        tabla.cerrar();
 
         // Total
         Paragraph pTotal = new Paragraph("TOTAL VALORIZADO: " + moneda + " " + totalValorizado.setScale(2, RoundingMode.HALF_UP),
@@ -596,7 +597,7 @@ public class ReporteUniversalService {
      * Genera PDF de productos más vendidos
      */
     public void generarPdfProductosMasVendidos(LocalDate inicio, LocalDate fin, OutputStream outputStream) throws DocumentException {
-        var config = configuracionService.obtenerConfiguracion();
+        var config = configuracionService.obtenerVigente();
         Document document = new Document(PageSize.A4, 30, 30, 30, 30);
         PdfWriter.getInstance(document, outputStream);
         document.open();
@@ -610,36 +611,16 @@ public class ReporteUniversalService {
 
         agregarCabeceraTablaPdf(table, config, "#", "CÓDIGO", "PRODUCTO", "CANT. VENDIDA", "TOTAL");
 
-        List<Venta> ventas = ventaRepository.findByFechaEmisionBetween(inicio, fin);
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
 
-        Map<Long, BigDecimal[]> productosVendidos = new LinkedHashMap<>();
-        for (Venta v : ventas) {
-            if (v.getItems() != null) {
-                for (var item : v.getItems()) {
-                    Long prodId = item.getProducto().getId();
-                    BigDecimal[] datos = productosVendidos.getOrDefault(prodId, new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
-                    datos[0] = datos[0].add(item.getCantidad());
-                    datos[1] = datos[1].add(item.getSubtotal());
-                    productosVendidos.put(prodId, datos);
-                }
-            }
-        }
-
-        List<Map.Entry<Long, BigDecimal[]>> sortedList = new ArrayList<>(productosVendidos.entrySet());
-        sortedList.sort((a, b) -> b.getValue()[0].compareTo(a.getValue()[0]));
-
+        // Top 20 desde los hechos producto/día: [productoId, codigoInterno, nombre, categoria, cantVendida, totalVendido, ...]
         int ranking = 1;
-        for (Map.Entry<Long, BigDecimal[]> entry : sortedList) {
-            if (ranking > 20) break; // Top 20
-            Producto prod = productoRepository.findById(entry.getKey()).orElse(null);
-            if (prod == null) continue;
-
+        for (Object[] fila : productoDiarioRepository.sumarPorProductoEntre(inicio, fin, PageRequest.of(0, 20))) {
             table.addCell(crearCeldaPdfCenter(String.valueOf(ranking++)));
-            table.addCell(crearCeldaPdf(prod.getCodigoInterno()));
-            table.addCell(crearCeldaPdf(prod.getNombre()));
-            table.addCell(crearCeldaPdfCenter(entry.getValue()[0].toString()));
-            table.addCell(crearCeldaPdfRight(moneda + " " + entry.getValue()[1].setScale(2, RoundingMode.HALF_UP)));
+            table.addCell(crearCeldaPdf((String) fila[1]));
+            table.addCell(crearCeldaPdf((String) fila[2]));
+            table.addCell(crearCeldaPdfCenter(fila[4].toString()));
+            table.addCell(crearCeldaPdfRight(moneda + " " + ((BigDecimal) fila[5]).setScale(2, RoundingMode.HALF_UP)));
         }
 
         document.add(table);
@@ -649,8 +630,9 @@ public class ReporteUniversalService {
     /**
      * Genera PDF de ventas con ganancia
      */
+    @Transactional(readOnly = true)
     public void generarPdfVentasConGanancia(LocalDate inicio, LocalDate fin, OutputStream outputStream) throws DocumentException {
-        var config = configuracionService.obtenerConfiguracion();
+        var config = configuracionService.obtenerVigente();
         Document document = new Document(PageSize.A4.rotate(), 20, 20, 20, 20);
         PdfWriter.getInstance(document, outputStream);
         document.open();
@@ -658,35 +640,31 @@ public class ReporteUniversalService {
         agregarCabeceraPdf(document, config, "REPORTE DE GANANCIA POR VENTAS");
         agregarPeriodoPdf(document, inicio, fin);
 
-        PdfPTable table = new PdfPTable(8);
-        table.setWidthPercentage(100);
-        table.setWidths(new float[]{1.5f, 2, 3, 1, 1.5f, 1.5f, 1.5f, 1.5f});
+        PdfStreaming.Tabla tabla = PdfStreaming.crearTabla(document, new float[]{1.5f, 3, 1, 1.5f, 1.5f, 1.5f, 1.5f});
+        PdfPTable table = tabla.getTabla();
 
-        agregarCabeceraTablaPdf(table, config, "FECHA", "DOC", "PRODUCTO", "CANT", "COSTO", "VENTA", "GANANCIA", "MARGEN");
+        agregarCabeceraTablaPdf(table, config, "FECHA", "PRODUCTO", "CANT", "COSTO", "VENTA", "GANANCIA", "MARGEN");
 
-        List<Venta> ventas = ventaRepository.findByFechaEmisionBetween(inicio, fin);
         String moneda = config.getFormatoMoneda() != null ? config.getFormatoMoneda() : "S/";
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
         BigDecimal totalGanancia = BigDecimal.ZERO;
 
-        for (Venta v : ventas) {
-            if ("ANULADO".equals(v.getEstado()) || v.getItems() == null) continue;
-
-            for (var item : v.getItems()) {
-                Producto prod = item.getProducto();
-                BigDecimal precioCompra = prod.getPrecioCompra() != null ? prod.getPrecioCompra() : BigDecimal.ZERO;
-                BigDecimal costo = precioCompra.multiply(item.getCantidad());
-                BigDecimal ingreso = item.getSubtotal();
+        // Una fila por producto y día: [fecha, nombre, cantVendida, totalVendido, costoVendido, ...]
+        try (Stream<Object[]> filas = productoDiarioRepository.streamEntre(inicio, fin)) {
+            for (Object[] fila : (Iterable<Object[]>) filas::iterator) {
+                String nombre = (String) fila[1];
+                BigDecimal cantidad = (BigDecimal) fila[2];
+                BigDecimal ingreso = (BigDecimal) fila[3];
+                BigDecimal costo = (BigDecimal) fila[4];
                 BigDecimal ganancia = ingreso.subtract(costo);
 
                 BigDecimal margen = ingreso.compareTo(BigDecimal.ZERO) > 0 ?
                         ganancia.divide(ingreso, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100")) : BigDecimal.ZERO;
 
-                table.addCell(crearCeldaPdf(v.getFechaEmision().format(formatter)));
-                table.addCell(crearCeldaPdf(v.getSerie() + "-" + v.getNumero()));
-                table.addCell(crearCeldaPdf(prod.getNombre().length() > 25 ? prod.getNombre().substring(0, 25) + "..." : prod.getNombre()));
-                table.addCell(crearCeldaPdfCenter(item.getCantidad().toString()));
+                table.addCell(crearCeldaPdf(((LocalDate) fila[0]).format(formatter)));
+                table.addCell(crearCeldaPdf(nombre.length() > 25 ? nombre.substring(0, 25) + "..." : nombre));
+                table.addCell(crearCeldaPdfCenter(cantidad.stripTrailingZeros().toPlainString()));
                 table.addCell(crearCeldaPdfRight(moneda + " " + costo.setScale(2, RoundingMode.HALF_UP)));
                 table.addCell(crearCeldaPdfRight(moneda + " " + ingreso.setScale(2, RoundingMode.HALF_UP)));
 
@@ -698,12 +676,13 @@ public class ReporteUniversalService {
                 table.addCell(cellGanancia);
 
                 table.addCell(crearCeldaPdfCenter(margen.setScale(1, RoundingMode.HALF_UP) + "%"));
+                tabla.filaAgregada();
 
                 totalGanancia = totalGanancia.add(ganancia);
             }
         }
 
-        document.add(table);
+        tabla.cerrar();
 
         Paragraph pTotal = new Paragraph("GANANCIA TOTAL: " + moneda + " " + totalGanancia.setScale(2, RoundingMode.HALF_UP),
                 FontFactory.getFont(FontFactory.HELVETICA_BOLD, 14, totalGanancia.compareTo(BigDecimal.ZERO) >= 0 ? new Color(0, 128, 0) : Color.RED));
@@ -715,10 +694,11 @@ public class ReporteUniversalService {
     }
 
     /**
-     * Genera PDF de Kardex de un producto
+     * Genera PDF de Kardex de un producto (tabla incremental, filas desde cursor)
      */
+    @Transactional(readOnly = true)
     public void generarPdfKardexProducto(Long productoId, LocalDate inicio, LocalDate fin, OutputStream outputStream) throws DocumentException {
-        var config = configuracionService.obtenerConfiguracion();
+        var config = configuracionService.obtenerVigente();
         Document document = new Document(PageSize.A4, 30, 30, 30, 30);
         PdfWriter.getInstance(document, outputStream);
         document.open();
@@ -749,39 +729,42 @@ public class ReporteUniversalService {
 
         agregarPeriodoPdf(document, inicio, fin);
 
-        PdfPTable table = new PdfPTable(6);
-        table.setWidthPercentage(100);
-        table.setWidths(new float[]{2.5f, 1.5f, 4, 1.5f, 1.5f, 1.5f});
-
-        agregarCabeceraTablaPdf(table, config, "FECHA", "TIPO", "MOTIVO", "CANTIDAD", "ANTERIOR", "ACTUAL");
+        PdfStreaming.Tabla tabla = PdfStreaming.crearTabla(document, new float[]{2.5f, 1.5f, 4, 1.5f, 1.5f, 1.5f, 1.5f});
+        PdfPTable table = tabla.getTabla();
 
-        List<Kardex> movimientos = kardexRepository.findAll().stream()
-                .filter(k -> k.getProducto().getId().equals(productoId))
-                .filter(k -> {
-                    LocalDate fechaMovimiento = k.getFecha().toLocalDate();
-                    return !fechaMovimiento.isBefore(inicio) && !fechaMovimiento.isAfter(fin);
-                })
-                .sorted((a, b) -> b.getFecha().compareTo(a.getFecha()))
-                .collect(Collectors.toList());
+        agregarCabeceraTablaPdf(table, config, "FECHA", "TIPO", "MOTIVO", "CANTIDAD", "ANTERIOR", "ACTUAL", "SALDO");
 
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
 
-        for (Kardex k : movimientos) {
-            table.addCell(crearCeldaPdf(k.getFecha().format(formatter)));
-
-            // Celda de tipo con color
-            Color colorTipo = "ENTRADA".equals(k.getTipo()) ? new Color(0, 128, 0) : Color.RED;
-            PdfPCell cellTipo = new PdfPCell(new Phrase(k.getTipo(), FontFactory.getFont(FontFactory.HELVETICA_BOLD, 8, colorTipo)));
-            cellTipo.setPadding(3);
-            table.addCell(cellTipo);
-
-            table.addCell(crearCeldaPdf(k.getMotivo()));
-            table.addCell(crearCeldaPdfCenter(String.valueOf(k.getCantidad())));
-            table.addCell(crearCeldaPdfCenter(String.valueOf(k.getStockAnterior())));
-            table.addCell(crearCeldaPdfCenter(String.valueOf(k.getStockActual())));
+        // Movimientos del producto en el rango con saldo acumulado, filtrados y ordenados en BD
+        try (Stream<Object[]> filas = kardexRepository.streamMovimientosProducto(
+                productoId, inicio.atStartOfDay(), fin.plusDays(1).atStartOfDay())) {
+            for (Object[] fila : (Iterable<Object[]>) filas::iterator) {
+                KardexMovimientoDTO k = KardexMovimientoDTO.desde(fila);
+                table.addCell(crearCeldaPdf(k.getFecha().format(formatter)));
+
+                // Celda de tipo con color
+                Color colorTipo = "ENTRADA".equals(k.getTipo()) ? new Color(0, 128, 0) : Color.RED;
+                PdfPCell cellTipo = new PdfPCell(new Phrase(k.getTipo(), FontFactory.getFont(FontFactory.HELVETICA_BOLD, 8, colorTipo)));
+                cellTipo.setPadding(3);
+                table.addCell(cellTipo);
+
+                table.addCell(crearCeldaPdf(k.getMotivo()));
+                table.addCell(crearCeldaPdfCenter(String.valueOf(k.getCantidad())));
+                table.addCell(crearCeldaPdfCenter(String.valueOf(k.getStockAnterior())));
+                table.addCell(crearCeldaPdfCenter(String.valueOf(k.getStockActual())));
+
+                // Saldo en rojo si no coincide con el stock registrado
+                PdfPCell cellSaldo = new PdfPCell(new Phrase(String.valueOf(k.getSaldo()),
+                        FontFactory.getFont(FontFactory.HELVETICA, 8, k.isDescuadre() ? Color.RED : Color.BLACK)));
+                cellSaldo.setHorizontalAlignment(Element.ALIGN_CENTER);
+                cellSaldo.setPadding(3);
+                table.addCell(cellSaldo);
+                tabla.filaAgregada();
+            }
         }
 
-        document.add(table);
+        tabla.cerrar();
         document.close();
     }
 
@@ -856,17 +839,11 @@ public class ReporteUniversalService {
         cell.setCellStyle(style);
     }
 
-    private void autoSizeColumns(Sheet sheet, int numColumns) {
-        for (int i = 0; i < numColumns; i++) {
-            sheet.autoSizeColumn(i);
-        }
-    }
-
     // ==========================================
     //        UTILIDADES PDF
     // ==========================================
 
-    private void agregarCabeceraPdf(Document document, Configuracion config, String titulo) throws DocumentException {
+    private void agregarCabeceraPdf(Document document, ConfiguracionVigente config, String titulo) throws DocumentException {
         Paragraph pTitulo = new Paragraph(titulo, FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16));
         pTitulo.setAlignment(Element.ALIGN_CENTER);
         document.add(pTitulo);
@@ -893,7 +870,7 @@ public class ReporteUniversalService {
         document.add(new Paragraph(" "));
     }
 
-    private void agregarCabeceraTablaPdf(PdfPTable table, Configuracion config, String... headers) {
+    private void agregarCabeceraTablaPdf(PdfPTable table, ConfiguracionVigente config, String... headers) {
         Color colorOscuro = parseColor(config.getColorOscuro(), Color.DARK_GRAY);
         for (String h : headers) {
             PdfPCell cell = new PdfPCell(new Phrase(h, FontFactory.getFont(FontFactory.HELVETICA_BOLD, 9, Color.WHITE)));
@@ -0,0 +1,316 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.Amortizacion;
+import com.libreria.sistema.model.DetalleDevolucion;
+import com.libreria.sistema.model.DetalleVenta;
+import com.libreria.sistema.model.DevolucionVenta;
+import com.libreria.sistema.model.Venta;
+import com.libreria.sistema.repository.VentaProductoDiarioRepository;
+import com.libreria.sistema.repository.VentaRepository;
+import com.libreria.sistema.repository.VentaResumenDiarioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mantiene los resúmenes de ventas que leen los reportes:
+ * - ventas_resumen_diario: totales por día, método de pago, usuario y comprobante
+ * - ventas_producto_diario: cantidades, ingreso y costo por producto y día
+ *
+ * - Incremental: los métodos registrar*() se llaman DENTRO de la transacción de la venta,
+ *   la cobranza o la devolución. Si esa transacción hace rollback, el delta también.
+ * - Reconstrucción: reconstruir(desde, hasta) recalcula un rango desde las tablas origen
+ *   (backfill, corrección manual). Si el resumen está vacío al arrancar, se reconstruye completo.
+ */
+@Service
+@Slf4j
+public class ResumenVentasService {
+
+    private final VentaResumenDiarioRepository resumenRepository;
+    private final VentaProductoDiarioRepository productoDiarioRepository;
+    private final VentaRepository ventaRepository;
+    private final ReporteDatosVersion datosVersion;
+    private final PeriodoCerradoService periodoCerradoService;
+    private final TransactionTemplate transactionTemplate;
+
+    public ResumenVentasService(VentaResumenDiarioRepository resumenRepository,
+                                VentaProductoDiarioRepository productoDiarioRepository,
+                                VentaRepository ventaRepository,
+                                ReporteDatosVersion datosVersion,
+                                PeriodoCerradoService periodoCerradoService,
+                                PlatformTransactionManager transactionManager) {
+        this.resumenRepository = resumenRepository;
+        this.productoDiarioRepository = productoDiarioRepository;
+        this.ventaRepository = ventaRepository;
+        this.datosVersion = datosVersion;
+        this.periodoCerradoService = periodoCerradoService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Clave del resumen. Los nulos se normalizan igual que en la reconstrucción ('' / 0).
+     */
+    private record Clave(LocalDate fecha, String metodoPago, Long usuarioId, String tipoComprobante, String formaPago) {
+
+        static Clave de(LocalDate fecha, String metodoPago, Venta venta) {
+            return new Clave(fecha != null ? fecha : LocalDate.now(),
+                    texto(metodoPago),
+                    venta.getUsuario() != null ? venta.getUsuario().getId() : 0L,
+                    texto(venta.getTipoComprobante()),
+                    texto(venta.getFormaPago()));
+        }
+
+        private static String texto(String valor) {
+            return valor != null ? valor : "";
+        }
+    }
+
+    /**
+     * Deltas acumulables de una clave
+     */
+    private static final class Delta {
+        long cantidadVentas;
+        BigDecimal totalVentas = BigDecimal.ZERO;
+        long cantidadAnuladas;
+        BigDecimal totalAnulado = BigDecimal.ZERO;
+        long cantidadCobros;
+        BigDecimal montoCobrado = BigDecimal.ZERO;
+        long cantidadDevoluciones;
+        BigDecimal montoDevuelto = BigDecimal.ZERO;
+    }
+
+    private record ClaveProducto(LocalDate fecha, Long productoId) {}
+
+    /**
+     * Deltas acumulables de un producto en un día
+     */
+    private static final class DeltaProducto {
+        BigDecimal cantidadVendida = BigDecimal.ZERO;
+        BigDecimal totalVendido = BigDecimal.ZERO;
+        BigDecimal costoVendido = BigDecimal.ZERO;
+        BigDecimal cantidadDevuelta = BigDecimal.ZERO;
+        BigDecimal montoDevuelto = BigDecimal.ZERO;
+        BigDecimal costoDevuelto = BigDecimal.ZERO;
+    }
+
+    // ==========================================
+    //        MANTENIMIENTO INCREMENTAL
+    // ==========================================
+
+    /**
+     * Venta nueva (vigente), con sus líneas por producto
+     */
+    public void registrarVenta(Venta venta) {
+        registrarVentas(List.of(venta));
+    }
+
+    /**
+     * Ventas nuevas de un lote: un solo upsert por clave distinta
+     */
+    public void registrarVentas(Collection<Venta> ventas) {
+        Map<Clave, Delta> deltas = new LinkedHashMap<>();
+        Map<ClaveProducto, DeltaProducto> deltasProducto = new LinkedHashMap<>();
+        for (Venta venta : ventas) {
+            Delta d = deltas.computeIfAbsent(Clave.de(venta.getFechaEmision(), venta.getMetodoPago(), venta), k -> new Delta());
+            d.cantidadVentas++;
+            d.totalVentas = d.totalVentas.add(monto(venta.getTotal()));
+            acumularLineas(deltasProducto, venta, 1);
+        }
+        aplicar(deltas);
+        aplicarProductos(deltasProducto);
+    }
+
+    /**
+     * Anulación de una venta: pasa de vigentes a anuladas en su fecha de emisión original
+     */
+    public void registrarAnulacion(Venta venta) {
+        Delta d = new Delta();
+        d.cantidadVentas = -1;
+        d.totalVentas = monto(venta.getTotal()).negate();
+        d.cantidadAnuladas = 1;
+        d.totalAnulado = monto(venta.getTotal());
+        aplicar(Map.of(Clave.de(venta.getFechaEmision(), venta.getMetodoPago(), venta), d));
+
+        Map<ClaveProducto, DeltaProducto> deltasProducto = new LinkedHashMap<>();
+        acumularLineas(deltasProducto, venta, -1);
+        aplicarProductos(deltasProducto);
+    }
+
+    /**
+     * Cobro (pago inicial, contado o cuota). Llamar después de guardar la amortización.
+     */
+    public void registrarCobro(Amortizacion pago) {
+        registrarCobros(List.of(pago));
+    }
+
+    public void registrarCobros(Collection<Amortizacion> pagos) {
+        Map<Clave, Delta> deltas = new LinkedHashMap<>();
+        for (Amortizacion pago : pagos) {
+            LocalDate fecha = pago.getFechaPago() != null ? pago.getFechaPago().toLocalDate() : null;
+            Delta d = deltas.computeIfAbsent(Clave.de(fecha, pago.getMetodoPago(), pago.getVenta()), k -> new Delta());
+            d.cantidadCobros++;
+            d.montoCobrado = d.montoCobrado.add(monto(pago.getMonto()));
+        }
+        aplicar(deltas);
+    }
+
+    /**
+     * Devolución procesada. Llamar después de guardar la devolución.
+     */
+    public void registrarDevolucion(DevolucionVenta devolucion) {
+        aplicar(Map.of(claveDevolucion(devolucion), deltaDevolucion(devolucion, 1)));
+        aplicarProductos(deltasDevolucionProducto(devolucion, 1));
+    }
+
+    /**
+     * Anulación de una devolución: se descuenta en la misma fila donde se registró
+     */
+    public void registrarAnulacionDevolucion(DevolucionVenta devolucion) {
+        aplicar(Map.of(claveDevolucion(devolucion), deltaDevolucion(devolucion, -1)));
+        aplicarProductos(deltasDevolucionProducto(devolucion, -1));
+    }
+
+    // ==========================================
+    //        RECONSTRUCCIÓN (BACKFILL)
+    // ==========================================
+
+    /**
+     * Recalcula ambos resúmenes del rango [desde, hasta] desde ventas, amortizaciones y devoluciones.
+     * Corre en su propia transacción y bloquea las escrituras incrementales mientras dura.
+     *
+     * @return Filas de resumen generadas
+     */
+    public int reconstruir(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null || desde.isAfter(hasta)) {
+            throw new RuntimeException("Rango de fechas inválido para reconstruir el resumen de ventas");
+        }
+        Integer filas = transactionTemplate.execute(status -> {
+            resumenRepository.bloquearEscrituras();
+            resumenRepository.eliminarRango(desde, hasta);
+            productoDiarioRepository.eliminarRango(desde, hasta);
+            LocalDateTime inicio = desde.atStartOfDay();
+            LocalDateTime finExclusivo = hasta.plusDays(1).atStartOfDay();
+            return resumenRepository.reconstruirRango(desde, hasta, inicio, finExclusivo)
+                    + productoDiarioRepository.reconstruirRango(desde, hasta, inicio, finExclusivo);
+        });
+        // Los reportes leen estos resúmenes: los ya generados del rango quedan obsoletos
+        datosVersion.incrementar(ReporteDatosVersion.Dominio.VENTAS);
+        periodoCerradoService.invalidarRango(desde, hasta);
+        log.info("Resúmenes de ventas reconstruidos del {} al {}: {} filas", desde, hasta, filas);
+        return filas != null ? filas : 0;
+    }
+
+    /**
+     * Reconstruye toda la historia, un mes por transacción (el bloqueo dura solo un mes de datos)
+     *
+     * @return Filas de resumen generadas
+     */
+    public int reconstruirTodo() {
+        LocalDate primera = ventaRepository.obtenerPrimeraFechaEmision();
+        if (primera == null) {
+            return 0;
+        }
+        LocalDate hoy = LocalDate.now();
+        int filas = 0;
+        for (YearMonth mes = YearMonth.from(primera); !mes.atDay(1).isAfter(hoy); mes = mes.plusMonths(1)) {
+            LocalDate fin = mes.atEndOfMonth().isAfter(hoy) ? hoy : mes.atEndOfMonth();
+            filas += reconstruir(mes.atDay(1), fin);
+        }
+        return filas;
+    }
+
+    /**
+     * Arranque con algún resumen vacío y ventas existentes: backfill completo
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        try {
+            boolean vacio = resumenRepository.count() == 0 || productoDiarioRepository.count() == 0;
+            if (vacio && ventaRepository.count() > 0) {
+                log.info("Resúmenes de ventas vacíos: iniciando reconstrucción completa");
+                reconstruirTodo();
+            }
+        } catch (Exception e) {
+            log.error("No se pudo inicializar el resumen diario de ventas: {}", e.getMessage(), e);
+        }
+    }
+
+    // ==========================================
+    //        UTILIDADES
+    // ==========================================
+
+    private void aplicar(Map<Clave, Delta> deltas) {
+        deltas.forEach((c, d) -> resumenRepository.acumular(c.fecha(), c.metodoPago(), c.usuarioId(),
+                c.tipoComprobante(), c.formaPago(),
+                d.cantidadVentas, d.totalVentas, d.cantidadAnuladas, d.totalAnulado,
+                d.cantidadCobros, d.montoCobrado, d.cantidadDevoluciones, d.montoDevuelto));
+    }
+
+    private void aplicarProductos(Map<ClaveProducto, DeltaProducto> deltas) {
+        deltas.forEach((c, d) -> productoDiarioRepository.acumular(c.fecha(), c.productoId(),
+                d.cantidadVendida, d.totalVendido, d.costoVendido,
+                d.cantidadDevuelta, d.montoDevuelto, d.costoDevuelto));
+    }
+
+    /**
+     * Suma (signo 1) o resta (signo -1) las líneas de la venta con el costo capturado al vender
+     */
+    private void acumularLineas(Map<ClaveProducto, DeltaProducto> deltas, Venta venta, int signo) {
+        LocalDate fecha = venta.getFechaEmision() != null ? venta.getFechaEmision() : LocalDate.now();
+        BigDecimal factor = BigDecimal.valueOf(signo);
+        for (DetalleVenta item : venta.getItems()) {
+            if (item.getProducto() == null) continue;
+            BigDecimal cantidad = monto(item.getCantidad()).multiply(factor);
+            DeltaProducto d = deltas.computeIfAbsent(new ClaveProducto(fecha, item.getProducto().getId()), k -> new DeltaProducto());
+            d.cantidadVendida = d.cantidadVendida.add(cantidad);
+            d.totalVendido = d.totalVendido.add(monto(item.getSubtotal()).multiply(factor));
+            d.costoVendido = d.costoVendido.add(cantidad.multiply(monto(item.getCostoUnitario())));
+        }
+    }
+
+    private Map<ClaveProducto, DeltaProducto> deltasDevolucionProducto(DevolucionVenta devolucion, int signo) {
+        LocalDate fecha = devolucion.getFechaCreacion() != null ? devolucion.getFechaCreacion().toLocalDate() : LocalDate.now();
+        BigDecimal factor = BigDecimal.valueOf(signo);
+        Map<ClaveProducto, DeltaProducto> deltas = new LinkedHashMap<>();
+        for (DetalleDevolucion item : devolucion.getDetalles()) {
+            BigDecimal cantidad = monto(item.getCantidadDevuelta()).multiply(factor);
+            DeltaProducto d = deltas.computeIfAbsent(new ClaveProducto(fecha, item.getProducto().getId()), k -> new DeltaProducto());
+            d.cantidadDevuelta = d.cantidadDevuelta.add(cantidad);
+            d.montoDevuelto = d.montoDevuelto.add(monto(item.getSubtotal()).multiply(factor));
+            d.costoDevuelto = d.costoDevuelto.add(cantidad.multiply(monto(item.getCostoUnitario())));
+        }
+        return deltas;
+    }
+
+    private Clave claveDevolucion(DevolucionVenta devolucion) {
+        LocalDateTime creada = devolucion.getFechaCreacion();
+        Venta venta = devolucion.getVentaOriginal();
+        Long usuarioId = devolucion.getUsuario() != null ? devolucion.getUsuario().getId() : 0L;
+        return new Clave(creada != null ? creada.toLocalDate() : LocalDate.now(),
+                Clave.texto(devolucion.getMetodoReembolso()), usuarioId,
+                Clave.texto(venta.getTipoComprobante()), Clave.texto(venta.getFormaPago()));
+    }
+
+    private Delta deltaDevolucion(DevolucionVenta devolucion, int signo) {
+        Delta d = new Delta();
+        d.cantidadDevoluciones = signo;
+        d.montoDevuelto = signo > 0 ? monto(devolucion.getTotalDevuelto()) : monto(devolucion.getTotalDevuelto()).negate();
+        return d;
+    }
+
+    private static BigDecimal monto(BigDecimal valor) {
+        return valor != null ? valor : BigDecimal.ZERO;
+    }
+}
@@ -27,6 +27,12 @@ public class RolePermissionService {
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    @Autowired
+    private ContextoUsuario contextoUsuario;
+
+    @Autowired
+    private PermisosCompilados permisosCompilados;
+
     /**
      * Crear un nuevo rol con permisos
      */
@@ -43,6 +49,7 @@ public class RolePermissionService {
             role.setPermissions(permissions);
         }
 
+        permisosCompilados.invalidarAlConfirmar();
         return roleRepository.save(role);
     }
 
@@ -69,6 +76,7 @@ public class RolePermissionService {
             role.setPermissions(permissions);
         }
 
+        permisosCompilados.invalidarAlConfirmar();
         return roleRepository.save(role);
     }
 
@@ -88,6 +96,7 @@ public class RolePermissionService {
         }
 
         roleRepository.delete(role);
+        permisosCompilados.invalidarAlConfirmar();
     }
 
     /**
@@ -106,6 +115,7 @@ public class RolePermissionService {
         }
 
         roleRepository.save(role);
+        permisosCompilados.invalidarAlConfirmar();
     }
 
     /**
@@ -143,6 +153,11 @@ public class RolePermissionService {
      * REGLA DE ORO: ADMIN siempre tiene todos los permisos (bypass).
      */
     public boolean tienePermiso(String username, String codigoPermiso) {
+        // Usuario de la petición en curso: se evalúa con el contexto ya resuelto
+        if (contextoUsuario.esUsuarioActual(username)) {
+            return contextoUsuario.tienePermiso(codigoPermiso);
+        }
+
         Usuario usuario = usuarioRepository.findByUsername(username)
                 .orElse(null);
 
@@ -150,34 +165,42 @@ public class RolePermissionService {
             return false;
         }
 
-        // ============================================================
-        // VERIFICACION 1: ADMIN tiene SIEMPRE todos los permisos
-        // Verificar en el sistema de roles antiguo (roles)
-        // ============================================================
+        return esAdministrador(usuario) || codigosPermiso(usuario).contains(codigoPermiso);
+    }
+
+    /**
+     * ADMIN en cualquiera de los dos sistemas de roles.
+     *
+     * VERIFICACION 1: sistema de roles antiguo (roles)
+     * VERIFICACION 2: nuevo sistema de roles (role singular)
+     */
+    static boolean esAdministrador(Usuario usuario) {
         if (usuario.getRoles() != null &&
             usuario.getRoles().stream().anyMatch(r ->
                 "ROLE_ADMIN".equals(r.getNombre()) || "ADMIN".equals(r.getNombre()))) {
             return true;
         }
 
-        // ============================================================
-        // VERIFICACION 2: Nuevo sistema de roles (role singular)
-        // ============================================================
         if (usuario.getRole() != null) {
-            // Si el nuevo role es ADMIN, permitir todo
             String nombreRole = usuario.getRole().getNombre();
-            if ("ADMIN".equals(nombreRole) || "ROLE_ADMIN".equals(nombreRole)) {
-                return true;
-            }
-
-            // Para otros roles, verificar permisos específicos
-            return usuario.getRole().getPermissions().stream()
-                    .anyMatch(p -> p.getCodigo().equals(codigoPermiso));
+            return "ADMIN".equals(nombreRole) || "ROLE_ADMIN".equals(nombreRole);
         }
 
         return false;
     }
 
+    /**
+     * Códigos de permiso del rol granular (vacío si el usuario no lo tiene)
+     */
+    static Set<String> codigosPermiso(Usuario usuario) {
+        if (usuario.getRole() == null) {
+            return Set.of();
+        }
+        return usuario.getRole().getPermissions().stream()
+                .map(Permission::getCodigo)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
     /**
      * Obtener todos los roles activos
      */
@@ -325,6 +348,7 @@ public class RolePermissionService {
         // NOTIFICACIONES
         permisos.add(crearPermisoSiNoExiste("NOTIFICACIONES", "VER", "NOTIFICACIONES_VER", "Ver notificaciones"));
 
+        permisosCompilados.invalidarAlConfirmar();
         log.info("Permisos por defecto creados/verificados");
     }
 
@@ -415,6 +439,7 @@ public class RolePermissionService {
             log.info("Rol ALMACENERO creado");
         }
 
+        permisosCompilados.invalidarAlConfirmar();
         log.info("Roles predefinidos verificados/creados");
     }
 
@@ -0,0 +1,213 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.SunatOutbox;
+import com.libreria.sistema.model.Venta;
+import com.libreria.sistema.model.dto.SunatResponseDTO;
+import com.libreria.sistema.repository.SunatOutboxRepository;
+import com.libreria.sistema.repository.VentaRepository;
+import com.libreria.sistema.util.Constants;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Outbox transaccional para el envío de comprobantes a SUNAT.
+ *
+ * - encolar(): se llama DENTRO de la transacción de la venta (no hace I/O de red)
+ * - procesarCola(): despachador en segundo plano con concurrencia acotada,
+ *   backoff exponencial y estado de reintentos persistente en BD
+ *
+ * Así la venta libera los locks de productos y correlativos apenas confirma,
+ * aunque el PSE tarde o esté caído.
+ */
+@Service
+@Slf4j
+public class SunatOutboxService {
+
+    private final SunatOutboxRepository outboxRepository;
+    private final VentaRepository ventaRepository;
+    private final FacturacionElectronicaService facturacionService;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+
+    public SunatOutboxService(SunatOutboxRepository outboxRepository,
+                              VentaRepository ventaRepository,
+                              FacturacionElectronicaService facturacionService,
+                              PlatformTransactionManager transactionManager) {
+        this.outboxRepository = outboxRepository;
+        this.ventaRepository = ventaRepository;
+        this.facturacionService = facturacionService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                Constants.SUNAT_OUTBOX_CONCURRENCIA, Constants.SUNAT_OUTBOX_CONCURRENCIA,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Constants.SUNAT_OUTBOX_LOTE),
+                r -> {
+                    Thread t = new Thread(r, "sunat-outbox-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Registra la venta en la cola de envío. Debe ejecutarse en la misma transacción
+     * que la creación de la venta: si la venta hace rollback, el envío tampoco existe.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void encolar(Venta venta) {
+        SunatOutbox envio = new SunatOutbox();
+        envio.setVentaId(venta.getId());
+        envio.setEstado("PENDIENTE");
+        outboxRepository.save(envio);
+
+        venta.setSunatEstado("PENDIENTE");
+    }
+
+    /**
+     * Despachador: reclama un lote de envíos vencidos y los entrega al pool acotado.
+     * No espera a que terminen; los reclamados quedan EN_PROCESO hasta su resultado.
+     */
+    @Scheduled(fixedDelay = 5000, initialDelay = 15000)
+    public void procesarCola() {
+        int capacidad = executor.getQueue().remainingCapacity();
+        if (capacidad <= 0) {
+            return;
+        }
+
+        Map<Long, String> reclamados = transactionTemplate.execute(status -> reclamarLote(capacidad));
+        if (reclamados == null || reclamados.isEmpty()) {
+            return;
+        }
+
+        log.debug("SUNAT outbox: {} envíos reclamados", reclamados.size());
+        reclamados.forEach((outboxId, reclamo) -> executor.execute(() -> despachar(outboxId, reclamo)));
+    }
+
+    /**
+     * Marca el lote EN_PROCESO con un token de reclamo nuevo: outboxId -> token
+     */
+    private Map<Long, String> reclamarLote(int capacidad) {
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime limiteEnProceso = ahora.minusMinutes(Constants.SUNAT_OUTBOX_EN_PROCESO_TIMEOUT_MINUTOS);
+
+        List<SunatOutbox> lote = outboxRepository.findListosParaEnvio(ahora, limiteEnProceso,
+                PageRequest.of(0, Math.min(capacidad, Constants.SUNAT_OUTBOX_LOTE)));
+        Map<Long, String> reclamados = new LinkedHashMap<>();
+        for (SunatOutbox envio : lote) {
+            envio.setEstado("EN_PROCESO");
+            envio.setReclamo(UUID.randomUUID().toString());
+            reclamados.put(envio.getId(), envio.getReclamo());
+        }
+        outboxRepository.saveAll(lote);
+        return reclamados;
+    }
+
+    /**
+     * Envía un comprobante y registra el resultado. Se ejecuta en un hilo del pool.
+     *
+     * Antes de enviar renueva el reclamo: si otro ciclo lo reclamó mientras esperaba en la cola,
+     * no se envía (evita un comprobante duplicado en SUNAT). La renovación reinicia el plazo de
+     * SUNAT_OUTBOX_EN_PROCESO_TIMEOUT_MINUTOS, que solo debe cubrir la llamada al PSE.
+     */
+    private void despachar(Long outboxId, String reclamo) {
+        Integer renovados = transactionTemplate.execute(status ->
+                outboxRepository.renovarReclamo(outboxId, reclamo, LocalDateTime.now()));
+        if (renovados == null || renovados == 0) {
+            log.warn("SUNAT outbox: envío {} reclamado por otro ciclo, se omite", outboxId);
+            return;
+        }
+        SunatOutbox envio = outboxRepository.findById(outboxId).orElse(null);
+        if (envio == null) {
+            return;
+        }
+
+        try {
+            // Transacción propia dentro de FacturacionElectronicaService: actualiza sunatEstado de la venta
+            SunatResponseDTO respuesta = facturacionService.enviarComprobanteSunat(envio.getVentaId());
+            String estado = respuesta != null && respuesta.getPayload() != null ?
+                    respuesta.getPayload().getEstado() : "SIN_RESPUESTA";
+            marcarEnviado(outboxId, reclamo);
+            log.info("SUNAT outbox: venta {} enviada. Estado: {}", envio.getVentaId(), estado);
+        } catch (Exception e) {
+            registrarFallo(outboxId, reclamo, e.getMessage());
+        }
+    }
+
+    private void marcarEnviado(Long outboxId, String reclamo) {
+        transactionTemplate.executeWithoutResult(status ->
+                outboxRepository.findById(outboxId).filter(envio -> reclamo.equals(envio.getReclamo())).ifPresent(envio -> {
+                    envio.setEstado("ENVIADO");
+                    envio.setIntentos(envio.getIntentos() + 1);
+                    envio.setUltimoError(null);
+                    outboxRepository.save(envio);
+                }));
+    }
+
+    /**
+     * Registra un intento fallido: programa el siguiente con backoff exponencial
+     * o marca el envío como FALLIDO al agotar los intentos.
+     */
+    private void registrarFallo(Long outboxId, String reclamo, String error) {
+        transactionTemplate.executeWithoutResult(status ->
+                outboxRepository.findById(outboxId).filter(envio -> reclamo.equals(envio.getReclamo())).ifPresent(envio -> {
+                    int intentos = envio.getIntentos() + 1;
+                    envio.setIntentos(intentos);
+                    envio.setUltimoError(error);
+
+                    Venta venta = ventaRepository.findById(envio.getVentaId()).orElse(null);
+
+                    if (intentos >= Constants.SUNAT_OUTBOX_MAX_INTENTOS) {
+                        envio.setEstado("FALLIDO");
+                        if (venta != null) {
+                            venta.setSunatEstado("ERROR");
+                        }
+                        log.error("SUNAT outbox: venta {} FALLIDA tras {} intentos: {}",
+                                envio.getVentaId(), intentos, error);
+                    } else {
+                        long espera = calcularBackoffSegundos(intentos);
+                        envio.setEstado("PENDIENTE");
+                        envio.setProximoIntento(LocalDateTime.now().plusSeconds(espera));
+                        log.warn("SUNAT outbox: venta {} intento {} fallido, reintento en {}s: {}",
+                                envio.getVentaId(), intentos, espera, error);
+                    }
+
+                    if (venta != null) {
+                        venta.setSunatMensajeError("Error al enviar (intento " + intentos + "): " + error);
+                        venta.setSunatFechaEnvio(LocalDateTime.now());
+                        ventaRepository.save(venta);
+                    }
+                    outboxRepository.save(envio);
+                }));
+    }
+
+    /**
+     * Backoff exponencial: base * 2^(intentos-1), con tope máximo
+     */
+    static long calcularBackoffSegundos(int intentos) {
+        long espera = Constants.SUNAT_OUTBOX_BACKOFF_BASE_SEGUNDOS << Math.min(intentos - 1, 20);
+        return Math.min(espera, Constants.SUNAT_OUTBOX_BACKOFF_MAX_SEGUNDOS);
+    }
+
+    @PreDestroy
+    public void detener() {
+        executor.shutdown();
+    }
+}
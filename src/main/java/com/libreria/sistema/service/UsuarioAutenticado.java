@@ -0,0 +1,65 @@
+package com.libreria.sistema.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.io.Serial;
+import java.util.Collection;
+
+/**
+ * Principal de Spring Security con lo necesario para evaluar permisos sin ir a la BD.
+ *
+ * - admin y roleId se leen al iniciar sesión. versionUsuario es la versión del usuario en PermisosCompilados
+ *   a esa hora: si el usuario se modifica (rol, baja), la siguiente verificación los vuelve a leer.
+ * - permisos es el bitset del rol; PermisosCompilados lo reemplaza si los roles se recompilaron.
+ *   Es transient: tras deserializar la sesión HTTP se vuelve a tomar de la compilación vigente.
+ * - Las authorities (roles legacy de hasAuthority/hasRole) siguen fijas hasta el próximo inicio de sesión.
+ */
+public class UsuarioAutenticado extends User {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private volatile boolean admin;
+    private volatile Long roleId;
+    private volatile long versionUsuario;
+    private transient volatile PermisosRol permisos;
+
+    public UsuarioAutenticado(String username, String password, Collection<? extends GrantedAuthority> authorities,
+                              boolean admin, Long roleId, long versionUsuario) {
+        super(username, password, authorities);
+        this.admin = admin;
+        this.roleId = roleId;
+        this.versionUsuario = versionUsuario;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    public Long getRoleId() {
+        return roleId;
+    }
+
+    long getVersionUsuario() {
+        return versionUsuario;
+    }
+
+    /**
+     * Datos de acceso vueltos a leer de la BD (PermisosCompilados); el bitset se reasigna en la misma verificación
+     */
+    void actualizarAcceso(boolean admin, Long roleId, long versionUsuario) {
+        this.admin = admin;
+        this.roleId = roleId;
+        this.permisos = null;
+        this.versionUsuario = versionUsuario;
+    }
+
+    PermisosRol getPermisos() {
+        return permisos;
+    }
+
+    void setPermisos(PermisosRol permisos) {
+        this.permisos = permisos;
+    }
+}
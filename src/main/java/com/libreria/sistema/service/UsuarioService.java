@@ -6,7 +6,6 @@ import com.libreria.sistema.util.Constants;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -28,9 +27,11 @@ import java.util.stream.Collectors;
 public class UsuarioService implements UserDetailsService {
 
     private final UsuarioRepository usuarioRepository;
+    private final PermisosCompilados permisosCompilados;
 
-    public UsuarioService(UsuarioRepository usuarioRepository) {
+    public UsuarioService(UsuarioRepository usuarioRepository, PermisosCompilados permisosCompilados) {
         this.usuarioRepository = usuarioRepository;
+        this.permisosCompilados = permisosCompilados;
     }
 
     /**
@@ -40,6 +41,8 @@ public class UsuarioService implements UserDetailsService {
     @Override
     @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        // Antes de leer: un cambio confirmado mientras tanto hará releer el acceso en la primera verificación
+        long versionUsuario = permisosCompilados.versionUsuario(username);
         Usuario usuario = usuarioRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado: " + username));
 
@@ -68,7 +71,10 @@ public class UsuarioService implements UserDetailsService {
                 .map(rol -> new SimpleGrantedAuthority(rol.getNombre()))
                 .collect(Collectors.toList());
 
-        return new User(usuario.getUsername(), usuario.getPassword(), authorities);
+        // OPTIMIZADO: el principal lleva admin y rol granular para evaluar permisos por bits (PermisosCompilados)
+        Long roleId = usuario.getRole() != null ? usuario.getRole().getId() : null;
+        return new UsuarioAutenticado(usuario.getUsername(), usuario.getPassword(), authorities,
+                RolePermissionService.esAdministrador(usuario), roleId, versionUsuario);
     }
 
     /**
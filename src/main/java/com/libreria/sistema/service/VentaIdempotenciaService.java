@@ -0,0 +1,124 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.dto.VentaDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Deduplicación de ventas por clave de idempotencia enviada por el POS.
+ *
+ * - Memoria: mapa clave -> resultado (o venta en curso) con vida corta. Un reintento
+ *   mientras la venta original se procesa espera ese mismo resultado; después lo recibe
+ *   directamente. En ningún caso vuelve a tomar locks ni a generar comprobante.
+ * - BD: columna UNIQUE ventas.idempotency_key como respaldo tras un reinicio o
+ *   si el registro en memoria ya expiró.
+ * - Cada clave va con la huella del contenido (VentaDTO.huellaIdempotencia). La misma clave
+ *   con otro contenido se rechaza: no es un reintento sino otra venta, y no debe recibir el comprobante anterior.
+ */
+@Service
+@Slf4j
+public class VentaIdempotenciaService {
+
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long ESPERA_DUPLICADO_SEGUNDOS = 60;
+
+    private final VentaService ventaService;
+    private final ConcurrentHashMap<String, Registro> registros = new ConcurrentHashMap<>();
+
+    private record Registro(CompletableFuture<Map<String, Object>> resultado, String huella, long creadoEn) {}
+
+    public VentaIdempotenciaService(VentaService ventaService) {
+        this.ventaService = ventaService;
+    }
+
+    /**
+     * Registra la venta una sola vez por clave de idempotencia.
+     * Sin clave, se comporta exactamente como VentaService.crearVenta.
+     */
+    public Map<String, Object> crearVenta(VentaDTO dto) {
+        String clave = dto.getIdempotencyKey();
+        if (clave == null || clave.isBlank()) {
+            return ventaService.crearVenta(dto);
+        }
+
+        String huella = dto.huellaIdempotencia();
+        CompletableFuture<Map<String, Object>> propio = new CompletableFuture<>();
+        Registro existente = registros.putIfAbsent(clave, new Registro(propio, huella, System.currentTimeMillis()));
+        if (existente != null) {
+            if (!existente.huella().equals(huella)) {
+                log.warn("Clave de idempotencia {} reutilizada con otro contenido", clave);
+                throw new RuntimeException(VentaService.MENSAJE_CLAVE_REUTILIZADA + ".");
+            }
+            log.info("Venta duplicada detectada (clave {}), devolviendo resultado original", clave);
+            return marcarDuplicado(esperar(existente.resultado()));
+        }
+
+        try {
+            Optional<Map<String, Object>> previo = ventaService.buscarResultadoPorClave(clave, huella);
+            Map<String, Object> resultado = previo.isPresent() ? marcarDuplicado(previo.get()) : ventaService.crearVenta(dto);
+            propio.complete(resultado);
+            return resultado;
+        } catch (RuntimeException e) {
+            RuntimeException error = e;
+            // ¿Otra petición confirmó la misma clave primero? (UNIQUE en BD, detectado al hacer flush/commit)
+            if (e instanceof DataAccessException) {
+                try {
+                    Optional<Map<String, Object>> previo = ventaService.buscarResultadoPorClave(clave, huella);
+                    if (previo.isPresent()) {
+                        Map<String, Object> resultado = marcarDuplicado(previo.get());
+                        propio.complete(resultado);
+                        return resultado;
+                    }
+                } catch (RuntimeException reutilizada) {
+                    error = reutilizada;
+                }
+            }
+            // La venta hizo rollback: se libera la clave para permitir un reintento real
+            registros.remove(clave);
+            propio.completeExceptionally(error);
+            throw error;
+        }
+    }
+
+    private Map<String, Object> esperar(CompletableFuture<Map<String, Object>> resultado) {
+        try {
+            return resultado.get(ESPERA_DUPLICADO_SEGUNDOS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("La venta original aún se está procesando. Verifique la lista de ventas antes de reintentar.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Proceso interrumpido", e);
+        }
+    }
+
+    private Map<String, Object> marcarDuplicado(Map<String, Object> original) {
+        Map<String, Object> copia = new HashMap<>(original);
+        copia.put("duplicado", true);
+        return copia;
+    }
+
+    /**
+     * Limpia las claves expiradas que ya tienen resultado. Se ejecuta cada minuto.
+     */
+    @Scheduled(fixedRate = 60000)
+    public void limpiarExpirados() {
+        long limite = System.currentTimeMillis() - TTL_MILLIS;
+        registros.entrySet().removeIf(e -> e.getValue().creadoEn() < limite && e.getValue().resultado().isDone());
+    }
+}
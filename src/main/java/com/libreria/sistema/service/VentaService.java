@@ -2,7 +2,6 @@ package com.libreria.sistema.service;
 
 import com.libreria.sistema.aspect.Auditable;
 import com.libreria.sistema.model.*;
-import com.libreria.sistema.model.dto.SunatResponseDTO;
 import com.libreria.sistema.model.dto.VentaDTO;
 import com.libreria.sistema.repository.*;
 import com.libreria.sistema.util.Constants;
@@ -18,7 +17,18 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Servicio de Ventas OPTIMIZADO con:
@@ -33,40 +43,47 @@ public class VentaService {
     private final ProductoRepository productoRepository;
     private final VentaRepository ventaRepository;
     private final KardexRepository kardexRepository;
-    private final CorrelativoRepository correlativoRepository;
+    private final CorrelativoService correlativoService;
     private final ClienteRepository clienteRepository;
     private final AmortizacionRepository amortizacionRepository;
-    private final UsuarioRepository usuarioRepository;
+    private final ContextoUsuario contextoUsuario;
     private final CajaService cajaService;
     private final FacturacionElectronicaService facturacionService;
+    private final SunatOutboxService sunatOutboxService;
     private final ConfiguracionService configuracionService;
+    private final ResumenVentasService resumenVentasService;
 
     public VentaService(ProductoRepository productoRepository,
                         VentaRepository ventaRepository,
                         KardexRepository kardexRepository,
-                        CorrelativoRepository correlativoRepository,
+                        CorrelativoService correlativoService,
                         ClienteRepository clienteRepository,
                         AmortizacionRepository amortizacionRepository,
-                        UsuarioRepository usuarioRepository,
+                        ContextoUsuario contextoUsuario,
                         CajaService cajaService,
                         FacturacionElectronicaService facturacionService,
-                        ConfiguracionService configuracionService) {
+                        SunatOutboxService sunatOutboxService,
+                        ConfiguracionService configuracionService,
+                        ResumenVentasService resumenVentasService) {
         this.productoRepository = productoRepository;
         this.ventaRepository = ventaRepository;
         this.kardexRepository = kardexRepository;
-        this.correlativoRepository = correlativoRepository;
+        this.correlativoService = correlativoService;
         this.clienteRepository = clienteRepository;
         this.amortizacionRepository = amortizacionRepository;
-        this.usuarioRepository = usuarioRepository;
+        this.contextoUsuario = contextoUsuario;
         this.cajaService = cajaService;
         this.facturacionService = facturacionService;
+        this.sunatOutboxService = sunatOutboxService;
         this.configuracionService = configuracionService;
+        this.resumenVentasService = resumenVentasService;
     }
 
     /**
      * Crea una nueva venta con soporte DUAL-MODE:
      * - MODO INTERNO (facturaElectronicaActiva = false): Series I001/IF001, no envía a SUNAT
-     * - MODO ELECTRÓNICO (facturaElectronicaActiva = true): Series B001/F001, envía automáticamente a SUNAT
+     * - MODO ELECTRÓNICO (facturaElectronicaActiva = true): Series B001/F001, encola el envío a SUNAT (outbox)
+     * - Serie por terminal/caja (B001, B002, ...): cada caja numera en su propia fila de correlativo
      *
      * MEJORAS DE SEGURIDAD:
      * - Usa LOCK PESIMISTA para validación de stock (evita race conditions)
@@ -88,54 +105,24 @@ public class VentaService {
         // 2. CLIENTE (con manejo de duplicados)
         Cliente cliente = obtenerOCrearCliente(dto);
 
-        // 3. DETERMINAR TIPO Y SERIE SEGÚN MODO
-        String tipo = dto.getTipoComprobante() != null ? dto.getTipoComprobante() : "NOTA_VENTA";
-        String serie = facturacionService.obtenerSerie(tipo, facturaElectronicaActiva);
-
-        // 4. OBTENER CORRELATIVO CON LOCK PESIMISTA para evitar race conditions
-        // Si la serie no existe, se crea automáticamente con ultimoNumero = 0
-        Correlativo correlativo = correlativoRepository.findByCodigoAndSerieWithLock(tipo, serie)
-                .orElseGet(() -> {
-                    Correlativo nuevo = new Correlativo(tipo, serie, 0);
-                    return correlativoRepository.save(nuevo);
-                });
-
-        // SAFE UNBOXING DEFENSIVO: Triple protección contra NPE
-        // 1. El getter de Correlativo ya maneja null
-        // 2. Verificación explícita aquí por seguridad adicional
-        // 3. El campo está inicializado en la entidad
-        Integer ultimoActual = correlativo.getUltimoNumero();
-        int nuevoNumero = (ultimoActual != null ? ultimoActual : 0) + 1;
-        correlativo.setUltimoNumero(nuevoNumero);
-        correlativoRepository.save(correlativo);
-
-        // 5. CREAR CABECERA VENTA
-        Venta venta = new Venta();
-        venta.setClienteEntity(cliente);
-        venta.setClienteDenominacion(dto.getClienteNombre() != null ? dto.getClienteNombre() : cliente.getNombreRazonSocial());
-        venta.setClienteNumeroDocumento(cliente.getNumeroDocumento());
-        venta.setClienteTipoDocumento(cliente.getTipoDocumento());
-        // Usar direccion del DTO (snapshot de lo que el usuario vio en pantalla, ej: desde SUNAT)
-        // Si el DTO no tiene direccion, usar la del cliente guardado
-        String direccionVenta = dto.getClienteDireccion() != null && !dto.getClienteDireccion().isBlank() ?
-                dto.getClienteDireccion() : cliente.getDireccion();
-        venta.setClienteDireccion(direccionVenta);
-        venta.setTipoComprobante(tipo);
-        venta.setSerie(serie);
-        venta.setNumero(nuevoNumero);
-        venta.setFechaEmision(LocalDate.now());
-        venta.setEstado("EMITIDO");
+        // Usuario actual y su sesión de caja (define la terminal / serie), resueltos una vez por petición
+        Usuario usuario = contextoUsuario.getUsuario().orElse(null);
+        Optional<SesionCaja> sesionActiva = contextoUsuario.getSesionCajaActiva();
 
-        // NUEVO: Método de pago
-        venta.setMetodoPago(dto.getMetodoPago());
+        // 3. DETERMINAR TIPO Y SERIE SEGÚN MODO Y TERMINAL
+        // Cada caja tiene su propia serie (B001, B002...) => su propia fila de correlativo
+        String tipo = dto.getTipoComprobante() != null ? dto.getTipoComprobante() : "NOTA_VENTA";
+        Integer terminal = sesionActiva.map(SesionCaja::getTerminal)
+                .orElse(usuario != null ? usuario.getTerminalCaja() : null);
+        String serie = facturacionService.obtenerSerie(tipo, facturaElectronicaActiva, terminal);
 
-        // Usuario actual
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        Usuario usuario = usuarioRepository.findByUsername(username).orElse(null);
-        venta.setUsuario(usuario);
+        // 4. CREAR CABECERA VENTA (el número se asigna tras validar stock y caja)
+        // La fecha de emisión de una venta en línea es siempre hoy (fechaCaptura solo vale en el lote offline)
+        Venta venta = crearCabecera(dto, cliente, usuario, tipo, serie, LocalDate.now());
 
-        // 6. PROCESAR DETALLES (con LOCK PESIMISTA en productos)
-        BigDecimal[] totales = procesarDetalles(venta, dto);
+        // 5. PROCESAR DETALLES (con LOCK PESIMISTA en productos)
+        List<Kardex> movimientos = new ArrayList<>();
+        BigDecimal[] totales = procesarDetalles(venta, dto, movimientos);
         BigDecimal totalVenta = totales[0];
         BigDecimal totalGravada = totales[1];
         BigDecimal totalIgv = totales[2];
@@ -144,11 +131,21 @@ public class VentaService {
         venta.setTotalGravada(totalGravada);
         venta.setTotalIgv(totalIgv);
 
-        // 7. FORMA DE PAGO
+        // 6. FORMA DE PAGO
         BigDecimal montoAbonado = procesarFormaPago(venta, dto, totalVenta);
+        if (montoAbonado.compareTo(BigDecimal.ZERO) > 0 && sesionActiva.isEmpty()) {
+            throw new RuntimeException("CAJA CERRADA: Debe abrir caja antes de operar.");
+        }
+
+        // 7. ASIGNAR CORRELATIVO (UPDATE ... RETURNING en esta transacción, último paso antes de escribir:
+        //    un rollback posterior devuelve el número y el lock de la fila dura solo las escrituras)
+        int nuevoNumero = correlativoService.siguienteNumero(tipo, serie);
+        venta.setNumero(nuevoNumero);
+        guardarMovimientosStock(movimientos, venta);
 
-        // 8. GUARDAR VENTA
+        // 8. GUARDAR VENTA (y su fila en el resumen diario, en la misma transacción)
         Venta ventaGuardada = ventaRepository.save(venta);
+        resumenVentasService.registrarVenta(ventaGuardada);
 
         // 9. REGISTRAR PAGO Y MOVIMIENTO DE CAJA
         if (montoAbonado.compareTo(BigDecimal.ZERO) > 0) {
@@ -156,28 +153,391 @@ public class VentaService {
         }
 
         // 10. ENVÍO A SUNAT (SOLO EN MODO ELECTRÓNICO)
+        // Se encola en la misma transacción (outbox); el despachador lo envía en segundo plano
+        // para no retener los locks de productos y correlativo durante la llamada HTTP al PSE.
         String estadoSunat = "NO_APLICA";
         if (facturaElectronicaActiva && !tipo.equals("NOTA_VENTA")) {
+            sunatOutboxService.encolar(ventaGuardada);
+            estadoSunat = "PENDIENTE";
+        }
+
+        return construirResultado(ventaGuardada, estadoSunat, facturaElectronicaActiva);
+    }
+
+    // ==========================================
+    //        SINCRONIZACIÓN DE VENTAS OFFLINE (LOTE)
+    // ==========================================
+
+    /**
+     * Venta del lote que pasó todas las validaciones y espera número y escritura
+     */
+    private record VentaAceptada(int indice, VentaDTO dto, Venta venta, List<Kardex> movimientos, BigDecimal montoAbonado) {}
+
+    /**
+     * Registra en un solo pipeline las ventas que una caja capturó sin conexión, en su orden original.
+     *
+     * - Duplicados: una consulta para todas las claves (UUID generado por la caja)
+     * - Stock: un único SELECT ... FOR UPDATE ordenado por id para todos los productos del lote;
+     *   cada venta se valida contra el stock que dejaron las anteriores
+     * - Correlativos: un rango por serie (UPDATE ... RETURNING) para todas las ventas aceptadas
+     * - Escritura: ventas, Kardex, productos, pagos y movimientos de caja con saveAll (batch JDBC)
+     *
+     * Una venta con conflicto (stock insuficiente, precio cambiado, producto inexistente, caja cerrada)
+     * se informa en su resultado y se omite sin afectar al resto del lote.
+     *
+     * @return Un resultado por venta, en el mismo orden del lote
+     */
+    @Transactional
+    @Auditable(modulo = "VENTAS", accion = "CREAR", descripcion = "Sincronizar lote de ventas offline")
+    public List<Map<String, Object>> crearVentasLote(List<VentaDTO> ventasDto) {
+        boolean facturaElectronicaActiva = facturacionService.isFacturacionElectronicaActiva();
+        Usuario usuario = contextoUsuario.getUsuario().orElse(null);
+        Optional<SesionCaja> sesionActiva = contextoUsuario.getSesionCajaActiva();
+        Integer terminal = sesionActiva.map(SesionCaja::getTerminal)
+                .orElse(usuario != null ? usuario.getTerminalCaja() : null);
+
+        List<Map<String, Object>> resultados = new ArrayList<>();
+        for (int i = 0; i < ventasDto.size(); i++) {
+            resultados.add(null);
+        }
+
+        // 1. DUPLICADOS YA REGISTRADOS (una sola consulta)
+        Set<String> claves = new HashSet<>();
+        for (VentaDTO dto : ventasDto) {
+            if (dto.getIdempotencyKey() != null && !dto.getIdempotencyKey().isBlank()) {
+                claves.add(dto.getIdempotencyKey());
+            }
+        }
+        Map<String, Venta> yaRegistradas = new HashMap<>();
+        if (!claves.isEmpty()) {
+            for (Venta v : ventaRepository.findByIdempotencyKeyIn(claves)) {
+                yaRegistradas.put(v.getIdempotencyKey(), v);
+            }
+        }
+
+        // 2. LOCK DE TODOS LOS PRODUCTOS DEL LOTE (mismo orden por id que las ventas en línea)
+        Set<Long> ids = new TreeSet<>();
+        for (VentaDTO dto : ventasDto) {
+            for (VentaDTO.DetalleDTO item : dto.getItems()) {
+                ids.add(item.getProductoId());
+            }
+        }
+        Map<Long, Producto> productos = new HashMap<>();
+        for (Producto p : productoRepository.findAllByIdInWithLock(ids)) {
+            productos.put(p.getId(), p);
+        }
+
+        // 3. VALIDACIÓN Y CONSTRUCCIÓN EN ORDEN (el stock en memoria avanza venta a venta)
+        List<VentaAceptada> aceptadas = new ArrayList<>();
+        Map<String, Integer> primeraPorClave = new HashMap<>();
+        Map<Integer, Integer> repetidasEnLote = new LinkedHashMap<>();
+        Map<String, Cliente> clientes = new HashMap<>();
+        Map<String, String> seriesPorTipo = new HashMap<>();
+
+        for (int i = 0; i < ventasDto.size(); i++) {
+            VentaDTO dto = ventasDto.get(i);
+            String clave = dto.getIdempotencyKey();
+
+            if (clave == null || clave.isBlank()) {
+                resultados.set(i, resultadoConflicto(clave, "SIN_CLAVE", "La venta no trae su UUID (idempotencyKey)"));
+                continue;
+            }
+            if (yaRegistradas.containsKey(clave)) {
+                Venta previa = yaRegistradas.get(clave);
+                try {
+                    validarHuella(previa, dto.huellaIdempotencia());
+                } catch (RuntimeException e) {
+                    resultados.set(i, resultadoConflicto(clave, "CLAVE_REUTILIZADA", e.getMessage()));
+                    continue;
+                }
+                Map<String, Object> r = resultadoLote(clave, "DUPLICADA");
+                r.putAll(construirResultado(previa,
+                        previa.getSunatEstado() != null ? previa.getSunatEstado() : "NO_APLICA",
+                        previa.getSunatEstado() != null));
+                resultados.set(i, r);
+                continue;
+            }
+            Integer primera = primeraPorClave.putIfAbsent(clave, i);
+            if (primera != null) {
+                if (!ventasDto.get(primera).huellaIdempotencia().equals(dto.huellaIdempotencia())) {
+                    resultados.set(i, resultadoConflicto(clave, "CLAVE_REUTILIZADA", MENSAJE_CLAVE_REUTILIZADA));
+                } else {
+                    repetidasEnLote.put(i, primera);
+                }
+                continue;
+            }
+
+            try {
+                validarDocumentoLote(dto, facturaElectronicaActiva);
+            } catch (RuntimeException e) {
+                resultados.set(i, resultadoConflicto(clave, "DOCUMENTO_INVALIDO", e.getMessage()));
+                continue;
+            }
+            String tipo = dto.getTipoComprobante() != null ? dto.getTipoComprobante() : "NOTA_VENTA";
+            LocalDate fechaEmision;
+            try {
+                fechaEmision = fechaEmisionLote(dto.getFechaCaptura(),
+                        facturaElectronicaActiva && !"NOTA_VENTA".equals(tipo), LocalDate.now());
+            } catch (RuntimeException e) {
+                resultados.set(i, resultadoConflicto(clave, "FECHA_FUERA_DE_RANGO", e.getMessage()));
+                continue;
+            }
+
+            String faltante = dto.getItems().stream()
+                    .map(VentaDTO.DetalleDTO::getProductoId)
+                    .filter(id -> !productos.containsKey(id))
+                    .map(String::valueOf)
+                    .findFirst().orElse(null);
+            if (faltante != null) {
+                resultados.set(i, resultadoConflicto(clave, "PRODUCTO_NO_ENCONTRADO", "Producto no encontrado: ID " + faltante));
+                continue;
+            }
+            try {
+                validarPrecios(dto, productos);
+            } catch (RuntimeException e) {
+                resultados.set(i, resultadoConflicto(clave, "PRECIO_CAMBIADO", e.getMessage()));
+                continue;
+            }
             try {
-                SunatResponseDTO respuestaSunat = facturacionService.enviarComprobanteSunat(ventaGuardada.getId());
-                estadoSunat = respuestaSunat.getPayload() != null ?
-                        respuestaSunat.getPayload().getEstado() : "ERROR";
-            } catch (Exception e) {
-                log.error("Error al enviar comprobante a SUNAT. Venta ID: {}", ventaGuardada.getId(), e);
-                estadoSunat = "ERROR_ENVIO";
+                validarStock(dto, productos);
+            } catch (RuntimeException e) {
+                resultados.set(i, resultadoConflicto(clave, "STOCK_INSUFICIENTE", e.getMessage()));
+                continue;
+            }
+            boolean generaIngreso = !"CREDITO".equals(dto.getFormaPago())
+                    || (dto.getMontoInicial() != null && dto.getMontoInicial().compareTo(BigDecimal.ZERO) > 0);
+            if (generaIngreso && sesionActiva.isEmpty()) {
+                resultados.set(i, resultadoConflicto(clave, "CAJA_CERRADA", "Debe abrir caja antes de sincronizar ventas con pago."));
+                continue;
+            }
+
+            String serie = seriesPorTipo.computeIfAbsent(tipo,
+                    t -> facturacionService.obtenerSerie(t, facturaElectronicaActiva, terminal));
+            Cliente cliente = clientes.computeIfAbsent(dto.getClienteDocumento(), d -> obtenerOCrearCliente(dto));
+
+            Venta venta = crearCabecera(dto, cliente, usuario, tipo, serie, fechaEmision);
+            List<Kardex> movimientos = new ArrayList<>();
+            BigDecimal[] totales = construirDetalles(venta, dto, productos, movimientos);
+            venta.setTotal(totales[0]);
+            venta.setTotalGravada(totales[1]);
+            venta.setTotalIgv(totales[2]);
+            BigDecimal montoAbonado = procesarFormaPago(venta, dto, totales[0]);
+
+            aceptadas.add(new VentaAceptada(i, dto, venta, movimientos, montoAbonado));
+        }
+
+        if (!aceptadas.isEmpty()) {
+            // 4. CORRELATIVOS: un rango por serie, asignado en el orden del lote.
+            //    Series en orden fijo (TreeMap): dos lotes nunca bloquean las filas en orden inverso
+            Map<String, List<VentaAceptada>> porSerie = new TreeMap<>();
+            for (VentaAceptada a : aceptadas) {
+                porSerie.computeIfAbsent(a.venta().getTipoComprobante() + "|" + a.venta().getSerie(),
+                        k -> new ArrayList<>()).add(a);
+            }
+            for (List<VentaAceptada> grupo : porSerie.values()) {
+                Venta primeraVenta = grupo.get(0).venta();
+                int numero = correlativoService.reservarRango(primeraVenta.getTipoComprobante(), primeraVenta.getSerie(), grupo.size());
+                for (VentaAceptada a : grupo) {
+                    a.venta().setNumero(numero++);
+                }
             }
+
+            // 5. ESCRITURA EN LOTE
+            List<Venta> ventas = new ArrayList<>();
+            List<Kardex> kardex = new ArrayList<>();
+            List<Amortizacion> pagos = new ArrayList<>();
+            List<MovimientoCaja> movimientosCaja = new ArrayList<>();
+            for (VentaAceptada a : aceptadas) {
+                Venta venta = a.venta();
+                String comprobante = venta.getSerie() + "-" + venta.getNumero();
+                for (Kardex k : a.movimientos()) {
+                    k.setMotivo("VENTA " + comprobante);
+                }
+                ventas.add(venta);
+                kardex.addAll(a.movimientos());
+
+                if (a.montoAbonado().compareTo(BigDecimal.ZERO) > 0) {
+                    String metodoPago = a.dto().getMetodoPago();
+                    pagos.add(crearAmortizacion(venta, a.montoAbonado(), metodoPago));
+
+                    MovimientoCaja mov = new MovimientoCaja();
+                    mov.setTipo("INGRESO");
+                    mov.setConcepto("VENTA " + comprobante + " (" + metodoPago + ") [OFFLINE]");
+                    mov.setMonto(a.montoAbonado());
+                    movimientosCaja.add(mov);
+                }
+            }
+
+            ventaRepository.saveAll(ventas);
+            kardexRepository.saveAll(kardex);
+            productoRepository.saveAll(kardex.stream().map(Kardex::getProducto).distinct().toList());
+            amortizacionRepository.saveAll(pagos);
+            cajaService.registrarMovimientos(movimientosCaja);
+            resumenVentasService.registrarVentas(ventas);
+            resumenVentasService.registrarCobros(pagos);
+
+            // 6. RESULTADOS Y COLA SUNAT
+            for (VentaAceptada a : aceptadas) {
+                Venta venta = a.venta();
+                String estadoSunat = "NO_APLICA";
+                if (facturaElectronicaActiva && !"NOTA_VENTA".equals(venta.getTipoComprobante())) {
+                    sunatOutboxService.encolar(venta);
+                    estadoSunat = "PENDIENTE";
+                }
+                Map<String, Object> r = resultadoLote(venta.getIdempotencyKey(), "REGISTRADA");
+                r.putAll(construirResultado(venta, estadoSunat, facturaElectronicaActiva));
+                resultados.set(a.indice(), r);
+            }
+        }
+
+        // Claves repetidas dentro del mismo lote: mismo resultado que su primera aparición
+        repetidasEnLote.forEach((indice, primera) -> {
+            Map<String, Object> r = new LinkedHashMap<>(resultados.get(primera));
+            if ("REGISTRADA".equals(r.get("estado"))) {
+                r.put("estado", "DUPLICADA");
+            }
+            resultados.set(indice, r);
+        });
+
+        log.info("Lote offline sincronizado: {} ventas, {} registradas", ventasDto.size(), aceptadas.size());
+        return resultados;
+    }
+
+    /**
+     * Reglas de documento que el POS en línea valida en VentaController.guardarVenta
+     */
+    private void validarDocumentoLote(VentaDTO dto, boolean facturaElectronicaActiva) {
+        String doc = dto.getClienteDocumento();
+        if ("FACTURA".equalsIgnoreCase(dto.getTipoComprobante()) && (doc == null || doc.length() != Constants.RUC_LENGTH)) {
+            throw new RuntimeException("Para emitir Factura se requiere un RUC válido de 11 dígitos.");
+        }
+        if ("BOLETA".equalsIgnoreCase(dto.getTipoComprobante()) && facturaElectronicaActiva) {
+            BigDecimal total = dto.getItems().stream()
+                    .map(item -> item.getPrecioVenta().multiply(item.getCantidad()))
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            if (total.compareTo(new BigDecimal("700")) > 0
+                    && (doc == null || doc.length() != Constants.DNI_LENGTH || doc.equals("00000000"))) {
+                throw new RuntimeException("Para Boletas mayores a S/ 700.00 es obligatorio el DNI del cliente (8 dígitos).");
+            }
+        }
+    }
+
+    /**
+     * Fecha de emisión de una venta capturada sin conexión (hoy si la caja no envió fechaCaptura).
+     *
+     * - No antes del último mes cerrado: una venta de fin de mes sincronizada al día siguiente se acepta
+     *   (ReporteDatosListener invalida ese mes), una más antigua no.
+     * - Comprobante electrónico: dentro del plazo de envío a SUNAT (Constants.SUNAT_PLAZO_ENVIO_DIAS).
+     */
+    static LocalDate fechaEmisionLote(LocalDateTime fechaCaptura, boolean electronico, LocalDate hoy) {
+        if (fechaCaptura == null) {
+            return hoy;
+        }
+        LocalDate fecha = fechaCaptura.toLocalDate();
+        if (fecha.isAfter(hoy)) {
+            throw new RuntimeException("La fecha de captura no puede ser futura: " + fecha);
+        }
+        LocalDate minima = YearMonth.from(hoy).minusMonths(1).atDay(1);
+        if (fecha.isBefore(minima)) {
+            throw new RuntimeException("La venta del " + fecha + " pertenece a un mes cerrado. Regístrela manualmente.");
+        }
+        if (electronico && fecha.isBefore(hoy.minusDays(Constants.SUNAT_PLAZO_ENVIO_DIAS))) {
+            throw new RuntimeException("La venta del " + fecha + " supera el plazo de envío a SUNAT ("
+                    + Constants.SUNAT_PLAZO_ENVIO_DIAS + " días).");
         }
+        return fecha;
+    }
+
+    private Map<String, Object> resultadoLote(String clave, String estado) {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("clave", clave);
+        r.put("estado", estado);
+        return r;
+    }
+
+    /**
+     * La clave ya se usó con OTRO contenido (p. ej. el POS no recibió la respuesta y el cajero editó el carrito).
+     * Ventas anteriores a la huella (null) se aceptan como reintento.
+     */
+    static void validarHuella(Venta registrada, String huella) {
+        if (registrada.getIdempotencyHuella() != null && huella != null
+                && !registrada.getIdempotencyHuella().equals(huella)) {
+            throw new RuntimeException(MENSAJE_CLAVE_REUTILIZADA + " (" + registrada.getSerie() + "-"
+                    + registrada.getNumero() + ")");
+        }
+    }
+
+    static final String MENSAJE_CLAVE_REUTILIZADA =
+            "La clave de la venta ya se usó para un comprobante con otro contenido. Verifique la lista de ventas";
+
+    private Map<String, Object> resultadoConflicto(String clave, String conflicto, String mensaje) {
+        Map<String, Object> r = resultadoLote(clave, "CONFLICTO");
+        r.put("conflicto", conflicto);
+        r.put("mensaje", mensaje);
+        return r;
+    }
+
+    /**
+     * Cabecera de la venta (cliente, comprobante, usuario). Sin número ni totales.
+     * fechaEmision la decide quien llama: hoy en línea, fechaEmisionLote en el lote offline.
+     */
+    private Venta crearCabecera(VentaDTO dto, Cliente cliente, Usuario usuario, String tipo, String serie,
+                                LocalDate fechaEmision) {
+        Venta venta = new Venta();
+        venta.setClienteEntity(cliente);
+        venta.setClienteDenominacion(dto.getClienteNombre() != null ? dto.getClienteNombre() : cliente.getNombreRazonSocial());
+        venta.setClienteNumeroDocumento(cliente.getNumeroDocumento());
+        venta.setClienteTipoDocumento(cliente.getTipoDocumento());
+        // Usar direccion del DTO (snapshot de lo que el usuario vio en pantalla, ej: desde SUNAT)
+        // Si el DTO no tiene direccion, usar la del cliente guardado
+        String direccionVenta = dto.getClienteDireccion() != null && !dto.getClienteDireccion().isBlank() ?
+                dto.getClienteDireccion() : cliente.getDireccion();
+        venta.setClienteDireccion(direccionVenta);
+        venta.setTipoComprobante(tipo);
+        venta.setSerie(serie);
+        venta.setFechaEmision(fechaEmision);
+        venta.setEstado("EMITIDO");
+
+        // NUEVO: Método de pago
+        venta.setMetodoPago(dto.getMetodoPago());
+        venta.setUsuario(usuario);
+        if (dto.getIdempotencyKey() != null && !dto.getIdempotencyKey().isBlank()) {
+            venta.setIdempotencyKey(dto.getIdempotencyKey());
+            venta.setIdempotencyHuella(dto.huellaIdempotencia());
+        }
+        return venta;
+    }
 
+    /**
+     * Resultado devuelto al POS tras registrar una venta
+     */
+    private Map<String, Object> construirResultado(Venta venta, String estadoSunat, boolean facturaElectronica) {
         return Map.of(
-                "id", ventaGuardada.getId(),
-                "serie", ventaGuardada.getSerie(),
-                "numero", ventaGuardada.getNumero(),
-                "metodoPago", ventaGuardada.getMetodoPago(),
+                "id", venta.getId(),
+                "serie", venta.getSerie(),
+                "numero", venta.getNumero(),
+                "metodoPago", venta.getMetodoPago(),
                 "estadoSunat", estadoSunat,
-                "facturaElectronica", facturaElectronicaActiva
+                "facturaElectronica", facturaElectronica
         );
     }
 
+    /**
+     * Reconstruye el resultado de una venta ya registrada con la clave de idempotencia indicada.
+     * Usado para responder reintentos cuando el resultado ya no está en memoria.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Map<String, Object>> buscarResultadoPorClave(String idempotencyKey, String huella) {
+        return ventaRepository.findByIdempotencyKey(idempotencyKey)
+                .map(v -> {
+                    validarHuella(v, huella);
+                    return v;
+                })
+                .map(v -> construirResultado(v,
+                        v.getSunatEstado() != null ? v.getSunatEstado() : "NO_APLICA",
+                        v.getSunatEstado() != null));
+    }
+
     /**
      * Obtiene un cliente existente o crea uno nuevo.
      * MEJORADO: Maneja duplicados gracefully (constraint violation)
@@ -234,15 +594,61 @@ public class VentaService {
     /**
      * Procesa los detalles de venta: validación de stock, creación de detalles y kardex
      *
-     * MEJORADO: Usa LOCK PESIMISTA para evitar race conditions en stock
-     * Esto previene que dos ventas simultáneas vendan el mismo último ítem
+     * MEJORADO: Reserva de stock por LOTE
+     * - Bloquea todos los productos del carrito en un solo SELECT ... FOR UPDATE ordenado por id
+     *   (mismo orden de locks en todas las transacciones = sin deadlocks)
+     * - Valida todas las cantidades en memoria (sumando líneas repetidas del mismo producto)
+     * - Acumula los movimientos de Kardex en {@code movimientos} para escribirlos en lote
+     *
+     * @return Array [totalVenta, totalGravada, totalIgv]
+     */
+    private BigDecimal[] procesarDetalles(Venta venta, VentaDTO dto, List<Kardex> movimientos) {
+        // 1. LOCK DE TODO EL CARRITO EN UNA SOLA CONSULTA
+        Map<Long, Producto> productos = bloquearProductos(dto.getItems());
+
+        // 2. VALIDACIÓN EN MEMORIA (precios y stock total requerido por producto)
+        validarPrecios(dto, productos);
+        validarStock(dto, productos);
+
+        // 3. DETALLES, DESCUENTO DE STOCK Y KARDEX
+        return construirDetalles(venta, dto, productos, movimientos);
+    }
+
+    private void validarPrecios(VentaDTO dto, Map<Long, Producto> productos) {
+        for (VentaDTO.DetalleDTO item : dto.getItems()) {
+            validarPrecioVenta(productos.get(item.getProductoId()), item.getPrecioVenta());
+        }
+    }
+
+    /**
+     * Stock total requerido por producto (sumando líneas repetidas) contra el stock en memoria
+     */
+    static void validarStock(VentaDTO dto, Map<Long, Producto> productos) {
+        Map<Long, Integer> cantidadesRequeridas = new LinkedHashMap<>();
+        for (VentaDTO.DetalleDTO item : dto.getItems()) {
+            Producto prod = productos.get(item.getProductoId());
+            if (!esServicio(prod)) {
+                cantidadesRequeridas.merge(prod.getId(), item.getCantidad().intValue(), Integer::sum);
+            }
+        }
+        cantidadesRequeridas.forEach((productoId, cantidadRequerida) -> {
+            Producto prod = productos.get(productoId);
+            int stockDisponible = prod.getStockActual() != null ? prod.getStockActual() : 0;
+            if (stockDisponible < cantidadRequerida) {
+                throw new RuntimeException(String.format(
+                        "Stock insuficiente para '%s'. Disponible: %d, Requerido: %d",
+                        prod.getNombre(), stockDisponible, cantidadRequerida));
+            }
+        });
+    }
+
+    /**
+     * Crea los detalles, descuenta el stock en memoria y acumula el Kardex (para escritura en lote)
      *
      * @return Array [totalVenta, totalGravada, totalIgv]
      */
-    // =========================================================
-    // ACTUALIZAR SOLO ESTE MÉTODO PRIVADO EN VentaService.java
-    // =========================================================
-    private BigDecimal[] procesarDetalles(Venta venta, VentaDTO dto) {
+    private BigDecimal[] construirDetalles(Venta venta, VentaDTO dto, Map<Long, Producto> productos,
+                                           List<Kardex> movimientos) {
         BigDecimal totalVenta = BigDecimal.ZERO;
         BigDecimal totalGravada = BigDecimal.ZERO;
         BigDecimal totalIgv = BigDecimal.ZERO;
@@ -251,32 +657,8 @@ public class VentaService {
         BigDecimal igvPorcentaje = configuracionService.getIgvPorcentaje();
 
         for (VentaDTO.DetalleDTO item : dto.getItems()) {
-            // Mantenemos tu Lock Pesimista (¡Muy bien implementado!)
-            Producto prod = productoRepository.findByIdWithLock(item.getProductoId())
-                    .orElseThrow(() -> new RuntimeException("Producto no encontrado: ID " + item.getProductoId()));
-
-            // Mantenemos tu validación de seguridad de precios
-            validarPrecioVenta(prod, item.getPrecioVenta());
-
-            // --- NUEVA LÓGICA AGREGADA AQUÍ ---
-            // Verificamos si es un servicio basándonos en tu modelo Producto.java (campo 'tipo')
-            // Asumimos que en BD guardas "SERVICIO" o "PRODUCTO" en ese campo.
-            boolean esServicio = prod.getTipo() != null && "SERVICIO".equalsIgnoreCase(prod.getTipo());
-            
-            int cantidadRequerida = item.getCantidad().intValue();
-            int stockDisponible = prod.getStockActual() != null ? prod.getStockActual() : 0;
-
-            // SOLO validamos stock si NO es un servicio
-            if (!esServicio) {
-                if (stockDisponible < cantidadRequerida) {
-                    throw new RuntimeException(String.format(
-                            "Stock insuficiente para '%s'. Disponible: %d, Requerido: %d",
-                            prod.getNombre(), stockDisponible, cantidadRequerida));
-                }
-            }
-            // ----------------------------------
+            Producto prod = productos.get(item.getProductoId());
 
-            // Cálculos matemáticos (Mantenemos tu lógica original)
             BigDecimal precioFinal = item.getPrecioVenta();
             BigDecimal cantidad = item.getCantidad();
             BigDecimal subtotalItem = precioFinal.multiply(cantidad);
@@ -284,7 +666,6 @@ public class VentaService {
             BigDecimal valorVenta = valorUnitario.multiply(cantidad);
             BigDecimal igvItem = subtotalItem.subtract(valorVenta);
 
-            // Creación del detalle (Mantenemos tu lógica original)
             DetalleVenta det = new DetalleVenta();
             det.setVenta(venta);
             det.setProducto(prod);
@@ -294,9 +675,9 @@ public class VentaService {
             det.setPrecioUnitario(precioFinal);
             det.setValorUnitario(valorUnitario);
             det.setSubtotal(subtotalItem);
+            det.setCostoUnitario(prod.getPrecioCompra() != null ? prod.getPrecioCompra() : BigDecimal.ZERO);
             det.setPorcentajeIgv(igvPorcentaje);
-            
-            // Corrección segura para mapear la afectación sin perder lógica
+
             String codigoAfectacion = Constants.AFECTACION_GRAVADO; // Valor por defecto
             if (prod.getTipoAfectacionIgv() != null) {
                 codigoAfectacion = mapearTipoAfectacion(prod.getTipoAfectacionIgv());
@@ -305,35 +686,83 @@ public class VentaService {
 
             venta.getItems().add(det);
 
-            // Acumuladores
             totalVenta = totalVenta.add(subtotalItem);
             totalGravada = totalGravada.add(valorVenta);
             totalIgv = totalIgv.add(igvItem);
 
-            // --- LÓGICA KARDEX Y STOCK ---
-            // Si es servicio, NO descontamos stock, pero opcionalmente registramos Kardex informativo
-            // o simplemente no hacemos nada. Aquí asumo que quieres registrar la venta pero no mover stock.
-            if (!esServicio) {
-                registrarKardex(prod, cantidadRequerida, venta);
-                prod.setStockActual(stockDisponible - cantidadRequerida);
-                productoRepository.save(prod);
+            // Los servicios no mueven stock ni Kardex
+            if (!esServicio(prod)) {
+                Kardex k = crearKardex(prod, cantidad.intValue());
+                movimientos.add(k);
+                prod.setStockActual(k.getStockActual());
             }
         }
 
         return new BigDecimal[]{totalVenta, totalGravada, totalIgv};
     }
+
+    /**
+     * Escribe en lote los movimientos de Kardex y los descuentos de stock de la venta.
+     * Se llama una vez asignado el número, que forma parte del motivo del Kardex.
+     */
+    private void guardarMovimientosStock(List<Kardex> movimientos, Venta venta) {
+        if (movimientos.isEmpty()) {
+            return;
+        }
+        String motivo = "VENTA " + venta.getSerie() + "-" + venta.getNumero();
+        for (Kardex k : movimientos) {
+            k.setMotivo(motivo);
+        }
+        kardexRepository.saveAll(movimientos);
+        productoRepository.saveAll(movimientos.stream().map(Kardex::getProducto).distinct().toList());
+    }
+
+    /**
+     * Bloquea (PESSIMISTIC_WRITE) todos los productos del carrito en una sola consulta
+     * ordenada por id.
+     *
+     * @return Mapa productoId -> Producto bloqueado
+     * @throws RuntimeException si algún producto no existe
+     */
+    private Map<Long, Producto> bloquearProductos(List<VentaDTO.DetalleDTO> items) {
+        Set<Long> ids = new TreeSet<>();
+        for (VentaDTO.DetalleDTO item : items) {
+            ids.add(item.getProductoId());
+        }
+
+        Map<Long, Producto> productos = new HashMap<>();
+        for (Producto p : productoRepository.findAllByIdInWithLock(ids)) {
+            productos.put(p.getId(), p);
+        }
+
+        for (Long id : ids) {
+            if (!productos.containsKey(id)) {
+                throw new RuntimeException("Producto no encontrado: ID " + id);
+            }
+        }
+        return productos;
+    }
+
     /**
-     * Registra movimiento en Kardex
+     * Verifica si el producto es un servicio (no controla stock)
      */
-    private void registrarKardex(Producto prod, int cantidad, Venta venta) {
+    private static boolean esServicio(Producto prod) {
+        return prod.getTipo() != null && "SERVICIO".equalsIgnoreCase(prod.getTipo());
+    }
+
+    /**
+     * Crea el movimiento de Kardex (SALIDA) a partir del stock actual del producto.
+     * No persiste: el motivo se completa y se guarda en lote en guardarMovimientosStock.
+     */
+    private Kardex crearKardex(Producto prod, int cantidad) {
+        int stockAnterior = prod.getStockActual() != null ? prod.getStockActual() : 0;
         Kardex k = new Kardex();
         k.setProducto(prod);
         k.setTipo("SALIDA");
-        k.setMotivo("VENTA " + venta.getSerie() + "-" + venta.getNumero());
         k.setCantidad(cantidad);
-        k.setStockAnterior(prod.getStockActual());
-        k.setStockActual(prod.getStockActual() - cantidad);
-        kardexRepository.save(k);
+        k.setStockAnterior(stockAnterior);
+        k.setStockActual(stockAnterior - cantidad);
+        return k;
     }
 
     /**
@@ -351,12 +780,13 @@ public class VentaService {
             venta.setMontoPagado(inicial);
             venta.setSaldoPendiente(totalVenta.subtract(inicial));
             int dias = dto.getDiasCredito() != null ? dto.getDiasCredito() : Constants.DEFAULT_CREDIT_DAYS;
-            venta.setFechaVencimiento(LocalDate.now().plusDays(dias));
+            // Desde la emisión: una venta capturada sin conexión vence contando desde ese día
+            venta.setFechaVencimiento(venta.getFechaEmision().plusDays(dias));
         } else {
             venta.setFormaPago("CONTADO");
             venta.setMontoPagado(totalVenta);
             venta.setSaldoPendiente(BigDecimal.ZERO);
-            venta.setFechaVencimiento(LocalDate.now());
+            venta.setFechaVencimiento(venta.getFechaEmision());
             montoAbonado = totalVenta;
         }
 
@@ -369,12 +799,8 @@ public class VentaService {
      */
     private void registrarPagoYCaja(Venta venta, BigDecimal monto, String metodoPago) {
         // Amortización con método de pago
-        Amortizacion amo = new Amortizacion();
-        amo.setVenta(venta);
-        amo.setMonto(monto);
-        amo.setMetodoPago(metodoPago != null ? metodoPago : "EFECTIVO");
-        amo.setObservacion("PAGO INICIAL / CONTADO - " + metodoPago);
-        amortizacionRepository.save(amo);
+        Amortizacion amortizacion = amortizacionRepository.save(crearAmortizacion(venta, monto, metodoPago));
+        resumenVentasService.registrarCobro(amortizacion);
 
         // Movimiento de caja - OBLIGATORIO: Si falla, debe abortar la transacción
         cajaService.registrarMovimiento("INGRESO",
@@ -382,6 +808,15 @@ public class VentaService {
                 monto);
     }
 
+    private Amortizacion crearAmortizacion(Venta venta, BigDecimal monto, String metodoPago) {
+        Amortizacion amo = new Amortizacion();
+        amo.setVenta(venta);
+        amo.setMonto(monto);
+        amo.setMetodoPago(metodoPago != null ? metodoPago : "EFECTIVO");
+        amo.setObservacion("PAGO INICIAL / CONTADO - " + metodoPago);
+        return amo;
+    }
+
     /**
      * Mapea tipo de afectación de texto a código SUNAT
      */
@@ -394,6 +829,14 @@ public class VentaService {
         };
     }
 
+    /**
+     * Serie que usará el usuario actual para el tipo de comprobante indicado
+     * (según la terminal de su caja abierta o, si no tiene, la configurada en su usuario).
+     */
+    public String obtenerSerieTerminalActual(String tipo, boolean facturaElectronicaActiva) {
+        return facturacionService.obtenerSerie(tipo, facturaElectronicaActiva, contextoUsuario.getTerminal());
+    }
+
     /**
      * Verifica si la facturación electrónica está activa
      */
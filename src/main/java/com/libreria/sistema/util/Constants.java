@@ -67,4 +67,49 @@ public final class Constants {
     public static final String SERIE_BOLETA_ELECTRONICA = "B001";
     public static final String SERIE_FACTURA_ELECTRONICA = "F001";
     public static final String SERIE_COTIZACION = "C001";
+
+    // === COLA DE ENVÍOS SUNAT (OUTBOX) ===
+    public static final int SUNAT_OUTBOX_CONCURRENCIA = 4;          // Envíos simultáneos al PSE
+    public static final int SUNAT_OUTBOX_LOTE = 20;                 // Envíos reclamados por ciclo
+    public static final int SUNAT_OUTBOX_MAX_INTENTOS = 10;         // Luego queda FALLIDO
+    public static final long SUNAT_OUTBOX_BACKOFF_BASE_SEGUNDOS = 15;
+    public static final long SUNAT_OUTBOX_BACKOFF_MAX_SEGUNDOS = 3600;
+    // Reclamo vencido: mayor que la espera en cola (LOTE / CONCURRENCIA envíos delante) más un envío,
+    // ambos acotados por los timeouts HTTP: (20 / 4 + 1) x (10 s + 30 s) = 4 min
+    public static final long SUNAT_OUTBOX_EN_PROCESO_TIMEOUT_MINUTOS = 10;
+
+    // === LLAMADAS HTTP EXTERNAS (PSE, CONSULTA RUC/DNI) ===
+    public static final int HTTP_CONNECT_TIMEOUT_SEGUNDOS = 10;
+    public static final int HTTP_READ_TIMEOUT_SEGUNDOS = 30;
+
+    // === VENTAS OFFLINE (LOTE) ===
+    public static final int SUNAT_PLAZO_ENVIO_DIAS = 3;             // Antigüedad máxima de un comprobante electrónico al enviarlo
+
+    // === BÚSQUEDA POS (ÍNDICE EN MEMORIA) ===
+    public static final int POS_BUSQUEDA_LIMITE = 30;               // Resultados por búsqueda
+    public static final int POS_BUSQUEDA_MAX_CANDIDATOS = 2000;     // Tope para prefijos muy cortos
+
+    // === DASHBOARD ===
+    public static final int DASHBOARD_STOCK_CRITICO_LIMITE = 20;    // Filas de la tabla de stock crítico
+    public static final long DASHBOARD_CACHE_TTL_SEGUNDOS = 10;     // Vigencia máxima de una foto del dashboard
+    public static final int DASHBOARD_SECCIONES_HILOS = 4;          // Secciones del dashboard financiero calculándose a la vez
+    public static final int DASHBOARD_SECCIONES_COLA = 24;          // Secciones en espera; luego corren en el hilo de la petición
+    public static final long DASHBOARD_SECCION_TIMEOUT_MS = 5000;   // Plazo de cada sección antes de mostrar resultados parciales
+
+    // === LICENCIA ===
+    public static final long LICENCIA_CACHE_TTL_SEGUNDOS = 300;     // Revalidación de seguridad (además del cambio de día)
+
+    // === EXPORTACIONES EXCEL (STREAMING) ===
+    public static final int EXCEL_VENTANA_FILAS = 200;              // Filas que SXSSF mantiene en memoria
+    public static final int EXCEL_BUFFER_SALIDA = 64 * 1024;        // Bytes por bloque enviado a la respuesta
+    public static final String REPORTE_FETCH_SIZE = "500";          // Filas por viaje al cursor JDBC (String: se usa en @QueryHint)
+
+    // === EXPORTACIONES PDF (TABLAS INCREMENTALES) ===
+    public static final int PDF_FILAS_POR_BLOQUE = 100;             // Filas de tabla que se maquetan y liberan por bloque
+
+    // === REPORTES EN SEGUNDO PLANO (JOBS) ===
+    public static final int REPORTES_JOB_CONCURRENCIA = 2;          // Reportes generándose a la vez
+    public static final int REPORTES_JOB_COLA = 20;                 // Reportes en espera; luego se rechazan
+    public static final int REPORTES_JOB_MAX_POR_USUARIO = 2;       // Reportes pendientes/en proceso por usuario
+    public static final long REPORTES_JOB_RETENCION_MINUTOS = 60;   // Tiempo que se conserva un archivo generado
 }
@@ -0,0 +1,61 @@
+package com.libreria.sistema.util;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Exportación Excel en streaming (memoria constante sin importar la cantidad de filas).
+ *
+ * - SXSSFWorkbook solo mantiene en heap una ventana de filas; las anteriores se vuelcan a un temporal comprimido.
+ * - Los anchos de columna se fijan de antemano: autoSizeColumn recorre la hoja y en streaming solo ve la ventana.
+ * - El libro se escribe a la respuesta en bloques de tamaño fijo y los temporales se eliminan al terminar.
+ *
+ * Las filas deben venir de consultas que devuelvan Stream (cursor con fetch size) dentro de una transacción.
+ *
+ * Uso:
+ *   SXSSFWorkbook workbook = ExcelStreaming.crearLibro();
+ *   try { ...filas...; ExcelStreaming.escribir(workbook, out); } finally { ExcelStreaming.liberar(workbook); }
+ */
+public final class ExcelStreaming {
+
+    private static final int MAX_ANCHO_CARACTERES = 255;
+
+    private ExcelStreaming() {
+    }
+
+    public static SXSSFWorkbook crearLibro() {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(Constants.EXCEL_VENTANA_FILAS);
+        workbook.setCompressTempFiles(true);
+        return workbook;
+    }
+
+    /**
+     * Fija el ancho de las columnas (en caracteres), en orden desde la columna 0
+     */
+    public static void fijarAnchos(Sheet sheet, int... anchos) {
+        for (int i = 0; i < anchos.length; i++) {
+            sheet.setColumnWidth(i, Math.min(anchos[i], MAX_ANCHO_CARACTERES) * 256);
+        }
+    }
+
+    /**
+     * Escribe el libro en la salida en bloques de tamaño fijo
+     */
+    public static void escribir(SXSSFWorkbook workbook, OutputStream outputStream) throws IOException {
+        BufferedOutputStream salida = new BufferedOutputStream(outputStream, Constants.EXCEL_BUFFER_SALIDA);
+        workbook.write(salida);
+        salida.flush();
+    }
+
+    /**
+     * Elimina los temporales en disco del libro. Llamar en un finally: close() de SXSSF no los borra.
+     */
+    public static void liberar(SXSSFWorkbook workbook) throws IOException {
+        workbook.dispose();
+        workbook.close();
+    }
+}
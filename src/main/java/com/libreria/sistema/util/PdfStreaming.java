@@ -0,0 +1,74 @@
+package com.libreria.sistema.util;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfPTable;
+
+/**
+ * Tablas PDF incrementales para reportes largos (memoria acotada sin importar la cantidad de filas).
+ *
+ * - La tabla se marca incompleta (setComplete(false)): cada document.add maqueta las filas
+ *   acumuladas, las escribe y las libera, así el PdfPTable nunca guarda más de un bloque.
+ * - La fila de cabecera se repite en cada página.
+ * - Las páginas terminadas salen al OutputStream mientras se siguen leyendo filas.
+ *
+ * Las filas deben venir de consultas que devuelvan Stream (cursor con fetch size) dentro de una transacción.
+ *
+ * Uso:
+ *   PdfStreaming.Tabla tabla = PdfStreaming.crearTabla(document, anchos);
+ *   ...cabecera en tabla.getTabla()...
+ *   por cada fila: ...celdas...; tabla.filaAgregada();
+ *   tabla.cerrar();
+ */
+public final class PdfStreaming {
+
+    private PdfStreaming() {
+    }
+
+    /**
+     * Crea una tabla incremental al 100% de ancho con una fila de cabecera repetida por página
+     */
+    public static Tabla crearTabla(Document document, float[] anchos) {
+        PdfPTable tabla = new PdfPTable(anchos);
+        tabla.setWidthPercentage(100);
+        tabla.setHeaderRows(1);
+        tabla.setComplete(false);
+        return new Tabla(document, tabla);
+    }
+
+    public static final class Tabla {
+        private final Document document;
+        private final PdfPTable tabla;
+        private int filas;
+
+        private Tabla(Document document, PdfPTable tabla) {
+            this.document = document;
+            this.tabla = tabla;
+        }
+
+        public PdfPTable getTabla() {
+            return tabla;
+        }
+
+        /**
+         * Llamar después de agregar todas las celdas de una fila: cada bloque completo se escribe al documento
+         */
+        public void filaAgregada() throws DocumentException {
+            if (++filas % Constants.PDF_FILAS_POR_BLOQUE == 0) {
+                document.add(tabla);
+            }
+        }
+
+        public int getFilas() {
+            return filas;
+        }
+
+        /**
+         * Escribe las filas restantes y cierra la tabla
+         */
+        public void cerrar() throws DocumentException {
+            tabla.setComplete(true);
+            document.add(tabla);
+        }
+    }
+}
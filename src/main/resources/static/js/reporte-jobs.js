@@ -0,0 +1,96 @@
+/**
+ * Reportes en segundo plano: encola el reporte, consulta su estado y lo descarga al terminar.
+ * Requiere csrf-ajax-setup.js (el POST de envío lleva el token CSRF).
+ *
+ * Uso:
+ *   ReporteJobs.generar('/reportes/avanzados/jobs', { tipo: 'stock-actual-excel' });
+ *   ReporteJobs.descargarAlTerminar(id);   // job ya encolado (página de espera de los enlaces GET)
+ */
+var ReporteJobs = (function() {
+    'use strict';
+
+    var INTERVALO_MS = 1500;
+    var INTERVALO_MAX_MS = 10000;
+
+    function notificar(tipo, mensaje) {
+        if (typeof toastr !== 'undefined') {
+            toastr[tipo](mensaje);
+        } else if (typeof Swal !== 'undefined') {
+            Swal.fire(tipo === 'error' ? 'Error' : 'Reportes', mensaje, tipo === 'error' ? 'error' : 'info');
+        } else {
+            alert(mensaje);
+        }
+    }
+
+    function leerError(respuesta) {
+        return respuesta.json()
+            .then(function(datos) { return datos.error || 'No se pudo generar el reporte'; })
+            .catch(function() { return 'No se pudo generar el reporte'; });
+    }
+
+    function esperar(id, intervalo) {
+        return fetch('/reportes/jobs/' + encodeURIComponent(id), { headers: { 'Accept': 'application/json' } })
+            .then(function(respuesta) {
+                if (!respuesta.ok) {
+                    return leerError(respuesta).then(function(msg) { throw new Error(msg); });
+                }
+                return respuesta.json();
+            })
+            .then(function(job) {
+                if (job.estado === 'LISTO') {
+                    return job;
+                }
+                if (job.estado === 'ERROR') {
+                    throw new Error(job.error || 'Error al generar el reporte');
+                }
+                return new Promise(function(resolve) {
+                    setTimeout(resolve, intervalo);
+                }).then(function() {
+                    return esperar(id, Math.min(intervalo * 2, INTERVALO_MAX_MS));
+                });
+            });
+    }
+
+    /**
+     * Encola el reporte y lo descarga cuando está listo.
+     * Si ya existe uno idéntico (en curso o con datos vigentes) el servidor lo reutiliza.
+     */
+    function generar(urlEnvio, parametros) {
+        var cuerpo = new URLSearchParams();
+        Object.keys(parametros).forEach(function(clave) {
+            var valor = parametros[clave];
+            if (valor !== null && valor !== undefined && valor !== '') {
+                cuerpo.append(clave, valor);
+            }
+        });
+
+        return fetch(urlEnvio, { method: 'POST', body: cuerpo })
+            .then(function(respuesta) {
+                if (!respuesta.ok) {
+                    return leerError(respuesta).then(function(msg) { throw new Error(msg); });
+                }
+                return respuesta.json();
+            })
+            .then(function(job) {
+                if (job.estado !== 'LISTO') {
+                    notificar('info', 'Generando reporte. La descarga iniciará al terminar.');
+                }
+                return descargarAlTerminar(job.id);
+            })
+            .catch(function(error) {
+                notificar('error', error.message);
+            });
+    }
+
+    /**
+     * Espera un job ya encolado y lo descarga. Devuelve una promesa que falla si el reporte termina con error.
+     */
+    function descargarAlTerminar(id) {
+        return esperar(id, INTERVALO_MS).then(function(job) {
+            window.location.href = '/reportes/jobs/' + encodeURIComponent(job.id) + '/descargar';
+            return job;
+        });
+    }
+
+    return { generar: generar, descargarAlTerminar: descargarAlTerminar };
+})();
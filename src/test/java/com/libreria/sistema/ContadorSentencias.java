@@ -0,0 +1,60 @@
+package com.libreria.sistema;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Contador de sentencias JDBC para las pruebas (hibernate.session_factory.statement_inspector).
+ *
+ * - Hibernate le pasa cada SQL que prepara: un lote JDBC de INSERT/UPDATE es UNA sentencia.
+ * - Solo registra el hilo que está midiendo: las tareas programadas y la auditoría asíncrona no se cuentan.
+ */
+public class ContadorSentencias implements StatementInspector {
+
+    private static final ThreadLocal<List<String>> EN_CURSO = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        List<String> sentencias = EN_CURSO.get();
+        if (sentencias != null) {
+            sentencias.add(sql.trim().toLowerCase(Locale.ROOT));
+        }
+        return sql;
+    }
+
+    /**
+     * Ejecuta la operación y devuelve las sentencias que emitió en este hilo
+     */
+    public static Sentencias medir(Runnable operacion) {
+        List<String> sentencias = new ArrayList<>();
+        EN_CURSO.set(sentencias);
+        try {
+            operacion.run();
+        } finally {
+            EN_CURSO.remove();
+        }
+        return new Sentencias(sentencias);
+    }
+
+    public record Sentencias(List<String> sql) {
+
+        public int total() {
+            return sql.size();
+        }
+
+        /**
+         * Sentencias que empiezan con el prefijo (ej. "insert into kardex")
+         */
+        public long que(String prefijo) {
+            return sql.stream().filter(s -> s.startsWith(prefijo)).count();
+        }
+
+        @Override
+        public String toString() {
+            return total() + " sentencias:\n  " + String.join("\n  ", sql);
+        }
+    }
+}
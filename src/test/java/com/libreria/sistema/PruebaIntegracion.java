@@ -0,0 +1,109 @@
+package com.libreria.sistema;
+
+import com.libreria.sistema.model.Producto;
+import com.libreria.sistema.repository.ProductoRepository;
+import com.libreria.sistema.service.UsuarioService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Base de las pruebas contra PostgreSQL real (la aplicación usa UPDATE ... RETURNING, ON CONFLICT, etc.).
+ *
+ * - Si existe DB_URL (igual que en application.properties) se usa esa base de datos.
+ * - Si no, se levanta un contenedor de PostgreSQL (Testcontainers), compartido por todas las pruebas.
+ * - Sin DB_URL ni Docker las pruebas se omiten, salvo con -Dpruebas.integracion.obligatorias=true
+ *   (integración continua): ahí fallan, así el conteo de sentencias no queda sin verificar en silencio.
+ *
+ * Cada prueba corre autenticada como el usuario admin que crea DataInitializer. Sin entorno web
+ * (WebEnvironment.NONE): no hay petición simulada, así ContextoUsuario no reutiliza entidades entre transacciones.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.libreria.sistema.ContadorSentencias",
+        "spring.jpa.show-sql=false"
+})
+public abstract class PruebaIntegracion {
+
+    private static PostgreSQLContainer<?> postgres;
+
+    @Autowired
+    private UsuarioService usuarioService;
+
+    @Autowired
+    protected ProductoRepository productoRepository;
+
+    @BeforeAll
+    static void requiereBaseDeDatos() {
+        boolean disponible = System.getenv("DB_URL") != null || DockerClientFactory.instance().isDockerAvailable();
+        if (Boolean.getBoolean("pruebas.integracion.obligatorias")) {
+            assertTrue(disponible, "Sin DB_URL ni Docker: las pruebas contra PostgreSQL son obligatorias");
+        }
+        assumeTrue(disponible, "Sin DB_URL ni Docker: se omiten las pruebas contra PostgreSQL");
+    }
+
+    @DynamicPropertySource
+    static void baseDeDatos(DynamicPropertyRegistry registry) {
+        if (System.getenv("DB_URL") != null) {
+            return;
+        }
+        synchronized (PruebaIntegracion.class) {
+            if (postgres == null) {
+                postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+                postgres.start();
+            }
+        }
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @BeforeEach
+    void autenticarAdmin() {
+        UserDetails admin = usuarioService.loadUserByUsername("admin");
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(admin, null, admin.getAuthorities()));
+    }
+
+    @AfterEach
+    void cerrarSesion() {
+        SecurityContextHolder.clearContext();
+    }
+
+    /**
+     * Productos nuevos con stock, códigos únicos (la base puede conservar datos de otras corridas)
+     */
+    protected List<Producto> crearProductos(int cantidad) {
+        String lote = UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        List<Producto> productos = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            Producto p = new Producto();
+            p.setCodigoInterno("T-" + lote + "-" + i);
+            p.setNombre("PRODUCTO PRUEBA " + lote + " " + i);
+            p.setPrecioCompra(new BigDecimal("5.00"));
+            p.setPrecioVenta(new BigDecimal("10.00"));
+            p.setStockActual(1000);
+            p.setStockMinimo(5);
+            p.setUnidadMedida("UNIDAD");
+            p.setTipoAfectacionIgv("GRAVADO");
+            productos.add(p);
+        }
+        return productoRepository.saveAll(productos);
+    }
+}
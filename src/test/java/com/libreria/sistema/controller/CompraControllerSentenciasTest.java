@@ -0,0 +1,92 @@
+package com.libreria.sistema.controller;
+
+import com.libreria.sistema.ContadorSentencias;
+import com.libreria.sistema.ContadorSentencias.Sentencias;
+import com.libreria.sistema.PruebaIntegracion;
+import com.libreria.sistema.model.Producto;
+import com.libreria.sistema.model.Proveedor;
+import com.libreria.sistema.model.dto.CompraDTO;
+import com.libreria.sistema.repository.ProveedorRepository;
+import com.libreria.sistema.service.CajaService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sentencias de una compra: Kardex, detalles y stock se escriben en lote.
+ */
+class CompraControllerSentenciasTest extends PruebaIntegracion {
+
+    @Autowired
+    private CompraController compraController;
+
+    @Autowired
+    private CajaService cajaService;
+
+    @Autowired
+    private ProveedorRepository proveedorRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Proveedor proveedor;
+
+    @BeforeEach
+    void prepararCajaYProveedor() {
+        if (cajaService.obtenerSesionActiva().isEmpty()) {
+            cajaService.abrirCaja(new BigDecimal("100.00"));
+        }
+        proveedor = proveedorRepository.findAll().stream().findFirst().orElseGet(() -> {
+            Proveedor p = new Proveedor();
+            p.setRuc("20100000001");
+            p.setRazonSocial("PROVEEDOR PRUEBA");
+            return proveedorRepository.save(p);
+        });
+    }
+
+    @Test
+    void compraEscribeSusLineasEnLote() {
+        List<Producto> productos = crearProductos(11);
+        // Calentamiento: bloques de secuencias
+        registrar(productos.subList(10, 11));
+
+        Sentencias unItem = ContadorSentencias.medir(() -> registrar(productos.subList(0, 1)));
+        Sentencias diezItems = ContadorSentencias.medir(() -> registrar(productos.subList(0, 10)));
+
+        assertEquals(1, diezItems.que("insert into detalle_compras"), diezItems::toString);
+        assertEquals(1, diezItems.que("insert into kardex"), diezItems::toString);
+        assertEquals(1, diezItems.que("update productos"), diezItems::toString);
+
+        // Ninguna sentencia por ítem: 10 ítems cuestan lo mismo que 1
+        assertTrue(diezItems.total() <= unItem.total(),
+                () -> "1 ítem: " + unItem + "\n10 ítems: " + diezItems);
+    }
+
+    /**
+     * Registra la compra como en una petición: open-in-view mantiene un solo EntityManager
+     * durante todo el método del controlador
+     */
+    private void registrar(List<Producto> productos) {
+        CompraDTO dto = new CompraDTO();
+        dto.setProveedorId(proveedor.getId());
+        dto.setTipoComprobante("FACTURA");
+        dto.setNumeroComprobante("F001-" + System.nanoTime() % 100000);
+        dto.setItems(productos.stream().map(p -> {
+            CompraDTO.DetalleDTO item = new CompraDTO.DetalleDTO();
+            item.setProductoId(p.getId());
+            item.setCantidad(5);
+            item.setCosto(new BigDecimal("4.50"));
+            return item;
+        }).toList());
+
+        int estado = transactionTemplate.execute(s -> compraController.guardarCompra(dto).getStatusCode().value());
+        assertEquals(200, estado);
+    }
+}
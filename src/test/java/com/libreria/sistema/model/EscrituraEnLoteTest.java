@@ -0,0 +1,74 @@
+package com.libreria.sistema.model;
+
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Condiciones para que Hibernate agrupe los INSERT de las rutas de escritura (sin base de datos):
+ * IDs por SEQUENCE con bloques (no IDENTITY) y batch JDBC activo con INSERTs ordenados.
+ * El número real de sentencias lo miden las pruebas *SentenciasTest contra PostgreSQL.
+ */
+class EscrituraEnLoteTest {
+
+    private static final List<Class<?>> RUTAS_DE_ESCRITURA = List.of(
+            Venta.class, DetalleVenta.class, Kardex.class, Producto.class, Amortizacion.class,
+            MovimientoCaja.class, Compra.class, DetalleCompra.class, DevolucionVenta.class,
+            DetalleDevolucion.class, Cotizacion.class, DetalleCotizacion.class, SunatOutbox.class);
+
+    @Test
+    void entidadesDeEscrituraUsanSecuenciasConBloques() {
+        int batch = Integer.parseInt(propiedades().getProperty("spring.jpa.properties.hibernate.jdbc.batch_size"));
+        for (Class<?> entidad : RUTAS_DE_ESCRITURA) {
+            Field id = campoId(entidad);
+            GeneratedValue generado = id.getAnnotation(GeneratedValue.class);
+            assertNotNull(generado, entidad.getSimpleName() + " sin @GeneratedValue");
+            assertEquals(GenerationType.SEQUENCE, generado.strategy(), entidad.getSimpleName() + ": IDENTITY impide el batch");
+
+            SequenceGenerator secuencia = id.getAnnotation(SequenceGenerator.class);
+            assertNotNull(secuencia, entidad.getSimpleName() + " sin @SequenceGenerator");
+            assertTrue(secuencia.allocationSize() > 1 && secuencia.allocationSize() <= batch,
+                    entidad.getSimpleName() + ": allocationSize " + secuencia.allocationSize());
+        }
+    }
+
+    @Test
+    void batchJdbcActivo() {
+        Properties p = propiedades();
+        assertTrue(Integer.parseInt(p.getProperty("spring.jpa.properties.hibernate.jdbc.batch_size")) > 1);
+        assertEquals("true", p.getProperty("spring.jpa.properties.hibernate.order_inserts"));
+        assertEquals("true", p.getProperty("spring.jpa.properties.hibernate.order_updates"));
+        assertEquals("true", p.getProperty("spring.datasource.hikari.data-source-properties.reWriteBatchedInserts"));
+    }
+
+    private static Field campoId(Class<?> entidad) {
+        for (Field f : entidad.getDeclaredFields()) {
+            if (f.isAnnotationPresent(Id.class)) {
+                return f;
+            }
+        }
+        throw new AssertionError(entidad.getSimpleName() + " sin @Id");
+    }
+
+    private static Properties propiedades() {
+        try (InputStream in = EscrituraEnLoteTest.class.getResourceAsStream("/application.properties")) {
+            Properties p = new Properties();
+            p.load(in);
+            return p;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.dto.ProductoPosDTO;
+import com.libreria.sistema.repository.ProductoRepository;
+import com.libreria.sistema.util.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Búsqueda del POS sobre el índice en memoria (sin base de datos).
+ */
+class CatalogoPosServiceTest {
+
+    private CatalogoPosService catalogo;
+
+    @BeforeEach
+    void indiceVacio() {
+        ProductoRepository productoRepository = mock(ProductoRepository.class);
+        when(productoRepository.findByActivoTrue()).thenReturn(List.of());
+        catalogo = new CatalogoPosService(productoRepository);
+        catalogo.reconstruir();
+    }
+
+    @Test
+    void variasPalabrasSeIntersectanAntesDelTopeDeCandidatos() {
+        // Más tokens con "r" que el tope (r0, r1...); el único A4 con "r" ("regla") se ordena al final
+        long id = 1;
+        for (int i = 0; i < Constants.POS_BUSQUEDA_MAX_CANDIDATOS + 500; i++) {
+            catalogo.actualizar(producto(id++, "CUADERNO R" + i));
+        }
+        long buscado = id;
+        catalogo.actualizar(producto(buscado, "REGLA A4"));
+        for (int i = 0; i < 50; i++) {
+            catalogo.actualizar(producto(++id, "PAPEL BOND A4 " + i));
+        }
+
+        List<ProductoPosDTO> resultados = catalogo.buscar("r a4");
+
+        assertEquals(1, resultados.size());
+        assertEquals(buscado, resultados.get(0).getId());
+    }
+
+    @Test
+    void codigoExactoVaPrimero() {
+        catalogo.actualizar(producto(1L, "LAPICERO AZUL 7750"));
+        catalogo.actualizar(new ProductoPosDTO(2L, 0L, "7750", "SKU-00002", "BORRADOR", null, null, null, "-",
+                BigDecimal.ONE, 10, true));
+
+        assertEquals(2L, catalogo.buscar("7750").get(0).getId());
+    }
+
+    private static ProductoPosDTO producto(long id, String nombre) {
+        return new ProductoPosDTO(id, 0L, null, "SKU-" + id, nombre, "UTILES", null, null, "-",
+                BigDecimal.TEN, 10, true);
+    }
+}
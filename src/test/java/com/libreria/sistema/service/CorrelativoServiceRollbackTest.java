@@ -0,0 +1,46 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.PruebaIntegracion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * El número se asigna en la transacción del documento: un rollback no deja huecos en la serie.
+ */
+class CorrelativoServiceRollbackTest extends PruebaIntegracion {
+
+    @Autowired
+    private CorrelativoService correlativoService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void rollbackDevuelveElNumero() {
+        String serie = "T" + UUID.randomUUID().toString().substring(0, 4).toUpperCase();
+
+        Integer confirmado = transactionTemplate.execute(status -> correlativoService.siguienteNumero("BOLETA", serie));
+        Integer descartado = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return correlativoService.reservarRango("BOLETA", serie, 5);
+        });
+        Integer siguiente = transactionTemplate.execute(status -> correlativoService.siguienteNumero("BOLETA", serie));
+
+        assertEquals(1, confirmado);
+        assertEquals(2, descartado);
+        assertEquals(2, siguiente);
+    }
+
+    @Test
+    void exigeLaTransaccionDelDocumento() {
+        assertThrows(IllegalTransactionStateException.class,
+                () -> correlativoService.siguienteNumero("BOLETA", "T000"));
+    }
+}
@@ -0,0 +1,28 @@
+package com.libreria.sistema.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Aritmética de los rangos de correlativos (sin base de datos)
+ */
+class CorrelativoServiceTest {
+
+    @Test
+    void rangoTerminaEnElUltimoNumeroReservado() {
+        // Serie en 7, se reservan 3: 8, 9, 10
+        assertEquals(8, CorrelativoService.primeroDelRango(10, 3));
+    }
+
+    @Test
+    void rangoDeUnNumeroEsElMismoNumero() {
+        assertEquals(1, CorrelativoService.primeroDelRango(1, 1));
+    }
+
+    @Test
+    void rechazaRangosVacios() {
+        assertThrows(IllegalArgumentException.class, () -> CorrelativoService.primeroDelRango(5, 0));
+    }
+}
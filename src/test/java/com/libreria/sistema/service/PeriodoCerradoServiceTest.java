@@ -0,0 +1,59 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.service.PeriodoCerradoService.Tramo;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * División de un rango en meses cerrados y tramos abiertos (sin base de datos)
+ */
+class PeriodoCerradoServiceTest {
+
+    private static final YearMonth MES_EN_CURSO = YearMonth.of(2026, 5);
+
+    @Test
+    void bordesIncompletosQuedanAbiertos() {
+        List<Tramo> tramos = PeriodoCerradoService.dividir(
+                LocalDate.of(2026, 1, 15), LocalDate.of(2026, 3, 10), MES_EN_CURSO);
+
+        assertEquals(List.of(
+                new Tramo(LocalDate.of(2026, 1, 15), LocalDate.of(2026, 1, 31), null),
+                new Tramo(LocalDate.of(2026, 2, 1), LocalDate.of(2026, 2, 28), YearMonth.of(2026, 2)),
+                new Tramo(LocalDate.of(2026, 3, 1), LocalDate.of(2026, 3, 10), null)
+        ), tramos);
+    }
+
+    @Test
+    void mesEnCursoYTramosAbiertosContiguosSeUnen() {
+        List<Tramo> tramos = PeriodoCerradoService.dividir(
+                LocalDate.of(2026, 4, 1), LocalDate.of(2026, 6, 30), MES_EN_CURSO);
+
+        assertEquals(List.of(
+                new Tramo(LocalDate.of(2026, 4, 1), LocalDate.of(2026, 4, 30), YearMonth.of(2026, 4)),
+                new Tramo(LocalDate.of(2026, 5, 1), LocalDate.of(2026, 6, 30), null)
+        ), tramos);
+    }
+
+    @Test
+    void rangoDentroDeUnMesCerradoNoUsaElGuardado() {
+        List<Tramo> tramos = PeriodoCerradoService.dividir(
+                LocalDate.of(2026, 2, 3), LocalDate.of(2026, 2, 20), MES_EN_CURSO);
+
+        assertEquals(List.of(new Tramo(LocalDate.of(2026, 2, 3), LocalDate.of(2026, 2, 20), null)), tramos);
+    }
+
+    @Test
+    void variosMesesCerradosCompletos() {
+        List<Tramo> tramos = PeriodoCerradoService.dividir(
+                LocalDate.of(2025, 12, 1), LocalDate.of(2026, 1, 31), MES_EN_CURSO);
+
+        assertEquals(2, tramos.size());
+        assertEquals(YearMonth.of(2025, 12), tramos.get(0).mesCerrado());
+        assertEquals(YearMonth.of(2026, 1), tramos.get(1).mesCerrado());
+    }
+}
@@ -0,0 +1,53 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.PruebaIntegracion;
+import com.libreria.sistema.model.Usuario;
+import com.libreria.sistema.repository.RoleRepository;
+import com.libreria.sistema.repository.UsuarioRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Una sesión abierta toma el rol vigente del usuario sin volver a iniciar sesión.
+ */
+class PermisosCompiladosTest extends PruebaIntegracion {
+
+    @Autowired
+    private PermisosCompilados permisosCompilados;
+
+    @Autowired
+    private UsuarioService usuarioService;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Test
+    void cambioDeRolSeAplicaALaSesionAbierta() {
+        Usuario usuario = new Usuario();
+        usuario.setUsername("prueba-" + UUID.randomUUID().toString().substring(0, 8));
+        usuario.setPassword("x");
+        usuario.setRole(roleRepository.findByNombre("VENDEDOR").orElseThrow());
+        usuario = usuarioRepository.save(usuario);
+
+        UsuarioAutenticado sesion = (UsuarioAutenticado) usuarioService.loadUserByUsername(usuario.getUsername());
+        assertFalse(permisosCompilados.tienePermiso(sesion, "ROLES_EDITAR"));
+
+        usuario.setRole(roleRepository.findByNombre("ADMIN").orElseThrow());
+        usuario = usuarioRepository.save(usuario);
+        assertTrue(permisosCompilados.tienePermiso(sesion, "ROLES_EDITAR"));
+        assertTrue(sesion.isAdmin());
+
+        usuario.setActivo(false);
+        usuarioRepository.save(usuario);
+        assertFalse(permisosCompilados.tienePermiso(sesion, "ROLES_EDITAR"));
+        assertFalse(sesion.isAdmin());
+    }
+}
@@ -0,0 +1,121 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.ContadorSentencias;
+import com.libreria.sistema.ContadorSentencias.Sentencias;
+import com.libreria.sistema.PruebaIntegracion;
+import com.libreria.sistema.model.Producto;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Importación de productos desde Excel: inserciones en lote y filas repetidas.
+ */
+class ProductoExcelServiceTest extends PruebaIntegracion {
+
+    @Autowired
+    private ProductoExcelService productoExcelService;
+
+    @Autowired
+    private CatalogoPosService catalogoPosService;
+
+    @Test
+    void importacionInsertaLosNuevosEnLote() throws IOException {
+        // Calentamiento: bloque de la secuencia de productos
+        productoExcelService.importarProductos(archivo(filas(1, "10.00")), true);
+
+        List<String[]> una = filas(1, "10.00");
+        List<String[]> veinte = filas(20, "10.00");
+        Sentencias unaFila = ContadorSentencias.medir(() -> importar(una));
+        Sentencias veinteFilas = ContadorSentencias.medir(() -> importar(veinte));
+
+        assertEquals(1, veinteFilas.que("insert into productos"), veinteFilas::toString);
+
+        // Solo las búsquedas por código (existe o no) dependen de la cantidad de filas
+        assertTrue(veinteFilas.total() - veinteFilas.que("select") <= unaFila.total() - unaFila.que("select"),
+                () -> "1 fila: " + unaFila + "\n20 filas: " + veinteFilas);
+    }
+
+    @Test
+    void filaRepetidaEnElArchivoGanaLaUltima() throws IOException {
+        String codigo = "T-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        List<String[]> filas = List.of(
+                fila(codigo, "PRIMERA VERSION", "10.00"),
+                fila(codigo, "SEGUNDA VERSION", "12.50"));
+
+        Map<String, Object> resultado = productoExcelService.importarProductos(archivo(filas), true);
+
+        assertEquals(1, resultado.get("creados"));
+        assertEquals(1, resultado.get("actualizados"));
+        Producto producto = productoRepository.findByCodigoInterno(codigo).orElseThrow();
+        assertEquals("SEGUNDA VERSION", producto.getNombre());
+        assertEquals(0, new BigDecimal("12.50").compareTo(producto.getPrecioVenta()));
+
+        // El índice del POS recibe el producto tras el commit (CambioEntidad)
+        assertEquals("SEGUNDA VERSION", catalogoPosService.obtener(producto.getId()).orElseThrow().getNombre());
+    }
+
+    // ==========================================
+    //        UTILIDADES
+    // ==========================================
+
+    private void importar(List<String[]> filas) {
+        try {
+            productoExcelService.importarProductos(archivo(filas), true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<String[]> filas(int cantidad, String precio) {
+        String lote = UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        List<String[]> filas = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            filas.add(fila("T-" + lote + "-" + i, "IMPORTADO " + lote + " " + i, precio));
+        }
+        return filas;
+    }
+
+    private static String[] fila(String codigoInterno, String nombre, String precioVenta) {
+        return new String[]{"", codigoInterno, nombre, "PRUEBAS", "", "", "", "5.00", precioVenta, "", "10", "2"};
+    }
+
+    /**
+     * Archivo con el formato de la plantilla: encabezado, instrucciones y ejemplo; los datos desde la fila 4
+     */
+    private static MockMultipartFile archivo(List<String[]> filas) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Sheet sheet = workbook.createSheet("Productos");
+            sheet.createRow(0).createCell(0).setCellValue("CODIGO_BARRAS");
+            sheet.createRow(1).createCell(0).setCellValue("Instrucciones");
+            sheet.createRow(2).createCell(0).setCellValue("Ejemplo");
+            for (int i = 0; i < filas.size(); i++) {
+                Row row = sheet.createRow(3 + i);
+                String[] valores = filas.get(i);
+                for (int c = 0; c < valores.length; c++) {
+                    if (!valores[c].isEmpty()) {
+                        row.createCell(c).setCellValue(valores[c]);
+                    }
+                }
+            }
+            workbook.write(out);
+            return new MockMultipartFile("archivo", "productos.xlsx",
+                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", out.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.util.Constants;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Backoff exponencial de los reintentos de envío a SUNAT (sin base de datos)
+ */
+class SunatOutboxServiceTest {
+
+    @Test
+    void primerReintentoEsperaLaBase() {
+        assertEquals(Constants.SUNAT_OUTBOX_BACKOFF_BASE_SEGUNDOS, SunatOutboxService.calcularBackoffSegundos(1));
+    }
+
+    @Test
+    void cadaReintentoDuplicaLaEspera() {
+        long base = Constants.SUNAT_OUTBOX_BACKOFF_BASE_SEGUNDOS;
+        assertEquals(base * 2, SunatOutboxService.calcularBackoffSegundos(2));
+        assertEquals(base * 8, SunatOutboxService.calcularBackoffSegundos(4));
+    }
+
+    @Test
+    void esperaTieneTope() {
+        assertEquals(Constants.SUNAT_OUTBOX_BACKOFF_MAX_SEGUNDOS, SunatOutboxService.calcularBackoffSegundos(30));
+        // Sin desbordes con intentos muy altos
+        assertEquals(Constants.SUNAT_OUTBOX_BACKOFF_MAX_SEGUNDOS, SunatOutboxService.calcularBackoffSegundos(500));
+    }
+
+    @Test
+    void reclamoVencidoSuperaLaEsperaEnColaMasUnEnvio() {
+        long envioSegundos = Constants.HTTP_CONNECT_TIMEOUT_SEGUNDOS + Constants.HTTP_READ_TIMEOUT_SEGUNDOS;
+        long rondas = Constants.SUNAT_OUTBOX_LOTE / Constants.SUNAT_OUTBOX_CONCURRENCIA + 1;
+        long peorCaso = rondas * envioSegundos;
+        assertTrue(Constants.SUNAT_OUTBOX_EN_PROCESO_TIMEOUT_MINUTOS * 60 > peorCaso * 2,
+                "El reclamo debe ser claramente mayor que " + peorCaso + " s");
+    }
+}
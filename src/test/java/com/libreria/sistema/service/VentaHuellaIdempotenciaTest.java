@@ -0,0 +1,76 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.Venta;
+import com.libreria.sistema.model.dto.VentaDTO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Huella de idempotencia: la misma clave solo vale para el mismo contenido (sin base de datos)
+ */
+class VentaHuellaIdempotenciaTest {
+
+    @Test
+    void mismoContenidoMismaHuella() {
+        VentaDTO a = venta(item(1L, "2", "10.00"), item(2L, "1", "3.50"));
+        // Otro orden de ítems y otra escala de montos: es la misma venta
+        VentaDTO b = venta(item(2L, "1.0", "3.5"), item(1L, "2", "10"));
+        assertEquals(a.huellaIdempotencia(), b.huellaIdempotencia());
+    }
+
+    @Test
+    void otroContenidoOtraHuella() {
+        VentaDTO original = venta(item(1L, "2", "10.00"));
+        VentaDTO otraCantidad = venta(item(1L, "3", "10.00"));
+        VentaDTO otroPago = venta(item(1L, "2", "10.00"));
+        otroPago.setMetodoPago("YAPE");
+
+        assertNotEquals(original.huellaIdempotencia(), otraCantidad.huellaIdempotencia());
+        assertNotEquals(original.huellaIdempotencia(), otroPago.huellaIdempotencia());
+    }
+
+    @Test
+    void claveReutilizadaConOtroContenidoSeRechaza() {
+        Venta registrada = new Venta();
+        registrada.setSerie("B001");
+        registrada.setNumero(15);
+        registrada.setIdempotencyHuella(venta(item(1L, "2", "10.00")).huellaIdempotencia());
+
+        assertDoesNotThrow(() -> VentaService.validarHuella(registrada, venta(item(1L, "2", "10")).huellaIdempotencia()));
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> VentaService.validarHuella(registrada, venta(item(1L, "5", "10.00")).huellaIdempotencia()));
+        assertTrue(e.getMessage().contains("B001-15"));
+    }
+
+    @Test
+    void ventasAnterioresALaHuellaSeAceptanComoReintento() {
+        Venta anterior = new Venta();
+        assertDoesNotThrow(() -> VentaService.validarHuella(anterior, venta(item(1L, "1", "1")).huellaIdempotencia()));
+    }
+
+    private static VentaDTO venta(VentaDTO.DetalleDTO... items) {
+        VentaDTO dto = new VentaDTO();
+        dto.setTipoComprobante("BOLETA");
+        dto.setClienteDocumento("00000000");
+        dto.setFormaPago("CONTADO");
+        dto.setItems(new ArrayList<>(List.of(items)));
+        return dto;
+    }
+
+    private static VentaDTO.DetalleDTO item(Long productoId, String cantidad, String precio) {
+        VentaDTO.DetalleDTO d = new VentaDTO.DetalleDTO();
+        d.setProductoId(productoId);
+        d.setCantidad(new BigDecimal(cantidad));
+        d.setPrecioVenta(new BigDecimal(precio));
+        return d;
+    }
+}
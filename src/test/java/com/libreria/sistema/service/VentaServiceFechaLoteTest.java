@@ -0,0 +1,48 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.util.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Fecha de emisión de las ventas capturadas sin conexión (sin base de datos)
+ */
+class VentaServiceFechaLoteTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 3, 2);
+
+    @Test
+    void sinFechaDeCapturaSeEmiteHoy() {
+        assertEquals(HOY, VentaService.fechaEmisionLote(null, true, HOY));
+    }
+
+    @Test
+    void aceptaElMesAnteriorParaNotasDeVenta() {
+        LocalDate finDeMes = LocalDate.of(2026, 2, 1);
+        assertEquals(finDeMes, VentaService.fechaEmisionLote(finDeMes.atTime(18, 30), false, HOY));
+    }
+
+    @Test
+    void rechazaMesesCerradosAnteriores() {
+        assertThrows(RuntimeException.class,
+                () -> VentaService.fechaEmisionLote(LocalDate.of(2026, 1, 31).atStartOfDay(), false, HOY));
+    }
+
+    @Test
+    void comprobanteElectronicoDentroDelPlazoDeEnvio() {
+        LocalDate limite = HOY.minusDays(Constants.SUNAT_PLAZO_ENVIO_DIAS);
+        assertEquals(limite, VentaService.fechaEmisionLote(limite.atTime(9, 0), true, HOY));
+        assertThrows(RuntimeException.class,
+                () -> VentaService.fechaEmisionLote(limite.minusDays(1).atTime(9, 0), true, HOY));
+    }
+
+    @Test
+    void rechazaFechasFuturas() {
+        assertThrows(RuntimeException.class,
+                () -> VentaService.fechaEmisionLote(HOY.plusDays(1).atStartOfDay(), false, HOY));
+    }
+}
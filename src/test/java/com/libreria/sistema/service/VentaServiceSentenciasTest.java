@@ -0,0 +1,74 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.ContadorSentencias;
+import com.libreria.sistema.ContadorSentencias.Sentencias;
+import com.libreria.sistema.PruebaIntegracion;
+import com.libreria.sistema.model.Producto;
+import com.libreria.sistema.model.dto.VentaDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sentencias de una venta: las líneas se escriben en lote, no una sentencia por ítem.
+ */
+class VentaServiceSentenciasTest extends PruebaIntegracion {
+
+    private static final String RESUMEN_PRODUCTO = "insert into ventas_producto_diario";
+
+    @Autowired
+    private VentaService ventaService;
+
+    @Autowired
+    private CajaService cajaService;
+
+    @BeforeEach
+    void abrirCaja() {
+        if (cajaService.obtenerSesionActiva().isEmpty()) {
+            cajaService.abrirCaja(new BigDecimal("100.00"));
+        }
+    }
+
+    @Test
+    void ventaEscribeSusLineasEnLote() {
+        List<Producto> productos = crearProductos(11);
+        // Calentamiento: primera venta (bloques de secuencias, cliente, correlativo)
+        ventaService.crearVenta(venta(productos.subList(10, 11)));
+
+        Sentencias unItem = ContadorSentencias.medir(() -> ventaService.crearVenta(venta(productos.subList(0, 1))));
+        Sentencias diezItems = ContadorSentencias.medir(() -> ventaService.crearVenta(venta(productos.subList(0, 10))));
+
+        // Detalles, Kardex y stock: un lote por tabla
+        assertEquals(1, diezItems.que("insert into detalle_ventas"), diezItems::toString);
+        assertEquals(1, diezItems.que("insert into kardex"), diezItems::toString);
+        assertEquals(1, diezItems.que("update productos"), diezItems::toString);
+
+        // Solo el resumen diario por producto (un upsert por producto distinto) crece con los ítems
+        assertEquals(10, diezItems.que(RESUMEN_PRODUCTO), diezItems::toString);
+        assertTrue(diezItems.total() - diezItems.que(RESUMEN_PRODUCTO) <= unItem.total() - unItem.que(RESUMEN_PRODUCTO),
+                () -> "1 ítem: " + unItem + "\n10 ítems: " + diezItems);
+    }
+
+    private static VentaDTO venta(List<Producto> productos) {
+        VentaDTO dto = new VentaDTO();
+        dto.setClienteNombre("CLIENTE PRUEBA");
+        dto.setClienteDocumento("12345678");
+        dto.setTipoComprobante("NOTA_VENTA");
+        dto.setFormaPago("CONTADO");
+        dto.setMetodoPago("EFECTIVO");
+        dto.setItems(productos.stream().map(p -> {
+            VentaDTO.DetalleDTO item = new VentaDTO.DetalleDTO();
+            item.setProductoId(p.getId());
+            item.setCantidad(BigDecimal.ONE);
+            item.setPrecioVenta(p.getPrecioVenta());
+            return item;
+        }).toList());
+        return dto;
+    }
+}
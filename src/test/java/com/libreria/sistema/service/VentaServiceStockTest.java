@@ -0,0 +1,76 @@
+package com.libreria.sistema.service;
+
+import com.libreria.sistema.model.Producto;
+import com.libreria.sistema.model.dto.VentaDTO;
+import com.libreria.sistema.repository.ProductoRepository;
+import jakarta.persistence.LockModeType;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bloqueo del carrito en un solo SELECT ... FOR UPDATE ordenado y validación de stock en memoria
+ * (sin base de datos; el conteo de sentencias lo verifica VentaServiceSentenciasTest)
+ */
+class VentaServiceStockTest {
+
+    @Test
+    void lineasRepetidasSumanContraElStockDelProducto() {
+        Producto cuaderno = producto(1L, 5, null);
+        VentaDTO dto = venta(item(1L, "3"), item(1L, "3"));
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> VentaService.validarStock(dto, Map.of(1L, cuaderno)));
+        assertTrue(e.getMessage().contains("Requerido: 6"));
+    }
+
+    @Test
+    void stockJustoAlcanzaYServiciosNoLoRequieren() {
+        Producto cuaderno = producto(1L, 6, null);
+        Producto impresion = producto(2L, 0, "SERVICIO");
+        VentaDTO dto = venta(item(1L, "3"), item(2L, "10"), item(1L, "3"));
+
+        assertDoesNotThrow(() -> VentaService.validarStock(dto, Map.of(1L, cuaderno, 2L, impresion)));
+    }
+
+    @Test
+    void carritoSeBloqueaEnOrdenDeIdParaEvitarDeadlocks() throws NoSuchMethodException {
+        Method m = ProductoRepository.class.getMethod("findAllByIdInWithLock", Collection.class);
+        assertEquals(LockModeType.PESSIMISTIC_WRITE, m.getAnnotation(Lock.class).value());
+        assertTrue(m.getAnnotation(Query.class).value().endsWith("ORDER BY p.id ASC"));
+    }
+
+    private static Producto producto(Long id, int stock, String tipo) {
+        Producto p = new Producto();
+        p.setId(id);
+        p.setNombre("PRODUCTO " + id);
+        p.setStockActual(stock);
+        p.setTipo(tipo);
+        return p;
+    }
+
+    private static VentaDTO venta(VentaDTO.DetalleDTO... items) {
+        VentaDTO dto = new VentaDTO();
+        dto.setItems(List.of(items));
+        return dto;
+    }
+
+    private static VentaDTO.DetalleDTO item(Long productoId, String cantidad) {
+        VentaDTO.DetalleDTO d = new VentaDTO.DetalleDTO();
+        d.setProductoId(productoId);
+        d.setCantidad(new BigDecimal(cantidad));
+        d.setPrecioVenta(BigDecimal.TEN);
+        return d;
+    }
+}